@@ -0,0 +1,33 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.util.Map;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.types.Variant;
+
+/**
+ * Remote interface used by the round trip and signal benchmarks.
+ */
+public interface BenchmarkInterface extends DBusInterface {
+
+    void ping();
+
+    byte[] echoBytes(byte[] _data);
+
+    Map<String, Variant<?>> echoDict(Map<String, Variant<?>> _dict);
+
+    class BenchmarkSignal extends DBusSignal {
+        private final int value;
+
+        public BenchmarkSignal(String _path, int _value) throws DBusException {
+            super(_path, _value);
+            value = _value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+}
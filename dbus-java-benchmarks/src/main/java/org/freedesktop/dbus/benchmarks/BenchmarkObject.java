@@ -0,0 +1,36 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.util.Map;
+
+import org.freedesktop.dbus.types.Variant;
+
+/**
+ * Exported implementation of {@link BenchmarkInterface}, doing as little work as possible.
+ */
+public class BenchmarkObject implements BenchmarkInterface {
+    public static final String OBJECT_PATH = "/org/freedesktop/dbus/benchmarks/Object";
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public String getObjectPath() {
+        return OBJECT_PATH;
+    }
+
+    @Override
+    public void ping() {
+    }
+
+    @Override
+    public byte[] echoBytes(byte[] _data) {
+        return _data;
+    }
+
+    @Override
+    public Map<String, Variant<?>> echoDict(Map<String, Variant<?>> _dict) {
+        return _dict;
+    }
+}
@@ -0,0 +1,35 @@
+package org.freedesktop.dbus.benchmarks;
+
+import org.freedesktop.dbus.Struct;
+import org.freedesktop.dbus.annotations.Position;
+import org.freedesktop.dbus.types.UInt32;
+
+/**
+ * Struct used by the marshalling benchmarks.
+ */
+public final class BenchmarkStruct extends Struct {
+    @Position(0)
+    private final String name;
+    @Position(1)
+    private final UInt32 id;
+    @Position(2)
+    private final long   timestamp;
+
+    public BenchmarkStruct(String _name, UInt32 _id, long _timestamp) {
+        name = _name;
+        id = _id;
+        timestamp = _timestamp;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public UInt32 getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,71 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+
+/**
+ * Two {@link DirectConnection}s connected to each other over TCP.
+ * The listening side exports a {@link BenchmarkObject}.
+ */
+final class DirectConnectionPair implements Closeable {
+    private static final int CONNECT_ATTEMPTS = 100;
+
+    private final DirectConnection server;
+    private final DirectConnection client;
+
+    private DirectConnectionPair(DirectConnection _server, DirectConnection _client) {
+        server = _server;
+        client = _client;
+    }
+
+    static DirectConnectionPair open() throws Exception {
+        String address = DirectConnection.createDynamicTCPSession();
+
+        // the listening side blocks until the client has connected
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<DirectConnection> serverFuture = executor.submit(() -> new DirectConnection(address + ",listen=true"));
+            DirectConnection client = connect(address);
+            DirectConnection server = serverFuture.get();
+            server.exportObject(BenchmarkObject.OBJECT_PATH, new BenchmarkObject());
+            server.listen();
+            return new DirectConnectionPair(server, client);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static DirectConnection connect(String _address) throws DBusException, InterruptedException {
+        for (int i = 1;; i++) {
+            try {
+                return new DirectConnection(_address);
+            } catch (DBusException _ex) {
+                // server socket not bound yet
+                if (i == CONNECT_ATTEMPTS) {
+                    throw _ex;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    DirectConnection getServer() {
+        return server;
+    }
+
+    DirectConnection getClient() {
+        return client;
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        server.close();
+    }
+}
@@ -0,0 +1,130 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Marshalling#convertParameters(Object[], Type[], org.freedesktop.dbus.connections.AbstractConnection)}
+ * and {@link Marshalling#deSerializeParameters(Object[], Type[], org.freedesktop.dbus.connections.AbstractConnection)}
+ * for the parameter types of the methods in {@link Signatures}.
+ * Does not require a bus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallingBenchmark {
+
+    @Param({"primitives", "arrays", "dict", "struct"})
+    private String   kind;
+
+    private Type[]   types;
+    private Object[] javaParameters;
+
+    private Message  decoded;
+    private String   signature;
+    private byte[]   body;
+
+    /** Parameters as extracted from the wire, deSerializeParameters replaces elements, so this is refreshed per invocation. */
+    private Object[] wireParameters;
+
+    @Setup
+    public void setup() throws Exception {
+        List<BenchmarkStruct> structs = new ArrayList<>();
+        Map<String, Variant<?>> dict = new HashMap<>();
+        for (int i = 0; i < 16; i++) {
+            structs.add(new BenchmarkStruct("struct" + i, new UInt32(i), i));
+            dict.put("Property" + i, new Variant<>(new UInt32(i)));
+        }
+        List<String> strings = new ArrayList<>(Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h"));
+
+        switch (kind) {
+            case "primitives":
+                javaParameters = new Object[] {42, 42L, Math.PI, "string", new UInt32(42)};
+                break;
+            case "arrays":
+                javaParameters = new Object[] {new int[256], strings, new byte[1024]};
+                break;
+            case "dict":
+                javaParameters = new Object[] {dict};
+                break;
+            case "struct":
+                javaParameters = new Object[] {structs.get(0), structs};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+
+        Method method = null;
+        for (Method m : Signatures.class.getMethods()) {
+            if (m.getName().equals(kind)) {
+                method = m;
+            }
+        }
+        types = method.getGenericParameterTypes();
+        signature = Marshalling.getDBusType(types);
+
+        Object[] converted = Marshalling.convertParameters(javaParameters.clone(), types, null);
+        MethodCall call = new MethodCall("org.freedesktop.dbus.benchmarks", BenchmarkObject.OBJECT_PATH,
+                BenchmarkInterface.class.getName(), kind, (byte) 0, signature, converted);
+        decoded = new MessageDecoder().decode(ByteBuffer.wrap(MessageBenchmark.toBytes(call)));
+        body = decoded.getWireData()[2];
+    }
+
+    @Setup(Level.Invocation)
+    public void extractParameters() throws DBusException {
+        wireParameters = decoded.extract(signature, body, 0);
+    }
+
+    @Benchmark
+    public Object[] convertParameters() throws DBusException {
+        return Marshalling.convertParameters(javaParameters.clone(), types, null);
+    }
+
+    @Benchmark
+    public Object[] deSerializeParameters() throws Exception {
+        return Marshalling.deSerializeParameters(wireParameters, types, null);
+    }
+
+    /**
+     * Method signatures providing the parameter types, the method name is the benchmark kind.
+     */
+    public interface Signatures {
+        void primitives(int _i, long _l, double _d, String _s, UInt32 _u);
+
+        void arrays(int[] _ints, List<String> _strings, byte[] _bytes);
+
+        void dict(Map<String, Variant<?>> _dict);
+
+        void struct(BenchmarkStruct _struct, List<BenchmarkStruct> _structs);
+    }
+}
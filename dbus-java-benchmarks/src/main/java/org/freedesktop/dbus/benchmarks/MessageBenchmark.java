@@ -0,0 +1,129 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.UInt16;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.UInt64;
+import org.freedesktop.dbus.types.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Message#append(String, Object...)} (by creating a method call and retrieving its wire data)
+ * and {@link Message#extract(String, byte[], int)} for different classes of signatures.
+ * Does not require a bus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+
+    @Param({"primitives", "arrays", "dict", "struct", "variant"})
+    private String  kind;
+
+    private String   signature;
+    private Object[] args;
+
+    private Message  decoded;
+    private byte[]   body;
+
+    @Setup
+    public void setup() throws Exception {
+        switch (kind) {
+            case "primitives":
+                signature = "ybnqiuxtds";
+                args = new Object[] {(byte) 1, true, (short) 2, new UInt16(3), 4, new UInt32(5), 6L, new UInt64(7), 8.0, "nine"};
+                break;
+            case "arrays":
+                byte[] bytes = new byte[1024];
+                int[] ints = new int[256];
+                double[] doubles = new double[64];
+                String[] strings = new String[32];
+                for (int i = 0; i < ints.length; i++) {
+                    ints[i] = i;
+                }
+                Arrays.fill(doubles, Math.PI);
+                Arrays.fill(strings, "element");
+                signature = "ayaiadas";
+                args = new Object[] {bytes, ints, doubles, strings};
+                break;
+            case "dict":
+                Map<String, Variant<?>> dict = new HashMap<>();
+                for (int i = 0; i < 16; i++) {
+                    dict.put("Property" + i, i % 2 == 0 ? new Variant<>(new UInt32(i)) : new Variant<>("value" + i));
+                }
+                signature = "a{sv}";
+                args = new Object[] {dict};
+                break;
+            case "struct":
+                List<BenchmarkStruct> structs = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    structs.add(new BenchmarkStruct("struct" + i, new UInt32(i), System.currentTimeMillis()));
+                }
+                signature = "(sux)a(sux)";
+                args = new Object[] {new BenchmarkStruct("single", new UInt32(42), 0L), structs};
+                break;
+            case "variant":
+                Variant<?>[] variants = new Variant<?>[] {new Variant<>("string"), new Variant<>(42), new Variant<>(new UInt64(1)),
+                        new Variant<>(new byte[16]), new Variant<>(Math.E)};
+                signature = "vav";
+                args = new Object[] {new Variant<>("single"), variants};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+
+        decoded = new MessageDecoder().decode(ByteBuffer.wrap(toBytes(createMessage())));
+        body = decoded.getWireData()[2];
+    }
+
+    private Message createMessage() throws DBusException {
+        return new MethodCall("org.freedesktop.dbus.benchmarks", BenchmarkObject.OBJECT_PATH,
+                BenchmarkInterface.class.getName(), "call", (byte) 0, signature, args);
+    }
+
+    @Benchmark
+    public byte[][] append() throws DBusException {
+        return createMessage().getWireData();
+    }
+
+    @Benchmark
+    public Object[] extract() throws DBusException {
+        return decoded.extract(signature, body, 0);
+    }
+
+    static byte[] toBytes(Message _msg) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] buf : _msg.getWireData()) {
+            if (null == buf) {
+                break;
+            }
+            bos.write(buf, 0, buf.length);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,88 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.UInt64;
+import org.freedesktop.dbus.types.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures decoding a received method call from its wire data including extracting the parameters,
+ * for a small call, a call with a dictionary, a telemetry like array of structs and a large array.
+ * Run with {@code -prof gc} to see the allocated bytes per message. Does not require a bus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDecodingBenchmark {
+
+    @Param({"small", "dict", "structs", "ints"})
+    private String         kind;
+
+    private byte[]         wire;
+    private MessageDecoder decoder;
+
+    @Setup
+    public void setup() throws Exception {
+        String signature;
+        Object[] args;
+        switch (kind) {
+            case "small":
+                signature = "su";
+                args = new Object[] {"hello", new UInt32(42)};
+                break;
+            case "dict":
+                Map<String, Variant<?>> dict = new HashMap<>();
+                for (int i = 0; i < 10; i++) {
+                    dict.put("Property" + i, new Variant<>(new UInt32(i)));
+                }
+                signature = "a{sv}";
+                args = new Object[] {dict};
+                break;
+            case "structs":
+                List<Object[]> samples = new ArrayList<>();
+                for (int i = 0; i < 32; i++) {
+                    samples.add(new Object[] {new UInt64(i), Math.PI * i, (double) i, i});
+                }
+                signature = "a(tddi)";
+                args = new Object[] {samples};
+                break;
+            case "ints":
+                signature = "ai";
+                args = new Object[] {new int[64 * 1024]};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+
+        wire = MessageBenchmark.toBytes(new MethodCall("org.freedesktop.dbus.benchmarks", BenchmarkObject.OBJECT_PATH,
+                BenchmarkInterface.class.getName(), "call", (byte) 0, signature, args));
+        decoder = new MessageDecoder();
+    }
+
+    @Benchmark
+    public Object[] decode() throws Exception {
+        return decoder.decode(ByteBuffer.wrap(wire)).getParameters();
+    }
+}
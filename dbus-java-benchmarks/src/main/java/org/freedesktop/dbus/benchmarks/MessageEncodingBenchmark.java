@@ -0,0 +1,75 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures marshalling a method call including retrieving its wire data,
+ * for a small call, a call with a dictionary and calls with large arrays.
+ * Run with {@code -prof gc} to see the allocated bytes per message. Does not require a bus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageEncodingBenchmark {
+
+    @Param({"small", "dict", "bytes", "ints"})
+    private String   kind;
+
+    private String   signature;
+    private Object[] args;
+
+    @Setup
+    public void setup() {
+        switch (kind) {
+            case "small":
+                signature = "su";
+                args = new Object[] {"hello", 42};
+                break;
+            case "dict":
+                Map<String, Variant<?>> dict = new HashMap<>();
+                for (int i = 0; i < 10; i++) {
+                    dict.put("Property" + i, new Variant<>(new UInt32(i)));
+                }
+                signature = "a{sv}";
+                args = new Object[] {dict};
+                break;
+            case "bytes":
+                signature = "ay";
+                args = new Object[] {new byte[1024 * 1024]};
+                break;
+            case "ints":
+                signature = "ai";
+                args = new Object[] {new int[256 * 1024]};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+    }
+
+    @Benchmark
+    public byte[][] encode() throws DBusException {
+        return new MethodCall("org.freedesktop.dbus.benchmarks", BenchmarkObject.OBJECT_PATH,
+                BenchmarkInterface.class.getName(), "call", (byte) 0, signature, args).getWireData();
+    }
+}
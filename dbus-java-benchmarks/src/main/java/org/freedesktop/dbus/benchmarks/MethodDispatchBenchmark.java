@@ -0,0 +1,105 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.MethodTuple;
+import org.freedesktop.dbus.messages.ExportedMethod;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.messages.MethodReturn;
+import org.freedesktop.dbus.types.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the server side costs of dispatching a method call using reflection (looking up types and
+ * return signature on every call) with using the invocation plan precomputed by {@link ExportedObject}.
+ * Each invocation deserializes the parameters, invokes the method and creates the reply.
+ * Run with {@code -prof gc} to see the allocated bytes per call. Does not require a bus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodDispatchBenchmark {
+
+    @Param({"ping", "echoBytes", "echoDict"})
+    private String          method;
+
+    private BenchmarkObject target;
+    private ExportedMethod  plan;
+    private MethodCall      call;
+    private Object[]        params;
+
+    @Setup
+    public void setup() throws Exception {
+        String signature;
+        Object[] args;
+        switch (method) {
+            case "ping":
+                signature = "";
+                args = new Object[0];
+                break;
+            case "echoBytes":
+                signature = "ay";
+                args = new Object[] {new byte[64]};
+                break;
+            case "echoDict":
+                Map<String, Variant<?>> dict = new HashMap<>();
+                for (int i = 0; i < 10; i++) {
+                    dict.put("Property" + i, new Variant<>(i));
+                }
+                signature = "a{sv}";
+                args = new Object[] {dict};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown method: " + method);
+        }
+
+        target = new BenchmarkObject();
+        plan = new ExportedObject(target, false).getExportedMethod(new MethodTuple(method, signature));
+        call = new MethodCall("org.freedesktop.dbus.benchmarks", BenchmarkObject.OBJECT_PATH,
+                BenchmarkInterface.class.getName(), method, (byte) 0, signature, args);
+        params = call.getParameters();
+    }
+
+    @Benchmark
+    public MethodReturn reflective() throws Throwable {
+        Method me = plan.getMethod();
+        Type[] ts = me.getGenericParameterTypes();
+        Object[] args = Marshalling.deSerializeParameters(params.clone(), ts, null);
+        Object result = me.invoke(target, args);
+        if (Void.TYPE.equals(me.getReturnType())) {
+            return new MethodReturn(call, null);
+        }
+        StringBuffer sb = new StringBuffer();
+        for (String s : Marshalling.getDBusType(me.getGenericReturnType())) {
+            sb.append(s);
+        }
+        return new MethodReturn(call, sb.toString(),
+                Marshalling.convertParameters(new Object[] {result}, new Type[] {me.getGenericReturnType()}, null));
+    }
+
+    @Benchmark
+    public MethodReturn plan() throws Throwable {
+        Object[] args = plan.deSerializeParameters(params.clone(), null);
+        Object result = plan.invoke(target, args);
+        return plan.createReply(call, result, null);
+    }
+}
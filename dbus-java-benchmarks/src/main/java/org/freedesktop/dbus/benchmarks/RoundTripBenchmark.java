@@ -0,0 +1,130 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.bin.EmbeddedDBusDaemon;
+import org.freedesktop.dbus.connections.SASL;
+import org.freedesktop.dbus.connections.impl.DBusConnection;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures method call round trips, either over a {@link DirectConnection}
+ * or through an in-process {@link EmbeddedDBusDaemon}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    private static final String BUS_NAME         = "org.freedesktop.dbus.benchmarks";
+    private static final int    CONNECT_ATTEMPTS = 100;
+
+    @Param({"direct", "daemon"})
+    private String              transport;
+
+    private BenchmarkInterface  remote;
+    private Map<String, Variant<?>> dict;
+
+    private Closeable[]         resources;
+
+    @Setup
+    public void setup() throws Exception {
+        if ("direct".equals(transport)) {
+            DirectConnectionPair pair = DirectConnectionPair.open();
+            remote = pair.getClient().getRemoteObject(BenchmarkObject.OBJECT_PATH, BenchmarkInterface.class);
+            resources = new Closeable[] {pair};
+        } else if ("daemon".equals(transport)) {
+            String address = DirectConnection.createDynamicTCPSession();
+            EmbeddedDBusDaemon daemon = new EmbeddedDBusDaemon();
+            daemon.setAddress(address);
+            daemon.setAuthTypes(SASL.AUTH_ANON);
+            daemon.startInBackground();
+
+            DBusConnection server = connect(address);
+            server.requestBusName(BUS_NAME);
+            server.exportObject(BenchmarkObject.OBJECT_PATH, new BenchmarkObject());
+            DBusConnection client = connect(address);
+            remote = client.getRemoteObject(BUS_NAME, BenchmarkObject.OBJECT_PATH, BenchmarkInterface.class);
+            resources = new Closeable[] {client, server, daemon};
+        } else {
+            throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+
+        dict = new HashMap<>();
+        for (int i = 0; i < 16; i++) {
+            dict.put("Property" + i, new Variant<>(new UInt32(i)));
+        }
+    }
+
+    private static DBusConnection connect(String _address) throws DBusException, InterruptedException {
+        for (int i = 1;; i++) {
+            try {
+                return DBusConnection.getConnection(_address, true, false);
+            } catch (DBusException _ex) {
+                // daemon not listening yet
+                if (i == CONNECT_ATTEMPTS) {
+                    throw _ex;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (Closeable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Benchmark
+    public void ping() {
+        remote.ping();
+    }
+
+    @Benchmark
+    public byte[] echoBytes(Payload _payload) {
+        return remote.echoBytes(_payload.data);
+    }
+
+    @Benchmark
+    public Map<String, Variant<?>> echoDict() {
+        return remote.echoDict(dict);
+    }
+
+    /**
+     * Byte array sent by {@link RoundTripBenchmark#echoBytes(Payload)}.
+     */
+    @State(Scope.Benchmark)
+    public static class Payload {
+        @Param({"16", "65536", "1048576"})
+        private int size;
+
+        private byte[] data;
+
+        @Setup
+        public void setup() {
+            data = new byte[size];
+        }
+    }
+}
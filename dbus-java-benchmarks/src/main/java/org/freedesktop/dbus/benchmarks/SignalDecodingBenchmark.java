@@ -0,0 +1,86 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.DBusMatchRule;
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.interfaces.Properties.PropertiesChanged;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.LazySignal;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares converting a received signal once per signal handler with converting it once
+ * and sharing the result between all handlers ({@link LazySignal}).
+ * Each invocation decodes the signal and lets the given number of handlers request the typed signal.
+ * Run with {@code -prof gc} to see the allocated bytes per signal. Does not require a bus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignalDecodingBenchmark {
+
+    @Param({"1", "10", "40"})
+    private int            handlers;
+
+    private byte[]         wire;
+    private MessageDecoder decoder;
+
+    @Setup
+    public void setup() throws Exception {
+        Map<String, Variant<?>> changed = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            changed.put("Property" + i, new Variant<>(new UInt32(i)));
+        }
+        changed.put("Name", new Variant<>("SignalDecodingBenchmark"));
+        List<String> invalidated = new ArrayList<>();
+        invalidated.add("Invalidated");
+
+        PropertiesChanged signal = new PropertiesChanged(BenchmarkObject.OBJECT_PATH, BenchmarkInterface.class.getName(), changed, invalidated);
+        signal.appendbody(null);
+        // registers the signal type like adding a signal handler would do
+        new DBusMatchRule(PropertiesChanged.class);
+        wire = MessageBenchmark.toBytes(signal);
+        decoder = new MessageDecoder();
+    }
+
+    @Benchmark
+    public int perHandler() throws Exception {
+        DBusSignal received = (DBusSignal) decoder.decode(ByteBuffer.wrap(wire));
+        int size = 0;
+        for (int h = 0; h < handlers; h++) {
+            size += ((PropertiesChanged) received.createReal(null)).getPropertiesChanged().size();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int shared() throws Exception {
+        LazySignal lazy = new LazySignal((DBusSignal) decoder.decode(ByteBuffer.wrap(wire)), null);
+        int size = 0;
+        for (int h = 0; h < handlers; h++) {
+            size += ((PropertiesChanged) lazy.get()).getPropertiesChanged().size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,76 @@
+package org.freedesktop.dbus.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.freedesktop.dbus.benchmarks.BenchmarkInterface.BenchmarkSignal;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures signal dispatch in {@link AbstractConnection}: a batch of signals is sent over a
+ * {@link org.freedesktop.dbus.connections.impl.DirectConnection} and the benchmark waits until every
+ * registered handler has seen every signal. The result is the time per signal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignalDispatchBenchmark {
+    private static final int    BATCH_SIZE = 1000;
+    private static final long   TIMEOUT    = TimeUnit.SECONDS.toNanos(30);
+
+    @Param({"1", "10"})
+    private int                  handlers;
+
+    private DirectConnectionPair connections;
+    private final AtomicLong     received  = new AtomicLong();
+    private long                 expected;
+
+    @Setup
+    public void setup() throws Exception {
+        connections = DirectConnectionPair.open();
+        for (int i = 0; i < handlers; i++) {
+            connections.getClient().addSigHandler(BenchmarkSignal.class, s -> received.incrementAndGet());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connections.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void dispatch() throws Exception {
+        AbstractConnection server = connections.getServer();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            server.sendMessage(new BenchmarkSignal(BenchmarkObject.OBJECT_PATH, i));
+        }
+        expected += (long) BATCH_SIZE * handlers;
+
+        long start = System.nanoTime();
+        while (received.get() < expected) {
+            if (System.nanoTime() - start > TIMEOUT) {
+                throw new TimeoutException("Received " + received.get() + " of " + expected + " signals");
+            }
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
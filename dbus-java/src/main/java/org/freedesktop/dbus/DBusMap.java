@@ -12,39 +12,103 @@
 
 package org.freedesktop.dbus;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
-import java.util.TreeSet;
 
+/**
+ * Read-only map backed by the entries of a D-Bus dictionary in the order they were received.
+ * <p>
+ * Small maps are searched linearly. For larger maps a hash index of the keys is built on the first
+ * lookup by key, so further lookups do not have to scan all entries.
+ * </p>
+ * <p>
+ * If a key was received more than once, only its first entry is part of the map.
+ * </p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
 public class DBusMap<K, V> implements Map<K, V> {
+    /** Maps with less entries are searched without index. */
+    private static final int INDEX_THRESHOLD = 8;
+
     // CHECKSTYLE:OFF
     Object[][] entries;
     // CHECKSTYLE:ON
+    /** Index of the first entry of each key, created on demand. */
+    private volatile Map<Object, Integer> index;
+    /** Number of distinct keys, -1 if not counted yet. */
+    private volatile int                  size = -1;
+
     public DBusMap(Object[][] _entries) {
         this.entries = _entries;
     }
 
-    class Entry implements Map.Entry<K, V>, Comparable<Entry> {
+    /**
+     * Drops the index, must be called after keys in entries have been replaced.
+     */
+    void clearIndex() {
+        index = null;
+        size = -1;
+    }
+
+    /**
+     * Returns true if the entry at the given position is the first entry of its key.
+     */
+    private boolean isFirst(int _entry) {
+        return indexOf(entries[_entry][0]) == _entry;
+    }
+
+    /**
+     * Returns the position of the first entry with the given key.
+     *
+     * @param _key key
+     * @return position or -1 if key is not in this map
+     */
+    private int indexOf(Object _key) {
+        Object[][] e = entries;
+        if (e.length < INDEX_THRESHOLD) {
+            for (int i = 0; i < e.length; i++) {
+                if (_key == e[i][0] || (_key != null && _key.equals(e[i][0]))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        Map<Object, Integer> idx = index;
+        if (null == idx) {
+            idx = new HashMap<>(e.length * 4 / 3 + 1);
+            for (int i = 0; i < e.length; i++) {
+                idx.putIfAbsent(e[i][0], i);
+            }
+            index = idx;
+        }
+        Integer i = idx.get(_key);
+        return null == i ? -1 : i;
+    }
+
+    class Entry implements Map.Entry<K, V> {
         private int entry;
 
         Entry(int i) {
             this.entry = i;
         }
 
-        @SuppressWarnings("unchecked")
         @Override
         public boolean equals(Object o) {
-            if (null == o) {
-                return false;
-            }
-            if (!(o instanceof DBusMap.Entry)) {
+            if (!(o instanceof Map.Entry)) {
                 return false;
             }
-            return this.entry == ((Entry) o).entry;
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            return Objects.equals(getKey(), other.getKey()) && Objects.equals(getValue(), other.getValue());
         }
 
         @Override
@@ -61,7 +125,7 @@ public class DBusMap<K, V> implements Map<K, V> {
 
         @Override
         public int hashCode() {
-            return entries[entry][0].hashCode();
+            return Objects.hashCode(entries[entry][0]) ^ Objects.hashCode(entries[entry][1]);
         }
 
         @Override
@@ -70,8 +134,8 @@ public class DBusMap<K, V> implements Map<K, V> {
         }
 
         @Override
-        public int compareTo(Entry e) {
-            return entry - e.entry;
+        public String toString() {
+            return entries[entry][0] + "=" + entries[entry][1];
         }
     }
 
@@ -82,18 +146,13 @@ public class DBusMap<K, V> implements Map<K, V> {
 
     @Override
     public boolean containsKey(Object key) {
-        for (Object[] entrie : entries) {
-            if (key == entrie[0] || (key != null && key.equals(entrie[0]))) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(key) >= 0;
     }
 
     @Override
     public boolean containsValue(Object value) {
-        for (Object[] entrie : entries) {
-            if (value == entrie[1] || (value != null && value.equals(entrie[1]))) {
+        for (int i = 0; i < entries.length; i++) {
+            if (Objects.equals(value, entries[i][1]) && isFirst(i)) {
                 return true;
             }
         }
@@ -102,22 +161,14 @@ public class DBusMap<K, V> implements Map<K, V> {
 
     @Override
     public Set<Map.Entry<K, V>> entrySet() {
-        Set<Map.Entry<K, V>> s = new TreeSet<Map.Entry<K, V>>();
-        for (int i = 0; i < entries.length; i++) {
-            s.add(new Entry(i));
-        }
-        return s;
+        return new EntrySet();
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public V get(Object key) {
-        for (Object[] entrie : entries) {
-            if (key == entrie[0] || (key != null && key.equals(entrie[0]))) {
-                return (V) entrie[1];
-            }
-        }
-        return null;
+        int i = indexOf(key);
+        return i < 0 ? null : (V) entries[i][1];
     }
 
     @Override
@@ -126,13 +177,8 @@ public class DBusMap<K, V> implements Map<K, V> {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Set<K> keySet() {
-        Set<K> s = new TreeSet<K>();
-        for (Object[] entry : entries) {
-            s.add((K) entry[0]);
-        }
-        return s;
+        return new KeySet();
     }
 
     @Override
@@ -152,22 +198,40 @@ public class DBusMap<K, V> implements Map<K, V> {
 
     @Override
     public int size() {
-        return entries.length;
+        int s = size;
+        if (s < 0) {
+            s = 0;
+            for (int i = 0; i < entries.length; i++) {
+                if (isFirst(i)) {
+                    s++;
+                }
+            }
+            size = s;
+        }
+        return s;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public Collection<V> values() {
         List<V> l = new ArrayList<>();
-        for (Object[] entry : entries) {
-            l.add((V) entry[1]);
+        for (int i = 0; i < entries.length; i++) {
+            if (isFirst(i)) {
+                l.add((V) entries[i][1]);
+            }
         }
         return l;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(entries);
+        int h = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (isFirst(i)) {
+                h += Objects.hashCode(entries[i][0]) ^ Objects.hashCode(entries[i][1]);
+            }
+        }
+        return h;
     }
 
     @Override
@@ -185,9 +249,99 @@ public class DBusMap<K, V> implements Map<K, V> {
     @Override
     public String toString() {
         String s = "{ ";
-        for (Object[] entrie : entries) {
-            s += entrie[0] + " => " + entrie[1] + ",";
+        for (int i = 0; i < entries.length; i++) {
+            if (isFirst(i)) {
+                s += entries[i][0] + " => " + entries[i][1] + ",";
+            }
         }
         return s.replaceAll(".$", " }");
     }
+
+    /**
+     * Iterates over the positions of the first entry of each key.
+     */
+    private abstract class EntryIterator<T> implements Iterator<T> {
+        private int next = skipDuplicates(0);
+
+        private int skipDuplicates(int _entry) {
+            int i = _entry;
+            while (i < entries.length && !isFirst(i)) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < entries.length;
+        }
+
+        @Override
+        public T next() {
+            if (next >= entries.length) {
+                throw new NoSuchElementException();
+            }
+            int current = next;
+            next = skipDuplicates(next + 1);
+            return get(current);
+        }
+
+        abstract T get(int _entry);
+    }
+
+    /**
+     * Entries of the map in the order they were received.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator<Map.Entry<K, V>>() {
+                @Override
+                Map.Entry<K, V> get(int _entry) {
+                    return new Entry(_entry);
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            int i = indexOf(e.getKey());
+            return i >= 0 && Objects.equals(entries[i][1], e.getValue());
+        }
+
+        @Override
+        public int size() {
+            return DBusMap.this.size();
+        }
+    }
+
+    /**
+     * Keys of the map in the order they were received.
+     */
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            return new EntryIterator<K>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                K get(int _entry) {
+                    return (K) entries[_entry][0];
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public int size() {
+            return DBusMap.this.size();
+        }
+    }
 }
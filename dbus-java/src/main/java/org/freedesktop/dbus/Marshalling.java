@@ -23,10 +23,12 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.freedesktop.dbus.annotations.Position;
@@ -54,6 +56,12 @@ public final class Marshalling {
     private static final Map<Type, String[]> TYPE_CACHE = new ConcurrentHashMap<>();
 
     private static final Map<Class<?>, Byte> CLASS_TO_ARGUMENTTYPE = new LinkedHashMap<>();
+
+    /** Types whose values are neither changed by {@link #convertParameters} nor by {@link #deSerializeParameters}. */
+    private static final Set<Type> PLAIN_TYPES = new HashSet<>(Arrays.asList(
+            Boolean.TYPE, Boolean.class, Byte.TYPE, Byte.class, Short.TYPE, Short.class,
+            Integer.TYPE, Integer.class, Long.TYPE, Long.class, Double.TYPE, Double.class,
+            String.class, UInt16.class, UInt32.class, UInt64.class, Variant.class));
     static {
         CLASS_TO_ARGUMENTTYPE.put(Boolean.class, Message.ArgumentType.BOOLEAN); // class
         CLASS_TO_ARGUMENTTYPE.put(Boolean.TYPE, Message.ArgumentType.BOOLEAN); // primitive type
@@ -204,7 +212,7 @@ public final class Marshalling {
             return sigs;
         } else if (_dataType instanceof ParameterizedType) {
             ParameterizedType p = (ParameterizedType) _dataType;
-            if (p.getRawType().equals(Map.class)) {
+            if (Map.class.isAssignableFrom((Class<?>) p.getRawType())) {
                 _out[_level].append("a{");
                 Type[] t = p.getActualTypeArguments();
                 try {
@@ -421,6 +429,20 @@ public final class Marshalling {
         }
     }
 
+    /**
+     * Checks if values of the given type are passed unchanged by {@link #convertParameters(Object[], Type[], AbstractConnection)}
+     * and {@link #deSerializeParameters(Object[], Type[], AbstractConnection)}, so the conversion can be skipped.
+     *
+     * @param _type type
+     * @return true if no conversion is required
+     */
+    public static boolean isPlainType(Type _type) {
+        if (_type instanceof ParameterizedType) {
+            return Variant.class.equals(((ParameterizedType) _type).getRawType());
+        }
+        return PLAIN_TYPES.contains(_type);
+    }
+
     /**
     * Recursively converts types for serialization onto DBus.
     * @param _parameters The parameters to convert.
@@ -482,8 +504,17 @@ public final class Marshalling {
         return _parameters;
     }
 
+    /**
+     * Converts a single value as decoded from the bus to the given (possibly generic) type.
+     *
+     * @param _parameter decoded value, not null
+     * @param _type type to convert to
+     * @param _conn the connection
+     * @return converted value
+     * @throws Exception if value could not be converted
+     */
     @SuppressWarnings("unchecked")
-    static Object deSerializeParameter(Object _parameter, Type _type, AbstractConnection _conn) throws Exception {
+    public static Object deSerializeParameter(Object _parameter, Type _type, AbstractConnection _conn) throws Exception {
         LOGGER.trace("Deserializing from {} to {}", _parameter.getClass(), _type.getClass());
 
         // its a wrapped variant, unwrap it
@@ -608,6 +639,12 @@ public final class Marshalling {
                 dmap.entries[i][0] = deSerializeParameter(dmap.entries[i][0], maptypes[0], _conn);
                 dmap.entries[i][1] = deSerializeParameter(dmap.entries[i][1], maptypes[1], _conn);
             }
+            dmap.clearIndex();
+            Class<?> raw = _type instanceof ParameterizedType ? (Class<?>) ((ParameterizedType) _type).getRawType() : null;
+            if (null != raw && !raw.isInstance(dmap) && raw.isAssignableFrom(LinkedHashMap.class)) {
+                // declared as HashMap or LinkedHashMap, the first entry of each key is kept
+                _parameter = new LinkedHashMap<>(dmap);
+            }
         }
         return _parameter;
     }
@@ -0,0 +1,166 @@
+/*
+   D-Bus Java Implementation
+   Copyright (c) 2005-2006 Matthew Johnson
+   Copyright (c) 2017-2019 David M.
+
+   This program is free software; you can redistribute it and/or modify it
+   under the terms of either the GNU Lesser General Public License Version 2 or the
+   Academic Free Licence Version 2.1.
+
+   Full licence texts are included in the LICENSE file with this program.
+*/
+
+package org.freedesktop.dbus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.MessageProtocolVersionException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MessageFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incremental message decoder working on {@link ByteBuffer}s.
+ * <p>
+ * This is the non-blocking counterpart of {@link MessageReader}.
+ * Bytes are consumed from the given buffer as they become available, the partially
+ * received message is kept in this decoder until all header and body bytes were received.
+ * </p>
+ */
+public class MessageDecoder {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private byte[]       buf    = null;
+    private byte[]       tbuf   = null;
+    private byte[]       header = null;
+    private byte[]       body   = null;
+    private int[]        len    = new int[4];
+    private int          failedUnixFds;
+
+    /**
+     * Consume bytes from the given buffer and try to create a message.
+     * Returns null if more bytes are required to complete the current message.
+     * If the buffer contains more than one message, only the first one is consumed,
+     * so this method should be called until it returns null.
+     *
+     * @param _buffer buffer in read mode (flipped)
+     * @return message or null
+     * @throws IOException when message uses an unsupported protocol version or message type
+     * @throws DBusException when message could not be converted to a DBus message
+     */
+    public Message decode(ByteBuffer _buffer) throws IOException, DBusException {
+        /* Read the 12 byte fixed header */
+        if (null == buf) {
+            if (!_buffer.hasRemaining()) {
+                return null;
+            }
+            buf = new byte[12];
+            len[0] = 0;
+        }
+        if (len[0] < 12) {
+            len[0] += copy(_buffer, buf, len[0], 12 - len[0]);
+            if (len[0] < 12) {
+                return null;
+            }
+        }
+
+        /* Parse the details from the header */
+        byte endian = buf[0];
+        byte type = buf[1];
+        byte protover = buf[3];
+        if (protover > Message.PROTOCOL) {
+            reset();
+            throw new MessageProtocolVersionException(String.format("Protocol version %s is unsupported", protover));
+        }
+
+        /* Read the length of the variable header */
+        if (null == tbuf) {
+            tbuf = new byte[4];
+            len[1] = 0;
+        }
+        if (len[1] < 4) {
+            len[1] += copy(_buffer, tbuf, len[1], 4 - len[1]);
+            if (len[1] < 4) {
+                return null;
+            }
+        }
+
+        /* Read the variable header */
+        if (null == header) {
+            int headerlen = (int) Message.demarshallint(tbuf, 0, endian, 4);
+            if (0 != headerlen % 8) {
+                headerlen += 8 - (headerlen % 8);
+            }
+            header = new byte[headerlen + 8];
+            System.arraycopy(tbuf, 0, header, 0, 4);
+            len[2] = 0;
+        }
+        int headerlen = header.length - 8;
+        if (len[2] < headerlen) {
+            len[2] += copy(_buffer, header, 8 + len[2], headerlen - len[2]);
+            if (len[2] < headerlen) {
+                return null;
+            }
+        }
+
+        /* Read the body */
+        if (null == body) {
+            body = new byte[(int) Message.demarshallint(buf, 4, endian, 4)];
+            len[3] = 0;
+        }
+        if (len[3] < body.length) {
+            len[3] += copy(_buffer, body, len[3], body.length - len[3]);
+            if (len[3] < body.length) {
+                return null;
+            }
+        }
+
+        Message m;
+        try {
+            m = MessageFactory.createMessage(type, buf, header, body);
+        } catch (IOException | DBusException | RuntimeException _ex) {
+            logger.debug("", _ex);
+            failedUnixFds = Message.readUnixFdCount(buf, header);
+            throw _ex;
+        } finally {
+            reset();
+        }
+        logger.debug("=> {}", m);
+        return m;
+    }
+
+    /**
+     * Returns the number of file descriptors announced by the last message which could not be created.
+     * These file descriptors were received for a message which will never be returned,
+     * so the caller has to close them.
+     *
+     * @return number of file descriptors
+     */
+    public int getFailedUnixFdCount() {
+        return failedUnixFds;
+    }
+
+    /**
+     * Returns true if the decoder currently holds an incomplete message.
+     * @return boolean
+     */
+    public boolean isPartial() {
+        return buf != null;
+    }
+
+    private void reset() {
+        buf = null;
+        tbuf = null;
+        header = null;
+        body = null;
+    }
+
+    private static int copy(ByteBuffer _src, byte[] _dest, int _offset, int _length) {
+        int count = Math.min(_src.remaining(), _length);
+        _src.get(_dest, _offset, count);
+        return count;
+    }
+}
@@ -35,6 +35,7 @@ public class MessageReader implements Closeable {
     private byte[]      header = null;
     private byte[]      body   = null;
     private int[]       len    = new int[4];
+    private int         failedUnixFds;
 
     public MessageReader(InputStream _in) {
         this.inputStream = new BufferedInputStream(_in);
@@ -163,6 +164,7 @@ public class MessageReader implements Closeable {
             m = MessageFactory.createMessage(type, buf, header, body);
         } catch (DBusException dbe) {
             logger.debug("", dbe);
+            failedUnixFds = Message.readUnixFdCount(buf, header);
             buf = null;
             tbuf = null;
             body = null;
@@ -170,6 +172,7 @@ public class MessageReader implements Closeable {
             throw dbe;
         } catch (RuntimeException exRe) { // this really smells badly!
             logger.debug("", exRe);
+            failedUnixFds = Message.readUnixFdCount(buf, header);
             buf = null;
             tbuf = null;
             body = null;
@@ -193,6 +196,16 @@ public class MessageReader implements Closeable {
         inputStream = null;
     }
 
+    /**
+     * Returns the number of file descriptors announced by the last message which could not be created.
+     * The caller has to close these file descriptors.
+     *
+     * @return number of file descriptors
+     */
+    public int getFailedUnixFdCount() {
+        return failedUnixFds;
+    }
+
     public boolean isClosed() {
         return inputStream == null;
     }
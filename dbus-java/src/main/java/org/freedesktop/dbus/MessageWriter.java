@@ -12,9 +12,11 @@
 
 package org.freedesktop.dbus;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 
 import org.freedesktop.Hexdump;
 import org.freedesktop.dbus.messages.Message;
@@ -22,16 +24,36 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class MessageWriter implements Closeable {
+    /** Size of the buffer used to coalesce all fragments of a batch of messages. */
+    private static final int BUFFER_SIZE = 65536;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private OutputStream outputStream;
 
     public MessageWriter(OutputStream _out) {
-        this.outputStream = _out;
+        this.outputStream = new BufferedOutputStream(_out, BUFFER_SIZE);
     }
 
     public void writeMessage(Message m) throws IOException {
+        writeToBuffer(m);
+        outputStream.flush();
+    }
+
+    /**
+     * Write all given messages and flush the underlying stream once after the last message.
+     *
+     * @param _messages messages to write
+     * @throws IOException on write error
+     */
+    public void writeMessages(List<Message> _messages) throws IOException {
+        for (Message m : _messages) {
+            writeToBuffer(m);
+        }
+        outputStream.flush();
+    }
+
+    private void writeToBuffer(Message m) throws IOException {
         logger.debug("<= {}", m);
         if (null == m) {
             return;
@@ -50,7 +72,6 @@ public class MessageWriter implements Closeable {
             }
             outputStream.write(buf);
         }
-        outputStream.flush();
     }
 
     @Override
@@ -16,7 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class MethodTuple {
-    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodTuple.class);
 
     private String name;
     private String sig;
@@ -28,7 +28,7 @@ public class MethodTuple {
         } else {
             this.sig = "";
         }
-        logger.trace("new MethodTuple({}, {})", this.name, this.sig);
+        LOGGER.trace("new MethodTuple({}, {})", this.name, this.sig);
     }
 
     @Override
@@ -42,7 +42,7 @@ public class MethodTuple {
     }
 
     public Logger getLogger() {
-        return logger;
+        return LOGGER;
     }
 
     public String getName() {
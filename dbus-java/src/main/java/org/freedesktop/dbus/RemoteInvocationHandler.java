@@ -16,12 +16,9 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
-import org.freedesktop.dbus.annotations.DBusInterfaceName;
-import org.freedesktop.dbus.annotations.DBusMemberName;
-import org.freedesktop.dbus.annotations.MethodNoReply;
 import org.freedesktop.dbus.connections.AbstractConnection;
 import org.freedesktop.dbus.errors.Error;
 import org.freedesktop.dbus.errors.NoReply;
@@ -39,13 +36,27 @@ public class RemoteInvocationHandler implements InvocationHandler {
     public static final int CALL_TYPE_SYNC     = 0;
     public static final int CALL_TYPE_ASYNC    = 1;
     public static final int CALL_TYPE_CALLBACK = 2;
+    public static final int CALL_TYPE_FUTURE   = 3;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RemoteInvocationHandler.class);
 
 
 
+    /**
+     * Checks if the given method returns a {@link CompletableFuture} (or one of its super types)
+     * which should be completed when the reply is received.
+     *
+     * @param m method
+     * @return true if method is using a future
+     */
+    public static boolean isFutureMethod(Method m) {
+        Class<?> c = m.getReturnType();
+        return !Object.class.equals(c) && c.isAssignableFrom(CompletableFuture.class);
+    }
+
     public static Object convertRV(String sig, Object[] rp, Method m, AbstractConnection conn) throws DBusException {
-        Class<? extends Object> c = m.getReturnType();
+        RemoteMethodDescriptor descriptor = RemoteMethodDescriptor.forMethod(m);
+        Class<? extends Object> c = descriptor.getReturnClass();
 
         if (null == rp) {
             if (null == c || Void.TYPE.equals(c)) {
@@ -55,10 +66,10 @@ public class RemoteInvocationHandler implements InvocationHandler {
             }
         } else {
             try {
-                LOGGER.trace("Converting return parameters from {} to type {}",Arrays.deepToString(rp), m.getGenericReturnType());
-                rp = Marshalling.deSerializeParameters(rp, new Type[] {
-                        m.getGenericReturnType()
-                }, conn);
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace("Converting return parameters from {} to type {}", Arrays.deepToString(rp), descriptor.getReturnType());
+                }
+                rp = descriptor.deSerializeReturnValues(rp, conn);
             } catch (Exception e) {
                 LOGGER.debug("Wrong return type.", e);
                 throw new DBusException(String.format("Wrong return type (failed to de-serialize correct types: %s )", e.getMessage()));
@@ -91,48 +102,45 @@ public class RemoteInvocationHandler implements InvocationHandler {
         }
     }
 
-    public static Object executeRemoteMethod(RemoteObject ro, Method m, AbstractConnection conn, int syncmethod, CallbackHandler<?> callback, Object... args) throws DBusException {
-        Type[] ts = m.getGenericParameterTypes();
-        String sig = null;
-        if (ts.length > 0) {
-            try {
-                sig = Marshalling.getDBusType(ts);
-                args = Marshalling.convertParameters(args, ts, conn);
-            } catch (DBusException exDbe) {
-                throw new DBusExecutionException("Failed to construct D-Bus type: " + exDbe.getMessage());
-            }
+    /**
+     * Create the {@link MethodCall} for calling the given method on the given remote object.
+     *
+     * @param ro remote object
+     * @param m method to call
+     * @param conn connection
+     * @param syncmethod one of the CALL_TYPE constants
+     * @param args arguments
+     * @return {@link MethodCall}
+     */
+    public static MethodCall createMethodCall(RemoteObject ro, Method m, AbstractConnection conn, int syncmethod, Object... args) {
+        RemoteMethodDescriptor descriptor = RemoteMethodDescriptor.forMethod(m);
+        String sig = descriptor.getSignature();
+        try {
+            args = descriptor.convertParameters(args, conn);
+        } catch (DBusException exDbe) {
+            throw new DBusExecutionException("Failed to construct D-Bus type: " + exDbe.getMessage());
         }
-        MethodCall call;
         byte flags = 0;
         if (!ro.isAutostart()) {
             flags |= Message.Flags.NO_AUTO_START;
         }
-        if (syncmethod == CALL_TYPE_ASYNC) {
+        if (syncmethod == CALL_TYPE_ASYNC || syncmethod == CALL_TYPE_FUTURE) {
             flags |= Message.Flags.ASYNC;
         }
-        if (m.isAnnotationPresent(MethodNoReply.class)) {
+        if (descriptor.isNoReply()) {
             flags |= Message.Flags.NO_REPLY_EXPECTED;
         }
         try {
-            String name;
-            if (m.isAnnotationPresent(DBusMemberName.class)) {
-                name = m.getAnnotation(DBusMemberName.class).value();
-            } else {
-                name = m.getName();
-            }
-            if (null == ro.getInterface()) {
-                call = new MethodCall(ro.getBusName(), ro.getObjectPath(), null, name, flags, sig, args);
-            } else {
-                if (null != ro.getInterface().getAnnotation(DBusInterfaceName.class)) {
-                    call = new MethodCall(ro.getBusName(), ro.getObjectPath(), ro.getInterface().getAnnotation(DBusInterfaceName.class).value(), name, flags, sig, args);
-                } else {
-                    call = new MethodCall(ro.getBusName(), ro.getObjectPath(), AbstractConnection.DOLLAR_PATTERN.matcher(ro.getInterface().getName()).replaceAll("."), name, flags, sig, args);
-                }
-            }
+            return new MethodCall(ro.getBusName(), ro.getObjectPath(), RemoteMethodDescriptor.getInterfaceName(ro.getInterface()),
+                    descriptor.getMember(), flags, sig, args);
         } catch (DBusException dbe) {
             LOGGER.debug("Failed to construct outgoing method call.", dbe);
             throw new DBusExecutionException("Failed to construct outgoing method call: " + dbe.getMessage());
         }
+    }
+
+    public static Object executeRemoteMethod(RemoteObject ro, Method m, AbstractConnection conn, int syncmethod, CallbackHandler<?> callback, Object... args) throws DBusException {
+        MethodCall call = createMethodCall(ro, m, conn, syncmethod, args);
         if (!conn.isConnected()) {
             throw new NotConnected("Not Connected");
         }
@@ -145,13 +153,15 @@ public class RemoteInvocationHandler implements InvocationHandler {
                 conn.queueCallback(call, m, callback);
                 conn.sendMessage(call);
                 return null;
+            case CALL_TYPE_FUTURE:
+                return conn.sendWithFuture(call, m, MethodCall.getDefaultTimeout());
             case CALL_TYPE_SYNC:
                 conn.sendMessage(call);
                 break;
         }
 
         // get reply
-        if (m.isAnnotationPresent(MethodNoReply.class)) {
+        if (RemoteMethodDescriptor.forMethod(m).isNoReply()) {
             return null;
         }
 
@@ -184,47 +194,56 @@ public class RemoteInvocationHandler implements InvocationHandler {
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if (method.getName().equals("isRemote")) {
-            return true;
-        } else if (method.getName().equals("getObjectPath")) {
-            return remote.getObjectPath();
-        } else if (method.getName().equals("clone")) {
-            return null;
-        } else if (method.getName().equals("equals")) {
-            try {
-                if (1 == args.length) {
-                    return Boolean.valueOf(remote.equals(((RemoteInvocationHandler) Proxy.getInvocationHandler(args[0])).remote));
+        RemoteMethodDescriptor descriptor = RemoteMethodDescriptor.forMethod(method);
+        switch (descriptor.getLocalMethod()) {
+            case IS_REMOTE:
+                return true;
+            case GET_OBJECT_PATH:
+                return remote.getObjectPath();
+            case CLONE:
+                return null;
+            case EQUALS:
+                try {
+                    if (1 == args.length) {
+                        return Boolean.valueOf(remote.equals(((RemoteInvocationHandler) Proxy.getInvocationHandler(args[0])).remote));
+                    }
+                } catch (IllegalArgumentException exIa) {
+                    return Boolean.FALSE;
                 }
-            } catch (IllegalArgumentException exIa) {
-                return Boolean.FALSE;
-            }
-        } else if (method.getName().equals("finalize")) {
-            return null;
-        } else if (method.getName().equals("getClass")) {
-            return DBusInterface.class;
-        } else if (method.getName().equals("hashCode")) {
-            return remote.hashCode();
-        } else if (method.getName().equals("notify")) {
-            remote.notify();
-            return null;
-        } else if (method.getName().equals("notifyAll")) {
-            remote.notifyAll();
-            return null;
-        } else if (method.getName().equals("wait")) {
-            if (0 == args.length) {
-                remote.wait();
-            } else if (1 == args.length && args[0] instanceof Long) {
-                remote.wait((Long) args[0]);
-            } else if (2 == args.length && args[0] instanceof Long && args[1] instanceof Integer) {
-                remote.wait((Long) args[0], (Integer) args[1]);
-            }
-            if (args.length <= 2) {
+                break;
+            case FINALIZE:
                 return null;
-            }
-        } else if (method.getName().equals("toString")) {
-            return remote.toString();
+            case GET_CLASS:
+                return DBusInterface.class;
+            case HASH_CODE:
+                return remote.hashCode();
+            case NOTIFY:
+                remote.notify();
+                return null;
+            case NOTIFY_ALL:
+                remote.notifyAll();
+                return null;
+            case WAIT:
+                if (0 == args.length) {
+                    remote.wait();
+                } else if (1 == args.length && args[0] instanceof Long) {
+                    remote.wait((Long) args[0]);
+                } else if (2 == args.length && args[0] instanceof Long && args[1] instanceof Integer) {
+                    remote.wait((Long) args[0], (Integer) args[1]);
+                }
+                if (args.length <= 2) {
+                    return null;
+                }
+                break;
+            case TO_STRING:
+                return remote.toString();
+            default:
+                break;
         }
 
+        if (descriptor.isFuture()) {
+            return executeRemoteMethod(remote, method, conn, CALL_TYPE_FUTURE, null, args);
+        }
         return executeRemoteMethod(remote, method, conn, CALL_TYPE_SYNC, null, args);
     }
 }
@@ -0,0 +1,239 @@
+package org.freedesktop.dbus;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.annotations.DBusMemberName;
+import org.freedesktop.dbus.annotations.MethodNoReply;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+
+/**
+ * Everything needed to call a method of a remote interface, resolved once per method.
+ * <p>
+ * Descriptors are cached per declaring class of the method, D-Bus interface names per interface class,
+ * so classes can still be unloaded.
+ * </p>
+ */
+final class RemoteMethodDescriptor {
+    private static final ClassValue<ConcurrentMap<Method, RemoteMethodDescriptor>> DESCRIPTORS = new ClassValue<ConcurrentMap<Method, RemoteMethodDescriptor>>() {
+        @Override
+        protected ConcurrentMap<Method, RemoteMethodDescriptor> computeValue(Class<?> _type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final ClassValue<String> INTERFACE_NAMES = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> _type) {
+            DBusInterfaceName name = _type.getAnnotation(DBusInterfaceName.class);
+            if (null != name) {
+                return name.value();
+            }
+            return AbstractConnection.DOLLAR_PATTERN.matcher(_type.getName()).replaceAll(".");
+        }
+    };
+
+    /**
+     * Methods of {@link Object} and {@link org.freedesktop.dbus.interfaces.DBusInterface}
+     * which are handled by the proxy itself.
+     */
+    enum LocalMethod {
+        NONE, IS_REMOTE, GET_OBJECT_PATH, CLONE, EQUALS, FINALIZE, GET_CLASS, HASH_CODE, NOTIFY, NOTIFY_ALL, WAIT, TO_STRING;
+    }
+
+    private final LocalMethod localMethod;
+    private final String      member;
+    private final Type[]      parameterTypes;
+    private final boolean     convertParameters;
+    /** Signature of the parameters, null if there are no parameters. */
+    private final String      signature;
+    /** Reason why no signature could be created, null if signature was created. */
+    private final String      signatureError;
+    private final boolean     noReply;
+    private final boolean     future;
+    private final Type        returnType;
+    private final Class<?>    returnClass;
+    private final boolean     convertReturn;
+
+    private RemoteMethodDescriptor(Method _method) {
+        localMethod = getLocalMethod(_method.getName());
+        DBusMemberName memberName = _method.getAnnotation(DBusMemberName.class);
+        member = null == memberName ? _method.getName() : memberName.value();
+        noReply = _method.isAnnotationPresent(MethodNoReply.class);
+
+        parameterTypes = _method.getGenericParameterTypes();
+        boolean plain = true;
+        for (Type t : parameterTypes) {
+            plain &= Marshalling.isPlainType(t);
+        }
+        convertParameters = !plain;
+
+        String sig = null;
+        String error = null;
+        if (parameterTypes.length > 0) {
+            try {
+                sig = Marshalling.getDBusType(parameterTypes);
+            } catch (DBusException _ex) {
+                error = _ex.getMessage();
+            }
+        }
+        signature = sig;
+        signatureError = error;
+
+        future = RemoteInvocationHandler.isFutureMethod(_method);
+        Class<?> c = _method.getReturnType();
+        Type genericReturnType = _method.getGenericReturnType();
+        if (future) {
+            // use the type argument of the future as real return type
+            genericReturnType = Object.class;
+            if (_method.getGenericReturnType() instanceof ParameterizedType) {
+                genericReturnType = ((ParameterizedType) _method.getGenericReturnType()).getActualTypeArguments()[0];
+            }
+            if (genericReturnType instanceof Class) {
+                c = (Class<?>) genericReturnType;
+            } else if (genericReturnType instanceof ParameterizedType) {
+                c = (Class<?>) ((ParameterizedType) genericReturnType).getRawType();
+            } else {
+                genericReturnType = Object.class;
+                c = Object.class;
+            }
+            if (Void.class.equals(c)) {
+                c = Void.TYPE;
+            }
+        }
+        returnType = genericReturnType;
+        returnClass = c;
+        convertReturn = !Marshalling.isPlainType(genericReturnType);
+    }
+
+    private static LocalMethod getLocalMethod(String _name) {
+        switch (_name) {
+            case "isRemote":
+                return LocalMethod.IS_REMOTE;
+            case "getObjectPath":
+                return LocalMethod.GET_OBJECT_PATH;
+            case "clone":
+                return LocalMethod.CLONE;
+            case "equals":
+                return LocalMethod.EQUALS;
+            case "finalize":
+                return LocalMethod.FINALIZE;
+            case "getClass":
+                return LocalMethod.GET_CLASS;
+            case "hashCode":
+                return LocalMethod.HASH_CODE;
+            case "notify":
+                return LocalMethod.NOTIFY;
+            case "notifyAll":
+                return LocalMethod.NOTIFY_ALL;
+            case "wait":
+                return LocalMethod.WAIT;
+            case "toString":
+                return LocalMethod.TO_STRING;
+            default:
+                return LocalMethod.NONE;
+        }
+    }
+
+    /**
+     * Returns the descriptor of the given method.
+     *
+     * @param _method method
+     * @return descriptor
+     */
+    static RemoteMethodDescriptor forMethod(Method _method) {
+        ConcurrentMap<Method, RemoteMethodDescriptor> descriptors = DESCRIPTORS.get(_method.getDeclaringClass());
+        RemoteMethodDescriptor descriptor = descriptors.get(_method);
+        if (null == descriptor) {
+            descriptor = new RemoteMethodDescriptor(_method);
+            RemoteMethodDescriptor existing = descriptors.putIfAbsent(_method, descriptor);
+            if (null != existing) {
+                descriptor = existing;
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Returns the D-Bus interface name of the given interface class.
+     *
+     * @param _iface interface, may be null
+     * @return name or null
+     */
+    static String getInterfaceName(Class<?> _iface) {
+        return null == _iface ? null : INTERFACE_NAMES.get(_iface);
+    }
+
+    LocalMethod getLocalMethod() {
+        return localMethod;
+    }
+
+    String getMember() {
+        return member;
+    }
+
+    boolean isNoReply() {
+        return noReply;
+    }
+
+    boolean isFuture() {
+        return future;
+    }
+
+    Type getReturnType() {
+        return returnType;
+    }
+
+    Class<?> getReturnClass() {
+        return returnClass;
+    }
+
+    /**
+     * Returns the signature of the parameters.
+     *
+     * @return signature or null if method has no parameters
+     * @throws DBusExecutionException if parameter types cannot be sent over D-Bus
+     */
+    String getSignature() {
+        if (null != signatureError) {
+            throw new DBusExecutionException("Failed to construct D-Bus type: " + signatureError);
+        }
+        return signature;
+    }
+
+    /**
+     * Converts the arguments of the method for sending them over D-Bus.
+     *
+     * @param _args arguments
+     * @param _conn connection
+     * @return converted arguments
+     * @throws DBusException on error
+     */
+    Object[] convertParameters(Object[] _args, AbstractConnection _conn) throws DBusException {
+        if (!convertParameters || 0 == parameterTypes.length) {
+            return _args;
+        }
+        return Marshalling.convertParameters(_args, parameterTypes, _conn);
+    }
+
+    /**
+     * Converts the values of a reply to the return type of the method.
+     *
+     * @param _values values of the reply
+     * @param _conn connection
+     * @return converted values
+     * @throws Exception on error
+     */
+    Object[] deSerializeReturnValues(Object[] _values, AbstractConnection _conn) throws Exception {
+        if (!convertReturn && 1 == _values.length) {
+            return _values;
+        }
+        return Marshalling.deSerializeParameters(_values, new Type[] {returnType}, _conn);
+    }
+}
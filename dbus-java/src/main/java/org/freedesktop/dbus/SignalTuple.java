@@ -15,6 +15,13 @@ package org.freedesktop.dbus;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Key of a signal handler.
+ *
+ * @deprecated no longer used by the connections, signal handlers are kept in a {@link org.freedesktop.dbus.connections.SignalHandlerIndex}.
+ * Will be removed in a future version.
+ */
+@Deprecated
 public class SignalTuple {
     private String type;
     private String name;
@@ -0,0 +1,29 @@
+package org.freedesktop.dbus.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of an exported interface as getter or setter of a property.
+ * <p>
+ * Annotated methods are not exported as methods, they are accessed using the
+ * org.freedesktop.DBus.Properties interface which is implemented automatically
+ * unless the exported object implements {@link org.freedesktop.dbus.interfaces.Properties} itself.
+ * </p>
+ * <p>
+ * A getter has no parameters and returns the value, a setter has the value as only parameter and returns void.
+ * If no name is given, the name is derived from the method name by removing the prefix get, is or set
+ * (e.g. getVolume() and setVolume(int) are the accessors of property Volume).
+ * Use {@link PropertiesEmitsChangedSignal} on the getter to define how changes are announced.
+ * </p>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DBusProperty {
+    /** Name of the property, derived from the method name if empty.
+     * @return value
+     */
+    String value() default "";
+}
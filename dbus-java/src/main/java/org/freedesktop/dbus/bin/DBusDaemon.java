@@ -13,37 +13,49 @@
 package org.freedesktop.dbus.bin;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.freedesktop.DBus;
 import org.freedesktop.Hexdump;
 import org.freedesktop.dbus.Marshalling;
-import org.freedesktop.dbus.MessageReader;
-import org.freedesktop.dbus.MessageWriter;
+import org.freedesktop.dbus.MessageDecoder;
 import org.freedesktop.dbus.connections.BusAddress;
 import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.connections.transports.ISelectorHandler;
+import org.freedesktop.dbus.connections.transports.SelectorThread;
+import org.freedesktop.dbus.connections.transports.SelectorThreadPool;
 import org.freedesktop.dbus.connections.transports.TransportFactory;
 import org.freedesktop.dbus.errors.Error;
 import org.freedesktop.dbus.errors.MatchRuleInvalid;
+import org.freedesktop.dbus.errors.MatchRuleNotFound;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.DBusExecutionException;
-import org.freedesktop.dbus.interfaces.FatalException;
 import org.freedesktop.dbus.interfaces.Introspectable;
 import org.freedesktop.dbus.interfaces.Peer;
 import org.freedesktop.dbus.messages.DBusSignal;
@@ -55,104 +67,289 @@ import org.freedesktop.dbus.types.Variant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jnr.unixsocket.UnixSocket;
-
 /**
- * A replacement DBusDaemon
+ * A replacement DBusDaemon.
+ * <p>
+ * All client connections are non-blocking and handled by a pool of selector threads.
+ * Messages are routed on the selector thread which received them and appended to the
+ * outgoing queue of the receiving connection. Every connection writes its own queue when
+ * its socket is writable, so a slow client does not delay messages for other clients.
+ * The number of bytes queued per connection is limited, see {@link SlowConsumerPolicy}.
+ * </p>
  */
 public class DBusDaemon extends Thread implements Closeable {
     public static final int     QUEUE_POLL_WAIT = 500;
+    /** Default limit of bytes queued for a single connection. */
+    public static final long    DEFAULT_MAX_QUEUED_BYTES = 64 * 1024 * 1024;
+
+    private static final int    READ_BUFFER_SIZE = 65536;
+    /** Maximum number of messages written to a socket in one call. */
+    private static final int    MAX_WRITE_BATCH  = 128;
+
+    /** Number of locks used to serialize name owner changes. */
+    private static final int    NAME_LOCK_COUNT  = 64;
+    /** Bus methods changing the owner of the name given as first argument. */
+    private static final Set<String> NAME_OWNER_METHODS = new HashSet<>(Arrays.asList("RequestName", "ReleaseName"));
 
     private static final Logger LOGGER          = LoggerFactory.getLogger(DBusDaemon.class);
 
-    static class Connstruct {
+    /**
+     * Defines what happens if a client does not read its messages fast enough
+     * and the number of bytes queued for this client exceeds the configured limit.
+     */
+    public enum SlowConsumerPolicy {
+        /** Disconnect the slow client. */
+        DISCONNECT,
+        /** Drop the message, the sender of a method call will receive a LimitsExceeded error. */
+        DROP
+    }
+
+    class Connstruct implements ISelectorHandler {
         // CHECKSTYLE:OFF
-        public UnixSocket    usock;
-        public Socket        tsock;
-        public MessageReader min;
-        public MessageWriter mout;
-        public String        unique;
+        public volatile String       unique;
         // CHECKSTYLE:ON
 
-        Connstruct(UnixSocket sock) throws IOException {
-            this.usock = sock;
-            min = new MessageReader(sock.getInputStream());
-            mout = new MessageWriter(sock.getOutputStream());
+        private final SocketChannel  channel;
+        private final SelectorThread selectorThread;
+        private final MessageDecoder decoder        = new MessageDecoder();
+        private final ByteBuffer     readBuffer     = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private final Queue<Message> outqueue       = new ConcurrentLinkedQueue<>();
+        private final AtomicLong     queuedBytes    = new AtomicLong();
+        private final AtomicBoolean  writeScheduled = new AtomicBoolean();
+        private final AtomicBoolean  closed         = new AtomicBoolean();
+        private final AtomicBoolean  closing        = new AtomicBoolean();
+
+        /** Buffers of the messages currently written, only used by selector thread. */
+        private ByteBuffer[]         writeBuffers;
+        private int                  writeOffset;
+
+        private volatile SelectionKey selectionKey;
+
+        Connstruct(SocketChannel _channel) throws IOException {
+            channel = _channel;
+            channel.configureBlocking(false);
+            selectorThread = selectorPool.nextThread(_channel);
         }
 
-        Connstruct(Socket sock) throws IOException {
-            this.tsock = sock;
-            min = new MessageReader(sock.getInputStream());
-            mout = new MessageWriter(sock.getOutputStream());
+        void register() {
+            selectorThread.execute(() -> {
+                try {
+                    selectionKey = channel.register(selectorThread.getSelector(), SelectionKey.OP_READ, this);
+                } catch (ClosedChannelException _ex) {
+                    LOGGER.debug("Channel closed before it could be registered", _ex);
+                    removeConnection(this);
+                }
+            });
         }
 
         @Override
-        public String toString() {
-            return null == unique ? ":?-?" : unique;
-        }
-    }
+        public void handleReadable() {
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException _ex) {
+                LOGGER.debug("", _ex);
+                removeConnection(this);
+                return;
+            }
+            if (read < 0) {
+                LOGGER.debug("", new EOFException("Client " + this + " closed connection"));
+                removeConnection(this);
+                return;
+            }
 
-    static class MagicMap<A, B> {
-        private final Logger          logger = LoggerFactory.getLogger(getClass());
+            readBuffer.flip();
+            try {
+                while (readBuffer.hasRemaining() && !isClosing()) {
+                    Message m;
+                    try {
+                        m = decoder.decode(readBuffer);
+                    } catch (DBusException dbe) {
+                        LOGGER.warn("Disconnecting client {}, received invalid message", this, dbe);
+                        removeConnection(this);
+                        return;
+                    } catch (IOException ioe) {
+                        LOGGER.debug("", ioe);
+                        removeConnection(this);
+                        return;
+                    }
+                    if (null == m) {
+                        break;
+                    }
+                    LOGGER.trace("Read {} from {}", m, unique);
+                    handleMessage(this, m);
+                }
+            } finally {
+                readBuffer.compact();
+            }
+        }
 
-        private Map<A, LinkedList<B>> m;
-        private LinkedList<A>         q;
-        private String                name;
+        @Override
+        public void handleWritable() {
+            flush();
+        }
 
-        MagicMap(String _name) {
-            m = new HashMap<>();
-            q = new LinkedList<>();
-            this.name = _name;
+        /**
+         * Append the message to the outgoing queue.
+         *
+         * @param _m message
+         * @return false if the message was not queued because the queue limit was reached or connection is closed
+         */
+        boolean enqueue(Message _m) {
+            if (isClosing()) {
+                return false;
+            }
+            long size = getWireSize(_m);
+            long queued = queuedBytes.get();
+            // always accept a single message, even if it is larger than the limit
+            if (queued > 0 && queued + size > maxQueuedBytes) {
+                return false;
+            }
+            queuedBytes.addAndGet(size);
+            outqueue.add(_m);
+            if (writeScheduled.compareAndSet(false, true)) {
+                selectorThread.execute(this::flush);
+            }
+            return true;
         }
 
-        public A head() {
-            return q.getFirst();
+        /**
+         * Write queued messages until the queue is empty or the socket buffer is full.
+         * Only called on the selector thread.
+         */
+        private void flush() {
+            try {
+                while (true) {
+                    if (null == writeBuffers) {
+                        if (!nextWriteBuffers()) {
+                            writeScheduled.set(false);
+                            // message may have been queued after the queue was found empty
+                            if (outqueue.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+                                setWriteInterest(false);
+                                return;
+                            }
+                            continue;
+                        }
+                    }
+
+                    long written = channel.write(writeBuffers, writeOffset, writeBuffers.length - writeOffset);
+                    queuedBytes.addAndGet(-written);
+                    while (writeOffset < writeBuffers.length && !writeBuffers[writeOffset].hasRemaining()) {
+                        writeOffset++;
+                    }
+                    if (writeOffset < writeBuffers.length) {
+                        // socket buffer full, continue when channel is writable again
+                        setWriteInterest(true);
+                        return;
+                    }
+                    writeBuffers = null;
+                }
+            } catch (IOException ioe) {
+                LOGGER.debug("", ioe);
+                removeConnection(this);
+            }
         }
 
-        public void putFirst(A a, B b) {
-            logger.debug("<{}> Queueing {{} => {}}", name, a, b);
+        private boolean nextWriteBuffers() {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            Message m;
+            int count = 0;
+            while (count < MAX_WRITE_BATCH && (m = outqueue.poll()) != null) {
+                LOGGER.trace("Sending message {} to {}", m, unique);
+                for (byte[] buf : m.getWireData()) {
+                    if (null == buf) {
+                        break;
+                    }
+                    if (LOGGER.isTraceEnabled()) {
+                        LOGGER.trace("{}", Hexdump.format(buf));
+                    }
+                    buffers.add(ByteBuffer.wrap(buf));
+                }
+                count++;
+            }
+            if (buffers.isEmpty()) {
+                return false;
+            }
+            writeBuffers = buffers.toArray(new ByteBuffer[buffers.size()]);
+            writeOffset = 0;
+            return true;
+        }
 
-            if (m.containsKey(a)) {
-                m.get(a).add(b);
-            } else {
-                LinkedList<B> l = new LinkedList<>();
-                l.add(b);
-                m.put(a, l);
+        private void setWriteInterest(boolean _enable) {
+            SelectionKey key = selectionKey;
+            if (null != key && key.isValid()) {
+                int ops = key.interestOps();
+                key.interestOps(_enable ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
             }
-            q.addFirst(a);
         }
 
-        public void putLast(A a, B b) {
-            logger.debug("<{}> Queueing {{} => {}}", name, a, b);
+        long getQueuedBytes() {
+            return queuedBytes.get();
+        }
 
-            if (m.containsKey(a)) {
-                m.get(a).add(b);
-            } else {
-                LinkedList<B> l = new LinkedList<>();
-                l.add(b);
-                m.put(a, l);
+        /**
+         * Mark the connection as closing and remove it on its own selector thread.
+         * No further messages are queued for this connection.
+         */
+        void closeLater() {
+            if (closing.compareAndSet(false, true)) {
+                selectorThread.execute(() -> removeConnection(this));
             }
-            q.addLast(a);
         }
 
-        public List<B> remove(A a) {
-            logger.debug("<{}> Removing {{}}", name, a);
+        boolean isClosing() {
+            return closing.get() || closed.get();
+        }
+
+        /**
+         * Close the connection.
+         * @return false if connection was already closed
+         */
+        boolean close() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            selectorThread.execute(() -> {
+                SelectionKey key = selectionKey;
+                if (null != key) {
+                    key.cancel();
+                }
+            });
+            try {
+                channel.close();
+            } catch (IOException exIo) {
+                LOGGER.debug("", exIo);
+            }
+            outqueue.clear();
+            return true;
+        }
 
-            q.remove(a);
-            return m.remove(a);
+        @Override
+        public String toString() {
+            return null == unique ? ":?-?" : unique;
         }
+    }
 
-        public int size() {
-            return q.size();
+    /** Connection calling the bus and the messages to send after the reply. */
+    private static class CallContext {
+        private final Connstruct         caller;
+        private final List<Connstruct[]> deferredDestinations = new ArrayList<>();
+        private final List<Message>      deferredMessages     = new ArrayList<>();
+
+        CallContext(Connstruct _caller) {
+            caller = _caller;
         }
     }
 
-    public class DBusServer extends Thread implements DBus, Introspectable, Peer {
+    public class DBusServer implements DBus, Introspectable, Peer {
 
         private final String machineId;
 
+        /** Call handled by the current selector thread. */
+        private final ThreadLocal<CallContext> currentCall = new ThreadLocal<>();
+
         public DBusServer() {
-            setName("Server");
             String ascii;
             try {
                 ascii = Hexdump.toAscii(MessageDigest.getInstance("MD5").digest(InetAddress.getLocalHost().getHostName().getBytes()));
@@ -163,23 +360,33 @@ public class DBusDaemon extends Thread implements Closeable {
             machineId = ascii;
         }
 
-
-
-        // CHECKSTYLE:OFF
-        public Connstruct c;
-        public Message    m;
-        // CHECKSTYLE:ON
+        private Connstruct caller() {
+            return currentCall.get().caller;
+        }
 
         @Override
         public boolean isRemote() {
             return false;
         }
 
+        /**
+         * Send a message after the reply of the current call was sent.
+         *
+         * @param _c receiver, null to send to all connections with a matching rule
+         * @param _m message
+         */
+        private void sendAfterReply(Connstruct _c, Message _m) {
+            CallContext call = currentCall.get();
+            call.deferredDestinations.add(new Connstruct[] {_c});
+            call.deferredMessages.add(_m);
+        }
+
         @Override
         public String Hello() {
 
             LOGGER.debug("enter");
 
+            Connstruct c = caller();
             synchronized (c) {
                 if (null != c.unique) {
                     throw new org.freedesktop.dbus.errors.AccessDenied("Connection has already sent a Hello message");
@@ -188,16 +395,14 @@ public class DBusDaemon extends Thread implements Closeable {
                     c.unique = ":1." + (++nextUnique);
                 }
             }
-            synchronized (names) {
-                names.put(c.unique, c);
-            }
+            names.put(c.unique, c);
 
             LOGGER.info("Client {} registered", c.unique);
 
             try {
-                send(c, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameAcquired", "s", c.unique));
+                sendAfterReply(c, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameAcquired", "s", c.unique));
                 DBusSignal s = new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameOwnerChanged", "sss", c.unique, "", c.unique);
-                send(null, s);
+                sendAfterReply(null, s);
             } catch (DBusException dbe) {
                 LOGGER.debug("", dbe);
             }
@@ -210,11 +415,9 @@ public class DBusDaemon extends Thread implements Closeable {
         @Override
         public String[] ListNames() {
             LOGGER.debug("enter");
-            String[] ns;
-            synchronized (names) {
-                Set<String> nss = names.keySet();
-                ns = nss.toArray(new String[0]);
-            }
+            List<String> nss = new ArrayList<>(names.keySet());
+            nss.add("org.freedesktop.DBus");
+            String[] ns = nss.toArray(new String[0]);
 
             LOGGER.debug("exit");
 
@@ -226,10 +429,7 @@ public class DBusDaemon extends Thread implements Closeable {
 
             LOGGER.debug("enter");
 
-            boolean rv;
-            synchronized (names) {
-                rv = names.containsKey(name);
-            }
+            boolean rv = "org.freedesktop.DBus".equals(name) || names.containsKey(name);
 
             LOGGER.debug("exit");
 
@@ -239,12 +439,16 @@ public class DBusDaemon extends Thread implements Closeable {
         @Override
         public String GetNameOwner(String name) {
             LOGGER.debug("enter");
-            Connstruct owner = names.get(name);
             String o;
-            if (null == owner) {
-                o = "";
+            if ("org.freedesktop.DBus".equals(name)) {
+                o = name;
             } else {
-                o = owner.unique;
+                Connstruct owner = names.get(name);
+                if (null == owner) {
+                    o = "";
+                } else {
+                    o = owner.unique;
+                }
             }
 
             LOGGER.debug("exit");
@@ -273,12 +477,8 @@ public class DBusDaemon extends Thread implements Closeable {
         public UInt32 RequestName(String name, UInt32 flags) {
             LOGGER.debug("enter");
 
-            boolean exists = false;
-            synchronized (names) {
-                if (!(exists = names.containsKey(name))) {
-                    names.put(name, c);
-                }
-            }
+            Connstruct c = caller();
+            boolean exists = "org.freedesktop.DBus".equals(name) || null != names.putIfAbsent(name, c);
 
             int rv;
             if (exists) {
@@ -289,8 +489,8 @@ public class DBusDaemon extends Thread implements Closeable {
 
                 rv = DBus.DBUS_REQUEST_NAME_REPLY_PRIMARY_OWNER;
                 try {
-                    send(c, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameAcquired", "s", name));
-                    send(null, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameOwnerChanged", "sss", name, "", c.unique));
+                    sendAfterReply(c, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameAcquired", "s", name));
+                    sendAfterReply(null, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameOwnerChanged", "sss", name, "", c.unique));
                 } catch (DBusException dbe) {
                     LOGGER.debug("", dbe);
                 }
@@ -305,22 +505,18 @@ public class DBusDaemon extends Thread implements Closeable {
         public UInt32 ReleaseName(String name) {
             LOGGER.debug("enter");
 
-            boolean exists = false;
-            synchronized (names) {
-                if (names.containsKey(name) && names.get(name).equals(c)) {
-                	exists = names.remove(name) != null;
-                }
-            }
+            Connstruct c = caller();
+            boolean exists = names.remove(name, c);
 
             int rv;
             if (!exists) {
                 rv = DBus.DBUS_RELEASE_NAME_REPLY_NON_EXISTANT;
             } else {
-                LOGGER.info("Client {} acquired name {}", c.unique, name);
+                LOGGER.info("Client {} released name {}", c.unique, name);
                 rv = DBus.DBUS_RELEASE_NAME_REPLY_RELEASED;
                 try {
-                    send(c, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameLost", "s", name));
-                    send(null, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameOwnerChanged", "sss", name, c.unique, ""));
+                    sendAfterReply(c, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameLost", "s", name));
+                    sendAfterReply(null, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameOwnerChanged", "sss", name, c.unique, ""));
                 } catch (DBusException dbe) {
                     LOGGER.debug("", dbe);
                 }
@@ -338,11 +534,7 @@ public class DBusDaemon extends Thread implements Closeable {
 
             LOGGER.trace("Adding match rule: {}", matchrule);
 
-            synchronized (sigrecips) {
-                if (!sigrecips.contains(c)) {
-                    sigrecips.add(c);
-                }
-            }
+            matchRules.add(caller(), MatchRule.parse(matchrule));
 
             LOGGER.debug("exit");
 
@@ -356,6 +548,10 @@ public class DBusDaemon extends Thread implements Closeable {
 
             LOGGER.trace("Removing match rule: {}", matchrule);
 
+            if (!matchRules.remove(caller(), MatchRule.parse(matchrule))) {
+                throw new MatchRuleNotFound("The given match rule was not added before: " + matchrule);
+            }
+
             LOGGER.debug("exit");
 
             return;
@@ -391,6 +587,12 @@ public class DBusDaemon extends Thread implements Closeable {
         }
 
 
+        /**
+         * Handle a call to the bus itself.
+         * Calls may be handled concurrently by all selector threads, calls changing the owner
+         * of a name are serialized per name, so the name table and the NameOwnerChanged signals
+         * sent for a name are always in the same order.
+         */
         @SuppressWarnings("unchecked")
         private void handleMessage(Connstruct _c, Message _m) throws DBusException {
 
@@ -409,39 +611,54 @@ public class DBusDaemon extends Thread implements Closeable {
                 cs[i] = args[i].getClass();
             }
 
-            java.lang.reflect.Method meth = null;
-            Object rv = null;
-
+            java.lang.reflect.Method meth;
             try {
                 meth = DBusServer.class.getMethod(_m.getName(), cs);
-                try {
-                    this.c = _c;
-                    this.m = _m;
-                    rv = meth.invoke(dbusServer, args);
-                    if (null == rv) {
-                        send(_c, new MethodReturn("org.freedesktop.DBus", (MethodCall) _m, null), true);
-                    } else {
-                        String sig = Marshalling.getDBusType(meth.getGenericReturnType())[0];
-                        send(_c, new MethodReturn("org.freedesktop.DBus", (MethodCall) _m, sig, rv), true);
-                    }
-                } catch (InvocationTargetException ite) {
-                    LOGGER.debug("", ite);
-                    send(_c, new org.freedesktop.dbus.errors.Error("org.freedesktop.DBus", _m, ite.getCause()));
-                } catch (DBusExecutionException dbee) {
-                   LOGGER.debug("", dbee);
-                    send(_c, new org.freedesktop.dbus.errors.Error("org.freedesktop.DBus", _m, dbee));
-                } catch (Exception e) {
-                    LOGGER.debug("", e);
-                    send(_c, new org.freedesktop.dbus.errors.Error("org.freedesktop.DBus", _c.unique, "org.freedesktop.DBus.Error.GeneralError", _m.getSerial(), "s", "An error occurred while calling " + _m.getName()));
-                }
             } catch (NoSuchMethodException exNsm) {
                 send(_c, new org.freedesktop.dbus.errors.Error("org.freedesktop.DBus", _c.unique, "org.freedesktop.DBus.Error.UnknownMethod", _m.getSerial(), "s", "This service does not support " + _m.getName()));
+                return;
+            }
+
+            if (NAME_OWNER_METHODS.contains(meth.getName()) && args.length > 0) {
+                synchronized (getNameLock((String) args[0])) {
+                    invoke(_c, _m, meth, args);
+                }
+            } else {
+                invoke(_c, _m, meth, args);
             }
 
             LOGGER.debug("exit");
 
         }
 
+        private void invoke(Connstruct _c, Message _m, java.lang.reflect.Method _meth, Object[] _args) throws DBusException {
+            CallContext call = new CallContext(_c);
+            currentCall.set(call);
+            try {
+                Object rv = _meth.invoke(dbusServer, _args);
+                if (null == rv) {
+                    send(_c, new MethodReturn("org.freedesktop.DBus", (MethodCall) _m, null));
+                } else {
+                    String sig = Marshalling.getDBusType(_meth.getGenericReturnType())[0];
+                    send(_c, new MethodReturn("org.freedesktop.DBus", (MethodCall) _m, sig, rv));
+                }
+            } catch (InvocationTargetException ite) {
+                LOGGER.debug("", ite);
+                send(_c, new org.freedesktop.dbus.errors.Error("org.freedesktop.DBus", _m, ite.getCause()));
+            } catch (DBusExecutionException dbee) {
+                LOGGER.debug("", dbee);
+                send(_c, new org.freedesktop.dbus.errors.Error("org.freedesktop.DBus", _m, dbee));
+            } catch (Exception e) {
+                LOGGER.debug("", e);
+                send(_c, new org.freedesktop.dbus.errors.Error("org.freedesktop.DBus", _c.unique, "org.freedesktop.DBus.Error.GeneralError", _m.getSerial(), "s", "An error occurred while calling " + _m.getName()));
+            } finally {
+                currentCall.remove();
+                for (int i = 0; i < call.deferredMessages.size(); i++) {
+                    send(call.deferredDestinations.get(i)[0], call.deferredMessages.get(i));
+                }
+            }
+        }
+
         @Override
         public String getObjectPath() {
             return null;
@@ -466,49 +683,6 @@ public class DBusDaemon extends Thread implements Closeable {
         public void Ping() {
         }
 
-        @Override
-        public void run() {
-
-            LOGGER.debug("enter");
-
-            while (isRunning()) {
-                Message msg;
-                List<WeakReference<Connstruct>> wcs;
-                // block on outqueue
-                synchronized (localqueue) {
-                    while (localqueue.size() == 0) {
-                        try {
-                            localqueue.wait();
-                        } catch (InterruptedException ex) {
-                            return;
-                        }
-                    }
-                    msg = localqueue.head();
-                    wcs = localqueue.remove(msg);
-                }
-                if (null != wcs) {
-                    try {
-                        for (WeakReference<Connstruct> wc : wcs) {
-                            Connstruct constructor = wc.get();
-                            if (null != constructor) {
-
-                                LOGGER.trace("<localqueue> Got message {} from {}", msg, constructor);
-
-                                handleMessage(constructor, msg);
-                            }
-                        }
-                    } catch (DBusException dbe) {
-                        LOGGER.debug("", dbe);
-                    }
-                } else if (LOGGER.isDebugEnabled()) {
-                    LOGGER.info("Discarding {} connection reaped", msg);
-                }
-            }
-
-            LOGGER.debug("exit");
-
-        }
-
         @Override
         public String[] ListActivatableNames() {
             return null;
@@ -541,189 +715,175 @@ public class DBusDaemon extends Thread implements Closeable {
 
     }
 
-    public class Sender extends Thread {
-        private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final SelectorThreadPool                     selectorPool;
+    private final Set<Connstruct>                        conns       = ConcurrentHashMap.newKeySet();
+    private final Map<String, Connstruct>                names       = new ConcurrentHashMap<>();
+    private final MatchRuleIndex<Connstruct>             matchRules  = new MatchRuleIndex<>();
+    /** Locks serializing changes of a name owner, a name always uses the same lock. */
+    private final Object[]                               nameLocks  = new Object[NAME_LOCK_COUNT];
+    private final AtomicBoolean                          run        = new AtomicBoolean(true);
+    private int                                          nextUnique = 0;
+    private Object                                       uniqueLock = new Object();
+    private volatile long                                maxQueuedBytes     = DEFAULT_MAX_QUEUED_BYTES;
+    private volatile SlowConsumerPolicy                  slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+    //CHECKSTYLE:OFF
+    DBusServer                                           dbusServer = new DBusServer();
+    //CHECKSTYLE:ON
 
-        public Sender() {
-            setName("Sender");
+    public DBusDaemon() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new daemon.
+     * @param _threadCount number of threads handling the client connections
+     */
+    public DBusDaemon(int _threadCount) {
+        setName("Daemon");
+        for (int i = 0; i < nameLocks.length; i++) {
+            nameLocks[i] = new Object();
         }
+        selectorPool = new SelectorThreadPool("DBus Daemon Selector-", _threadCount);
+    }
 
-        @Override
-        public void run() {
+    /**
+     * Set the maximum number of bytes queued for a single connection.
+     * When a client does not read its messages and the limit is exceeded,
+     * the configured {@link SlowConsumerPolicy} is applied.
+     *
+     * @param _maxQueuedBytes limit in bytes
+     */
+    public void setMaxQueuedBytes(long _maxQueuedBytes) {
+        maxQueuedBytes = _maxQueuedBytes;
+    }
 
-            logger.debug("enter");
+    public long getMaxQueuedBytes() {
+        return maxQueuedBytes;
+    }
 
-            while (isRunning()) {
+    public void setSlowConsumerPolicy(SlowConsumerPolicy _slowConsumerPolicy) {
+        slowConsumerPolicy = _slowConsumerPolicy;
+    }
 
-                logger.trace("Acquiring lock on outqueue and blocking for data");
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
 
-                Message m = null;
-                List<WeakReference<Connstruct>> wcs = null;
-                // block on outqueue
-                synchronized (outqueue) {
-                    while (outqueue.size() == 0) {
-                        try {
-                            outqueue.wait();
-                        } catch (InterruptedException ex) {
-                            return;
-                        }
-                    }
+    /**
+     * Send a message to the given connection.
+     *
+     * @param c receiver, null to send to all connections having a matching rule
+     * @param m message
+     */
+    private void send(Connstruct c, Message m) {
 
-                    m = outqueue.head();
-                    wcs = outqueue.remove(m);
-                }
-                if (null != wcs) {
-                    for (WeakReference<Connstruct> wc : wcs) {
-                        Connstruct c = wc.get();
-                        if (null != c) {
-
-                            logger.trace("<outqueue> Got message {} for {}", m, c.unique);
-                            logger.info("Sending message {} to {}", m, c.unique);
-
-                            try {
-                                c.mout.writeMessage(m);
-                            } catch (IOException ioe) {
-                                logger.debug("", ioe);
-                                removeConnection(c);
-                            }
-                        }
-                    }
-                } else {
-                    logger.info("Discarding {} connection reaped", m);
-                }
+        LOGGER.debug("enter");
+        if (null == c) {
+            LOGGER.trace("Queing message {} for all connections", m);
+            for (Connstruct d : findSignalMatches(m)) {
+                deliver(d, m);
             }
+        } else {
+            LOGGER.trace("Queing message {} for {}", m, c.unique);
+            deliver(c, m);
+        }
 
-            logger.debug("exit");
+        LOGGER.debug("exit");
 
-        }
     }
 
-    public class Reader extends Thread {
-        private Connstruct                conn;
-        private WeakReference<Connstruct> weakconn;
-        private boolean                   lrun = true;
-
-        public Reader(Connstruct _conn) {
-            this.conn = _conn;
-            weakconn = new WeakReference<>(_conn);
-            setName("Reader");
+    private void deliver(Connstruct c, Message m) {
+        if (c.enqueue(m) || c.isClosing()) {
+            return;
         }
 
-        public void stopRunning() {
-            lrun = false;
+        if (SlowConsumerPolicy.DISCONNECT == slowConsumerPolicy) {
+            LOGGER.warn("Disconnecting client {}, more than {} bytes queued", c, c.getQueuedBytes());
+            c.closeLater();
+            return;
         }
 
-        @Override
-        public void run() {
-
-            LOGGER.debug("enter");
-
-            while (isRunning() && lrun) {
-
-                Message m = null;
+        LOGGER.debug("Dropping message {} for client {}, more than {} bytes queued", m, c, c.getQueuedBytes());
+        if (m instanceof MethodCall && 0 == (m.getFlags() & Message.Flags.NO_REPLY_EXPECTED) && null != m.getSource()) {
+            Connstruct caller = names.get(m.getSource());
+            if (null != caller && caller != c) {
                 try {
-                    m = conn.min.readMessage();
-                } catch (IOException ioe) {
-                    LOGGER.debug("", ioe);
-                    removeConnection(conn);
+                    deliver(caller, new Error("org.freedesktop.DBus", m.getSource(), "org.freedesktop.DBus.Error.LimitsExceeded", m.getSerial(), "s",
+                            String.format("Too many bytes queued for `%s'", m.getDestination())));
                 } catch (DBusException dbe) {
                     LOGGER.debug("", dbe);
-                    if (dbe instanceof FatalException) {
-                        removeConnection(conn);
-                    }
-                }
-
-                if (null != m) {
-                    LOGGER.info("Read {} from {}", m, conn.unique);
-
-                    synchronized (inqueue) {
-                        inqueue.putLast(m, weakconn);
-                        inqueue.notifyAll();
-                    }
                 }
             }
-            conn = null;
-
-            LOGGER.debug("exit");
-
         }
     }
 
-    private Map<Connstruct, Reader>                      conns       = new HashMap<>();
-    private HashMap<String, Connstruct>                  names       = new HashMap<>();
-    private MagicMap<Message, WeakReference<Connstruct>> outqueue    = new MagicMap<>("out");
-    private MagicMap<Message, WeakReference<Connstruct>> inqueue     = new MagicMap<>("in");
-    private MagicMap<Message, WeakReference<Connstruct>> localqueue  = new MagicMap<>("local");
-    private List<Connstruct>                             sigrecips   = new ArrayList<>();
-    private final AtomicBoolean                          run        = new AtomicBoolean(true);
-    private int                                          nextUnique = 0;
-    private Object                                       uniqueLock = new Object();
-    //CHECKSTYLE:OFF
-    DBusServer                                           dbusServer = new DBusServer();
-    Sender                                               sender      = new Sender();
-    //CHECKSTYLE:ON
+    private List<Connstruct> findSignalMatches(Message sig) {
 
-    public DBusDaemon() {
-        setName("Daemon");
-        synchronized (names) {
-            names.put("org.freedesktop.DBus", null);
+        LOGGER.debug("enter");
+
+        List<Connstruct> l;
+        try {
+            l = new ArrayList<>(matchRules.findMatches(sig, this::getNameOwner));
+        } catch (DBusException dbe) {
+            LOGGER.debug("Unable to match signal {}", sig, dbe);
+            l = new ArrayList<>();
         }
+
+        LOGGER.debug("exit");
+
+        return l;
     }
 
-    private void send(Connstruct c, Message m) {
-        send(c, m, false);
+    private Object getNameLock(String _name) {
+        return nameLocks[(_name.hashCode() & Integer.MAX_VALUE) % nameLocks.length];
     }
 
-    private void send(Connstruct c, Message m, boolean head) {
+    private String getNameOwner(String name) {
+        Connstruct owner = names.get(name);
+        return null == owner ? null : owner.unique;
+    }
 
-        LOGGER.debug("enter");
-        if (null == c) {
-            LOGGER.trace("Queing message {} for all connections", m);
-        } else {
-            LOGGER.trace("Queing message {} for {}", m, c.unique);
-        }
+    /**
+     * Route a message received from the given connection.
+     * Called on the selector thread of this connection.
+     */
+    private void handleMessage(Connstruct c, Message m) {
+        try {
+            // check if they have hello'd
+            if (null == c.unique && (!(m instanceof MethodCall) || !"org.freedesktop.DBus".equals(m.getDestination()) || !"Hello".equals(m.getName()))) {
+                send(c, new Error("org.freedesktop.DBus", null, "org.freedesktop.DBus.Error.AccessDenied", m.getSerial(), "s", "You must send a Hello message"));
+                return;
+            }
 
-        // send to all connections
-        if (null == c) {
-            synchronized (conns) {
-                synchronized (outqueue) {
-                    for (Connstruct d : conns.keySet()) {
-                        if (head) {
-                            outqueue.putFirst(m, new WeakReference<>(d));
-                        } else {
-                            outqueue.putLast(m, new WeakReference<>(d));
-                        }
-                    }
-                    outqueue.notifyAll();
+            try {
+                if (null != c.unique) {
+                    m.setSource(c.unique);
                 }
+            } catch (DBusException dbe) {
+                LOGGER.debug("", dbe);
+                send(c, new Error("org.freedesktop.DBus", null, "org.freedesktop.DBus.Error.GeneralError", m.getSerial(), "s", "Sending message failed"));
             }
-        } else {
-            synchronized (outqueue) {
-                if (head) {
-                    outqueue.putFirst(m, new WeakReference<>(c));
+
+            if ("org.freedesktop.DBus".equals(m.getDestination())) {
+                dbusServer.handleMessage(c, m);
+            } else if (m instanceof DBusSignal && null == m.getDestination()) {
+                for (Connstruct d : findSignalMatches(m)) {
+                    deliver(d, m);
+                }
+            } else {
+                Connstruct dest = null == m.getDestination() ? null : names.get(m.getDestination());
+
+                if (null == dest && m instanceof DBusSignal) {
+                    LOGGER.debug("Discarding signal {} for unknown destination", m);
+                } else if (null == dest) {
+                    send(c, new Error("org.freedesktop.DBus", null, "org.freedesktop.DBus.Error.ServiceUnknown", m.getSerial(), "s", String.format("The name `%s' does not exist", m.getDestination())));
                 } else {
-                    outqueue.putLast(m, new WeakReference<>(c));
+                    deliver(dest, m);
                 }
-                outqueue.notifyAll();
             }
+        } catch (DBusException dbe) {
+            LOGGER.debug("", dbe);
         }
-
-        LOGGER.debug("exit");
-
-    }
-
-    private List<Connstruct> findSignalMatches(DBusSignal sig) {
-
-        LOGGER.debug("enter");
-
-        List<Connstruct> l;
-        synchronized (sigrecips) {
-            l = new ArrayList<>(sigrecips);
-        }
-
-        LOGGER.debug("exit");
-
-        return l;
     }
 
     @Override
@@ -731,68 +891,9 @@ public class DBusDaemon extends Thread implements Closeable {
 
         LOGGER.debug("enter");
 
+        // all work is done by the selector threads, just wait until we get closed
         while (isRunning()) {
-            try {
-                Message m;
-                List<WeakReference<Connstruct>> wcs;
-                synchronized (inqueue) {
-                    while (0 == inqueue.size()) {
-                        try {
-                            inqueue.wait();
-                        } catch (InterruptedException ex) {
-                            return;
-                        }
-                    }
-
-                    m = inqueue.head();
-                    wcs = inqueue.remove(m);
-                }
-                if (null != wcs) {
-                    for (WeakReference<Connstruct> wc : wcs) {
-                        Connstruct c = wc.get();
-                        if (null != c) {
-                            LOGGER.info("<inqueue> Got message {} from {}", m, c.unique);
-                            // check if they have hello'd
-                            if (null == c.unique && (!(m instanceof MethodCall) || !"org.freedesktop.DBus".equals(m.getDestination()) || !"Hello".equals(m.getName()))) {
-                                send(c, new Error("org.freedesktop.DBus", null, "org.freedesktop.DBus.Error.AccessDenied", m.getSerial(), "s", "You must send a Hello message"));
-                            } else {
-                                try {
-                                    if (null != c.unique) {
-                                        m.setSource(c.unique);
-                                    }
-                                } catch (DBusException dbe) {
-                                    LOGGER.debug("", dbe);
-                                    send(c, new Error("org.freedesktop.DBus", null, "org.freedesktop.DBus.Error.GeneralError", m.getSerial(), "s", "Sending message failed"));
-                                }
-
-                                if ("org.freedesktop.DBus".equals(m.getDestination())) {
-                                    synchronized (localqueue) {
-                                        localqueue.putLast(m, wc);
-                                        localqueue.notifyAll();
-                                    }
-                                } else {
-                                    if (m instanceof DBusSignal) {
-                                        List<Connstruct> list = findSignalMatches((DBusSignal) m);
-                                        for (Connstruct d : list) {
-                                            send(d, m);
-                                        }
-                                    } else {
-                                        Connstruct dest = names.get(m.getDestination());
-
-                                        if (null == dest) {
-                                            send(c, new Error("org.freedesktop.DBus", null, "org.freedesktop.DBus.Error.ServiceUnknown", m.getSerial(), "s", String.format("The name `%s' does not exist", m.getDestination())));
-                                        } else {
-                                            send(dest, m);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            } catch (DBusException dbe) {
-                LOGGER.debug("", dbe);
-            }
+            LockSupport.park(this);
         }
 
         LOGGER.debug("exit");
@@ -803,40 +904,22 @@ public class DBusDaemon extends Thread implements Closeable {
 
         LOGGER.debug("enter");
 
-        boolean exists = false;
-        synchronized (conns) {
-            if (conns.containsKey(c)) {
-                Reader r = conns.get(c);
-                exists = true;
-                r.stopRunning();
-                conns.remove(c);
-            }
-        }
-        if (exists) {
-            try {
-                if (null != c.usock) {
-                    c.usock.close();
+        conns.remove(c);
+        if (c.close()) {
+            matchRules.removeAll(c);
+            for (Entry<String, Connstruct> entry : names.entrySet()) {
+                if (entry.getValue() != c) {
+                    continue;
                 }
-                if (null != c.tsock) {
-                    c.tsock.close();
-                }
-            } catch (IOException exIo) {
-            }
-            synchronized (names) {
-                List<String> toRemove = new ArrayList<>();
-                for (String name : names.keySet()) {
-                    if (names.get(name) == c) {
-                        toRemove.add(name);
+                synchronized (getNameLock(entry.getKey())) {
+                    if (names.remove(entry.getKey(), c)) {
                         try {
-                            send(null, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameOwnerChanged", "sss", name, c.unique, ""));
+                            send(null, new DBusSignal("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "NameOwnerChanged", "sss", entry.getKey(), c.unique, ""));
                         } catch (DBusException dbe) {
                             LOGGER.debug("", dbe);
                         }
                     }
                 }
-                for (String name : toRemove) {
-                    names.remove(name);
-                }
             }
         }
 
@@ -844,33 +927,71 @@ public class DBusDaemon extends Thread implements Closeable {
 
     }
 
-    public void addSock(Socket s) throws IOException {
+    /**
+     * Add a new client connection.
+     * The channel has to be connected and authenticated, it will be switched to non-blocking mode.
+     *
+     * @param _channel channel of client
+     * @throws IOException when channel could not be used
+     */
+    public void addSock(SocketChannel _channel) throws IOException {
 
         LOGGER.debug("enter");
 
         LOGGER.debug("New Client");
 
-        Connstruct c = new Connstruct(s);
-        Reader r = new Reader(c);
-        synchronized (conns) {
-            conns.put(c, r);
-        }
-        r.start();
+        Connstruct c = new Connstruct(_channel);
+        conns.add(c);
+        c.register();
 
         LOGGER.debug("exit");
 
     }
 
+    /**
+     * Add a new client connection.
+     *
+     * @param s socket of client, has to be created by a {@link SocketChannel}
+     * @throws IOException when socket has no channel
+     * @deprecated use {@link #addSock(SocketChannel)}
+     */
+    @Deprecated
+    public void addSock(Socket s) throws IOException {
+        if (null == s.getChannel()) {
+            throw new IOException("Only sockets created by a SocketChannel are supported");
+        }
+        addSock(s.getChannel());
+    }
+
     @Override
     public void close() {
         run.set(false);
         interrupt();
+        for (Connstruct c : conns) {
+            c.close();
+        }
+        conns.clear();
+        selectorPool.shutdown();
     }
 
     public boolean isRunning() {
         return this.run.get() && isAlive();
     }
 
+    private static long getWireSize(Message _message) {
+        long size = 0;
+        byte[][] wireData = _message.getWireData();
+        if (null != wireData) {
+            for (byte[] buf : wireData) {
+                if (null == buf) {
+                    break;
+                }
+                size += buf.length;
+            }
+        }
+        return size;
+    }
+
     public static void syntax() {
         System.out.println("Syntax: DBusDaemon [--version] [-v] [--help] [-h] [--listen address] [-l address] [--print-address] [-r] [--pidfile file] [-p file] [--addressfile file] [-a file] [--unix] [-u] [--tcp] [-t] ");
         System.exit(1);
@@ -2,11 +2,17 @@ package org.freedesktop.dbus.bin;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.freedesktop.dbus.connections.BusAddress;
 import org.freedesktop.dbus.connections.SASL;
@@ -25,14 +31,24 @@ public class EmbeddedDBusDaemon implements Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedDBusDaemon.class);
 
+    /** Time in milliseconds a client may take for each step of the authentication. */
+    private static final int AUTH_TIMEOUT = 30000;
+
     private BusAddress address;
 
     private DBusDaemon daemonThread;
 
     private int authTypes = SASL.AUTH_EXTERNAL;
 
+    private long maxQueuedBytes = DBusDaemon.DEFAULT_MAX_QUEUED_BYTES;
+
+    private DBusDaemon.SlowConsumerPolicy slowConsumerPolicy = DBusDaemon.SlowConsumerPolicy.DISCONNECT;
+
     private Closeable listenSocket;
 
+    /** Authenticates new clients, so slow clients do not block accepting connections. */
+    private ExecutorService authExecutor;
+
     private final AtomicBoolean closed = new AtomicBoolean(false);
 
     /**
@@ -45,10 +61,12 @@ public class EmbeddedDBusDaemon implements Closeable {
             listenSocket.close();
             listenSocket = null;
         }
+        if (authExecutor != null) {
+            authExecutor.shutdownNow();
+            authExecutor = null;
+        }
         if (daemonThread != null) {
             daemonThread.close();
-            daemonThread.dbusServer.interrupt();
-            daemonThread.sender.interrupt();
             daemonThread = null;
         }
     }
@@ -58,9 +76,16 @@ public class EmbeddedDBusDaemon implements Closeable {
         Objects.requireNonNull(address, "busAddress not set");
 
         daemonThread = new DBusDaemon();
+        daemonThread.setMaxQueuedBytes(maxQueuedBytes);
+        daemonThread.setSlowConsumerPolicy(slowConsumerPolicy);
         daemonThread.start();
-        daemonThread.sender.start();
-        daemonThread.dbusServer.start();
+
+        AtomicInteger authThreadCount = new AtomicInteger();
+        authExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "EmbeddedDBusDaemon-Auth-" + authThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
         try {
             listen();
@@ -105,13 +130,8 @@ public class EmbeddedDBusDaemon implements Closeable {
 
         // accept new connections
         while (daemonThread.isRunning()) {
-             UnixSocketChannel s = uss.accept();
-            if ((new SASL()).auth(SASL.SaslMode.SERVER, authTypes, address.getGuid(), s.socket().getOutputStream(), s.socket().getInputStream(), s.socket())) {
-                // s.setBlocking(false);
-                daemonThread.addSock(s.socket());
-            } else {
-                s.close();
-            }
+            UnixSocketChannel s = uss.accept();
+            authenticate(s, s.socket());
         }
         uss.close();
         LOGGER.debug("exit");
@@ -122,25 +142,65 @@ public class EmbeddedDBusDaemon implements Closeable {
 
         LOGGER.debug("enter");
 
-        try (ServerSocket ss = new ServerSocket(address.getPort(), 10, InetAddress.getByName(address.getHost()))) {
+        try (ServerSocketChannel ss = ServerSocketChannel.open()) {
+            ss.bind(new InetSocketAddress(address.getHost(), address.getPort()), 10);
             listenSocket = ss;
 
             // accept new connections
             while (daemonThread.isRunning()) {
-                Socket s = ss.accept();
+                SocketChannel s = ss.accept();
+                authenticate(s, null);
+            }
+            LOGGER.debug("exit");
+        }
+    }
+
+    /**
+     * Run the SASL authentication of a new client in the background and
+     * pass the client to the daemon when it succeeded.
+     *
+     * @param _channel accepted channel
+     * @param _credentialSocket socket to read the peer credentials from, null if not supported
+     */
+    private void authenticate(SocketChannel _channel, Socket _credentialSocket) {
+        DBusDaemon daemon = daemonThread;
+        BusAddress busAddress = address;
+        try {
+            authExecutor.execute(() -> {
                 boolean authOK = false;
                 try {
-                    authOK = (new SASL()).auth(SASL.SaslMode.SERVER, authTypes, address.getGuid(), s.getOutputStream(), s.getInputStream(), null);
+                    setAuthTimeout(_channel.socket());
+                    authOK = (new SASL()).auth(SASL.SaslMode.SERVER, authTypes, busAddress.getGuid(), _channel.socket().getOutputStream(), _channel.socket().getInputStream(), _credentialSocket);
+                    if (authOK) {
+                        daemon.addSock(_channel);
+                    }
                 } catch (Exception e) {
                     LOGGER.debug("", e);
+                    authOK = false;
                 }
-                if (authOK) {
-                    daemonThread.addSock(s);
-                } else {
-                    s.close();
+                if (!authOK) {
+                    closeQuietly(_channel);
                 }
-            }
-            LOGGER.debug("exit");
+            });
+        } catch (RejectedExecutionException _ex) {
+            // daemon was closed
+            closeQuietly(_channel);
+        }
+    }
+
+    private static void setAuthTimeout(Socket _socket) {
+        try {
+            _socket.setSoTimeout(AUTH_TIMEOUT);
+        } catch (SocketException | UnsupportedOperationException _ex) {
+            LOGGER.debug("Unable to set authentication timeout", _ex);
+        }
+    }
+
+    private static void closeQuietly(Closeable _closeable) {
+        try {
+            _closeable.close();
+        } catch (IOException _ex) {
+            LOGGER.debug("", _ex);
         }
     }
 
@@ -155,4 +215,26 @@ public class EmbeddedDBusDaemon implements Closeable {
     public void setAuthTypes(int authTypes) {
         this.authTypes = authTypes;
     }
+
+    /**
+     * Maximum number of bytes queued for a single client.
+     * Must be set before the daemon is started.
+     *
+     * @param _maxQueuedBytes limit in bytes
+     * @see DBusDaemon#setMaxQueuedBytes(long)
+     */
+    public void setMaxQueuedBytes(long _maxQueuedBytes) {
+        this.maxQueuedBytes = _maxQueuedBytes;
+    }
+
+    /**
+     * Action taken when a client exceeds its queue limit.
+     * Must be set before the daemon is started.
+     *
+     * @param _slowConsumerPolicy policy
+     * @see DBusDaemon#setSlowConsumerPolicy(DBusDaemon.SlowConsumerPolicy)
+     */
+    public void setSlowConsumerPolicy(DBusDaemon.SlowConsumerPolicy _slowConsumerPolicy) {
+        this.slowConsumerPolicy = Objects.requireNonNull(_slowConsumerPolicy);
+    }
 }
@@ -0,0 +1,323 @@
+package org.freedesktop.dbus.bin;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.freedesktop.dbus.DBusPath;
+import org.freedesktop.dbus.errors.Error;
+import org.freedesktop.dbus.errors.MatchRuleInvalid;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.messages.MethodReturn;
+
+/**
+ * Parsed match rule as used by the AddMatch/RemoveMatch calls of the bus daemon.
+ * <p>
+ * Supports the keys type, sender, interface, member, path, path_namespace, destination,
+ * arg0..arg63, arg0path..arg63path and arg0namespace.
+ * See the 'Match Rules' section of the D-Bus specification for details.
+ * </p>
+ */
+public final class MatchRule {
+    /** Highest argument index allowed in argN keys. */
+    public static final int MAX_ARG_INDEX = 63;
+
+    private final String   rule;
+
+    private byte           type;
+    private String         sender;
+    private String         iface;
+    private String         member;
+    private String         path;
+    private String         pathNamespace;
+    private String         destination;
+    private String         arg0Namespace;
+    private String[]       args     = new String[0];
+    private String[]       argPaths = new String[0];
+
+    private MatchRule(String _rule) {
+        rule = _rule;
+    }
+
+    /**
+     * Parses the given match rule.
+     *
+     * @param _rule match rule string, e.g. <code>type='signal',interface='org.foo.Bar'</code>
+     * @return parsed rule
+     * @throws MatchRuleInvalid if rule is malformed or contains an unsupported key
+     */
+    public static MatchRule parse(String _rule) throws MatchRuleInvalid {
+        if (_rule == null) {
+            throw new MatchRuleInvalid("Match rule is null");
+        }
+        MatchRule result = new MatchRule(_rule);
+        for (Entry<String, String> e : split(_rule).entrySet()) {
+            result.set(e.getKey(), e.getValue());
+        }
+        if (result.path != null && result.pathNamespace != null) {
+            throw new MatchRuleInvalid("Match rule must not contain path and path_namespace: " + _rule);
+        }
+        return result;
+    }
+
+    /**
+     * Split the rule into key/value pairs.
+     * Values are enclosed in apostrophes. Outside of apostrophes, \' is an escaped apostrophe.
+     */
+    private static Map<String, String> split(String _rule) throws MatchRuleInvalid {
+        Map<String, String> result = new LinkedHashMap<>();
+        int len = _rule.length();
+        int pos = 0;
+        while (pos < len) {
+            int eq = _rule.indexOf('=', pos);
+            if (eq < 0) {
+                throw new MatchRuleInvalid("Missing '=' in match rule: " + _rule);
+            }
+            String key = _rule.substring(pos, eq).trim();
+            if (key.isEmpty()) {
+                throw new MatchRuleInvalid("Empty key in match rule: " + _rule);
+            }
+
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            pos = eq + 1;
+            for (; pos < len; pos++) {
+                char c = _rule.charAt(pos);
+                if (quoted) {
+                    if (c == '\'') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '\'') {
+                    quoted = true;
+                } else if (c == '\\' && pos + 1 < len && _rule.charAt(pos + 1) == '\'') {
+                    value.append('\'');
+                    pos++;
+                } else if (c == ',') {
+                    break;
+                } else {
+                    value.append(c);
+                }
+            }
+            if (quoted) {
+                throw new MatchRuleInvalid("Unterminated quote in match rule: " + _rule);
+            }
+            if (result.put(key, value.toString()) != null) {
+                throw new MatchRuleInvalid("Duplicate key '" + key + "' in match rule: " + _rule);
+            }
+            pos++; // skip ','
+        }
+        return result;
+    }
+
+    private void set(String _key, String _value) throws MatchRuleInvalid {
+        switch (_key) {
+            case "type":
+                type = parseType(_value);
+                break;
+            case "sender":
+                sender = _value;
+                break;
+            case "interface":
+                iface = _value;
+                break;
+            case "member":
+                member = _value;
+                break;
+            case "path":
+                path = _value;
+                break;
+            case "path_namespace":
+                pathNamespace = _value;
+                break;
+            case "destination":
+                destination = _value;
+                break;
+            case "arg0namespace":
+                arg0Namespace = _value;
+                break;
+            case "eavesdrop":
+                // eavesdropping is not supported, unicast messages are only delivered to their destination
+                break;
+            default:
+                if (!_key.startsWith("arg")) {
+                    throw new MatchRuleInvalid("Unsupported key '" + _key + "' in match rule: " + rule);
+                }
+                boolean pathArg = _key.endsWith("path");
+                String idxStr = _key.substring(3, pathArg ? _key.length() - 4 : _key.length());
+                int idx;
+                try {
+                    idx = Integer.parseInt(idxStr);
+                } catch (NumberFormatException _ex) {
+                    throw new MatchRuleInvalid("Unsupported key '" + _key + "' in match rule: " + rule);
+                }
+                if (idx < 0 || idx > MAX_ARG_INDEX) {
+                    throw new MatchRuleInvalid("Argument index out of range in match rule: " + rule);
+                }
+                if (pathArg) {
+                    argPaths = setArg(argPaths, idx, _value);
+                } else {
+                    args = setArg(args, idx, _value);
+                }
+        }
+    }
+
+    private static String[] setArg(String[] _args, int _idx, String _value) {
+        String[] result = _args.length > _idx ? _args : Arrays.copyOf(_args, _idx + 1);
+        result[_idx] = _value;
+        return result;
+    }
+
+    private static byte parseType(String _value) throws MatchRuleInvalid {
+        switch (_value) {
+            case "signal":
+                return Message.MessageType.SIGNAL;
+            case "method_call":
+                return Message.MessageType.METHOD_CALL;
+            case "method_return":
+                return Message.MessageType.METHOD_RETURN;
+            case "error":
+                return Message.MessageType.ERROR;
+            default:
+                throw new MatchRuleInvalid("Unknown message type: " + _value);
+        }
+    }
+
+    private static byte typeOf(Message _msg) {
+        if (_msg instanceof DBusSignal) {
+            return Message.MessageType.SIGNAL;
+        } else if (_msg instanceof MethodCall) {
+            return Message.MessageType.METHOD_CALL;
+        } else if (_msg instanceof MethodReturn) {
+            return Message.MessageType.METHOD_RETURN;
+        } else if (_msg instanceof Error) {
+            return Message.MessageType.ERROR;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if the given message is matched by this rule.
+     *
+     * @param _msg message
+     * @param _nameOwner function returning the unique name owning the given well-known bus name (or null)
+     * @return true if message matches
+     * @throws DBusException if message parameters could not be read
+     */
+    public boolean matches(Message _msg, Function<String, String> _nameOwner) throws DBusException {
+        if (type != 0 && type != typeOf(_msg)) {
+            return false;
+        }
+        if (iface != null && !iface.equals(_msg.getInterface())) {
+            return false;
+        }
+        if (member != null && !member.equals(_msg.getName())) {
+            return false;
+        }
+        if (path != null && !path.equals(_msg.getPath())) {
+            return false;
+        }
+        if (pathNamespace != null && !isInPathNamespace(_msg.getPath())) {
+            return false;
+        }
+        if (destination != null && !destination.equals(_msg.getDestination())) {
+            return false;
+        }
+        if (sender != null && !sender.equals(_msg.getSource())
+                && (sender.startsWith(":") || !Objects.equals(_nameOwner.apply(sender), _msg.getSource()))) {
+            return false;
+        }
+        if (args.length == 0 && argPaths.length == 0 && arg0Namespace == null) {
+            return true;
+        }
+        return matchesArgs(_msg.getParameters());
+    }
+
+    private boolean isInPathNamespace(String _path) {
+        if (_path == null) {
+            return false;
+        }
+        if ("/".equals(pathNamespace) || _path.equals(pathNamespace)) {
+            return true;
+        }
+        return _path.startsWith(pathNamespace) && _path.charAt(pathNamespace.length()) == '/';
+    }
+
+    private boolean matchesArgs(Object[] _params) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] != null && !(i < _params.length && _params[i] instanceof String && args[i].equals(_params[i]))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < argPaths.length; i++) {
+            if (argPaths[i] != null && !matchesArgPath(argPaths[i], i < _params.length ? _params[i] : null)) {
+                return false;
+            }
+        }
+        if (arg0Namespace != null) {
+            if (_params.length == 0 || !(_params[0] instanceof String)) {
+                return false;
+            }
+            String arg0 = (String) _params[0];
+            return arg0.equals(arg0Namespace)
+                    || arg0.startsWith(arg0Namespace) && arg0.charAt(arg0Namespace.length()) == '.';
+        }
+        return true;
+    }
+
+    private static boolean matchesArgPath(String _rulePath, Object _param) {
+        String value;
+        if (_param instanceof String) {
+            value = (String) _param;
+        } else if (_param instanceof DBusPath) {
+            value = ((DBusPath) _param).getPath();
+        } else {
+            return false;
+        }
+        return value.equals(_rulePath)
+                || _rulePath.endsWith("/") && value.startsWith(_rulePath)
+                || value.endsWith("/") && _rulePath.startsWith(value);
+    }
+
+    public String getInterface() {
+        return iface;
+    }
+
+    public String getMember() {
+        return member;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, sender, iface, member, path, pathNamespace, destination, arg0Namespace)
+                + 31 * Arrays.hashCode(args) + Arrays.hashCode(argPaths);
+    }
+
+    @Override
+    public boolean equals(Object _obj) {
+        if (this == _obj) {
+            return true;
+        }
+        if (!(_obj instanceof MatchRule)) {
+            return false;
+        }
+        MatchRule other = (MatchRule) _obj;
+        return type == other.type && Objects.equals(sender, other.sender) && Objects.equals(iface, other.iface)
+                && Objects.equals(member, other.member) && Objects.equals(path, other.path)
+                && Objects.equals(pathNamespace, other.pathNamespace) && Objects.equals(destination, other.destination)
+                && Objects.equals(arg0Namespace, other.arg0Namespace)
+                && Arrays.equals(args, other.args) && Arrays.equals(argPaths, other.argPaths);
+    }
+
+    @Override
+    public String toString() {
+        return rule;
+    }
+}
@@ -0,0 +1,164 @@
+package org.freedesktop.dbus.bin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+
+/**
+ * Index of the match rules registered by the clients of the bus daemon.
+ * <p>
+ * Rules are stored in buckets keyed by interface and member (rules without interface or member
+ * are stored using an empty key). To route a message only the (up to four) buckets which can
+ * contain matching rules are checked, so the costs do not depend on the number of rules
+ * registered for other signals. Lookups do not lock, adding and removing rules is synchronized.
+ * </p>
+ *
+ * @param <T> type of the subscriber (connection)
+ */
+public final class MatchRuleIndex<T> {
+    private static final String                                                   WILDCARD      = "";
+
+    private final Map<String, Map<String, List<Subscription<T>>>>                  index         = new ConcurrentHashMap<>();
+    private final Map<T, List<Subscription<T>>>                                    subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * Add a rule for the given subscriber.
+     * Adding the same rule multiple times requires removing it multiple times.
+     *
+     * @param _subscriber subscriber
+     * @param _rule rule
+     */
+    public synchronized void add(T _subscriber, MatchRule _rule) {
+        Subscription<T> subscription = new Subscription<>(_subscriber, _rule);
+        index.computeIfAbsent(key(_rule.getInterface()), k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(key(_rule.getMember()), k -> new CopyOnWriteArrayList<>())
+            .add(subscription);
+        subscriptions.computeIfAbsent(_subscriber, k -> new ArrayList<>()).add(subscription);
+    }
+
+    /**
+     * Remove one occurrence of the given rule of the given subscriber.
+     *
+     * @param _subscriber subscriber
+     * @param _rule rule
+     * @return false if subscriber did not add this rule
+     */
+    public synchronized boolean remove(T _subscriber, MatchRule _rule) {
+        List<Subscription<T>> list = subscriptions.get(_subscriber);
+        if (list == null) {
+            return false;
+        }
+        for (Subscription<T> subscription : list) {
+            if (subscription.rule.equals(_rule)) {
+                list.remove(subscription);
+                if (list.isEmpty()) {
+                    subscriptions.remove(_subscriber);
+                }
+                removeFromIndex(subscription);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all rules of the given subscriber.
+     * @param _subscriber subscriber
+     */
+    public synchronized void removeAll(T _subscriber) {
+        List<Subscription<T>> list = subscriptions.remove(_subscriber);
+        if (list != null) {
+            for (Subscription<T> subscription : list) {
+                removeFromIndex(subscription);
+            }
+        }
+    }
+
+    private void removeFromIndex(Subscription<T> _subscription) {
+        String ifaceKey = key(_subscription.rule.getInterface());
+        String memberKey = key(_subscription.rule.getMember());
+        Map<String, List<Subscription<T>>> members = index.get(ifaceKey);
+        if (members == null) {
+            return;
+        }
+        List<Subscription<T>> bucket = members.get(memberKey);
+        if (bucket == null) {
+            return;
+        }
+        bucket.remove(_subscription);
+        if (bucket.isEmpty()) {
+            members.remove(memberKey);
+            if (members.isEmpty()) {
+                index.remove(ifaceKey);
+            }
+        }
+    }
+
+    /**
+     * Find all subscribers having at least one rule matching the given message.
+     *
+     * @param _msg message
+     * @param _nameOwner function returning the unique name owning a well-known bus name
+     * @return subscribers in no particular order, never null
+     * @throws DBusException if message parameters could not be read
+     */
+    public Set<T> findMatches(Message _msg, Function<String, String> _nameOwner) throws DBusException {
+        if (index.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<T> result = new LinkedHashSet<>();
+        String iface = _msg.getInterface();
+        String member = _msg.getName();
+
+        if (iface != null) {
+            collect(index.get(iface), member, _msg, _nameOwner, result);
+        }
+        collect(index.get(WILDCARD), member, _msg, _nameOwner, result);
+        return result;
+    }
+
+    private void collect(Map<String, List<Subscription<T>>> _members, String _member, Message _msg,
+            Function<String, String> _nameOwner, Set<T> _result) throws DBusException {
+        if (_members == null) {
+            return;
+        }
+        if (_member != null) {
+            collect(_members.get(_member), _msg, _nameOwner, _result);
+        }
+        collect(_members.get(WILDCARD), _msg, _nameOwner, _result);
+    }
+
+    private void collect(List<Subscription<T>> _bucket, Message _msg, Function<String, String> _nameOwner, Set<T> _result) throws DBusException {
+        if (_bucket == null) {
+            return;
+        }
+        for (Subscription<T> subscription : _bucket) {
+            if (!_result.contains(subscription.subscriber) && subscription.rule.matches(_msg, _nameOwner)) {
+                _result.add(subscription.subscriber);
+            }
+        }
+    }
+
+    private static String key(String _value) {
+        return _value == null ? WILDCARD : _value;
+    }
+
+    private static final class Subscription<T> {
+        private final T         subscriber;
+        private final MatchRule rule;
+
+        Subscription(T _subscriber, MatchRule _rule) {
+            subscriber = _subscriber;
+            rule = _rule;
+        }
+    }
+}
@@ -15,73 +15,78 @@ package org.freedesktop.dbus.connections;
 import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 import org.freedesktop.dbus.DBusAsyncReply;
 import org.freedesktop.dbus.DBusCallInfo;
 import org.freedesktop.dbus.DBusMatchRule;
-import org.freedesktop.dbus.InternalSignal;
-import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.DBusPath;
 import org.freedesktop.dbus.MethodTuple;
 import org.freedesktop.dbus.RemoteInvocationHandler;
 import org.freedesktop.dbus.RemoteObject;
-import org.freedesktop.dbus.SignalTuple;
 import org.freedesktop.dbus.connections.transports.AbstractTransport;
+import org.freedesktop.dbus.connections.transports.IMessageListener;
 import org.freedesktop.dbus.connections.transports.TransportFactory;
 import org.freedesktop.dbus.errors.Error;
+import org.freedesktop.dbus.errors.NoReply;
 import org.freedesktop.dbus.errors.UnknownMethod;
 import org.freedesktop.dbus.errors.UnknownObject;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.DBusExecutionException;
 import org.freedesktop.dbus.exceptions.FatalDBusException;
+import org.freedesktop.dbus.exceptions.MarshallingException;
 import org.freedesktop.dbus.exceptions.NotConnected;
 import org.freedesktop.dbus.interfaces.CallbackHandler;
 import org.freedesktop.dbus.interfaces.DBusInterface;
 import org.freedesktop.dbus.interfaces.DBusSigHandler;
+import org.freedesktop.dbus.interfaces.ObjectManager.InterfacesAdded;
+import org.freedesktop.dbus.interfaces.ObjectManager.InterfacesRemoved;
+import org.freedesktop.dbus.interfaces.SharedMemory;
 import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.ExportedMethod;
 import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.LazySignal;
 import org.freedesktop.dbus.messages.Message;
 import org.freedesktop.dbus.messages.MethodCall;
 import org.freedesktop.dbus.messages.MethodReturn;
 import org.freedesktop.dbus.messages.ObjectTree;
+import org.freedesktop.dbus.types.SharedByteArray;
+import org.freedesktop.dbus.types.Variant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.hypfvieh.threads.NameableThreadFactory;
 
+
 /**
  * Handles a connection to DBus.
  */
 public abstract class AbstractConnection implements Closeable {
 
     private static final Map<Thread, DBusCallInfo> INFOMAP     = new ConcurrentHashMap<>();
-    /**
-     * Default thread pool size
-     */
-    private static final int         THREADCOUNT = 4;
     /**
      * Connect timeout, used for TCP only
      */
@@ -95,10 +100,18 @@ public abstract class AbstractConnection implements Closeable {
     public static final String       CONNID_REGEX     = "^:[0-9]*\\.[0-9]*$";
     public static final String       OBJECT_REGEX     = "^/([-_a-zA-Z0-9]+(/[-_a-zA-Z0-9]+)*)?$";
     public static final Pattern      DOLLAR_PATTERN   = Pattern.compile("[$]");
+    /** Minimum size of byte arrays which are shared with peers instead of being sent inline. */
+    public static final int          SHARED_MEMORY_THRESHOLD = 256 * 1024;
 
     public static final int          MAX_ARRAY_LENGTH = 67108864;
     public static final int          MAX_NAME_LENGTH  = 255;
 
+    private static final String      PROPERTIES_INTERFACE = "org.freedesktop.DBus.Properties";
+
+    /** Threads handling the messages read by the selector threads of non-blocking connections without thread factory. */
+    private static final Executor    INCOMING_EXECUTOR =
+            Executors.newCachedThreadPool(new NameableThreadFactory("DBus Incoming Message Thread-", true));
+
     private final Logger        logger = LoggerFactory.getLogger(getClass());
 
     private final ObjectTree                                                    objectTree;
@@ -106,22 +119,30 @@ public abstract class AbstractConnection implements Closeable {
     private final Map<String, ExportedObject>                                   exportedObjects;
     private final Map<DBusInterface, RemoteObject>                              importedObjects;
 
-    private final PendingCallbackManager                                        callbackManager;
-
     private final FallbackContainer                                             fallbackContainer;
+    /** Built-in object managers by object path, also keeps them from being garbage collected. */
+    private final Map<String, ObjectManagerHandler>                             objectManagers       = new ConcurrentHashMap<>();
+    private final PropertiesChangedEmitter                                      propertiesChangedEmitter;
 
     private final Queue<Error>                                                  pendingErrorQueue;
 
-    private final Map<SignalTuple, Queue<DBusSigHandler<? extends DBusSignal>>> handledSignals;
-    private final Map<SignalTuple, Queue<DBusSigHandler<DBusSignal>>>           genericHandledSignals;
-    private final Map<Long, MethodCall>                                         pendingCalls;
+    private final SignalHandlerIndex<DBusSigHandler<? extends DBusSignal>>      handledSignals;
+    private final SignalHandlerIndex<DBusSigHandler<DBusSignal>>                genericHandledSignals;
+    private final PendingCallRegistry                                           pendingCalls;
+    /** Shared memory support of peers, by bus name ("" for peer-to-peer connections). */
+    private final Map<String, CompletableFuture<Boolean>>                       sharedMemoryPeers    = new ConcurrentHashMap<>();
+    private final AtomicBoolean                                                 watchingNameOwners   = new AtomicBoolean();
+    /** Set when writing to the transport failed, the connection is then disconnected by another thread. */
+    private final AtomicBoolean                                                 writeFailed          = new AtomicBoolean();
 
     private final IncomingMessageThread                                         readerThread;
-    // private final SenderThread senderThread;
+    /** Handles messages read by the selector thread in order, only used by non-blocking connections. */
+    private final Executor                                                      incomingExecutor;
+    private final SenderThread                                                  senderThread;
 
     private final BusAddress                                                    busAddress;
-
-    private final ExecutorService                                               senderService;
+    /** Thread factory used by this connection, null to use platform daemon threads. */
+    private final ThreadFactory                                                 connectionThreadFactory;
 
     private volatile boolean                                                    run;
 
@@ -129,37 +150,79 @@ public abstract class AbstractConnection implements Closeable {
     private boolean                                                             connected            = false;
 
     private AbstractTransport                                                   transport;
-    private volatile ThreadPoolExecutor                                         workerThreadPool;
-    private final ReadWriteLock                                                 workerThreadPoolLock =
+    private volatile IDispatchPolicy                                            dispatchPolicy;
+    private final ReadWriteLock                                                 dispatchPolicyLock   =
             new ReentrantReadWriteLock();
 
     protected AbstractConnection(String address, int timeout) throws DBusException {
+        this(address, timeout, null);
+    }
+
+    /**
+     * Create a connection using the given thread factory for its reader and sender threads
+     * and the threads of its default dispatch policy.
+     * <p>
+     * Together with {@link DispatchPolicy#threadPerTask(ThreadFactory)} this allows running a connection
+     * on virtual threads (e.g. using {@code Thread.ofVirtual().factory()} on Java 21),
+     * so many blocking method calls can be waiting at the same time without using an OS thread each.
+     * The selector threads of non-blocking transports and the pending call timeout thread
+     * are shared by all connections and not created by this factory.
+     * </p>
+     *
+     * @param address bus address
+     * @param timeout connect timeout
+     * @param _threadFactory factory, null to use platform daemon threads
+     * @throws DBusException if connecting failed
+     */
+    protected AbstractConnection(String address, int timeout, ThreadFactory _threadFactory) throws DBusException {
+        this(address, timeout, _threadFactory, false);
+    }
+
+    /**
+     * Create a connection which optionally uses a non-blocking transport.
+     * <p>
+     * A non-blocking connection does not start a reader thread, its socket is read by one of the selector threads
+     * shared by all non-blocking connections. Received messages are handled in order by a thread of the given
+     * factory, or by a shared pool if no factory is given, so handlers never block a selector thread.
+     * </p>
+     *
+     * @param address bus address
+     * @param timeout connect timeout
+     * @param _threadFactory factory, null to use platform daemon threads
+     * @param _nonBlocking true to use a non-blocking transport
+     * @throws DBusException if connecting failed
+     */
+    protected AbstractConnection(String address, int timeout, ThreadFactory _threadFactory, boolean _nonBlocking) throws DBusException {
         exportedObjects = new HashMap<>();
         importedObjects = new ConcurrentHashMap<>();
 
         exportedObjects.put(null, new ExportedObject(new GlobalHandler(this), weakreferences));
 
-        handledSignals = new ConcurrentHashMap<>();
-        genericHandledSignals = new ConcurrentHashMap<>();
-        pendingCalls = Collections.synchronizedMap(new LinkedHashMap<>());
-        callbackManager = new PendingCallbackManager();
+        handledSignals = new SignalHandlerIndex<>(false);
+        genericHandledSignals = new SignalHandlerIndex<>(true);
+        pendingCalls = new PendingCallRegistry(this::handleTimeout);
 
         pendingErrorQueue = new ConcurrentLinkedQueue<>();
-        workerThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(THREADCOUNT,
-                        new NameableThreadFactory("DBus Worker Thread-", false));
-
-        senderService =
-                Executors.newFixedThreadPool(1, new NameableThreadFactory("DBus Sender Thread-", false));
+        connectionThreadFactory = _threadFactory;
+        dispatchPolicy = null == connectionThreadFactory
+                ? DispatchPolicy.sharedPool(DispatchPolicy.DEFAULT_THREAD_COUNT)
+                : DispatchPolicy.sharedPool(DispatchPolicy.DEFAULT_THREAD_COUNT, connectionThreadFactory);
 
         objectTree = new ObjectTree();
-        fallbackContainer = new FallbackContainer();
+        fallbackContainer = new FallbackContainer(objectTree);
+        propertiesChangedEmitter = new PropertiesChangedEmitter(this);
 
         readerThread = new IncomingMessageThread(this);
+        incomingExecutor = new SerialExecutor(null == connectionThreadFactory
+                ? INCOMING_EXECUTOR
+                : new ThreadPerTaskExecutor(connectionThreadFactory));
+        senderThread = new SenderThread(this);
 
         try {
             busAddress = new BusAddress(address);
-            transport = TransportFactory.createTransport(busAddress, timeout);
+            transport = TransportFactory.createTransport(busAddress, timeout, _nonBlocking);
             connected = true;
+            senderThread.start(createThreadFactory("DBus Sender Thread"));
         } catch (IOException | DBusException _ex) {
             logger.debug("Error creating transport", _ex);
             disconnect();
@@ -223,35 +286,115 @@ public abstract class AbstractConnection implements Closeable {
 
     /**
      * Start reading and sending messages.
+     * If the transport is in non-blocking mode, incoming messages are read by the shared
+     * selector threads and no separate reader thread is started.
      */
     protected void listen() {
-        readerThread.start();
+        if (transport != null && transport.isNonBlocking()) {
+            try {
+                transport.startReading(new IMessageListener() {
+                    @Override
+                    public void messageReceived(Message _msg) {
+                        logger.trace("Got Incoming Message: {}", _msg);
+                        // do not block the shared selector thread while handling the message
+                        incomingExecutor.execute(() -> {
+                            try {
+                                handleMessage(_msg);
+                            } catch (DBusException _ex) {
+                                logger.error("Exception while handling incoming message.", _ex);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void readFailed(IOException _ex) {
+                        if (!run) { // connection is already disconnecting
+                            return;
+                        }
+                        logger.error("FatalException in connection.", _ex);
+                        // disconnect after the messages received before
+                        incomingExecutor.execute(AbstractConnection.this::disconnect);
+                    }
+                });
+            } catch (IOException _ex) {
+                logger.error("Could not start reading from transport.", _ex);
+            }
+        } else {
+            readerThread.start(createThreadFactory("DBusConnection"));
+        }
     }
 
     /**
-     * Change the number of worker threads to receive method calls and handle signals. Default is 4 threads
+     * Returns the thread factory this connection was created with.
+     *
+     * @return factory or null if platform daemon threads are used
+     */
+    public ThreadFactory getThreadFactory() {
+        return connectionThreadFactory;
+    }
+
+    /**
+     * Returns the factory used for a thread of this connection.
+     *
+     * @param _name name of the thread if no custom factory is used
+     * @return factory
+     */
+    private ThreadFactory createThreadFactory(String _name) {
+        if (null != connectionThreadFactory) {
+            return connectionThreadFactory;
+        }
+        return r -> {
+            Thread thread = new Thread(r, _name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Change the number of worker threads to receive method calls and handle signals. Default is 4 threads.
+     * Already queued method calls and signals are not affected.
+     * Only supported if the current dispatch policy is a {@link DispatchPolicy} using its own thread pool.
      *
      * @param _newPoolSize
      *            The new number of worker Threads to use.
      */
     public void changeThreadCount(byte _newPoolSize) {
-        if (workerThreadPool.getMaximumPoolSize() != _newPoolSize) {
-            workerThreadPoolLock.writeLock().lock();
-            try {
-                List<Runnable> remainingTasks = workerThreadPool.shutdownNow(); // kill previous threadpool
-                workerThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(_newPoolSize,
-                    new NameableThreadFactory("DbusWorkerThreads", false));
-                // re-schedule previously waiting tasks
-                for (Runnable runnable : remainingTasks) {
-                    workerThreadPool.execute(runnable);
-                }
-            } finally {
-                workerThreadPoolLock.writeLock().unlock();
-            }
+        IDispatchPolicy policy = dispatchPolicy;
+        if (!(policy instanceof DispatchPolicy) || !((DispatchPolicy) policy).setThreadCount(_newPoolSize)) {
+            logger.warn("Thread count cannot be changed for dispatch policy {}", policy);
+        }
+    }
 
+    /**
+     * Change the policy deciding which threads handle incoming method calls, signals and callbacks.
+     * Default is {@link DispatchPolicy#sharedPool(int)} with {@link DispatchPolicy#DEFAULT_THREAD_COUNT} threads.
+     * <p>
+     * The previous policy is shut down, tasks already submitted to it are still executed.
+     * The policy should be changed before objects are exported or signal handlers are added,
+     * as messages received while changing the policy may be handled out of order.
+     * </p>
+     *
+     * @param _policy new policy
+     */
+    public void setDispatchPolicy(IDispatchPolicy _policy) {
+        Objects.requireNonNull(_policy, "Dispatch policy required");
+        IDispatchPolicy oldPolicy;
+        dispatchPolicyLock.writeLock().lock();
+        try {
+            oldPolicy = dispatchPolicy;
+            dispatchPolicy = _policy;
+        } finally {
+            dispatchPolicyLock.writeLock().unlock();
+        }
+        if (oldPolicy != _policy) {
+            oldPolicy.shutdown();
         }
     }
 
+    public IDispatchPolicy getDispatchPolicy() {
+        return dispatchPolicy;
+    }
+
     public String getExportedObject(DBusInterface _interface) throws DBusException {
 
         Optional<Entry<String, ExportedObject>> foundInterface = 
@@ -293,6 +436,7 @@ public abstract class AbstractConnection implements Closeable {
      *            The path to the object we are exposing. MUST be in slash-notation, like "/org/freedesktop/Local", and
      *            SHOULD end with a capitalised term. Only one object may be exposed on each path at any one time, but
      *            an object may be exposed on several paths at once.
+     *            If the object is below an object manager, InterfacesAdded is emitted.
      * @param object
      *            The object to export.
      * @throws DBusException
@@ -305,16 +449,109 @@ public abstract class AbstractConnection implements Closeable {
         if (!objectpath.matches(OBJECT_REGEX) || objectpath.length() > MAX_NAME_LENGTH) {
             throw new DBusException("Invalid object path: " + objectpath);
         }
+        ExportedObject eo;
         synchronized (getExportedObjects()) {
             if (null != getExportedObjects().get(objectpath)) {
                 throw new DBusException("Object already exported");
             }
-            ExportedObject eo = new ExportedObject(object, weakreferences);
+            eo = new ExportedObject(object, weakreferences);
             getExportedObjects().put(objectpath, eo);
             synchronized (getObjectTree()) {
                 getObjectTree().add(objectpath, eo, eo.getIntrospectiondata());
             }
         }
+        String managerPath = getObjectManagerPath(objectpath);
+        if (null != managerPath) {
+            try {
+                Map<String, Map<String, Variant<?>>> interfaces = ObjectManagerHandler.getInterfaces(this, eo);
+                if (null != interfaces) {
+                    sendMessage(new InterfacesAdded(managerPath, new DBusPath(objectpath), interfaces));
+                }
+            } catch (DBusExecutionException _ex) {
+                logger.warn("Could not read properties of {}, InterfacesAdded not sent", objectpath, _ex);
+            }
+        }
+    }
+
+    /**
+     * Export a built-in implementation of org.freedesktop.DBus.ObjectManager.
+     * <p>
+     * The manager returns all objects exported below the given path (except objects below another manager)
+     * including the values of their {@link org.freedesktop.dbus.annotations.DBusProperty} properties.
+     * InterfacesAdded and InterfacesRemoved are emitted when objects below the manager are exported or unexported.
+     * Use {@link #unExportObject(String)} to remove the manager.
+     * </p>
+     *
+     * @param _objectPath path of the manager, no other object may be exported on this path
+     * @throws DBusException if the path is already exporting an object or if path is incorrectly formatted
+     */
+    public void exportObjectManager(String _objectPath) throws DBusException {
+        ObjectManagerHandler manager = new ObjectManagerHandler(this, _objectPath);
+        exportObject(_objectPath, manager);
+        objectManagers.put(_objectPath, manager);
+    }
+
+    /**
+     * Returns true if a built-in object manager is exported on the given path.
+     *
+     * @param _objectPath path
+     * @return boolean
+     */
+    boolean isObjectManager(String _objectPath) {
+        return objectManagers.containsKey(_objectPath);
+    }
+
+    /**
+     * Returns the path of the nearest object manager above the given object path.
+     *
+     * @param _objectPath path
+     * @return path of manager or null if there is none
+     */
+    private String getObjectManagerPath(String _objectPath) {
+        if (objectManagers.isEmpty() || null == _objectPath) {
+            return null;
+        }
+        String path = _objectPath;
+        while (path.length() > 1) {
+            int idx = path.lastIndexOf('/');
+            path = 0 == idx ? "/" : path.substring(0, idx);
+            if (objectManagers.containsKey(path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Announce a changed property of an exported object.
+     * <p>
+     * Changes are coalesced: the first change of an object schedules a task on the executor which runs the
+     * method calls of the object, all changes of the object until this task runs are sent with one
+     * PropertiesChanged signal per interface. So a method call changing several properties causes a single signal
+     * if the {@link IDispatchPolicy} runs the calls of an object serially.
+     * </p>
+     * <p>
+     * Changed values are read from the {@link org.freedesktop.dbus.annotations.DBusProperty} getters when the
+     * signal is sent. Properties of objects which implement Properties themselves are sent as invalidated.
+     * Properties with EmitsChangedSignal false or const are ignored.
+     * Changes made using Properties.Set are announced automatically.
+     * </p>
+     *
+     * @param _objectPath path of the exported object
+     * @param _interfaceName D-Bus interface of the property
+     * @param _propertyName name of the property
+     */
+    public void propertyChanged(String _objectPath, String _interfaceName, String _propertyName) {
+        ExportedObject eo = getObjectTree().getObject(_objectPath);
+        if (null == eo) {
+            eo = fallbackContainer.get(_objectPath);
+        }
+        if (null == eo) {
+            logger.debug("Ignoring changed property {}.{} of unknown object {}", _interfaceName, _propertyName,
+                    _objectPath);
+            return;
+        }
+        propertiesChangedEmitter.propertyChanged(_objectPath, eo, _interfaceName, _propertyName);
     }
 
     /**
@@ -357,9 +594,24 @@ public abstract class AbstractConnection implements Closeable {
      *            The objectpath to stop exporting.
      */
     public void unExportObject(String _objectpath) {
+        ExportedObject eo;
         synchronized (getExportedObjects()) {
-            getExportedObjects().remove(_objectpath);
-            getObjectTree().remove(_objectpath);
+            eo = getExportedObjects().remove(_objectpath);
+            if (null != eo && null != _objectpath) {
+                getObjectTree().remove(_objectpath);
+            }
+        }
+        if (null == eo || null == _objectpath) {
+            return;
+        }
+        objectManagers.remove(_objectpath);
+        String managerPath = getObjectManagerPath(_objectpath);
+        if (null != managerPath) {
+            try {
+                sendMessage(new InterfacesRemoved(managerPath, new DBusPath(_objectpath), eo.getInterfaceNames()));
+            } catch (DBusException _ex) {
+                logger.error("Could not create InterfacesRemoved signal for {}", _objectpath, _ex);
+            }
         }
     }
 
@@ -368,14 +620,9 @@ public abstract class AbstractConnection implements Closeable {
      * @param _message message to send
      */
     public void sendMessage(Message _message) {
-    	Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				sendMessageInternally(_message);
-			}
-    	};
-
-    	senderService.execute(runnable);
+        if (!senderThread.send(_message)) {
+            handleSendException(_message, new NotConnected("Disconnected"));
+        }
     }
 
     /**
@@ -485,18 +732,7 @@ public abstract class AbstractConnection implements Closeable {
 
     protected <T extends DBusSignal> void addSigHandlerWithoutMatch(Class<? extends DBusSignal> signal,
             DBusSigHandler<T> handler) throws DBusException {
-        DBusMatchRule rule = new DBusMatchRule(signal);
-        SignalTuple key = new SignalTuple(rule.getInterface(), rule.getMember(), rule.getObject(), rule.getSource());
-        synchronized (getHandledSignals()) {
-            Queue<DBusSigHandler<? extends DBusSignal>> v = getHandledSignals().get(key);
-            if (null == v) {
-                v = new ConcurrentLinkedQueue<>();
-                v.add(handler);
-                getHandledSignals().put(key, v);
-            } else {
-                v.add(handler);
-            }
-        }
+        getHandledSignals().add(new DBusMatchRule(signal), handler);
     }
 
     /**
@@ -537,21 +773,24 @@ public abstract class AbstractConnection implements Closeable {
 
         logger.debug("Disconnecting Abstract Connection");
 
-        workerThreadPoolLock.writeLock().lock();
+        dispatchPolicyLock.writeLock().lock();
         try {
             // try to wait for all pending tasks.
-            workerThreadPool.shutdown();
-            workerThreadPool.awaitTermination(10, TimeUnit.SECONDS); // 10 seconds should be enough, otherwise fail
+            dispatchPolicy.shutdown();
+            dispatchPolicy.awaitTermination(10, TimeUnit.SECONDS); // 10 seconds should be enough, otherwise fail
 
         } catch (InterruptedException _ex) {
             logger.error("Interrupted while waiting for worker threads to be terminated.", _ex);
         } finally {
-            workerThreadPoolLock.writeLock().unlock();
+            dispatchPolicyLock.writeLock().unlock();
         }
 
-        // shutdown sender executor service, send all remaining messages in main thread
-        for (Runnable runnable : senderService.shutdownNow()) {
-            runnable.run();
+        // shutdown sender thread, all remaining messages will be sent before the thread terminates
+        senderThread.terminate();
+        try {
+            senderThread.awaitTermination(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException _ex) {
+            logger.error("Interrupted while waiting for sender thread to be terminated.", _ex);
         }
 
         // stop the main thread
@@ -571,13 +810,12 @@ public abstract class AbstractConnection implements Closeable {
         }
 
         // stop all the workers
-        workerThreadPoolLock.writeLock().lock();
+        dispatchPolicyLock.writeLock().lock();
         try {
-            if (!workerThreadPool.isTerminated()) { // try forceful shutdown
-                workerThreadPool.shutdownNow();
-            }
+            // try forceful shutdown
+            dispatchPolicy.shutdownNow();
         } finally {
-            workerThreadPoolLock.writeLock().unlock();
+            dispatchPolicyLock.writeLock().unlock();
         }
     }
 
@@ -667,6 +905,210 @@ public abstract class AbstractConnection implements Closeable {
         }
     }
 
+    /**
+     * Call a method asynchronously and get a {@link CompletableFuture} which is completed with the reply.
+     * The default method call timeout ({@link MethodCall#getDefaultTimeout()}) is used.
+     *
+     * @param <T>
+     *            return type of the remote method
+     * @param object
+     *            The remote object on which to call the method.
+     * @param m
+     *            The name of the method on the interface to call.
+     * @param parameters
+     *            The parameters to call the method with.
+     * @return future completed with the converted return value or completed exceptionally
+     *          with the remote exception or {@link NoReply} on timeout.
+     */
+    public <T> CompletableFuture<T> callMethodFuture(DBusInterface object, String m, Object... parameters) {
+        return callMethodFuture(MethodCall.getDefaultTimeout(), TimeUnit.MILLISECONDS, object, m, parameters);
+    }
+
+    /**
+     * Call a method asynchronously and get a {@link CompletableFuture} which is completed with the reply.
+     * If no reply is received within the given time, the future is completed exceptionally with {@link NoReply}.
+     * Cancelling the future will stop waiting for the reply.
+     *
+     * @param <T>
+     *            return type of the remote method
+     * @param timeout
+     *            time to wait for the reply
+     * @param unit
+     *            unit of timeout
+     * @param object
+     *            The remote object on which to call the method.
+     * @param m
+     *            The name of the method on the interface to call.
+     * @param parameters
+     *            The parameters to call the method with.
+     * @return future completed with the converted return value
+     */
+    public <T> CompletableFuture<T> callMethodFuture(long timeout, TimeUnit unit, DBusInterface object, String m, Object... parameters) {
+        Class<?>[] types = createTypesArray( parameters );
+        RemoteObject ro = getImportedObjects().get(object);
+
+        try {
+            Method me;
+            if (null == ro.getInterface()) {
+                me = object.getClass().getMethod(m, types);
+            } else {
+                me = ro.getInterface().getMethod(m, types);
+            }
+            MethodCall call = RemoteInvocationHandler.createMethodCall(ro, me, this,
+                    RemoteInvocationHandler.CALL_TYPE_FUTURE, parameters);
+            if (!isConnected()) {
+                throw new NotConnected("Not Connected");
+            }
+            return sendWithFuture(call, me, timeout > 0 ? Math.max(1, unit.toMillis(timeout)) : 0);
+        } catch (DBusExecutionException exDee) {
+            logger.debug("", exDee);
+            throw exDee;
+        } catch (Exception e) {
+            logger.debug("", e);
+            throw new DBusExecutionException(e.getMessage());
+        }
+    }
+
+    /**
+     * Send the given method call and return a future which will be completed when the reply arrives.
+     * <p>
+     * Error replies complete the future exceptionally using the exception created from the error.
+     * The return value is converted on the worker thread pool, so dependent actions
+     * will never block the thread reading messages from the bus.
+     * If the future is cancelled or the timeout elapses, the call is removed from the list of pending calls.
+     * </p>
+     *
+     * @param <T> return type
+     * @param _call method call to send
+     * @param _method method used to convert the return value
+     * @param _timeoutMillis timeout in milliseconds, values &lt;= 0 will wait forever
+     * @return future
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> sendWithFuture(MethodCall _call, Method _method, long _timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        if (0 != (_call.getFlags() & Message.Flags.NO_REPLY_EXPECTED)) {
+            sendMessage(_call);
+            result.complete(null);
+            return result;
+        }
+
+        _call.getReplyFuture().thenAccept(reply -> {
+            if (reply instanceof Error) {
+                result.completeExceptionally(((Error) reply).getException());
+                return;
+            }
+            Runnable convert = () -> {
+                try {
+                    result.complete((T) RemoteInvocationHandler.convertRV(reply.getSig(), reply.getParameters(), _method, this));
+                } catch (Exception _ex) {
+                    result.completeExceptionally(_ex);
+                }
+            };
+            try {
+                execute(p -> p.getCallbackExecutor(reply), convert);
+            } catch (RejectedExecutionException _ex) {
+                // thread pool already shut down, convert in current thread
+                convert.run();
+            }
+        });
+
+        // timeouts are handled by the pending call registry and will complete the future with NoReply
+        getPendingCalls().add(new PendingCall(_call, null, null, _timeoutMillis));
+
+        result.whenComplete((r, ex) -> {
+            // cancelled by caller: forget about the call
+            if (null != ex) {
+                getPendingCalls().remove(_call.getSerial());
+            }
+        });
+
+        sendMessage(_call);
+        return result;
+    }
+
+    /**
+     * Wraps the given bytes for sending them to the given destination as argument of type {@link SharedByteArray}.
+     * <p>
+     * Arrays with at least {@link #SHARED_MEMORY_THRESHOLD} bytes are copied to a memory-mapped file region
+     * which is passed to the peer as file descriptor, so the bytes do not have to be copied through the socket.
+     * This requires a transport supporting file descriptor passing and a peer which is able to receive shared memory.
+     * The peer is asked using {@link SharedMemory#SupportsSharedMemory()} without waiting for the answer,
+     * so bytes are sent inline until the peer confirmed its support. The answer is remembered until the owner
+     * of the bus name changes.
+     * In all other cases the bytes are sent inline.
+     * </p>
+     * <p>
+     * The returned object should be closed after the message containing it was sent.
+     * </p>
+     *
+     * @param _destination bus name of the peer receiving the bytes, null for peer-to-peer connections
+     * @param _data bytes
+     * @return wrapped bytes
+     * @throws IOException if the shared memory region could not be created
+     */
+    public SharedByteArray createSharedByteArray(String _destination, byte[] _data) throws IOException {
+        if (_data.length < SHARED_MEMORY_THRESHOLD || !isFileDescriptorSupported() || !isSharedMemorySupported(_destination)) {
+            return SharedByteArray.inline(_data);
+        }
+        return SharedByteArray.share(_data);
+    }
+
+    private boolean isSharedMemorySupported(String _destination) {
+        String key = null == _destination ? "" : _destination;
+        CompletableFuture<Boolean> supported = sharedMemoryPeers.get(key);
+        if (null == supported) {
+            if (watchingNameOwners.compareAndSet(false, true)) {
+                watchNameOwners();
+            }
+            supported = sharedMemoryPeers.computeIfAbsent(key, k -> querySharedMemorySupport(_destination));
+        }
+        return supported.getNow(Boolean.FALSE);
+    }
+
+    private CompletableFuture<Boolean> querySharedMemorySupport(String _destination) {
+        try {
+            MethodCall call = new MethodCall(_destination, "/", SharedMemory.INTERFACE_NAME, "SupportsSharedMemory", (byte) 0, null);
+            CompletableFuture<Boolean> result = call.getReplyFuture().thenApply(reply -> {
+                if (reply instanceof MethodReturn) {
+                    try {
+                        Object[] values = reply.getParameters();
+                        return 1 == values.length && Boolean.TRUE.equals(values[0]);
+                    } catch (DBusException _ex) {
+                        logger.debug("Invalid reply to shared memory query of {}", _destination, _ex);
+                    }
+                }
+                logger.debug("Peer {} does not support shared memory: {}", _destination, reply);
+                return false;
+            });
+            getPendingCalls().add(new PendingCall(call, null, null, MethodCall.getDefaultTimeout()));
+            sendMessage(call);
+            return result;
+        } catch (DBusException _ex) {
+            logger.debug("Could not query shared memory support of {}", _destination, _ex);
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Called once before the first peer is asked whether it supports shared memory.
+     * Connections to a bus have to call {@link #forgetSharedMemoryPeer(String)} from now on
+     * whenever the owner of a bus name changes.
+     */
+    protected void watchNameOwners() {
+    }
+
+    /**
+     * Forgets whether the peer owning the given bus name supports shared memory,
+     * it will be asked again before the next shared memory region is sent to it.
+     *
+     * @param _busName bus name
+     */
+    protected void forgetSharedMemoryPeer(String _busName) {
+        sharedMemoryPeers.remove(_busName);
+    }
+
     private Class<?>[] createTypesArray(Object... parameters) {
         if (parameters == null) {
             return null;
@@ -720,18 +1162,19 @@ public abstract class AbstractConnection implements Closeable {
         logger.debug("Handling incoming method call: {}", m);
 
         ExportedObject eo = null;
-        Method meth = null;
+        ExportedMethod meth = null;
         Object o = null;
 
         if (null == m.getInterface() || m.getInterface().equals("org.freedesktop.DBus.Peer")
-                || m.getInterface().equals("org.freedesktop.DBus.Introspectable")) {
+                || m.getInterface().equals("org.freedesktop.DBus.Introspectable")
+                || m.getInterface().equals(SharedMemory.INTERFACE_NAME)) {
             eo = getExportedObjects().get(null);
             if (null != eo && null == eo.getObject().get()) {
                 unExportObject(null);
                 eo = null;
             }
             if (null != eo) {
-                meth = eo.getMethods().get(new MethodTuple(m.getName(), m.getSig()));
+                meth = eo.getExportedMethod(new MethodTuple(m.getName(), m.getSig()));
             }
             if (null != meth) {
                 o = new GlobalHandler(this, m.getPath());
@@ -742,7 +1185,7 @@ public abstract class AbstractConnection implements Closeable {
         if (null == o) {
             // now check for specific exported functions
 
-            eo = getExportedObjects().get(m.getPath());
+            eo = getObjectTree().getObject(m.getPath());
             if (null != eo && null == eo.getObject().get()) {
                 logger.info("Unexporting {} implicitly", m.getPath());
                 unExportObject(m.getPath());
@@ -765,17 +1208,24 @@ public abstract class AbstractConnection implements Closeable {
                     logger.trace("   {} => {}", mt, eo.getMethods().get(mt));
                 }
             }
-            meth = eo.getMethods().get(new MethodTuple(m.getName(), m.getSig()));
-            if (null == meth) {
-                sendMessage(new Error(m, new UnknownMethod(String.format(
-                        "The method `%s.%s' does not exist on this object.", m.getInterface(), m.getName()))));
-                return;
+            MethodTuple tuple = new MethodTuple(m.getName(), m.getSig());
+            meth = PROPERTIES_INTERFACE.equals(m.getInterface()) ? eo.getPropertiesMethod(tuple) : null;
+            if (null != meth) {
+                o = new PropertiesHandler(this, eo, m.getPath());
+            } else {
+                meth = eo.getExportedMethod(tuple);
+                if (null == meth) {
+                    sendMessage(new Error(m, new UnknownMethod(String.format(
+                            "The method `%s.%s' does not exist on this object.", m.getInterface(), m.getName()))));
+                    return;
+                }
+                o = eo.getObject().get();
             }
-            o = eo.getObject().get();
         }
 
         // now execute it
-        final Method me = meth;
+        final ExportedObject target = o instanceof GlobalHandler ? null : eo;
+        final ExportedMethod me = meth;
         final Object ob = o;
         final boolean noreply = (1 == (m.getFlags() & Message.Flags.NO_REPLY_EXPECTED));
         final DBusCallInfo info = new DBusCallInfo(m);
@@ -792,9 +1242,10 @@ public abstract class AbstractConnection implements Closeable {
                 	return;
                 }
                 try {
-                    Type[] ts = me.getGenericParameterTypes();
-                    m.setArgs(Marshalling.deSerializeParameters(m.getParameters(), ts, conn));
-                    logger.trace("Deserialised {} to types {}", Arrays.deepToString(m.getParameters()), Arrays.deepToString(ts));
+                    m.setArgs(me.deSerializeParameters(m, conn));
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("Deserialised {} for {}", Arrays.deepToString(m.getParameters()), me);
+                    }
                 } catch (Exception e) {
                     logger.debug("", e);
                     handleException(conn, m, new UnknownMethod("Failure in de-serializing message: " + e));
@@ -804,32 +1255,13 @@ public abstract class AbstractConnection implements Closeable {
                 try {
                     INFOMAP.put(Thread.currentThread(), info);
                     Object result;
-                    try {
+                    if (logger.isTraceEnabled()) {
                         logger.trace("Invoking Method: {} on {} with parameters {}", me, ob, Arrays.deepToString(m.getParameters()));
-                        result = me.invoke(ob, m.getParameters());
-                    } catch (InvocationTargetException ite) {
-                        logger.debug(ite.getMessage(), ite);
-                        throw ite.getCause();
                     }
+                    result = me.invoke(ob, m.getParameters());
                     INFOMAP.remove(Thread.currentThread());
                     if (!noreply) {
-                        MethodReturn reply;
-                        if (Void.TYPE.equals(me.getReturnType())) {
-                            reply = new MethodReturn(m, null);
-                        } else {
-                            StringBuffer sb = new StringBuffer();
-                            for (String s : Marshalling.getDBusType(me.getGenericReturnType())) {
-                                sb.append(s);
-                            }
-                            Object[] nr = Marshalling.convertParameters(new Object[] {
-                                    result
-                            }, new Type[] {
-                                    me.getGenericReturnType()
-                            }, conn);
-
-                            reply = new MethodReturn(m, sb.toString(), nr);
-                        }
-                        conn.sendMessage(reply);
+                        conn.sendMessage(me.createReply(m, result, conn));
                     }
                 } catch (DBusExecutionException exDee) {
                     logger.debug("", exDee);
@@ -842,7 +1274,7 @@ public abstract class AbstractConnection implements Closeable {
                 }
             }
         };
-        executeInWorkerThreadPool(r);
+        execute(p -> p.getMethodCallExecutor(target, m), r);
     }
 
     /**
@@ -857,41 +1289,18 @@ public abstract class AbstractConnection implements Closeable {
     private void handleMessage(final DBusSignal _signal, boolean _useThreadPool) {
         logger.debug("Handling incoming signal: {}", _signal);
 
-        List<DBusSigHandler<? extends DBusSignal>> handlers = new ArrayList<>();
-        List<DBusSigHandler<DBusSignal>> genericHandlers = new ArrayList<>();
-
-        Queue<DBusSigHandler<? extends DBusSignal>> t;
-        t = getHandledSignals().get(new SignalTuple(_signal.getInterface(), _signal.getName(), null, null));
-        if (null != t) {
-            handlers.addAll(t);
-        }
-        t = getHandledSignals().get(new SignalTuple(_signal.getInterface(), _signal.getName(), _signal.getPath(), null));
-        if (null != t) {
-            handlers.addAll(t);
-        }
-        t = getHandledSignals().get(new SignalTuple(_signal.getInterface(), _signal.getName(), null, _signal.getSource()));
-        if (null != t) {
-            handlers.addAll(t);
-        }
-        t = getHandledSignals().get(new SignalTuple(_signal.getInterface(), _signal.getName(), _signal.getPath(), _signal.getSource()));
-        if (null != t) {
-            handlers.addAll(t);
-            }
-
-        Queue<DBusSigHandler<DBusSignal>> gt;
-        Set<SignalTuple> allTuples = SignalTuple.getAllPossibleTuples(_signal.getInterface(), _signal.getName(), _signal.getPath(), _signal.getSource());
-        for( SignalTuple tuple : allTuples ){
-           gt = getGenericHandledSignals().get(tuple);
-            if (null != gt) {
-                genericHandlers.addAll(gt);
-            }
-        }
+        List<DBusSigHandler<? extends DBusSignal>> handlers = getHandledSignals().getHandlers(_signal.getInterface(),
+                _signal.getName(), _signal.getPath(), _signal.getSource());
+        List<DBusSigHandler<DBusSignal>> genericHandlers = getGenericHandledSignals().getHandlers(
+                _signal.getInterface(), _signal.getName(), _signal.getPath(), _signal.getSource());
 
         if (handlers.isEmpty() && genericHandlers.isEmpty()) {
             return;
         }
 
         final AbstractConnection conn = this;
+        // signal is converted at most once, no matter how many handlers will receive it
+        final LazySignal lazySignal = new LazySignal(_signal, conn);
         for (final DBusSigHandler<? extends DBusSignal> h : handlers) {
             logger.trace("Adding Runnable for signal {} with handler {}",  _signal, h);
             Runnable command = new Runnable() {
@@ -899,13 +1308,7 @@ public abstract class AbstractConnection implements Closeable {
                 @Override
                 public void run() {
                     try {
-                        DBusSignal rs;
-                        if (_signal instanceof InternalSignal || _signal.getClass().equals(DBusSignal.class)) {
-                            rs = _signal.createReal(conn);
-                        } else {
-                            rs = _signal;
-                        }
-                        ((DBusSigHandler<DBusSignal>) h).handle(rs);
+                        ((DBusSigHandler<DBusSignal>) h).handle(lazySignal.get());
                     } catch (DBusException _ex) {
                         logger.warn("Exception while running signal handler '{}' for signal '{}':", h, _signal, _ex);
                         handleException(conn, _signal, new DBusExecutionException("Error handling signal " + _signal.getInterface()
@@ -914,7 +1317,7 @@ public abstract class AbstractConnection implements Closeable {
                 }
             };
             if (_useThreadPool) {
-                executeInWorkerThreadPool(command);
+                execute(p -> p.getSignalExecutor(_signal), command);
             } else {
                 command.run();
             }
@@ -930,90 +1333,110 @@ public abstract class AbstractConnection implements Closeable {
                 }
             };
             if (_useThreadPool) {
-                executeInWorkerThreadPool(command);
+                execute(p -> p.getSignalExecutor(_signal), command);
             } else {
                 command.run();
             }
         }
     }
 
-    private void executeInWorkerThreadPool(Runnable task) {
-        workerThreadPoolLock.readLock().lock();
-        try {
-            workerThreadPool.execute(task);
-        } finally {
-            workerThreadPoolLock.readLock().unlock();
+    /**
+     * Run a task using the executor chosen by the current dispatch policy.
+     * <p>
+     * The lock is only held while selecting the executor, so a task running in the calling thread
+     * may change the dispatch policy. If the policy is replaced before the task was submitted,
+     * the task is submitted to the new policy.
+     * </p>
+     *
+     * @param _executorSelector selects the executor from the policy
+     * @param _task task to run
+     */
+    void execute(Function<IDispatchPolicy, Executor> _executorSelector, Runnable _task) {
+        while (true) {
+            IDispatchPolicy policy;
+            Executor executor;
+            dispatchPolicyLock.readLock().lock();
+            try {
+                policy = dispatchPolicy;
+                executor = _executorSelector.apply(policy);
+            } finally {
+                dispatchPolicyLock.readLock().unlock();
+            }
+            try {
+                executor.execute(_task);
+                return;
+            } catch (RejectedExecutionException _ex) {
+                // executor of a replaced policy was shut down, retry with the current policy
+                if (policy == dispatchPolicy) {
+                    throw _ex;
+                }
+            }
         }
     }
 
     private void handleMessage(final Error err) {
         logger.debug("Handling incoming error: {}", err);
-        MethodCall m = null;
-        if (getPendingCalls() == null) {
-            return;
+        PendingCall pc = getPendingCalls().remove(err.getReplySerial());
+        if (pc != null) {
+            completeWithError(pc, err);
+        } else {
+            getPendingErrorQueue().add(err);
         }
-        synchronized (getPendingCalls()) {
-            if (getPendingCalls().containsKey(err.getReplySerial())) {
-                m = getPendingCalls().remove(err.getReplySerial());
-            }
+    }
+
+    /**
+     * Called by the {@link PendingCallReaper} when no reply was received in time.
+     * @param _pendingCall expired call, already removed from pending calls
+     */
+    private void handleTimeout(PendingCall _pendingCall) {
+        logger.debug("No reply received in time for {}", _pendingCall.getCall());
+        try {
+            completeWithError(_pendingCall, new Error(_pendingCall.getCall(), new NoReply("No reply within specified time")));
+        } catch (DBusException _ex) {
+            logger.debug("Unable to create timeout error", _ex);
         }
-        if (m != null) {
-            m.setReply(err);
-            CallbackHandler<?> cbh = null;
-            cbh = callbackManager.removeCallback(m);
-            logger.trace("{} = pendingCallbacks.remove({})", cbh, m);
+    }
 
-            // queue callback for execution
-            if (null != cbh) {
-                final CallbackHandler<?> fcbh = cbh;
-                logger.trace("Adding Error Runnable with callback handler {}", fcbh);
-                Runnable command = new Runnable() {
+    private void completeWithError(PendingCall _pendingCall, final Error err) {
+        _pendingCall.getCall().setReply(err);
+        final CallbackHandler<?> fcbh = _pendingCall.getCallback();
 
-                    @Override
-                    public synchronized void run() {
-                        try {
-                            logger.trace("Running Error Callback for {}", err);
-                            DBusCallInfo info = new DBusCallInfo(err);
-                            INFOMAP.put(Thread.currentThread(), info);
+        // queue callback for execution
+        if (null != fcbh) {
+            logger.trace("Adding Error Runnable with callback handler {}", fcbh);
+            Runnable command = new Runnable() {
 
-                            fcbh.handleError(err.getException());
-                            INFOMAP.remove(Thread.currentThread());
+                @Override
+                public synchronized void run() {
+                    try {
+                        logger.trace("Running Error Callback for {}", err);
+                        DBusCallInfo info = new DBusCallInfo(err);
+                        INFOMAP.put(Thread.currentThread(), info);
 
-                        } catch (Exception e) {
-                            logger.debug("Exception while running error callback.", e);
-                        }
-                    }
-                };
-                executeInWorkerThreadPool(command);
-            }
+                        fcbh.handleError(err.getException());
+                        INFOMAP.remove(Thread.currentThread());
 
-        } else {
-            getPendingErrorQueue().add(err);
+                    } catch (Exception e) {
+                        logger.debug("Exception while running error callback.", e);
+                    }
+                }
+            };
+            execute(p -> p.getCallbackExecutor(err), command);
         }
     }
 
     @SuppressWarnings("unchecked")
     private void handleMessage(final MethodReturn mr) {
         logger.debug("Handling incoming method return: {}", mr);
-        MethodCall m = null;
-
-        if (null == getPendingCalls()) {
-            return;
-        }
+        PendingCall pc = getPendingCalls().remove(mr.getReplySerial());
 
-        synchronized (getPendingCalls()) {
-            if (getPendingCalls().containsKey(mr.getReplySerial())) {
-                m = getPendingCalls().remove(mr.getReplySerial());
-            }
-        }
-
-        if (null != m) {
+        if (null != pc) {
+            MethodCall m = pc.getCall();
             m.setReply(mr);
             mr.setCall(m);
             @SuppressWarnings("rawtypes")
-            CallbackHandler cbh = callbackManager.getCallback(m);
-            DBusAsyncReply<?> asr = callbackManager.getCallbackReply(m);
-            callbackManager.removeCallback(m);
+            CallbackHandler cbh = pc.getCallback();
+            DBusAsyncReply<?> asr = pc.getAsyncReply();
 
             // queue callback for execution
             if (null != cbh) {
@@ -1043,7 +1466,7 @@ public abstract class AbstractConnection implements Closeable {
                         }
                     }
                 };
-                executeInWorkerThreadPool(r);
+                execute(p -> p.getCallbackExecutor(mr), r);
             }
 
         } else {
@@ -1056,14 +1479,18 @@ public abstract class AbstractConnection implements Closeable {
     }
 
     public void queueCallback(MethodCall _call, Method _method, CallbackHandler<?> _callback) {
-        callbackManager.queueCallback(_call, _method, _callback, this);
+        // the callback is called with a NoReply error if no reply was received in time
+        getPendingCalls().add(new PendingCall(_call, _callback, new DBusAsyncReply<>(_call, _method, this), MethodCall.getDefaultTimeout()));
     }
 
     /**
-     * Send a message to DBus.
-     * @param m
+     * Prepare a message for sending.
+     * Called by the {@link SenderThread} for every message before it is added to the current batch.
+     *
+     * @param m message to prepare
+     * @return true if message should be sent, false if preparing failed
      */
-    private void sendMessageInternally(Message m) {
+    boolean prepareMessage(Message m) {
         try {
             if (!connected) {
                 throw new NotConnected("Disconnected");
@@ -1071,54 +1498,90 @@ public abstract class AbstractConnection implements Closeable {
             if (m instanceof DBusSignal) {
                 ((DBusSignal) m).appendbody(this);
             }
+            if (!m.getFileDescriptors().isEmpty()) {
+                AbstractTransport currentTransport = transport;
+                if (currentTransport == null || !currentTransport.isFileDescriptorSupported()) {
+                    throw new MarshallingException("File descriptor passing is not supported by the transport");
+                }
+            }
 
             if (m instanceof MethodCall) {
                 if (0 == (m.getFlags() & Message.Flags.NO_REPLY_EXPECTED)) {
-                    if (null == getPendingCalls()) {
-                        ((MethodCall) m).setReply(new Error("org.freedesktop.DBus.Local",
-                                "org.freedesktop.DBus.Local.Disconnected", 0, "s", "Disconnected"));
-                    } else {
-                        synchronized (getPendingCalls()) {
-                            getPendingCalls().put(m.getSerial(), (MethodCall) m);
-                        }
+                    // callbacks and futures register their call before it is queued for sending,
+                    // do not register calls again which already timed out or got cancelled.
+                    // Other calls are completed with a NoReply error after the default timeout,
+                    // so calls nobody waits for anymore do not stay registered
+                    if (null == getPendingCalls().get(m.getSerial()) && !((MethodCall) m).hasReply()) {
+                        getPendingCalls().add(new PendingCall((MethodCall) m, null, null, MethodCall.getDefaultTimeout()));
                     }
                 }
             }
+            return true;
+        } catch (Exception e) {
+            handleSendException(m, e);
+            return false;
+        }
+    }
 
-            transport.writeMessage(m);
-
+    /**
+     * Send a batch of prepared messages to DBus.
+     * @param _messages messages to send
+     */
+    void writeMessages(List<Message> _messages) {
+        try {
+            AbstractTransport currentTransport = transport;
+            if (currentTransport == null || writeFailed.get()) {
+                throw new NotConnected("Disconnected");
+            }
+            currentTransport.writeMessages(_messages);
         } catch (Exception e) {
-            logger.debug("Exception while sending message.", e);
-            if (m instanceof MethodCall && e instanceof NotConnected) {
-                try {
-                    ((MethodCall) m).setReply(new Error("org.freedesktop.DBus.Local",
-                            "org.freedesktop.DBus.Local.Disconnected", 0, "s", "Disconnected"));
-                } catch (DBusException exDe) {
-                }
+            for (Message m : _messages) {
+                handleSendException(m, e);
             }
-            if (m instanceof MethodCall && e instanceof DBusExecutionException) {
-                try {
-                    ((MethodCall) m).setReply(new Error(m, e));
-                } catch (DBusException exDe) {
-                }
-            } else if (m instanceof MethodCall) {
-                try {
+            if (e instanceof IOException) {
+                writeFailed((IOException) e);
+            }
+        }
+    }
+
+    /**
+     * Called by the sender thread if writing to the transport failed.
+     * {@link #disconnect()} waits for the sender thread to terminate, so the connection
+     * is disconnected by another thread. Messages sent meanwhile fail with {@link NotConnected}.
+     *
+     * @param _ex exception thrown by the transport
+     */
+    private void writeFailed(IOException _ex) {
+        if (writeFailed.compareAndSet(false, true)) {
+            logger.error("Writing to transport failed, disconnecting.", _ex);
+            createThreadFactory("DBus Disconnect Thread").newThread(this::disconnect).start();
+        }
+    }
+
+    private void handleSendException(Message m, Exception e) {
+        logger.debug("Exception while sending message.", e);
+        if (m instanceof MethodCall) {
+            getPendingCalls().remove(m.getSerial());
+            try {
+                Error reply;
+                if (e instanceof NotConnected) {
+                    reply = new Error("org.freedesktop.DBus.Local", "org.freedesktop.DBus.Local.Disconnected", 0, "s", "Disconnected");
+                } else if (e instanceof DBusExecutionException) {
+                    reply = new Error(m, e);
+                } else {
                     logger.info("Setting reply to {} as an error", m);
-                    ((MethodCall) m).setReply(
-                            new Error(m, new DBusExecutionException("Message Failed to Send: " + e.getMessage())));
-                } catch (DBusException exDe) {
-                }
-            } else if (m instanceof MethodReturn) {
-                try {
-                    transport.writeMessage(new Error(m, e));
-                } catch (IOException exIo) {
-                    logger.debug("", exIo);
-                } catch (DBusException exDe) {
-                    logger.debug("", exDe);
+                    reply = new Error(m, new DBusExecutionException("Message Failed to Send: " + e.getMessage()));
                 }
+                ((MethodCall) m).setReply(reply);
+            } catch (DBusException exDe) {
             }
-            if (e instanceof IOException) {
-                disconnect();
+        } else if (m instanceof MethodReturn && !(e instanceof IOException) && transport != null) {
+            try {
+                transport.writeMessage(new Error(m, e));
+            } catch (IOException exIo) {
+                logger.debug("", exIo);
+            } catch (DBusException exDe) {
+                logger.debug("", exDe);
             }
         }
     }
@@ -1185,19 +1648,29 @@ public abstract class AbstractConnection implements Closeable {
         return connected;
     }
 
+    /**
+     * Returns true if the transport of this connection is able to pass file descriptors.
+     *
+     * @return boolean
+     */
+    public boolean isFileDescriptorSupported() {
+        AbstractTransport currentTransport = transport;
+        return null != currentTransport && currentTransport.isFileDescriptorSupported();
+    }
+
     protected Queue<Error> getPendingErrorQueue() {
         return pendingErrorQueue;
     }
 
-    protected Map<SignalTuple, Queue<DBusSigHandler<? extends DBusSignal>>> getHandledSignals() {
+    protected SignalHandlerIndex<DBusSigHandler<? extends DBusSignal>> getHandledSignals() {
         return handledSignals;
     }
 
-    protected Map<SignalTuple, Queue<DBusSigHandler<DBusSignal>>> getGenericHandledSignals() {
+    protected SignalHandlerIndex<DBusSigHandler<DBusSignal>> getGenericHandledSignals() {
         return genericHandledSignals;
     }
 
-    protected Map<Long, MethodCall> getPendingCalls() {
+    protected PendingCallRegistry getPendingCalls() {
         return pendingCalls;
     }
 
@@ -0,0 +1,240 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+
+import com.github.hypfvieh.threads.NameableThreadFactory;
+
+/**
+ * Standard implementations of {@link IDispatchPolicy}.
+ * <p>
+ * <ul>
+ * <li>{@link #sharedPool(int)}: all messages are handled by one fixed thread pool (default, 4 threads).
+ * Calls to the same object and signals of the same type may run concurrently and out of order.</li>
+ * <li>{@link #serial(int)} / {@link #serial(ExecutorService)}: method calls to the same exported object and
+ * signals of the same type (interface and member) are handled one after another in the order they were received.
+ * A slow object or signal handler occupies at most one thread, so other objects are not starved.
+ * A method doing a blocking call to another method of the same object (e.g. via another connection) will not return.</li>
+ * <li>{@link #executor(ExecutorService)}: all messages are handled by the given executor.</li>
+ * <li>{@link #threadPerTask(ThreadFactory)} / {@link #serialThreadPerTask(ThreadFactory)}: every message is handled
+ * by a new thread of the given factory (intended for virtual threads).</li>
+ * <li>{@link #callerRuns()}: all messages are handled by the thread reading the messages.
+ * Handlers must not do blocking calls on the same connection, as the reply could never be read.</li>
+ * </ul>
+ * Signals of selected types can be handled by a dedicated executor using
+ * {@link #withSignalExecutor(String, String, Executor)}.
+ * Executor services passed to this class are not shut down when the connection is closed.
+ * </p>
+ */
+public final class DispatchPolicy implements IDispatchPolicy {
+    /** Number of threads used by the default policy. */
+    public static final int                       DEFAULT_THREAD_COUNT = 4;
+
+    private static final Executor                 CALLER_RUNS          = Runnable::run;
+
+    /** Executor for all tasks not handled by a dedicated executor, null if tasks run in the calling thread. */
+    private final ExecutorService                 executor;
+    private final boolean                         ownsExecutor;
+    private final boolean                         serial;
+
+    /** Serial executors of exported objects, removed when the object is no longer exported. */
+    private final Map<ExportedObject, Executor>   objectExecutors      = Collections.synchronizedMap(new WeakHashMap<>());
+    /** Executors of signal types, keyed by interface and member name. */
+    private final Map<String, Executor>           signalExecutors      = new ConcurrentHashMap<>();
+    private final Map<String, Executor>           dedicatedExecutors   = new ConcurrentHashMap<>();
+
+    private DispatchPolicy(ExecutorService _executor, boolean _ownsExecutor, boolean _serial) {
+        executor = _executor;
+        ownsExecutor = _ownsExecutor;
+        serial = _serial;
+    }
+
+    /**
+     * Handle all messages in a fixed thread pool.
+     *
+     * @param _threads number of threads
+     * @return new policy
+     */
+    public static DispatchPolicy sharedPool(int _threads) {
+        return new DispatchPolicy(createPool(_threads), true, false);
+    }
+
+    /**
+     * Handle all messages in a fixed thread pool using threads of the given factory.
+     *
+     * @param _threads number of threads
+     * @param _threadFactory thread factory
+     * @return new policy
+     */
+    public static DispatchPolicy sharedPool(int _threads, ThreadFactory _threadFactory) {
+        return new DispatchPolicy(Executors.newFixedThreadPool(_threads, _threadFactory), true, false);
+    }
+
+    /**
+     * Handle every message by a new thread of the given factory.
+     * Use a factory creating virtual threads, so there is no limit of concurrently executed handlers.
+     *
+     * @param _threadFactory thread factory
+     * @return new policy
+     */
+    public static DispatchPolicy threadPerTask(ThreadFactory _threadFactory) {
+        return new DispatchPolicy(new ThreadPerTaskExecutor(_threadFactory), true, false);
+    }
+
+    /**
+     * Handle method calls of each exported object and signals of each type in order,
+     * using a new thread of the given factory for each object or signal type with pending messages.
+     *
+     * @param _threadFactory thread factory
+     * @return new policy
+     */
+    public static DispatchPolicy serialThreadPerTask(ThreadFactory _threadFactory) {
+        return new DispatchPolicy(new ThreadPerTaskExecutor(_threadFactory), true, true);
+    }
+
+    /**
+     * Handle method calls of each exported object and signals of each type in order,
+     * using a fixed thread pool shared by all objects and signal types.
+     *
+     * @param _threads number of threads
+     * @return new policy
+     */
+    public static DispatchPolicy serial(int _threads) {
+        return new DispatchPolicy(createPool(_threads), true, true);
+    }
+
+    /**
+     * Handle method calls of each exported object and signals of each type in order,
+     * using the given executor service.
+     *
+     * @param _executor executor service, not shut down by the connection
+     * @return new policy
+     */
+    public static DispatchPolicy serial(ExecutorService _executor) {
+        return new DispatchPolicy(_executor, false, true);
+    }
+
+    /**
+     * Handle all messages using the given executor service.
+     *
+     * @param _executor executor service, not shut down by the connection
+     * @return new policy
+     */
+    public static DispatchPolicy executor(ExecutorService _executor) {
+        return new DispatchPolicy(_executor, false, false);
+    }
+
+    /**
+     * Handle all messages in the thread reading them.
+     *
+     * @return new policy
+     */
+    public static DispatchPolicy callerRuns() {
+        return new DispatchPolicy(null, false, false);
+    }
+
+    private static ExecutorService createPool(int _threads) {
+        return Executors.newFixedThreadPool(_threads, new NameableThreadFactory("DBus Worker Thread-", false));
+    }
+
+    /**
+     * Handle signals of the given type using the given executor.
+     * The executor has to keep the order of tasks if the order of the signals is relevant.
+     *
+     * @param _interface D-Bus interface name of the signal
+     * @param _member name of the signal
+     * @param _executor executor, not shut down by the connection
+     * @return this
+     */
+    public DispatchPolicy withSignalExecutor(String _interface, String _member, Executor _executor) {
+        dedicatedExecutors.put(_interface + '.' + _member, _executor);
+        return this;
+    }
+
+    /**
+     * Change the number of threads of the thread pool created by this policy.
+     * Already submitted tasks are not affected.
+     *
+     * @param _threads new number of threads
+     * @return true if changed, false if this policy does not use an own thread pool
+     */
+    public boolean setThreadCount(int _threads) {
+        if (!ownsExecutor || !(executor instanceof ThreadPoolExecutor)) {
+            return false;
+        }
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        if (_threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(_threads);
+            pool.setCorePoolSize(_threads);
+        } else {
+            pool.setCorePoolSize(_threads);
+            pool.setMaximumPoolSize(_threads);
+        }
+        return true;
+    }
+
+    private Executor getDefaultExecutor() {
+        return null == executor ? CALLER_RUNS : executor;
+    }
+
+    @Override
+    public Executor getMethodCallExecutor(ExportedObject _object, MethodCall _call) {
+        if (!serial || null == _object) {
+            return getDefaultExecutor();
+        }
+        return objectExecutors.computeIfAbsent(_object, o -> new SerialExecutor(executor));
+    }
+
+    @Override
+    public Executor getSignalExecutor(DBusSignal _signal) {
+        if (dedicatedExecutors.isEmpty() && !serial) {
+            return getDefaultExecutor();
+        }
+        String key = _signal.getInterface() + '.' + _signal.getName();
+        Executor dedicated = dedicatedExecutors.get(key);
+        if (null != dedicated) {
+            return dedicated;
+        }
+        if (!serial) {
+            return getDefaultExecutor();
+        }
+        return signalExecutors.computeIfAbsent(key, k -> new SerialExecutor(executor));
+    }
+
+    @Override
+    public Executor getCallbackExecutor(Message _reply) {
+        return getDefaultExecutor();
+    }
+
+    @Override
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long _timeout, TimeUnit _unit) throws InterruptedException {
+        return !ownsExecutor || executor.awaitTermination(_timeout, _unit);
+    }
+
+    @Override
+    public void shutdownNow() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,54 +1,35 @@
 package org.freedesktop.dbus.connections;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-
 import org.freedesktop.dbus.messages.ExportedObject;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import org.freedesktop.dbus.messages.ObjectTree;
+
+/**
+ * Fallback objects of a connection.
+ * <p>
+ * Fallbacks are stored in the object tree of the connection, so the fallback for a path is found
+ * by walking the path once (longest matching prefix wins) without locking.
+ * </p>
+ */
 public class FallbackContainer {
 
+    private final ObjectTree objectTree;
+
     /**
-     * @param _abstractConnection
+     * @param _objectTree object tree of the connection
      */
-    FallbackContainer() {
+    FallbackContainer(ObjectTree _objectTree) {
+        objectTree = _objectTree;
     }
 
-    private final Logger                  logger    = LoggerFactory.getLogger(getClass());
-    private Map<String[], ExportedObject> fallbacks = new HashMap<>();
-
-    public synchronized void add(String path, ExportedObject eo) {
-        logger.debug("Adding fallback on {} of {}", path, eo);
-        fallbacks.put(path.split("/"), eo);
+    public void add(String path, ExportedObject eo) {
+        objectTree.addFallback(path, eo);
     }
 
-    public synchronized void remove(String path) {
-        logger.debug("Removing fallback on {}", path);
-        fallbacks.remove(path.split("/"));
+    public void remove(String path) {
+        objectTree.removeFallback(path);
     }
 
-    public synchronized ExportedObject get(String path) {
-        int best = 0;
-        int i = 0;
-        ExportedObject bestobject = null;
-        String[] pathel = path.split("/");
-        for (String[] fbpath : fallbacks.keySet()) {
-            logger.trace("Trying fallback path {} to match {}",
-                    Arrays.deepToString(fbpath), Arrays.deepToString(pathel));
-            for (i = 0; i < pathel.length && i < fbpath.length; i++) {
-                if (!pathel[i].equals(fbpath[i])) {
-                    break;
-                }
-            }
-            if (i > 0 && i == fbpath.length && i > best) {
-                bestobject = fallbacks.get(fbpath);
-            }
-            logger.trace("Matches {} bestobject now {}", i, bestobject);
-        }
-
-        logger.debug("Found fallback for {} of {}", path, bestobject);
-        return bestobject;
+    public ExportedObject get(String path) {
+        return objectTree.getFallback(path);
     }
-}
\ No newline at end of file
+}
@@ -3,7 +3,8 @@ package org.freedesktop.dbus.connections;
 import org.freedesktop.dbus.errors.UnknownObject;
 import org.freedesktop.dbus.messages.ExportedObject;
 
-public class GlobalHandler implements org.freedesktop.dbus.interfaces.Peer, org.freedesktop.dbus.interfaces.Introspectable {
+public class GlobalHandler implements org.freedesktop.dbus.interfaces.Peer, org.freedesktop.dbus.interfaces.Introspectable,
+        org.freedesktop.dbus.interfaces.SharedMemory {
     /**
      * 
      */
@@ -56,4 +57,9 @@ public class GlobalHandler implements org.freedesktop.dbus.interfaces.Peer, org.
     public String GetMachineId() {
         return connection.getMachineId();
     }
+
+    @Override
+    public boolean SupportsSharedMemory() {
+        return connection.isFileDescriptorSupported();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+
+/**
+ * Decides which {@link Executor} runs the handling of an incoming message.
+ * <p>
+ * All methods are called by the thread reading messages, in the order the messages were received.
+ * Executors returned for the same object (or signal) should run their tasks in submission order
+ * if the order of calls (or signals) has to be kept.
+ * </p>
+ * See {@link DispatchPolicy} for the available implementations.
+ */
+public interface IDispatchPolicy {
+    /**
+     * Returns the executor used to invoke a method of an exported object.
+     *
+     * @param _object exported object, null for the methods of the standard interfaces (e.g. Peer, Introspectable)
+     * @param _call incoming method call
+     * @return executor
+     */
+    Executor getMethodCallExecutor(ExportedObject _object, MethodCall _call);
+
+    /**
+     * Returns the executor used to run the handlers of a signal.
+     *
+     * @param _signal incoming signal
+     * @return executor
+     */
+    Executor getSignalExecutor(DBusSignal _signal);
+
+    /**
+     * Returns the executor used to run callbacks and to complete futures of method calls.
+     *
+     * @param _reply reply or error received for the call
+     * @return executor
+     */
+    Executor getCallbackExecutor(Message _reply);
+
+    /**
+     * Stop accepting new tasks, already submitted tasks are still executed.
+     */
+    void shutdown();
+
+    /**
+     * Wait for submitted tasks to complete after {@link #shutdown()}.
+     *
+     * @param _timeout maximum time to wait
+     * @param _unit unit of timeout
+     * @return true if all tasks completed, false if timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitTermination(long _timeout, TimeUnit _unit) throws InterruptedException;
+
+    /**
+     * Try to stop all running tasks and drop all waiting tasks.
+     */
+    void shutdownNow();
+}
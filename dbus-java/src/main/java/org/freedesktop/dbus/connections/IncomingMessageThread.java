@@ -1,6 +1,7 @@
 package org.freedesktop.dbus.connections;
 
 import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
 
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.interfaces.FatalException;
@@ -8,27 +9,46 @@ import org.freedesktop.dbus.messages.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class IncomingMessageThread extends Thread {
+/**
+ * Reads messages from a blocking transport and passes them to the connection.
+ * <p>
+ * The connection runs this task on a thread of its thread factory using {@link #start(ThreadFactory)},
+ * so custom (e.g. virtual) threads can be used.
+ * </p>
+ */
+public class IncomingMessageThread implements Runnable {
     private final Logger             logger = LoggerFactory.getLogger(getClass());
 
-    private boolean                  terminate;
+    private volatile boolean         terminate;
+    /** Thread created by the thread factory, running this task. */
+    private volatile Thread          runner;
     private final AbstractConnection connection;
 
     public IncomingMessageThread(AbstractConnection _connection) {
         Objects.requireNonNull(_connection);
         connection = _connection;
-        setName("DBusConnection");
-        setDaemon(true);
+    }
+
+    /**
+     * Start reading using a new thread of the given factory.
+     *
+     * @param _threadFactory factory
+     */
+    public void start(ThreadFactory _threadFactory) {
+        runner = _threadFactory.newThread(this);
+        runner.start();
     }
 
     public void setTerminate(boolean _terminate) {
         terminate = _terminate;
-        interrupt();
+        Thread t = runner;
+        if (null != t) {
+            t.interrupt();
+        }
     }
 
     @Override
     public void run() {
-
         Message msg = null;
         while (!terminate) {
             msg = null;
@@ -0,0 +1,93 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.freedesktop.dbus.DBusPath;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.ObjectManager;
+import org.freedesktop.dbus.interfaces.Properties;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.ExportedProperty;
+import org.freedesktop.dbus.types.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Built-in implementation of the ObjectManager interface, created by
+ * {@link AbstractConnection#exportObjectManager(String)}.
+ * <p>
+ * The managed objects are taken from the object tree of the connection, so only the sub-tree below the manager
+ * is visited. Objects below another object manager are managed by that manager and not returned.
+ * </p>
+ */
+class ObjectManagerHandler implements ObjectManager {
+    private static final Logger      LOGGER = LoggerFactory.getLogger(ObjectManagerHandler.class);
+
+    private final AbstractConnection connection;
+    private final String             objectPath;
+
+    ObjectManagerHandler(AbstractConnection _connection, String _objectPath) {
+        connection = _connection;
+        objectPath = _objectPath;
+    }
+
+    @Override
+    public Map<DBusPath, Map<String, Map<String, Variant<?>>>> GetManagedObjects() {
+        Map<String, ExportedObject> objects = connection.getObjectTree().getObjectsBelow(objectPath,
+                connection::isObjectManager);
+        Map<DBusPath, Map<String, Map<String, Variant<?>>>> result = new LinkedHashMap<>(objects.size() * 4 / 3 + 1);
+        for (Entry<String, ExportedObject> e : objects.entrySet()) {
+            Map<String, Map<String, Variant<?>>> interfaces = getInterfaces(connection, e.getValue());
+            if (null != interfaces) {
+                result.put(new DBusPath(e.getKey()), interfaces);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the interfaces of an exported object with their properties, as used by the ObjectManager interface.
+     *
+     * @param _connection connection
+     * @param _object exported object
+     * @return map of interface name to properties, null if the object was garbage collected
+     */
+    static Map<String, Map<String, Variant<?>>> getInterfaces(AbstractConnection _connection, ExportedObject _object) {
+        DBusInterface target = _object.getObject().get();
+        if (null == target) {
+            return null;
+        }
+        Map<String, Map<String, Variant<?>>> interfaces = new LinkedHashMap<>();
+        for (String iface : _object.getInterfaceNames()) {
+            Map<String, ExportedProperty> properties = _object.getProperties(iface);
+            if (target instanceof Properties && !iface.startsWith("org.freedesktop.DBus.")) {
+                // object provides its own properties implementation
+                try {
+                    interfaces.put(iface, ((Properties) target).GetAll(iface));
+                } catch (DBusExecutionException _ex) {
+                    LOGGER.debug("Could not get properties of interface {}", iface, _ex);
+                    interfaces.put(iface, Collections.emptyMap());
+                }
+            } else if (properties.isEmpty()) {
+                interfaces.put(iface, Collections.emptyMap());
+            } else {
+                interfaces.put(iface, PropertiesHandler.getAll(_connection, target, properties));
+            }
+        }
+        return interfaces;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public String getObjectPath() {
+        return objectPath;
+    }
+}
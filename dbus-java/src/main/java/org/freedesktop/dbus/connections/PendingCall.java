@@ -0,0 +1,97 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.DBusAsyncReply;
+import org.freedesktop.dbus.interfaces.CallbackHandler;
+import org.freedesktop.dbus.messages.MethodCall;
+
+/**
+ * A method call waiting for its reply, together with the callback (if any)
+ * and the state required to convert the reply for the callback.
+ */
+public final class PendingCall {
+    private final long                serial;
+    private final MethodCall          call;
+    private final CallbackHandler<?>  callback;
+    private final DBusAsyncReply<?>   asyncReply;
+    private final long                deadline;
+    private final boolean             expiring;
+
+    private volatile PendingCallRegistry registry;
+    private volatile boolean          completed;
+
+    /**
+     * Create a new pending call.
+     *
+     * @param _call method call
+     * @param _callback callback to execute when reply is received, may be null
+     * @param _asyncReply reply handle used to convert the reply for the callback, may be null
+     * @param _timeoutMillis time to wait for a reply, values &lt;= 0 will wait forever
+     */
+    public PendingCall(MethodCall _call, CallbackHandler<?> _callback, DBusAsyncReply<?> _asyncReply, long _timeoutMillis) {
+        serial = _call.getSerial();
+        call = _call;
+        callback = _callback;
+        asyncReply = _asyncReply;
+        expiring = _timeoutMillis > 0;
+        deadline = expiring ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_timeoutMillis) : 0;
+    }
+
+    public long getSerial() {
+        return serial;
+    }
+
+    public MethodCall getCall() {
+        return call;
+    }
+
+    public CallbackHandler<?> getCallback() {
+        return callback;
+    }
+
+    public DBusAsyncReply<?> getAsyncReply() {
+        return asyncReply;
+    }
+
+    /**
+     * Returns true if this call will be completed with a timeout when no reply was received in time.
+     * @return true if a deadline is set
+     */
+    boolean isExpiring() {
+        return expiring;
+    }
+
+    /**
+     * Deadline in terms of {@link System#nanoTime()}.
+     * @return deadline
+     */
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns true if this call was removed from its registry (reply received, timed out or cancelled).
+     * @return true if completed
+     */
+    boolean isCompleted() {
+        return completed;
+    }
+
+    void setCompleted() {
+        completed = true;
+    }
+
+    PendingCallRegistry getRegistry() {
+        return registry;
+    }
+
+    void setRegistry(PendingCallRegistry _registry) {
+        registry = _registry;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " [serial=" + serial + ", call=" + call + ", callback=" + callback + "]";
+    }
+}
@@ -0,0 +1,151 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.hypfvieh.threads.NameableThreadFactory;
+
+/**
+ * Hashed timer wheel expiring {@link PendingCall}s which did not receive a reply in time.
+ * <p>
+ * One reaper thread is shared by all connections. New calls are added to a lock-free queue
+ * which is transferred to the wheel by the reaper thread on every tick, so the wheel itself is
+ * only accessed by a single thread. Calls receiving their reply are not removed from the wheel,
+ * they are dropped when their bucket is processed.
+ * The reaper thread parks when there is nothing to expire.
+ * </p>
+ */
+final class PendingCallReaper implements Runnable {
+    /** Resolution of the timer. */
+    static final long                TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** Number of buckets, must be a power of two. */
+    private static final int         WHEEL_SIZE = 1024;
+    private static final int         WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static PendingCallReaper instance;
+
+    private final Logger             logger     = LoggerFactory.getLogger(getClass());
+
+    private final Queue<PendingCall> incoming   = new ConcurrentLinkedQueue<>();
+    private final List<List<PendingCall>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final long               startNanos = System.nanoTime();
+    private final Thread             thread;
+
+    /** Last processed tick, only used by reaper thread. */
+    private long                     tick;
+    /** Number of calls in the wheel, only used by reaper thread. */
+    private int                      scheduled;
+
+    private volatile boolean         idle;
+
+    private PendingCallReaper() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        thread = new NameableThreadFactory("DBus Pending Call Reaper-", true).newThread(this);
+        thread.start();
+    }
+
+    static synchronized PendingCallReaper getInstance() {
+        if (instance == null) {
+            instance = new PendingCallReaper();
+        }
+        return instance;
+    }
+
+    /**
+     * Schedule expiry of the given call.
+     * @param _call call with timeout
+     */
+    void schedule(PendingCall _call) {
+        incoming.add(_call);
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            if (scheduled == 0 && incoming.isEmpty()) {
+                idle = true;
+                if (incoming.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                // wheel is empty, no need to process the skipped ticks
+                tick = Math.max(tick, toTick(System.nanoTime()) - 1);
+                continue;
+            }
+
+            long next = tick + 1;
+            long wait = startNanos + next * TICK_NANOS - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            transferIncoming(next);
+            expireBucket(next);
+            tick = next;
+        }
+    }
+
+    private void transferIncoming(long _next) {
+        PendingCall pc;
+        while ((pc = incoming.poll()) != null) {
+            if (pc.isCompleted()) {
+                continue;
+            }
+            long target = Math.max(_next, toTick(pc.getDeadline()));
+            wheel.get((int) target & WHEEL_MASK).add(pc);
+            scheduled++;
+        }
+    }
+
+    private void expireBucket(long _tick) {
+        List<PendingCall> bucket = wheel.get((int) _tick & WHEEL_MASK);
+        if (bucket.isEmpty()) {
+            return;
+        }
+
+        int retained = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            PendingCall pc = bucket.get(i);
+            if (pc.isCompleted()) {
+                continue;
+            }
+            if (toTick(pc.getDeadline()) > _tick) {
+                // deadline is in one of the next rounds
+                bucket.set(retained++, pc);
+                continue;
+            }
+            try {
+                pc.getRegistry().expire(pc);
+            } catch (Exception _ex) {
+                logger.error("Exception while expiring pending call {}", pc, _ex);
+            }
+        }
+
+        scheduled -= bucket.size() - retained;
+        bucket.subList(retained, bucket.size()).clear();
+    }
+
+    /**
+     * Converts the given {@link System#nanoTime()} value to the tick which will be processed at or after this time.
+     */
+    private long toTick(long _nanos) {
+        long elapsed = _nanos - startNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (elapsed + TICK_NANOS - 1) / TICK_NANOS;
+    }
+}
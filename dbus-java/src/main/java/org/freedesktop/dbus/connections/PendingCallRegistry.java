@@ -0,0 +1,169 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Registry of all method calls waiting for a reply, keyed by the serial of the call.
+ * <p>
+ * Message serials are increasing, so calls sent at the same time are spread over a
+ * ring of slots indexed by the lower bits of the serial. Adding, looking up and removing a call
+ * only requires a single compare-and-set on its slot, no locking and no boxing of the serial is done.
+ * Only if a slot is still occupied by a much older call (more than {@link #SLOTS} calls ago) the
+ * call is stored in a (boxed) overflow map.
+ * </p>
+ * <p>
+ * Calls with a timeout are handed to the shared {@link PendingCallReaper}. When the timeout elapses
+ * before a reply was received, the call is removed and passed to the timeout handler.
+ * </p>
+ */
+public final class PendingCallRegistry {
+    /** Number of slots, must be a power of two. */
+    public static final int                   SLOTS    = 4096;
+    private static final int                  MASK     = SLOTS - 1;
+
+    private final AtomicReferenceArray<PendingCall> slots    = new AtomicReferenceArray<>(SLOTS);
+    private final Map<Long, PendingCall>      overflow = new ConcurrentHashMap<>();
+    private final LongAdder                   size     = new LongAdder();
+
+    private final Consumer<PendingCall>       timeoutHandler;
+
+    /**
+     * Create a new registry.
+     *
+     * @param _timeoutHandler called (on the reaper thread) with every call which did not receive a reply in time,
+     *          the call has already been removed when the handler is called
+     */
+    public PendingCallRegistry(Consumer<PendingCall> _timeoutHandler) {
+        timeoutHandler = _timeoutHandler;
+    }
+
+    /**
+     * Add a pending call.
+     * If the call has a timeout, it will be scheduled for expiry.
+     *
+     * @param _call call to add
+     */
+    public void add(PendingCall _call) {
+        _call.setRegistry(this);
+        int idx = index(_call.getSerial());
+        if (!slots.compareAndSet(idx, null, _call)) {
+            overflow.put(_call.getSerial(), _call);
+        }
+        size.increment();
+
+        if (_call.isExpiring()) {
+            PendingCallReaper.getInstance().schedule(_call);
+        }
+    }
+
+    /**
+     * Returns the pending call for the given serial.
+     *
+     * @param _serial serial of method call
+     * @return pending call or null if there is no call with this serial
+     */
+    public PendingCall get(long _serial) {
+        PendingCall pc = slots.get(index(_serial));
+        if (pc != null && pc.getSerial() == _serial) {
+            return pc;
+        }
+        return overflow.isEmpty() ? null : overflow.get(_serial);
+    }
+
+    /**
+     * Removes the pending call with the given serial.
+     * Only one caller will ever receive a particular call.
+     *
+     * @param _serial serial of method call
+     * @return removed call or null if there is no call with this serial
+     */
+    public PendingCall remove(long _serial) {
+        int idx = index(_serial);
+        PendingCall pc = slots.get(idx);
+        if (pc != null && pc.getSerial() == _serial) {
+            if (slots.compareAndSet(idx, pc, null)) {
+                return completed(pc);
+            }
+            return null;
+        }
+        if (overflow.isEmpty()) {
+            return null;
+        }
+        pc = overflow.remove(_serial);
+        return pc == null ? null : completed(pc);
+    }
+
+    /**
+     * Removes the given pending call.
+     *
+     * @param _call call to remove
+     * @return true if the call was removed by this invocation
+     */
+    public boolean remove(PendingCall _call) {
+        if (slots.compareAndSet(index(_call.getSerial()), _call, null)
+                || overflow.remove(_call.getSerial(), _call)) {
+            completed(_call);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all pending calls.
+     *
+     * @return list of removed calls
+     */
+    public List<PendingCall> removeAll() {
+        List<PendingCall> result = new ArrayList<>();
+        for (int i = 0; i < SLOTS; i++) {
+            PendingCall pc = slots.get(i);
+            if (pc != null && slots.compareAndSet(i, pc, null)) {
+                result.add(completed(pc));
+            }
+        }
+        for (PendingCall pc : overflow.values()) {
+            if (overflow.remove(pc.getSerial(), pc)) {
+                result.add(completed(pc));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of calls currently waiting for a reply.
+     * @return size
+     */
+    public int size() {
+        return size.intValue();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Called by the reaper when the timeout of the given call elapsed.
+     * @param _call expired call
+     */
+    void expire(PendingCall _call) {
+        if (remove(_call)) {
+            timeoutHandler.accept(_call);
+        }
+    }
+
+    private PendingCall completed(PendingCall _call) {
+        _call.setCompleted();
+        size.decrement();
+        return _call;
+    }
+
+    private static int index(long _serial) {
+        return (int) _serial & MASK;
+    }
+}
@@ -0,0 +1,126 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal.EmitChangeSignal;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.Properties.PropertiesChanged;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.ExportedProperty;
+import org.freedesktop.dbus.types.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects changed properties of exported objects and emits the PropertiesChanged signals.
+ * <p>
+ * The first change of an object submits a task to the executor of the object's method calls
+ * (see {@link IDispatchPolicy#getMethodCallExecutor(ExportedObject, org.freedesktop.dbus.messages.MethodCall)}).
+ * All changes of the object until this task runs are sent with one signal per interface,
+ * using the values of the properties at that time.
+ * </p>
+ */
+final class PropertiesChangedEmitter {
+    private final Logger                       logger  = LoggerFactory.getLogger(getClass());
+
+    private final AbstractConnection           connection;
+    private final Map<String, PendingChanges>  pending = new ConcurrentHashMap<>();
+
+    PropertiesChangedEmitter(AbstractConnection _connection) {
+        connection = _connection;
+    }
+
+    /**
+     * Record a changed property.
+     *
+     * @param _objectPath path of the object
+     * @param _object exported object
+     * @param _interfaceName interface of the property
+     * @param _propertyName property
+     */
+    void propertyChanged(String _objectPath, ExportedObject _object, String _interfaceName, String _propertyName) {
+        boolean[] created = new boolean[1];
+        // changes are only modified inside compute, so they cannot be added after the flush removed them
+        pending.compute(_objectPath, (path, changes) -> {
+            PendingChanges result = changes;
+            if (null == result || result.object != _object) {
+                result = new PendingChanges(_object);
+                created[0] = true;
+            }
+            result.add(_interfaceName, _propertyName);
+            return result;
+        });
+        if (created[0]) {
+            try {
+                connection.execute(p -> p.getMethodCallExecutor(_object, null), () -> flush(_objectPath));
+            } catch (RejectedExecutionException _ex) {
+                logger.debug("Not sending changed properties of {}, connection is closing", _objectPath);
+                pending.remove(_objectPath);
+            }
+        }
+    }
+
+    private void flush(String _objectPath) {
+        PendingChanges changes = pending.remove(_objectPath);
+        if (null == changes) {
+            return;
+        }
+        DBusInterface target = changes.object.getObject().get();
+        if (null == target) {
+            return;
+        }
+        for (Entry<String, Set<String>> e : changes.properties.entrySet()) {
+            Map<String, ExportedProperty> properties = changes.object.getProperties(e.getKey());
+            Map<String, Variant<?>> changed = new LinkedHashMap<>();
+            List<String> invalidated = new ArrayList<>();
+            for (String name : e.getValue()) {
+                ExportedProperty property = properties.get(name);
+                EmitChangeSignal mode = null == property ? EmitChangeSignal.INVALIDATES : property.getEmitsChangedSignal();
+                if (EmitChangeSignal.TRUE == mode && property.isReadable()) {
+                    try {
+                        changed.put(name, PropertiesHandler.getValue(connection, target, property));
+                    } catch (DBusExecutionException _ex) {
+                        logger.debug("Could not read changed property {}", property, _ex);
+                        invalidated.add(name);
+                    }
+                } else if (EmitChangeSignal.TRUE == mode || EmitChangeSignal.INVALIDATES == mode) {
+                    invalidated.add(name);
+                }
+            }
+            if (changed.isEmpty() && invalidated.isEmpty()) {
+                continue;
+            }
+            try {
+                connection.sendMessage(new PropertiesChanged(_objectPath, e.getKey(), changed, invalidated));
+            } catch (DBusException _ex) {
+                logger.error("Could not create PropertiesChanged signal for {}", _objectPath, _ex);
+            }
+        }
+    }
+
+    /**
+     * Changed properties of one object by interface name.
+     */
+    private static final class PendingChanges {
+        private final ExportedObject           object;
+        private final Map<String, Set<String>> properties = new LinkedHashMap<>();
+
+        private PendingChanges(ExportedObject _object) {
+            object = _object;
+        }
+
+        private void add(String _interfaceName, String _propertyName) {
+            properties.computeIfAbsent(_interfaceName, i -> new LinkedHashSet<>()).add(_propertyName);
+        }
+    }
+}
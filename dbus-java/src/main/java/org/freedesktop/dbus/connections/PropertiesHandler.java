@@ -0,0 +1,136 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.freedesktop.dbus.errors.PropertyReadOnly;
+import org.freedesktop.dbus.errors.UnknownObject;
+import org.freedesktop.dbus.errors.UnknownProperty;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.Properties;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.ExportedProperty;
+import org.freedesktop.dbus.types.Variant;
+
+/**
+ * Built-in implementation of the Properties interface for exported objects
+ * using {@link org.freedesktop.dbus.annotations.DBusProperty} annotated accessors.
+ */
+class PropertiesHandler implements Properties {
+    private final AbstractConnection connection;
+    private final ExportedObject     exportedObject;
+    private final String             objectPath;
+
+    PropertiesHandler(AbstractConnection _connection, ExportedObject _exportedObject, String _objectPath) {
+        connection = _connection;
+        exportedObject = _exportedObject;
+        objectPath = _objectPath;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A> A Get(String _interfaceName, String _propertyName) {
+        ExportedProperty property = findProperty(_interfaceName, _propertyName);
+        if (null == property || !property.isReadable()) {
+            throw new UnknownProperty(String.format("The property `%s.%s' does not exist on this object.",
+                    _interfaceName, _propertyName));
+        }
+        return (A) getValue(connection, getTarget(), property);
+    }
+
+    @Override
+    public <A> void Set(String _interfaceName, String _propertyName, A _value) {
+        ExportedProperty property = findProperty(_interfaceName, _propertyName);
+        if (null == property) {
+            throw new UnknownProperty(String.format("The property `%s.%s' does not exist on this object.",
+                    _interfaceName, _propertyName));
+        }
+        if (!property.isWritable()) {
+            throw new PropertyReadOnly(String.format("The property `%s.%s' is read-only.",
+                    _interfaceName, _propertyName));
+        }
+        try {
+            property.setValue(getTarget(), _value, connection);
+        } catch (DBusExecutionException _ex) {
+            throw _ex;
+        } catch (Throwable _ex) {
+            throw new DBusExecutionException(String.format("Error setting property %s.%s: %s",
+                    _interfaceName, _propertyName, _ex.getMessage()));
+        }
+        connection.propertyChanged(objectPath, property.getInterfaceName(), _propertyName);
+    }
+
+    @Override
+    public Map<String, Variant<?>> GetAll(String _interfaceName) {
+        return getAll(connection, getTarget(), exportedObject.getProperties(_interfaceName));
+    }
+
+    /**
+     * Reads all readable properties.
+     *
+     * @param _connection connection
+     * @param _target exported object
+     * @param _properties properties to read
+     * @return values by property name
+     */
+    static Map<String, Variant<?>> getAll(AbstractConnection _connection, Object _target,
+            Map<String, ExportedProperty> _properties) {
+        Map<String, Variant<?>> values = new LinkedHashMap<>(_properties.size() * 4 / 3 + 1);
+        for (ExportedProperty property : _properties.values()) {
+            if (property.isReadable()) {
+                values.put(property.getName(), getValue(_connection, _target, property));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Looks up a property, an empty interface name searches the properties of all interfaces of the object.
+     *
+     * @param _interfaceName interface name, may be empty
+     * @param _propertyName property name
+     * @return property or null if the object has no such property
+     */
+    private ExportedProperty findProperty(String _interfaceName, String _propertyName) {
+        if (null != _interfaceName && !_interfaceName.isEmpty()) {
+            return exportedObject.getProperties(_interfaceName).get(_propertyName);
+        }
+        for (Map<String, ExportedProperty> properties : exportedObject.getProperties().values()) {
+            ExportedProperty property = properties.get(_propertyName);
+            if (null != property) {
+                return property;
+            }
+        }
+        return null;
+    }
+
+    private Object getTarget() {
+        DBusInterface target = exportedObject.getObject().get();
+        if (null == target) {
+            throw new UnknownObject("Object was garbage collected");
+        }
+        return target;
+    }
+
+    static Variant<?> getValue(AbstractConnection _connection, Object _target, ExportedProperty _property) {
+        try {
+            return _property.getValue(_target, _connection);
+        } catch (DBusExecutionException _ex) {
+            throw _ex;
+        } catch (Throwable _ex) {
+            throw new DBusExecutionException(String.format("Error getting property %s.%s: %s",
+                    _property.getInterfaceName(), _property.getName(), _ex.getMessage()));
+        }
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public String getObjectPath() {
+        return objectPath;
+    }
+}
@@ -1,10 +1,12 @@
 package org.freedesktop.dbus.connections;
 
+import static org.freedesktop.dbus.connections.SASL.SaslCommand.AGREE_UNIX_FD;
 import static org.freedesktop.dbus.connections.SASL.SaslCommand.AUTH;
 import static org.freedesktop.dbus.connections.SASL.SaslCommand.BEGIN;
 import static org.freedesktop.dbus.connections.SASL.SaslCommand.CANCEL;
 import static org.freedesktop.dbus.connections.SASL.SaslCommand.DATA;
 import static org.freedesktop.dbus.connections.SASL.SaslCommand.ERROR;
+import static org.freedesktop.dbus.connections.SASL.SaslCommand.NEGOTIATE_UNIX_FD;
 import static org.freedesktop.dbus.connections.SASL.SaslCommand.REJECTED;
 
 import java.io.BufferedReader;
@@ -53,6 +55,9 @@ public class SASL {
     private String challenge = "";
     private String cookie    = "";
 
+    /** True if both sides agreed on passing unix file descriptors during the last authentication. */
+    private boolean fileDescriptorSupported;
+
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
     
@@ -389,6 +394,27 @@ public class SASL {
      * @throws IOException on failure
      */
     public boolean auth(SaslMode mode, int types, String guid, OutputStream out, InputStream in, Socket us) throws IOException {
+        return auth(mode, types, guid, out, in, us, false);
+    }
+
+    /**
+     * performs SASL auth on the given streams.
+     * Mode selects whether to run as a SASL server or client.
+     * Types is a bitmask of the available auth types.
+     * If unixFdSupport is true, passing of unix file descriptors is negotiated after successful authentication,
+     * use {@link #isFileDescriptorSupported()} to check if the other side agreed.
+     *
+     * @param mode mode
+     * @param types types
+     * @param guid guid
+     * @param out out
+     * @param in in
+     * @param us us
+     * @param unixFdSupport true if the transport is able to pass unix file descriptors
+     * @return true if the auth was successful and false if it failed.
+     * @throws IOException on failure
+     */
+    public boolean auth(SaslMode mode, int types, String guid, OutputStream out, InputStream in, Socket us, boolean unixFdSupport) throws IOException {
         String luid = null;
         String kernelUid = null;
 
@@ -399,6 +425,7 @@ public class SASL {
         int failed = 0;
         int current = 0;
         SaslAuthState state = SaslAuthState.INITIAL_STATE;
+        fileDescriptorSupported = false;
 
         while (state != SaslAuthState.AUTHENTICATED && state != SaslAuthState.FAILED) {
 
@@ -454,8 +481,7 @@ public class SASL {
                             break;
                         case OK:
                             logger.trace("Authenticated");
-                            send(out, BEGIN);                            
-                            state = SaslAuthState.AUTHENTICATED;
+                            state = sendBegin(out, unixFdSupport);
                             break;
                         default:
                             send(out, ERROR, "Got invalid command");
@@ -466,8 +492,7 @@ public class SASL {
                     c = receive(in);
                     switch (c.getCommand()) {
                     case OK:
-                        send(out, BEGIN);
-                        state = SaslAuthState.AUTHENTICATED;
+                        state = sendBegin(out, unixFdSupport);
                         break;
                     case ERROR:
                     case DATA:
@@ -496,6 +521,24 @@ public class SASL {
                         break;
                     }
                     break;
+                case WAIT_AGREE_UNIX_FD:
+                    c = receive(in);
+                    switch (c.getCommand()) {
+                        case AGREE_UNIX_FD:
+                            fileDescriptorSupported = true;
+                            send(out, BEGIN);
+                            state = SaslAuthState.AUTHENTICATED;
+                            break;
+                        case ERROR:
+                            logger.debug("Server does not support unix file descriptor passing: {}", c.getData());
+                            send(out, BEGIN);
+                            state = SaslAuthState.AUTHENTICATED;
+                            break;
+                        default:
+                            state = SaslAuthState.FAILED;
+                            break;
+                    }
+                    break;
                 case WAIT_REJECT:
                     c = receive(in);
                     switch (c.getCommand()) {
@@ -626,6 +669,14 @@ public class SASL {
                                 send(out, REJECTED, getTypes(types));
                                 state = SaslAuthState.WAIT_AUTH;
                             break;
+                            case NEGOTIATE_UNIX_FD:
+                                if (unixFdSupport) {
+                                    fileDescriptorSupported = true;
+                                    send(out, AGREE_UNIX_FD);
+                                } else {
+                                    send(out, ERROR, "Unix file descriptor passing not supported");
+                                }
+                            break;
                             case BEGIN:
                                     state = SaslAuthState.AUTHENTICATED;
                             break;
@@ -646,6 +697,33 @@ public class SASL {
         return state == SaslAuthState.AUTHENTICATED;
     }
 
+    /**
+     * Finish the authentication on client side.
+     * Negotiates unix file descriptor passing before sending BEGIN if requested.
+     *
+     * @param _out output stream
+     * @param _unixFdSupport true to negotiate unix file descriptor passing
+     * @return new state
+     * @throws IOException on write error
+     */
+    private SaslAuthState sendBegin(OutputStream _out, boolean _unixFdSupport) throws IOException {
+        if (_unixFdSupport) {
+            send(_out, NEGOTIATE_UNIX_FD);
+            return SaslAuthState.WAIT_AGREE_UNIX_FD;
+        }
+        send(_out, BEGIN);
+        return SaslAuthState.AUTHENTICATED;
+    }
+
+    /**
+     * Returns true if both sides agreed on passing unix file descriptors during the last authentication.
+     *
+     * @return boolean
+     */
+    public boolean isFileDescriptorSupported() {
+        return fileDescriptorSupported;
+    }
+
     public static enum SaslMode {
         SERVER, CLIENT;
     }
@@ -657,7 +735,9 @@ public class SASL {
         OK,       
         BEGIN,    
         CANCEL,   
-        ERROR;  
+        ERROR,
+        NEGOTIATE_UNIX_FD,
+        AGREE_UNIX_FD;
     }
 
     static enum SaslAuthState {
@@ -667,6 +747,7 @@ public class SASL {
         WAIT_REJECT,
         WAIT_AUTH,
         WAIT_BEGIN,
+        WAIT_AGREE_UNIX_FD,
         AUTHENTICATED,
         FAILED;
     }
@@ -728,7 +809,13 @@ public class SASL {
                 command = CANCEL;
             } else if (0 == col.compare(ss[0], "ERROR")) {
                 command = ERROR;
-                data = ss[1];
+                if (ss.length > 1) {
+                    data = ss[1];
+                }
+            } else if (0 == col.compare(ss[0], "NEGOTIATE_UNIX_FD")) {
+                command = NEGOTIATE_UNIX_FD;
+            } else if (0 == col.compare(ss[0], "AGREE_UNIX_FD")) {
+                command = AGREE_UNIX_FD;
             } else {
                 throw new IOException("Invalid Command " + ss[0]);
             }
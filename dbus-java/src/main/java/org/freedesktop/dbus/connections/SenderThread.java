@@ -1,64 +1,168 @@
 package org.freedesktop.dbus.connections;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.freedesktop.dbus.messages.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class SenderThread extends Thread {
-    private final Logger logger = LoggerFactory.getLogger(getClass());
+/**
+ * Task draining the outgoing message queue of a connection.
+ * <p>
+ * All messages available in the queue are collected to a batch which is written
+ * to the transport at once (one gathering write, or one flush when using streams).
+ * A batch is written when the queue is empty or when the batch exceeds
+ * {@link #MAX_BATCH_BYTES}, {@link #MAX_BATCH_MESSAGES} or {@link #MAX_BATCH_LATENCY}.
+ * </p>
+ * <p>
+ * The sending thread is never interrupted as interrupting a thread doing I/O on a channel
+ * would close the channel. {@link LockSupport#park(Object)} is used for waiting instead.
+ * </p>
+ * <p>
+ * The connection runs this task on a thread of its thread factory using {@link #start(ThreadFactory)},
+ * so custom (e.g. virtual) threads can be used.
+ * </p>
+ */
+public class SenderThread implements Runnable {
+    /** Maximum number of bytes written in one batch. */
+    static final int                  MAX_BATCH_BYTES    = 65536;
+    /** Maximum number of messages written in one batch. */
+    static final int                  MAX_BATCH_MESSAGES = 512;
+    /** Maximum time (in nanoseconds) spent collecting messages for one batch. */
+    static final long                 MAX_BATCH_LATENCY  = TimeUnit.MILLISECONDS.toNanos(1);
 
-    private boolean      terminate;
+    private final Logger              logger             = LoggerFactory.getLogger(getClass());
 
-    private final LinkedBlockingQueue<Message> outgoingQueue = new LinkedBlockingQueue<>();
+    private volatile boolean          terminate;
+    /** Thread created by the thread factory, running this task. */
+    private volatile Thread           runner;
 
-    private final AbstractConnection abstractConnection;
+    private final Queue<Message>      outgoingQueue      = new ConcurrentLinkedQueue<>();
 
+    private final AbstractConnection  abstractConnection;
 
     SenderThread(AbstractConnection _abstractConnection) {
         abstractConnection = _abstractConnection;
-        setName("DBUS Sender Thread");
     }
 
-    public void terminate() {
-        terminate = true;
-        interrupt();
+    /**
+     * Start sending using a new thread of the given factory.
+     *
+     * @param _threadFactory factory
+     */
+    void start(ThreadFactory _threadFactory) {
+        runner = _threadFactory.newThread(this);
+        runner.start();
+    }
+
+    /**
+     * Wait until all queued messages were sent after {@link #terminate()} was called.
+     * Returns immediately if called by the sending thread itself.
+     *
+     * @param _timeoutMillis maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitTermination(long _timeoutMillis) throws InterruptedException {
+        Thread t = runner;
+        if (null != t && t != Thread.currentThread()) {
+            t.join(_timeoutMillis);
+        }
+    }
+
+    /**
+     * Add a message to the outgoing queue.
+     * @param _message message to send
+     * @return false if the thread was already terminated and the message was not queued
+     */
+    public boolean send(Message _message) {
+        if (terminate) {
+            return false;
+        }
+        outgoingQueue.add(_message);
+        // terminate() may have been called concurrently and the final flush may already be done:
+        // if the message is still queued, nobody will send it
+        if (terminate && outgoingQueue.remove(_message)) {
+            return false;
+        }
+        LockSupport.unpark(runner);
+        return true;
     }
 
-    public LinkedBlockingQueue<Message> getOutgoingQueue() {
-        return outgoingQueue;
+    /**
+     * Stop this thread after all queued messages were sent.
+     */
+    public void terminate() {
+        terminate = true;
+        LockSupport.unpark(runner);
     }
 
     @Override
     public void run() {
-        Message m = null;
-
         logger.trace("Monitoring outbound queue");
-        // block on the outbound queue and send from it
+
+        List<Message> batch = new ArrayList<>();
         while (!terminate) {
-            try {
-                m = outgoingQueue.take();
-                if (m != null) {
-                    abstractConnection.sendMessage(m);
-                    m = null;
-                }
-            } catch (InterruptedException _ex) {
-                if (!terminate) { // if terminate is true, shutdown was requested, do not log that
-                    logger.warn("Interrupted while waiting for a message to send", _ex);
-                }
+            if (outgoingQueue.isEmpty()) {
+                LockSupport.park(this);
+                continue;
             }
+            sendBatch(batch);
         }
 
         logger.debug("Flushing outbound queue and quitting");
         // flush the outbound queue before disconnect.
         while (!outgoingQueue.isEmpty()) {
-            Message poll = outgoingQueue.poll();
-            if (poll != null) {
-                abstractConnection.sendMessage(outgoingQueue.poll());
-            } else {
+            sendBatch(batch);
+        }
+    }
+
+    /**
+     * Collect messages from the queue until the queue is empty or one of the batch limits is reached,
+     * then write all collected messages.
+     *
+     * @param _batch list used to collect the messages, will be cleared afterwards
+     */
+    private void sendBatch(List<Message> _batch) {
+        long start = System.nanoTime();
+        long bytes = 0;
+
+        Message m;
+        while ((m = outgoingQueue.poll()) != null) {
+            if (!abstractConnection.prepareMessage(m)) {
+                continue;
+            }
+            _batch.add(m);
+            bytes += getWireSize(m);
+            if (bytes >= MAX_BATCH_BYTES || _batch.size() >= MAX_BATCH_MESSAGES
+                    || System.nanoTime() - start >= MAX_BATCH_LATENCY) {
                 break;
             }
         }
+
+        if (!_batch.isEmpty()) {
+            logger.trace("Sending batch of {} messages ({} bytes)", _batch.size(), bytes);
+            abstractConnection.writeMessages(_batch);
+            _batch.clear();
+        }
+    }
+
+    private static long getWireSize(Message _message) {
+        long size = 0;
+        byte[][] wireData = _message.getWireData();
+        if (wireData != null) {
+            for (byte[] buf : wireData) {
+                if (buf == null) {
+                    break;
+                }
+                size += buf.length;
+            }
+        }
+        return size;
     }
 }
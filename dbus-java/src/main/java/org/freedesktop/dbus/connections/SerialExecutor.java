@@ -0,0 +1,81 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor running its tasks one after another in submission order using a shared executor.
+ * <p>
+ * At most one task of a serial executor is queued in or running on the shared executor at any time,
+ * it drains the tasks submitted in the meantime. So a serial executor never occupies more than one thread
+ * of the shared executor and tasks of other serial executors are not blocked by it.
+ * </p>
+ */
+final class SerialExecutor implements Executor {
+    private static final Logger   LOGGER    = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private final Executor        delegate;
+    private final Queue<Runnable> tasks     = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean   scheduled = new AtomicBoolean();
+
+    SerialExecutor(Executor _delegate) {
+        delegate = _delegate;
+    }
+
+    @Override
+    public void execute(Runnable _task) {
+        tasks.add(_task);
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(this::drain);
+            } catch (RejectedExecutionException _ex) {
+                tasks.remove(_task);
+                scheduled.set(false);
+                throw _ex;
+            }
+        }
+    }
+
+    private void drain() {
+        boolean completed = false;
+        try {
+            do {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException _ex) {
+                        // do not stop the remaining tasks
+                        LOGGER.error("Exception while running task {}", task, _ex);
+                    }
+                }
+                scheduled.set(false);
+                // a task may have been added after the queue was found empty but before the flag was cleared
+            } while (!tasks.isEmpty() && scheduled.compareAndSet(false, true));
+            completed = true;
+        } finally {
+            if (!completed) {
+                // an Error escaped a task and terminates this thread, continue with the remaining tasks on another one
+                scheduled.set(false);
+                reschedule();
+            }
+        }
+    }
+
+    private void reschedule() {
+        if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                delegate.execute(this::drain);
+            } catch (RejectedExecutionException _ex) {
+                LOGGER.debug("Executor shut down, {} tasks not run", tasks.size(), _ex);
+                scheduled.set(false);
+            }
+        }
+    }
+}
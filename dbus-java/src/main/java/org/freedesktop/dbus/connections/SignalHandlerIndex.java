@@ -0,0 +1,189 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.freedesktop.dbus.DBusMatchRule;
+
+/**
+ * Signal handlers indexed by interface, member, object path and source of their match rule.
+ * <p>
+ * The index is a tree with one level per field of the match rule. A field which is not set in the rule
+ * matches any value of the signal. Finding the handlers of a signal visits at most two children
+ * (the value of the signal and the wildcard) per level, without allocating anything unless a handler is found.
+ * </p>
+ * <p>
+ * Lookups do not lock. Handlers are kept in copy-on-write arrays, modifications are synchronized on the index.
+ * </p>
+ *
+ * @param <H> handler type
+ */
+public final class SignalHandlerIndex<H> {
+    /** Key used for fields not set in the match rule, not a valid interface, member, path or bus name. */
+    private static final String ANY    = "";
+    private static final int    LEVELS = 4;
+
+    private final boolean       anyTypeAllowed;
+    private final Node          root   = new Node();
+
+    /**
+     * @param _anyTypeAllowed true if rules without interface or member match signals of any interface or member,
+     *        false if they only match signals without interface or member
+     */
+    public SignalHandlerIndex(boolean _anyTypeAllowed) {
+        anyTypeAllowed = _anyTypeAllowed;
+    }
+
+    /**
+     * Add a handler for the given rule.
+     *
+     * @param _rule match rule
+     * @param _handler handler
+     * @return true if this is the first handler of this rule
+     */
+    public synchronized boolean add(DBusMatchRule _rule, H _handler) {
+        Node node = root;
+        for (int level = 0; level < LEVELS; level++) {
+            node = node.children.computeIfAbsent(key(getField(_rule, level)), k -> new Node());
+        }
+        Object[] handlers = node.handlers;
+        Object[] added = Arrays.copyOf(handlers, handlers.length + 1);
+        added[handlers.length] = _handler;
+        node.handlers = added;
+        return 0 == handlers.length;
+    }
+
+    /**
+     * Remove a handler of the given rule.
+     *
+     * @param _rule match rule
+     * @param _handler handler
+     * @return true if the handler was removed and it was the last handler of this rule
+     */
+    public synchronized boolean remove(DBusMatchRule _rule, H _handler) {
+        Node[] path = new Node[LEVELS + 1];
+        path[0] = root;
+        for (int level = 0; level < LEVELS; level++) {
+            path[level + 1] = path[level].children.get(key(getField(_rule, level)));
+            if (null == path[level + 1]) {
+                return false;
+            }
+        }
+        Node leaf = path[LEVELS];
+        Object[] handlers = leaf.handlers;
+        int idx = -1;
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i].equals(_handler)) {
+                idx = i;
+                break;
+            }
+        }
+        if (idx < 0) {
+            return false;
+        }
+        Object[] removed = new Object[handlers.length - 1];
+        System.arraycopy(handlers, 0, removed, 0, idx);
+        System.arraycopy(handlers, idx + 1, removed, idx, handlers.length - idx - 1);
+        leaf.handlers = removed;
+        if (removed.length > 0) {
+            return false;
+        }
+        // remove nodes which have no handlers anymore
+        for (int level = LEVELS - 1; level >= 0; level--) {
+            Node child = path[level + 1];
+            if (child.handlers.length > 0 || !child.children.isEmpty()) {
+                break;
+            }
+            path[level].children.remove(key(getField(_rule, level)));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the handlers of all rules matching the given signal.
+     *
+     * @param _interface interface of the signal
+     * @param _member member of the signal
+     * @param _path object path of the signal
+     * @param _source sender of the signal
+     * @return handlers, empty (and not modifiable) if no rule matches
+     */
+    public List<H> getHandlers(String _interface, String _member, String _path, String _source) {
+        if (root.children.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<H> result = collect(root, 0, _interface, _member, _path, _source, null);
+        return null == result ? Collections.emptyList() : result;
+    }
+
+    /**
+     * Returns true if there is no handler at all.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<H> collect(Node _node, int _level, String _interface, String _member, String _path, String _source,
+            List<H> _result) {
+        List<H> result = _result;
+        if (LEVELS == _level) {
+            Object[] handlers = _node.handlers;
+            if (handlers.length > 0) {
+                if (null == result) {
+                    result = new ArrayList<>(handlers.length);
+                }
+                for (Object h : handlers) {
+                    result.add((H) h);
+                }
+            }
+            return result;
+        }
+        String value = 0 == _level ? _interface : 1 == _level ? _member : 2 == _level ? _path : _source;
+        if (null != value) {
+            Node child = _node.children.get(value);
+            if (null != child) {
+                result = collect(child, _level + 1, _interface, _member, _path, _source, result);
+            }
+        }
+        // a signal without a value is only matched by rules without this field
+        if (null == value || _level >= 2 || anyTypeAllowed) {
+            Node any = _node.children.get(ANY);
+            if (null != any) {
+                result = collect(any, _level + 1, _interface, _member, _path, _source, result);
+            }
+        }
+        return result;
+    }
+
+    private static String getField(DBusMatchRule _rule, int _level) {
+        switch (_level) {
+            case 0:
+                return _rule.getInterface();
+            case 1:
+                return _rule.getMember();
+            case 2:
+                return _rule.getObject();
+            default:
+                return _rule.getSource();
+        }
+    }
+
+    private static String key(String _value) {
+        return null == _value ? ANY : _value;
+    }
+
+    /**
+     * One level of the index, handlers are only stored in the nodes of the last level.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private volatile Object[]       handlers = new Object[0];
+    }
+}
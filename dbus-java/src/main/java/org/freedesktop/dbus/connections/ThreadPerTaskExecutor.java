@@ -0,0 +1,87 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor starting a new thread for every task.
+ * Intended for factories creating virtual threads, which are cheap and should not be pooled.
+ */
+final class ThreadPerTaskExecutor extends AbstractExecutorService {
+    private final ThreadFactory threadFactory;
+    private final Set<Thread>   threads = ConcurrentHashMap.newKeySet();
+    private volatile boolean    shutdown;
+
+    ThreadPerTaskExecutor(ThreadFactory _threadFactory) {
+        threadFactory = _threadFactory;
+    }
+
+    @Override
+    public void execute(Runnable _task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor was shut down");
+        }
+        Thread[] self = new Thread[1];
+        Thread thread = threadFactory.newThread(() -> {
+            try {
+                _task.run();
+            } finally {
+                threads.remove(self[0]);
+            }
+        });
+        if (null == thread) {
+            throw new RejectedExecutionException("Thread factory did not create a thread");
+        }
+        self[0] = thread;
+        threads.add(thread);
+        // shutdown() may have been called concurrently and missed the new thread
+        if (shutdown) {
+            threads.remove(thread);
+            throw new RejectedExecutionException("Executor was shut down");
+        }
+        thread.start();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long _timeout, TimeUnit _unit) throws InterruptedException {
+        long deadline = System.nanoTime() + _unit.toNanos(_timeout);
+        for (Thread thread : threads) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+        }
+        return isTerminated();
+    }
+}
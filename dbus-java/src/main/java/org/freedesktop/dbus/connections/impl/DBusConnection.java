@@ -17,19 +17,15 @@ import java.io.IOException;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -38,9 +34,9 @@ import org.freedesktop.DBus;
 import org.freedesktop.dbus.DBusMatchRule;
 import org.freedesktop.dbus.RemoteInvocationHandler;
 import org.freedesktop.dbus.RemoteObject;
-import org.freedesktop.dbus.SignalTuple;
 import org.freedesktop.dbus.connections.AbstractConnection;
 import org.freedesktop.dbus.connections.IDisconnectAction;
+import org.freedesktop.dbus.connections.PendingCall;
 import org.freedesktop.dbus.errors.Error;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.DBusExecutionException;
@@ -50,6 +46,7 @@ import org.freedesktop.dbus.interfaces.DBusSigHandler;
 import org.freedesktop.dbus.interfaces.Introspectable;
 import org.freedesktop.dbus.messages.DBusSignal;
 import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.Message;
 import org.freedesktop.dbus.messages.MethodCall;
 import org.freedesktop.dbus.types.UInt32;
 import org.slf4j.Logger;
@@ -146,7 +143,7 @@ public final class DBusConnection extends AbstractConnection {
                     c.concurrentConnections.incrementAndGet();
                     return c;
                 } else {
-                    c = new DBusConnection(_address, _shared, _registerSelf, getDbusMachineId(), _timeout);
+                    c = new DBusConnection(_address, _shared, _registerSelf, getDbusMachineId(), _timeout, null, false);
                     // do not increment connection counter here, it always starts at 1 on new objects!
                     // c.getConcurrentConnections().incrementAndGet();
                     CONNECTIONS.put(_address, c);
@@ -154,10 +151,45 @@ public final class DBusConnection extends AbstractConnection {
                 }
             }
         } else {
-            return new DBusConnection(_address, _shared, _registerSelf, getDbusMachineId(), _timeout);
+            return new DBusConnection(_address, _shared, _registerSelf, getDbusMachineId(), _timeout, null, false);
         }
     }
 
+    /**
+     * Connect to the BUS using a new connection running its threads on the given thread factory.
+     * Will register our own session to DBus if registerSelf is true.
+     *
+     * @param _address The address of the bus to connect to
+     * @param _registerSelf register own session in dbus
+     * @param _timeout connect timeout if this is a TCP socket, 0 will block forever, if this is not a TCP socket this value is ignored
+     * @param _threadFactory factory for the threads of this connection, null to use platform daemon threads
+     * @throws DBusException If there is a problem connecting to the Bus.
+     * @return {@link DBusConnection}
+     * @see AbstractConnection#AbstractConnection(String, int, ThreadFactory)
+     */
+    public static DBusConnection newConnection(String _address, boolean _registerSelf, int _timeout, ThreadFactory _threadFactory)
+            throws DBusException {
+        return newConnection(_address, _registerSelf, _timeout, _threadFactory, false);
+    }
+
+    /**
+     * Connect to the BUS using a new connection running its threads on the given thread factory.
+     * Will register our own session to DBus if registerSelf is true.
+     *
+     * @param _address The address of the bus to connect to
+     * @param _registerSelf register own session in dbus
+     * @param _timeout connect timeout if this is a TCP socket, 0 will block forever, if this is not a TCP socket this value is ignored
+     * @param _threadFactory factory for the threads of this connection, null to use platform daemon threads
+     * @param _nonBlocking true to read the socket using the shared selector threads instead of a reader thread
+     * @throws DBusException If there is a problem connecting to the Bus.
+     * @return {@link DBusConnection}
+     * @see AbstractConnection#AbstractConnection(String, int, ThreadFactory, boolean)
+     */
+    public static DBusConnection newConnection(String _address, boolean _registerSelf, int _timeout, ThreadFactory _threadFactory, boolean _nonBlocking)
+            throws DBusException {
+        return new DBusConnection(_address, false, _registerSelf, getDbusMachineId(), _timeout, _threadFactory, _nonBlocking);
+    }
+
     private static DBusConnection getConnection(Supplier<String> _addressGenerator, boolean _registerSelf, boolean _shared, int _timeout) throws DBusException {
         if (_addressGenerator == null) {
             throw new DBusException("Invalid address generator");
@@ -330,8 +362,8 @@ public final class DBusConnection extends AbstractConnection {
 	    return String.format("%s@%s", SystemUtil.getCurrentUser(), SystemUtil.getHostName());
 	}
 
-    private DBusConnection(String _address, boolean _shared, boolean _registerSelf, String _machineId, int timeout) throws DBusException {
-        super(_address, timeout);
+    private DBusConnection(String _address, boolean _shared, boolean _registerSelf, String _machineId, int timeout, ThreadFactory _threadFactory, boolean _nonBlocking) throws DBusException {
+        super(_address, timeout, _threadFactory, _nonBlocking);
         busnames = new ArrayList<>();
         machineId = _machineId;
         shared = _shared;
@@ -807,21 +839,14 @@ public final class DBusConnection extends AbstractConnection {
     protected <T extends DBusSignal> void removeSigHandler(DBusMatchRule _rule, DBusSigHandler<T> _handler)
             throws DBusException {
 
-        SignalTuple key = new SignalTuple(_rule.getInterface(), _rule.getMember(), _rule.getObject(), _rule.getSource());
-        Queue<DBusSigHandler<? extends DBusSignal>> dbusSignalList = getHandledSignals().get(key);
-        
-        if (null != dbusSignalList) {
-            dbusSignalList.remove(_handler);
-            if (dbusSignalList.isEmpty()) {
-                getHandledSignals().remove(key);
-                try {
-                    dbus.RemoveMatch(_rule.toString());
-                } catch (NotConnected exNc) {
-                    logger.debug("No connection.", exNc);
-                } catch (DBusExecutionException dbee) {
-                    logger.debug("", dbee);
-                    throw new DBusException(dbee);
-                }
+        if (getHandledSignals().remove(_rule, _handler)) {
+            try {
+                dbus.RemoveMatch(_rule.toString());
+            } catch (NotConnected exNc) {
+                logger.debug("No connection.", exNc);
+            } catch (DBusExecutionException dbee) {
+                logger.debug("", dbee);
+                throw new DBusException(dbee);
             }
         }
     }
@@ -908,22 +933,8 @@ public final class DBusConnection extends AbstractConnection {
         Objects.requireNonNull(_rule, "Match rule cannot be null");
         Objects.requireNonNull(_handler, "Handler cannot be null");
 
-        AtomicBoolean addMatch = new AtomicBoolean(false); // flag to perform action if this is a new signal key
-        
-        SignalTuple key = new SignalTuple(_rule.getInterface(), _rule.getMember(), _rule.getObject(), _rule.getSource());
-
-        Queue<DBusSigHandler<? extends DBusSignal>> dbusSignalList = 
-            getHandledSignals().computeIfAbsent(key, v -> {
-                Queue<DBusSigHandler<? extends DBusSignal>> signalList  = new ConcurrentLinkedQueue<>();
-                addMatch.set(true);
-                return signalList;
-            });
-
-        // add handler to signal list
-        dbusSignalList.add(_handler);
-
         // add match rule if this rule is new
-        if (addMatch.get()) {
+        if (getHandledSignals().add(_rule, _handler)) {
             try {
                 dbus.AddMatch(_rule.toString());
             } catch (DBusExecutionException dbee) {
@@ -958,7 +969,7 @@ public final class DBusConnection extends AbstractConnection {
 	                                0, "s", new Object[] {
 	                                        "Disconnected"
 	                                });
-	                        cleanupPendingCalls(err, true);
+	                        cleanupPendingCalls(err);
 
 	                        synchronized (getPendingErrorQueue()) {
 	                            getPendingErrorQueue().add(err);
@@ -1021,25 +1032,10 @@ public final class DBusConnection extends AbstractConnection {
 		disconnect();
 	}
 
-	private void cleanupPendingCalls(Error _err, boolean _clearPendingCalls) throws DBusException {
-
-        synchronized (getPendingCalls()) {
-            Iterator<Entry<Long, MethodCall>> iter = getPendingCalls().entrySet().iterator();
-            while (iter.hasNext()) {
-                Entry<Long, MethodCall> entry = iter.next();
-                if (entry.getKey() != -1) {
-                    MethodCall m = entry.getValue();
+	private void cleanupPendingCalls(Error _err) throws DBusException {
 
-                    iter.remove();
-
-                    if (m != null) {
-                        m.setReply(_err);
-                    }
-                }
-            }
-            if (_clearPendingCalls) {
-                getPendingCalls().clear();
-            }
+        for (PendingCall pc : getPendingCalls().removeAll()) {
+            pc.getCall().setReply(_err);
         }
     }
 
@@ -1048,20 +1044,14 @@ public final class DBusConnection extends AbstractConnection {
 	 */
     @Override
     public void removeGenericSigHandler(DBusMatchRule _rule, DBusSigHandler<DBusSignal> _handler) throws DBusException {
-        SignalTuple key = new SignalTuple(_rule.getInterface(), _rule.getMember(), _rule.getObject(), _rule.getSource());
-        Queue<DBusSigHandler<DBusSignal>> genericSignalsList = getGenericHandledSignals().get(key);
-        if (null != genericSignalsList) {
-            genericSignalsList.remove(_handler);
-            if (genericSignalsList.isEmpty()) {
-                getGenericHandledSignals().remove(key);
-                try {
-                    dbus.RemoveMatch(_rule.toString());
-                } catch (NotConnected exNc) {
-                    logger.debug("No connection.", exNc);
-                } catch (DBusExecutionException dbee) {
-                    logger.debug("", dbee);
-                    throw new DBusException(dbee);
-                }
+        if (getGenericHandledSignals().remove(_rule, _handler)) {
+            try {
+                dbus.RemoveMatch(_rule.toString());
+            } catch (NotConnected exNc) {
+                logger.debug("No connection.", exNc);
+            } catch (DBusExecutionException dbee) {
+                logger.debug("", dbee);
+                throw new DBusException(dbee);
             }
         }
     }
@@ -1071,21 +1061,7 @@ public final class DBusConnection extends AbstractConnection {
      */
     @Override
     public void addGenericSigHandler(DBusMatchRule _rule, DBusSigHandler<DBusSignal> _handler) throws DBusException {
-        SignalTuple key = new SignalTuple(_rule.getInterface(), _rule.getMember(), _rule.getObject(), _rule.getSource());
-        
-        AtomicBoolean addMatch = new AtomicBoolean(false); // flag to perform action if this is a new signal key
-
-        Queue<DBusSigHandler<DBusSignal>> genericSignalsList = 
-                getGenericHandledSignals().computeIfAbsent(key, v -> {
-                    Queue<DBusSigHandler<DBusSignal>> signalsList = new ConcurrentLinkedQueue<>();
-                    addMatch.set(true);
-
-                    return signalsList;
-                });
-
-        genericSignalsList.add(_handler);
-
-        if (addMatch.get()) {
+        if (getGenericHandledSignals().add(_rule, _handler)) {
             try {
                 dbus.AddMatch(_rule.toString());
             } catch (DBusExecutionException dbee) {
@@ -1105,7 +1081,7 @@ public final class DBusConnection extends AbstractConnection {
                             "s", new Object[] {
                                     "Disconnected"
                             });
-                    cleanupPendingCalls(err, false);
+                    cleanupPendingCalls(err);
 
                     synchronized (getPendingErrorQueue()) {
                         getPendingErrorQueue().add(err);
@@ -1116,10 +1092,31 @@ public final class DBusConnection extends AbstractConnection {
                 synchronized (busnames) {
                     busnames.add(((org.freedesktop.DBus.NameAcquired) _signal).name);
                 }
+            } else if (_signal instanceof org.freedesktop.DBus.NameOwnerChanged) {
+                org.freedesktop.DBus.NameOwnerChanged changed = (org.freedesktop.DBus.NameOwnerChanged) _signal;
+                forgetSharedMemoryPeer(changed.name);
+                if (!changed.oldOwner.isEmpty()) {
+                    forgetSharedMemoryPeer(changed.oldOwner);
+                }
             }
         }
     }
 
+    /**
+     * Subscribes to NameOwnerChanged signals without waiting for the bus to confirm the match rule.
+     */
+    @Override
+    protected void watchNameOwners() {
+        try {
+            addSigHandlerWithoutMatch(org.freedesktop.DBus.NameOwnerChanged.class, new SigHandler());
+            DBusMatchRule rule = new DBusMatchRule(org.freedesktop.DBus.NameOwnerChanged.class);
+            sendMessage(new MethodCall("org.freedesktop.DBus", "/org/freedesktop/DBus", "org.freedesktop.DBus", "AddMatch",
+                    Message.Flags.NO_REPLY_EXPECTED, "s", rule.toString()));
+        } catch (DBusException _ex) {
+            logger.debug("Cannot watch name owner changes", _ex);
+        }
+    }
+
     @Override
     public String getMachineId() {
         return machineId;
@@ -21,15 +21,13 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.freedesktop.Hexdump;
 import org.freedesktop.dbus.DBusMatchRule;
 import org.freedesktop.dbus.RemoteInvocationHandler;
 import org.freedesktop.dbus.RemoteObject;
-import org.freedesktop.dbus.SignalTuple;
 import org.freedesktop.dbus.connections.AbstractConnection;
 import org.freedesktop.dbus.connections.transports.TransportFactory;
 import org.freedesktop.dbus.exceptions.DBusException;
@@ -68,7 +66,32 @@ public class DirectConnection extends AbstractConnection {
     * @throws DBusException on error
     */
     public DirectConnection(String address, int timeout) throws DBusException {
-        super(address, timeout);
+        this(address, timeout, null);
+    }
+
+    /**
+    * Create a direct connection to another application running its threads on the given thread factory.
+    * @param address The address to connect to. This is a standard D-Bus address, except that the additional parameter 'listen=true' should be added in the application which is creating the socket.
+    * @param timeout the timeout set for the underlying socket. 0 will block forever on the underlying socket.
+    * @param threadFactory factory for the threads of this connection, null to use platform daemon threads
+    * @throws DBusException on error
+    * @see AbstractConnection#AbstractConnection(String, int, ThreadFactory)
+    */
+    public DirectConnection(String address, int timeout, ThreadFactory threadFactory) throws DBusException {
+        this(address, timeout, threadFactory, false);
+    }
+
+    /**
+    * Create a direct connection to another application, optionally using a non-blocking transport.
+    * @param address The address to connect to. This is a standard D-Bus address, except that the additional parameter 'listen=true' should be added in the application which is creating the socket.
+    * @param timeout the timeout set for the underlying socket. 0 will block forever on the underlying socket.
+    * @param threadFactory factory for the threads of this connection, null to use platform daemon threads
+    * @param nonBlocking true to read the socket using the shared selector threads instead of a reader thread
+    * @throws DBusException on error
+    * @see AbstractConnection#AbstractConnection(String, int, ThreadFactory, boolean)
+    */
+    public DirectConnection(String address, int timeout, ThreadFactory threadFactory, boolean nonBlocking) throws DBusException {
+        super(address, timeout, threadFactory, nonBlocking);
         machineId = createMachineId();
         if (!getAddress().isServer()) {
             super.listen();
@@ -280,51 +303,22 @@ public class DirectConnection extends AbstractConnection {
 
     @Override
     protected <T extends DBusSignal> void removeSigHandler(DBusMatchRule rule, DBusSigHandler<T> handler) throws DBusException {
-        SignalTuple key = new SignalTuple(rule.getInterface(), rule.getMember(), rule.getObject(), rule.getSource());
-        Queue<DBusSigHandler<? extends DBusSignal>> v = getHandledSignals().get(key);
-        if (null != v) {
-            v.remove(handler);
-            if (0 == v.size()) {
-                getHandledSignals().remove(key);
-            }
-        }
+        getHandledSignals().remove(rule, handler);
     }
 
     @Override
     protected <T extends DBusSignal> void addSigHandler(DBusMatchRule rule, DBusSigHandler<T> handler) throws DBusException {
-        SignalTuple key = new SignalTuple(rule.getInterface(), rule.getMember(), rule.getObject(), rule.getSource());
-       
-        Queue<DBusSigHandler<? extends DBusSignal>> v = 
-                getHandledSignals().computeIfAbsent(key, val -> {
-                    Queue<DBusSigHandler<? extends DBusSignal>> l = new ConcurrentLinkedQueue<>();
-                    return l;
-                });
-    
-        v.add(handler);
+        getHandledSignals().add(rule, handler);
     }
 
     @Override
     protected void removeGenericSigHandler(DBusMatchRule rule, DBusSigHandler<DBusSignal> handler) throws DBusException {
-        SignalTuple key = new SignalTuple(rule.getInterface(), rule.getMember(), rule.getObject(), rule.getSource());
-        Queue<DBusSigHandler<DBusSignal>> v = getGenericHandledSignals().get(key);
-        if (null != v) {
-            v.remove(handler);
-            if (0 == v.size()) {
-                getGenericHandledSignals().remove(key);
-            }
-        }
+        getGenericHandledSignals().remove(rule, handler);
     }
 
     @Override
     protected void addGenericSigHandler(DBusMatchRule rule, DBusSigHandler<DBusSignal> handler) throws DBusException {
-        SignalTuple key = new SignalTuple(rule.getInterface(), rule.getMember(), rule.getObject(), rule.getSource());
-        Queue<DBusSigHandler<DBusSignal>> v = 
-                getGenericHandledSignals().computeIfAbsent(key, val -> {
-                    Queue<DBusSigHandler<DBusSignal>> l = new ConcurrentLinkedQueue<>();
-                    return l;
-                });
-
-        v.add(handler);
+        getGenericHandledSignals().add(rule, handler);
     }
 
     @Override
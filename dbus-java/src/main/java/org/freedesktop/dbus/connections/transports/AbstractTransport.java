@@ -5,6 +5,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.freedesktop.dbus.MessageReader;
 import org.freedesktop.dbus.MessageWriter;
@@ -32,6 +36,12 @@ public abstract class AbstractTransport implements Closeable {
     private MessageReader    inputReader;
     private MessageWriter    outputWriter;
 
+    private boolean          nonBlocking;
+    private SelectorChannelHandler channelHandler;
+
+    private boolean          fileDescriptorSupported;
+    private FileDescriptorSocket fileDescriptorSocket;
+
     AbstractTransport(BusAddress _address) {
         address = _address;
         
@@ -52,27 +62,104 @@ public abstract class AbstractTransport implements Closeable {
      * @throws IOException on write error or if output was already closed or null
      */
     public void writeMessage(Message _msg) throws IOException {
-        if (outputWriter != null && !outputWriter.isClosed()) {
-            outputWriter.writeMessage(_msg);
+        writeMessages(Collections.singletonList(_msg));
+    }
+
+    /**
+     * Write a batch of messages to the underlying socket.
+     * The socket is only flushed once after all messages have been written.
+     *
+     * @param _msgs messages to write
+     * @throws IOException on write error or if output was already closed or null
+     */
+    public void writeMessages(List<Message> _msgs) throws IOException {
+        if (channelHandler != null) {
+            if (channelHandler.isClosed()) {
+                throw new IOException("Channel already closed");
+            }
+            channelHandler.write(_msgs);
+        } else if (outputWriter != null && !outputWriter.isClosed()) {
+            if (fileDescriptorSocket == null) {
+                outputWriter.writeMessages(_msgs);
+            } else {
+                writeMessagesWithFileDescriptors(_msgs);
+            }
         } else {
             throw new IOException("OutputWriter already closed or null");
         }
     }
     
+    /**
+     * Write messages using the output writer, except messages containing file descriptors,
+     * which are written by the {@link FileDescriptorSocket} after all previous messages were flushed.
+     *
+     * @param _msgs messages to write
+     * @throws IOException on write error
+     */
+    private void writeMessagesWithFileDescriptors(List<Message> _msgs) throws IOException {
+        List<Message> pending = new ArrayList<>();
+        for (Message msg : _msgs) {
+            if (null == msg || msg.getFileDescriptors().isEmpty()) {
+                pending.add(msg);
+                continue;
+            }
+            if (!pending.isEmpty()) {
+                outputWriter.writeMessages(pending);
+                pending.clear();
+            }
+            getLogger().debug("<= {}", msg);
+            fileDescriptorSocket.writeMessage(msg);
+        }
+        if (!pending.isEmpty()) {
+            outputWriter.writeMessages(pending);
+        }
+    }
+
     /**
      * Read a message from the underlying socket.
      * 
+     * Not supported when transport is using non-blocking mode, use {@link #startReading(IMessageListener)} instead.
+     *
      * @return read message, maybe null
      * @throws IOException when input already close or null
      * @throws DBusException when message could not be converted to a DBus message
      */
     public Message readMessage() throws IOException, DBusException {
+        if (channelHandler != null) {
+            throw new IOException("Transport is in non-blocking mode");
+        }
         if (inputReader != null && !inputReader.isClosed()) {
-            return inputReader.readMessage();
+            Message msg;
+            try {
+                msg = inputReader.readMessage();
+            } catch (DBusException _ex) {
+                if (fileDescriptorSocket != null) {
+                    fileDescriptorSocket.discardFileDescriptors(inputReader.getFailedUnixFdCount());
+                }
+                throw _ex;
+            }
+            if (msg != null && fileDescriptorSocket != null) {
+                fileDescriptorSocket.attachFileDescriptors(msg);
+            }
+            return msg;
         }
         throw new IOException("InputReader already closed or null");
     }
     
+    /**
+     * Start reading messages using the shared selector threads.
+     * Only available if the transport is running in non-blocking mode.
+     *
+     * @param _listener listener receiving all incoming messages
+     * @throws IOException when transport is not in non-blocking mode
+     */
+    public void startReading(IMessageListener _listener) throws IOException {
+        if (channelHandler == null) {
+            throw new IOException("Transport is not in non-blocking mode");
+        }
+        channelHandler.startReading(_listener);
+    }
+
     /**
      * Abstract method implemented by concrete sub classes to establish a connection 
      * using whatever transport type (e.g. TCP/Unix socket).
@@ -82,6 +169,7 @@ public abstract class AbstractTransport implements Closeable {
      
     /**
      * Helper method to authenticate to DBus using SASL.
+     * If the transport is able to pass file descriptors, file descriptor passing is negotiated as well.
      * 
      * @param _out output stream
      * @param _in input stream
@@ -89,12 +177,56 @@ public abstract class AbstractTransport implements Closeable {
      * @throws IOException on any error
      */
     protected void authenticate(OutputStream _out, InputStream _in, Socket _sock) throws IOException {
-        if (!(new SASL()).auth(saslMode, saslAuthMode, address.getGuid(), _out, _in, _sock)) {
+        SASL sasl = new SASL();
+        if (!sasl.auth(saslMode, saslAuthMode, address.getGuid(), _out, _in, _sock, hasFileDescriptorSupport())) {
             _out.close();
             throw new IOException("Failed to auth");
         }
+        fileDescriptorSupported = sasl.isFileDescriptorSupported();
     }
 
+    /**
+     * Returns true if this transport type is able to pass file descriptors.
+     * File descriptor passing will only be used if the other side agreed during authentication,
+     * see {@link #isFileDescriptorSupported()}.
+     *
+     * @return boolean
+     */
+    protected boolean hasFileDescriptorSupport() {
+        return false;
+    }
+
+    /**
+     * Returns true if file descriptors can be passed using this transport.
+     *
+     * @return boolean
+     */
+    public boolean isFileDescriptorSupported() {
+        return fileDescriptorSupported;
+    }
+
+    /**
+     * Use the given socket to read all incoming data and to write messages containing file descriptors.
+     * Has to be called before {@link #setChannel(SocketChannel)} or {@link #setInputReader(InputStream)}.
+     *
+     * @param _fileDescriptorSocket socket
+     */
+    void setFileDescriptorSocket(FileDescriptorSocket _fileDescriptorSocket) {
+        fileDescriptorSocket = _fileDescriptorSocket;
+    }
+
+
+    /**
+     * Use the given channel for all further communication.
+     * The channel is switched to non-blocking mode and registered with the shared selector threads,
+     * so this must be called after the authentication was completed.
+     *
+     * @param _channel connected and authenticated channel
+     * @throws IOException when channel could not be registered
+     */
+    protected void setChannel(SocketChannel _channel) throws IOException {
+        channelHandler = new SelectorChannelHandler(_channel, fileDescriptorSocket);
+    }
 
     protected void setOutputWriter(OutputStream _outputStream) {
         outputWriter = new MessageWriter(_outputStream);        
@@ -104,6 +236,20 @@ public abstract class AbstractTransport implements Closeable {
         inputReader = new MessageReader(_inputStream);
     }
     
+    /**
+     * Returns true if this transport is driven by the shared selector threads
+     * instead of using blocking streams.
+     *
+     * @return boolean
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    void setNonBlocking(boolean _nonBlocking) {
+        nonBlocking = _nonBlocking;
+    }
+
     protected int getSaslAuthMode() {
         return saslAuthMode;
     }
@@ -130,8 +276,18 @@ public abstract class AbstractTransport implements Closeable {
 
     @Override
     public void close() throws IOException {
-        inputReader.close();
-        outputWriter.close();
+        if (channelHandler != null) {
+            channelHandler.close();
+        }
+        if (inputReader != null) {
+            inputReader.close();
+        }
+        if (outputWriter != null) {
+            outputWriter.close();
+        }
+        if (fileDescriptorSocket != null) {
+            fileDescriptorSocket.close();
+        }
     }
     
 }
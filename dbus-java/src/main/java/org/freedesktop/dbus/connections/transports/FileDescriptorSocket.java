@@ -0,0 +1,380 @@
+package org.freedesktop.dbus.connections.transports;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.freedesktop.dbus.exceptions.MarshallingException;
+import org.freedesktop.dbus.messages.FileDescriptorHelper;
+import org.freedesktop.dbus.messages.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jnr.constants.platform.Errno;
+import jnr.constants.platform.SocketLevel;
+import jnr.posix.CmsgHdr;
+import jnr.posix.MsgHdr;
+import jnr.posix.POSIX;
+import jnr.posix.POSIXFactory;
+import jnr.unixsocket.UnixSocketChannel;
+
+/**
+ * Reads from and writes to a unix socket using recvmsg/sendmsg,
+ * so file descriptors can be passed as SCM_RIGHTS ancillary data along with the bytes of a message.
+ * <p>
+ * The file descriptors of a message are always sent with the first bytes of the message.
+ * Received file descriptors are queued in the order they arrive, so when a message was received completely
+ * the file descriptors announced in its header are at the head of the queue.
+ * </p>
+ * <p>
+ * Reading (including {@link #attachFileDescriptors(Message)}) has to be done by a single thread,
+ * writing has to be synchronized by the caller.
+ * </p>
+ */
+final class FileDescriptorSocket implements Closeable {
+    /** Type of control messages containing file descriptors, has the same value on all supported platforms. */
+    private static final int            SCM_RIGHTS          = 1;
+    /** Flag set by recvmsg if control data was discarded because the control buffer was too small. */
+    private static final int            MSG_CTRUNC          = System.getProperty("os.name", "").toLowerCase().contains("linux") ? 0x8 : 0x20;
+    /** Maximum number of file descriptors received with a single recvmsg call (SCM_MAX_FD on Linux). */
+    private static final int            MAX_FDS             = 253;
+    /** Size of the native buffers used for recvmsg and sendmsg. */
+    private static final int            NATIVE_BUFFER_SIZE  = 65536;
+    /**
+     * Resets the length of the control buffer of a msghdr, which is overwritten by every recvmsg call.
+     * Not part of the public API of jnr-posix, null if not available.
+     */
+    private static final Method         SET_CONTROL_LEN     = findSetControlLen();
+
+    private final Logger                logger              = LoggerFactory.getLogger(getClass());
+
+    private final POSIX                 posix               = POSIXFactory.getNativePOSIX();
+    private final UnixSocketChannel     channel;
+    private final int                   fd;
+    private final Queue<FileDescriptor> receivedFds         = new ConcurrentLinkedQueue<>();
+
+    /** Native memory recvmsg reads into, bytes not yet passed to the caller are between position and limit. */
+    private ByteBuffer                  receiveBuffer;
+    private MsgHdr                      receiveHdr;
+    private int                         receiveControlLen;
+
+    private ByteBuffer                  sendBuffer;
+    private MsgHdr                      sendHdr;
+
+    FileDescriptorSocket(UnixSocketChannel _channel) {
+        channel = _channel;
+        fd = _channel.getFD();
+    }
+
+    /**
+     * Read bytes from the socket into the given buffer.
+     * All file descriptors received along with the bytes are queued.
+     * <p>
+     * Bytes are received into a native buffer allocated once per socket, bytes which do not fit into
+     * the given buffer are kept for the next call (see {@link #hasBufferedBytes()}).
+     * </p>
+     *
+     * @param _dst buffer to read into
+     * @return number of bytes read, 0 if channel is non-blocking and no bytes are available, -1 on EOF
+     * @throws IOException when reading fails or file descriptors were discarded by the kernel
+     */
+    int read(ByteBuffer _dst) throws IOException {
+        if (!_dst.hasRemaining()) {
+            return 0;
+        }
+        if (null == receiveHdr) {
+            receiveBuffer = ByteBuffer.allocateDirect(NATIVE_BUFFER_SIZE);
+            receiveBuffer.limit(0);
+            receiveHdr = posix.allocateMsgHdr();
+            receiveHdr.setIov(new ByteBuffer[] {receiveBuffer.duplicate().clear()});
+            receiveHdr.allocateControl(MAX_FDS * 4);
+            receiveControlLen = receiveHdr.getControlLen();
+        }
+
+        if (!receiveBuffer.hasRemaining()) {
+            int read = receive();
+            if (read <= 0) {
+                return read;
+            }
+        }
+
+        int count = Math.min(_dst.remaining(), receiveBuffer.remaining());
+        ByteBuffer src = receiveBuffer.duplicate();
+        src.limit(src.position() + count);
+        _dst.put(src);
+        receiveBuffer.position(receiveBuffer.position() + count);
+        return count;
+    }
+
+    /**
+     * Returns true if bytes were received from the socket which were not yet returned by {@link #read(ByteBuffer)}.
+     *
+     * @return boolean
+     */
+    boolean hasBufferedBytes() {
+        return null != receiveBuffer && receiveBuffer.hasRemaining();
+    }
+
+    private int receive() throws IOException {
+        if (null != SET_CONTROL_LEN) {
+            try {
+                SET_CONTROL_LEN.invoke(receiveHdr, receiveControlLen);
+            } catch (IllegalAccessException | InvocationTargetException _ex) {
+                throw new IOException("Could not reset control buffer", _ex);
+            }
+        } else {
+            receiveHdr.allocateControl(MAX_FDS * 4);
+        }
+
+        int read;
+        while ((read = posix.recvmsg(fd, receiveHdr, 0)) < 0) {
+            int errno = posix.errno();
+            if (errno == Errno.EAGAIN.intValue() || errno == Errno.EWOULDBLOCK.intValue()) {
+                return 0;
+            } else if (errno != Errno.EINTR.intValue()) {
+                throw new IOException("recvmsg failed with error " + errno);
+            }
+        }
+        if (0 == read) {
+            return -1;
+        }
+        receiveBuffer.position(0).limit(read);
+
+        for (CmsgHdr cmsg : receiveHdr.getControls()) {
+            if (cmsg.getLevel() == SocketLevel.SOL_SOCKET.intValue() && cmsg.getType() == SCM_RIGHTS) {
+                ByteBuffer fds = cmsg.getData().order(ByteOrder.nativeOrder());
+                while (fds.remaining() >= 4) {
+                    receivedFds.add(createFileDescriptor(fds.getInt()));
+                }
+            }
+        }
+        if (0 != (receiveHdr.getFlags() & MSG_CTRUNC)) {
+            // descriptors are missing, they can not be assigned to messages anymore
+            throw new IOException("File descriptors were discarded by recvmsg (MSG_CTRUNC)");
+        }
+        return read;
+    }
+
+    /**
+     * Write the remaining bytes of the given buffers using a single sendmsg call.
+     * The positions of the buffers are advanced by the number of bytes written.
+     * <p>
+     * Up to {@link #NATIVE_BUFFER_SIZE} bytes are copied to a native buffer allocated once per socket.
+     * </p>
+     *
+     * @param _srcs buffers
+     * @param _offset index of the first buffer to write
+     * @param _length number of buffers to write
+     * @param _fds file descriptors to send along with the bytes
+     * @return number of bytes written, 0 if channel is non-blocking and socket buffer is full
+     * @throws IOException when writing fails
+     */
+    long write(ByteBuffer[] _srcs, int _offset, int _length, List<FileDescriptor> _fds) throws IOException {
+        if (null == sendBuffer) {
+            sendBuffer = ByteBuffer.allocateDirect(NATIVE_BUFFER_SIZE);
+            sendHdr = posix.allocateMsgHdr();
+        }
+        sendBuffer.clear();
+        for (int i = _offset; i < _offset + _length && sendBuffer.hasRemaining(); i++) {
+            ByteBuffer src = _srcs[i].duplicate();
+            if (src.remaining() > sendBuffer.remaining()) {
+                src.limit(src.position() + sendBuffer.remaining());
+            }
+            sendBuffer.put(src);
+        }
+        sendBuffer.flip();
+
+        // messages without descriptors reuse the same msghdr, its control buffer is never set
+        MsgHdr msg = _fds.isEmpty() ? sendHdr : posix.allocateMsgHdr();
+        msg.setIov(new ByteBuffer[] {sendBuffer.slice()});
+
+        if (!_fds.isEmpty()) {
+            ByteBuffer data = ByteBuffer.allocate(_fds.size() * 4).order(ByteOrder.nativeOrder());
+            for (FileDescriptor fileDescriptor : _fds) {
+                data.putInt(getFileDescriptorNumber(fileDescriptor));
+            }
+            data.flip();
+            CmsgHdr cmsg = msg.allocateControl(data.remaining());
+            cmsg.setLevel(SocketLevel.SOL_SOCKET.intValue());
+            cmsg.setType(SCM_RIGHTS);
+            cmsg.setData(data);
+        }
+
+        int written;
+        while ((written = posix.sendmsg(fd, msg, 0)) < 0) {
+            int errno = posix.errno();
+            if (errno == Errno.EAGAIN.intValue() || errno == Errno.EWOULDBLOCK.intValue()) {
+                return 0;
+            } else if (errno != Errno.EINTR.intValue()) {
+                throw new IOException("sendmsg failed with error " + errno);
+            }
+        }
+
+        int remaining = written;
+        for (int i = _offset; i < _offset + _length && remaining > 0; i++) {
+            int count = Math.min(remaining, _srcs[i].remaining());
+            _srcs[i].position(_srcs[i].position() + count);
+            remaining -= count;
+        }
+        return written;
+    }
+
+    /**
+     * Write the given message to a blocking socket.
+     * The file descriptors of the message are sent along with its first bytes.
+     *
+     * @param _msg message
+     * @throws IOException when writing fails
+     */
+    void writeMessage(Message _msg) throws IOException {
+        List<ByteBuffer> bufferList = new ArrayList<>();
+        for (byte[] buf : _msg.getWireData()) {
+            if (null == buf) {
+                break;
+            }
+            bufferList.add(ByteBuffer.wrap(buf));
+        }
+        if (bufferList.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer[] buffers = bufferList.toArray(new ByteBuffer[bufferList.size()]);
+        List<FileDescriptor> fds = _msg.getFileDescriptors();
+        int offset = 0;
+        while (true) {
+            // skip written and empty buffers
+            while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+            if (offset == buffers.length) {
+                return;
+            }
+            if (write(buffers, offset, buffers.length - offset, fds) > 0) {
+                fds = Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * Take the file descriptors announced in the header of the given (completely received) message from the queue
+     * of received file descriptors and attach them to the message.
+     *
+     * @param _msg message
+     * @throws IOException if less file descriptors than announced were received
+     */
+    void attachFileDescriptors(Message _msg) throws IOException {
+        int count = _msg.getUnixFdCount();
+        if (0 == count) {
+            return;
+        }
+        if (receivedFds.size() < count) {
+            throw new IOException("Message announces " + count + " file descriptors, but only "
+                    + receivedFds.size() + " were received");
+        }
+        List<FileDescriptor> fds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fds.add(receivedFds.poll());
+        }
+        _msg.setFileDescriptors(fds);
+    }
+
+    /**
+     * Close up to the given number of received file descriptors which were not attached to a message yet.
+     * Used for descriptors of messages which could not be decoded and for descriptors belonging to no message.
+     *
+     * @param _count maximum number of file descriptors to close
+     */
+    void discardFileDescriptors(int _count) {
+        FileDescriptor fileDescriptor;
+        for (int i = 0; i < _count && (fileDescriptor = receivedFds.poll()) != null; i++) {
+            try {
+                posix.close(getFileDescriptorNumber(fileDescriptor));
+            } catch (IOException _ex) {
+                logger.debug("Could not close unused file descriptor", _ex);
+            }
+        }
+    }
+
+    /**
+     * Returns a stream reading from this socket, used by blocking transports.
+     *
+     * @return input stream
+     */
+    InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) <= 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] _b, int _off, int _len) throws IOException {
+                if (0 == _len) {
+                    return 0;
+                }
+                int read;
+                do {
+                    read = FileDescriptorSocket.this.read(ByteBuffer.wrap(_b, _off, _len));
+                } while (0 == read);
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                FileDescriptorSocket.this.close();
+            }
+        };
+    }
+
+    /**
+     * Close the socket and all received file descriptors which were not passed to a message.
+     */
+    @Override
+    public void close() throws IOException {
+        discardFileDescriptors(Integer.MAX_VALUE);
+        channel.close();
+    }
+
+    private static Method findSetControlLen() {
+        for (Class<?> c = POSIXFactory.getNativePOSIX().allocateMsgHdr().getClass(); null != c; c = c.getSuperclass()) {
+            try {
+                Method method = c.getDeclaredMethod("setControlLen", int.class);
+                method.setAccessible(true);
+                return method;
+            } catch (NoSuchMethodException _ex) {
+                // try super class
+            } catch (RuntimeException _ex) {
+                break;
+            }
+        }
+        LoggerFactory.getLogger(FileDescriptorSocket.class).debug("msghdr control length can not be reset, control buffer will be allocated for every read");
+        return null;
+    }
+
+    private static int getFileDescriptorNumber(FileDescriptor _fd) throws IOException {
+        try {
+            return FileDescriptorHelper.getFileDescriptorNumber(_fd);
+        } catch (MarshallingException _ex) {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    private static FileDescriptor createFileDescriptor(int _fd) throws IOException {
+        try {
+            return FileDescriptorHelper.createFileDescriptor(_fd);
+        } catch (MarshallingException _ex) {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.freedesktop.dbus.connections.transports;
+
+import java.io.IOException;
+
+import org.freedesktop.dbus.messages.Message;
+
+/**
+ * Callback used by non-blocking transports to deliver received messages.
+ * <p>
+ * All methods are called on one of the shared selector threads, so implementations
+ * must not block for a long time.
+ * </p>
+ */
+public interface IMessageListener {
+
+    /**
+     * Called whenever a complete message was received.
+     *
+     * @param _msg received message, never null
+     */
+    void messageReceived(Message _msg);
+
+    /**
+     * Called when reading from the transport failed.
+     * The transport is not usable afterwards.
+     *
+     * @param _ex exception which caused the failure
+     */
+    void readFailed(IOException _ex);
+}
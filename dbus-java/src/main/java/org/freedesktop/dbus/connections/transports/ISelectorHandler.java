@@ -0,0 +1,20 @@
+package org.freedesktop.dbus.connections.transports;
+
+/**
+ * Handler attached to a channel registered with a {@link SelectorThread}.
+ * <p>
+ * All methods are called on the selector thread and must not block.
+ * </p>
+ */
+public interface ISelectorHandler {
+
+    /**
+     * Called when data can be read from the channel.
+     */
+    void handleReadable();
+
+    /**
+     * Called when data can be written to the channel again.
+     */
+    void handleWritable();
+}
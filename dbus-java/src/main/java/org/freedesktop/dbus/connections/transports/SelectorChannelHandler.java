@@ -0,0 +1,311 @@
+package org.freedesktop.dbus.connections.transports;
+
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.freedesktop.Hexdump;
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connects a non-blocking {@link SocketChannel} to a {@link SelectorThread}.
+ * <p>
+ * Incoming data is decoded incrementally on the selector thread and passed to the {@link IMessageListener}.
+ * Outgoing messages are written directly by the calling thread using gathering writes, if the socket buffer is full
+ * the caller waits until the selector reports the channel as writable again.
+ * </p>
+ * <p>
+ * If a {@link FileDescriptorSocket} is given, it is used for all reads and for writing messages containing
+ * file descriptors, so file descriptors can be passed along with the messages.
+ * </p>
+ */
+final class SelectorChannelHandler implements ISelectorHandler {
+    private static final int        READ_BUFFER_SIZE = 8192;
+
+    private final Logger            logger           = LoggerFactory.getLogger(getClass());
+
+    private final SocketChannel     channel;
+    private final FileDescriptorSocket fdSocket;
+    private final SelectorThread    selectorThread;
+    private final MessageDecoder    decoder          = new MessageDecoder();
+    private final ByteBuffer        readBuffer       = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private final Lock              writeLock        = new ReentrantLock();
+    private final Condition         writableCondition = writeLock.newCondition();
+    private boolean                 writable;
+
+    private volatile SelectionKey   selectionKey;
+    private volatile IMessageListener listener;
+    private volatile boolean        closed;
+
+    /**
+     * Creates a new handler and registers the channel with one of the shared selector threads.
+     * The channel will be switched to non-blocking mode.
+     * Reading will not start before {@link #startReading(IMessageListener)} was called.
+     *
+     * @param _channel connected and authenticated channel
+     * @param _fdSocket socket used to pass file descriptors, null if file descriptor passing is not supported
+     * @throws IOException when channel could not be registered
+     */
+    SelectorChannelHandler(SocketChannel _channel, FileDescriptorSocket _fdSocket) throws IOException {
+        channel = _channel;
+        fdSocket = _fdSocket;
+        channel.configureBlocking(false);
+        selectorThread = SelectorThreadPool.getInstance().nextThread(_channel);
+        selectorThread.execute(this::register);
+    }
+
+    private void register() {
+        try {
+            selectionKey = channel.register(selectorThread.getSelector(), 0, this);
+        } catch (ClosedChannelException _ex) {
+            logger.debug("Channel closed before it could be registered", _ex);
+            closed = true;
+        }
+    }
+
+    /**
+     * Start reading from the channel.
+     *
+     * @param _listener listener which will receive all messages
+     */
+    void startReading(IMessageListener _listener) {
+        listener = _listener;
+        selectorThread.execute(() -> addInterest(SelectionKey.OP_READ));
+    }
+
+    /**
+     * Called by the selector thread when data can be read.
+     */
+    @Override
+    public void handleReadable() {
+        int read;
+        try {
+            read = null == fdSocket ? channel.read(readBuffer) : fdSocket.read(readBuffer);
+        } catch (IOException _ex) {
+            readFailed(_ex);
+            return;
+        }
+
+        if (read < 0) {
+            readFailed(new EOFException("Underlying transport returned EOF"));
+            return;
+        }
+
+        readBuffer.flip();
+        try {
+            while (readBuffer.hasRemaining()) {
+                Message msg;
+                try {
+                    msg = decoder.decode(readBuffer);
+                    if (null != msg && null != fdSocket) {
+                        fdSocket.attachFileDescriptors(msg);
+                    }
+                } catch (DBusException _ex) {
+                    logger.error("Exception while decoding message", _ex);
+                    if (null != fdSocket) {
+                        fdSocket.discardFileDescriptors(decoder.getFailedUnixFdCount());
+                    }
+                    continue;
+                } catch (IOException _ex) {
+                    readFailed(_ex);
+                    return;
+                }
+                if (msg == null) {
+                    break;
+                }
+                listener.messageReceived(msg);
+            }
+            // file descriptors are received along with the first bytes of their message,
+            // so if all bytes received so far belong to complete messages, remaining descriptors belong to no message
+            if (null != fdSocket && !decoder.isPartial() && !readBuffer.hasRemaining() && !fdSocket.hasBufferedBytes()) {
+                fdSocket.discardFileDescriptors(Integer.MAX_VALUE);
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * Called by the selector thread when the channel can be written again.
+     */
+    @Override
+    public void handleWritable() {
+        removeInterest(SelectionKey.OP_WRITE);
+        writeLock.lock();
+        try {
+            writable = true;
+            writableCondition.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write the given messages to the channel using a single gathering write (if the socket buffer is large enough).
+     * Messages containing file descriptors are written separately, so the descriptors are sent along with
+     * the first bytes of their message.
+     * Blocks the calling thread until all bytes were written.
+     *
+     * @param _messages messages to write
+     * @throws IOException when writing fails or channel was closed
+     */
+    void write(List<Message> _messages) throws IOException {
+        List<ByteBuffer> bufferList = new ArrayList<>();
+        writeLock.lock();
+        try {
+            for (Message msg : _messages) {
+                logger.debug("<= {}", msg);
+                if (null == msg) {
+                    continue;
+                }
+                if (null == msg.getWireData()) {
+                    logger.warn("Message {} wire-data was null!", msg);
+                    continue;
+                }
+
+                List<FileDescriptor> fds = msg.getFileDescriptors();
+                if (!fds.isEmpty()) {
+                    writeBuffers(bufferList, Collections.emptyList());
+                }
+                for (byte[] buf : msg.getWireData()) {
+                    if (null == buf) {
+                        break;
+                    }
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("{}", Hexdump.format(buf));
+                    }
+                    bufferList.add(ByteBuffer.wrap(buf));
+                }
+                if (!fds.isEmpty()) {
+                    writeBuffers(bufferList, fds);
+                }
+            }
+            writeBuffers(bufferList, Collections.emptyList());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write all given buffers and clear the list afterwards.
+     * Has to be called while holding the write lock.
+     *
+     * @param _bufferList buffers to write
+     * @param _fds file descriptors to send with the first bytes, requires a {@link FileDescriptorSocket}
+     * @throws IOException when writing fails or channel was closed
+     */
+    private void writeBuffers(List<ByteBuffer> _bufferList, List<FileDescriptor> _fds) throws IOException {
+        if (_bufferList.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer[] buffers = _bufferList.toArray(new ByteBuffer[_bufferList.size()]);
+        _bufferList.clear();
+        List<FileDescriptor> fds = _fds;
+        int offset = 0;
+
+        while (true) {
+            // skip written and empty buffers
+            while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+            if (offset == buffers.length) {
+                return;
+            }
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            long written;
+            if (fds.isEmpty()) {
+                written = channel.write(buffers, offset, buffers.length - offset);
+            } else {
+                written = fdSocket.write(buffers, offset, buffers.length - offset, fds);
+            }
+            if (written == 0) {
+                awaitWritable();
+            } else {
+                fds = Collections.emptyList();
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        writable = false;
+        selectorThread.execute(() -> addInterest(SelectionKey.OP_WRITE));
+        try {
+            while (!writable && !closed) {
+                writableCondition.await();
+            }
+        } catch (InterruptedException _ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for channel to become writable");
+        }
+    }
+
+    private void addInterest(int _op) {
+        SelectionKey key = selectionKey;
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | _op);
+        }
+    }
+
+    private void removeInterest(int _op) {
+        SelectionKey key = selectionKey;
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() & ~_op);
+        }
+    }
+
+    private void readFailed(IOException _ex) {
+        SelectionKey key = selectionKey;
+        if (key != null) {
+            key.cancel();
+        }
+        if (!closed && listener != null) {
+            listener.readFailed(_ex);
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Deregister from selector and close the channel.
+     * Threads waiting to write will be released.
+     *
+     * @throws IOException when closing fails
+     */
+    void close() throws IOException {
+        closed = true;
+        writeLock.lock();
+        try {
+            writableCondition.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+        selectorThread.execute(() -> {
+            SelectionKey key = selectionKey;
+            if (key != null) {
+                key.cancel();
+            }
+        });
+        channel.close();
+    }
+}
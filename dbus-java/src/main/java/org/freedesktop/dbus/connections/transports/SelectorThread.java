@@ -0,0 +1,102 @@
+package org.freedesktop.dbus.connections.transports;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the select loop of one {@link Selector} and dispatches read/write readiness
+ * to the attached {@link ISelectorHandler}s.
+ * <p>
+ * Registration and changes of interest ops are always executed on the selector thread
+ * (see {@link #execute(Runnable)}) to prevent blocking while the selector is selecting.
+ * </p>
+ */
+public final class SelectorThread implements Runnable {
+    private final Logger          logger       = LoggerFactory.getLogger(getClass());
+
+    private final Selector        selector;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    SelectorThread(Selector _selector) {
+        selector = _selector;
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Execute the given task on the selector thread.
+     * @param _task task to run
+     */
+    public void execute(Runnable _task) {
+        pendingTasks.add(_task);
+        selector.wakeup();
+    }
+
+    /**
+     * Close the selector, the thread will terminate afterwards.
+     * All channels registered with this selector are deregistered, but not closed.
+     */
+    void shutdown() {
+        execute(() -> {
+            try {
+                selector.close();
+            } catch (IOException _ex) {
+                logger.debug("Closing selector failed", _ex);
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+            } catch (IOException _ex) {
+                logger.error("Selector failed", _ex);
+                return;
+            }
+
+            Runnable task;
+            while ((task = pendingTasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException _ex) {
+                    logger.error("Exception in selector task", _ex);
+                }
+            }
+            if (!selector.isOpen()) {
+                return;
+            }
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+
+                ISelectorHandler handler = (ISelectorHandler) key.attachment();
+                try {
+                    if (key.isValid() && key.isWritable()) {
+                        handler.handleWritable();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        handler.handleReadable();
+                    }
+                } catch (CancelledKeyException _ex) {
+                    logger.trace("Key cancelled while processing", _ex);
+                } catch (RuntimeException _ex) {
+                    logger.error("Exception while handling selected channel", _ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.freedesktop.dbus.connections.transports;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.hypfvieh.threads.NameableThreadFactory;
+
+/**
+ * Pool of selector threads.
+ * <p>
+ * The shared instance ({@link #getInstance()}) is used by all non-blocking transports.
+ * Other components (e.g. the bus daemon) may create their own pool with a different number of threads.
+ * Channels are distributed round-robin over a small, fixed number of threads.
+ * As a selector can only handle channels created by the same {@link SelectorProvider},
+ * a separate group of threads is started for each provider (e.g. one for TCP and one for unix sockets).
+ * Threads are started on first use and run as daemon threads until the pool is shut down
+ * (the shared instance is never shut down).
+ * </p>
+ */
+public final class SelectorThreadPool {
+    private static final SelectorThreadPool            INSTANCE    = new SelectorThreadPool();
+
+    private static volatile int                        threadCount = Math.min(2, Runtime.getRuntime().availableProcessors());
+
+    private final Map<SelectorProvider, SelectorThread[]> threads  = new ConcurrentHashMap<>();
+    private final AtomicInteger                        nextThread  = new AtomicInteger();
+    private final ThreadFactory                        threadFactory;
+    /** Number of threads used by this pool, 0 to use the globally configured thread count. */
+    private final int                                  poolThreadCount;
+
+    private SelectorThreadPool() {
+        threadFactory = new NameableThreadFactory("DBus Selector Thread-", true);
+        poolThreadCount = 0;
+    }
+
+    /**
+     * Create a separate pool of selector threads.
+     *
+     * @param _threadName prefix of the thread names
+     * @param _threadCount number of threads per channel type, has to be greater than 0
+     */
+    public SelectorThreadPool(String _threadName, int _threadCount) {
+        if (_threadCount < 1) {
+            throw new IllegalArgumentException("Selector thread count has to be greater than 0");
+        }
+        threadFactory = new NameableThreadFactory(_threadName, true);
+        poolThreadCount = _threadCount;
+    }
+
+    public static SelectorThreadPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the number of selector threads used per channel type.
+     * Only affects thread groups which have not been started yet, so this
+     * should be called before the first non-blocking connection is created.
+     *
+     * @param _threadCount number of threads, has to be greater than 0
+     */
+    public static void setThreadCount(int _threadCount) {
+        if (_threadCount < 1) {
+            throw new IllegalArgumentException("Selector thread count has to be greater than 0");
+        }
+        threadCount = _threadCount;
+    }
+
+    public static int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Returns the selector thread which should be used for the given channel.
+     *
+     * @param _channel channel
+     * @return {@link SelectorThread}
+     * @throws IOException if no selector could be opened for this channel type
+     */
+    public SelectorThread nextThread(SelectableChannel _channel) throws IOException {
+        SelectorThread[] group;
+        try {
+            group = threads.computeIfAbsent(_channel.provider(), this::startThreads);
+        } catch (UncheckedIOException _ex) {
+            throw _ex.getCause();
+        }
+        return group[Math.floorMod(nextThread.getAndIncrement(), group.length)];
+    }
+
+    private SelectorThread[] startThreads(SelectorProvider _provider) {
+        SelectorThread[] group = new SelectorThread[poolThreadCount > 0 ? poolThreadCount : threadCount];
+        try {
+            for (int i = 0; i < group.length; i++) {
+                group[i] = new SelectorThread(_provider.openSelector());
+            }
+        } catch (IOException _ex) {
+            throw new UncheckedIOException(_ex);
+        }
+
+        for (SelectorThread selectorThread : group) {
+            threadFactory.newThread(selectorThread).start();
+        }
+        return group;
+    }
+
+    /**
+     * Stop all threads of this pool.
+     * Channels are not closed, this has to be done by the caller.
+     */
+    public void shutdown() {
+        if (this == INSTANCE) {
+            throw new IllegalStateException("Shared selector pool cannot be shut down");
+        }
+        for (SelectorThread[] group : threads.values()) {
+            for (SelectorThread selectorThread : group) {
+                selectorThread.shutdown();
+            }
+        }
+        threads.clear();
+    }
+}
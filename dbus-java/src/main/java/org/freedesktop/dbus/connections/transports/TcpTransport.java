@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import org.freedesktop.dbus.connections.BusAddress;
 import org.freedesktop.dbus.connections.SASL;
@@ -31,7 +33,11 @@ public class TcpTransport extends AbstractTransport {
      * @throws IOException on error
      */
     void connect() throws IOException {
-        
+        if (isNonBlocking()) {
+            connectChannel();
+            return;
+        }
+
         if (getAddress().isListeningSocket()) {
             try (ServerSocket ss = new ServerSocket()) {
                 ss.bind(new InetSocketAddress(getAddress().getHost(), getAddress().getPort()));
@@ -46,7 +52,32 @@ public class TcpTransport extends AbstractTransport {
         setInputReader(socket.getInputStream());
         setOutputWriter(socket.getOutputStream());
 
-        authenticate(socket.getOutputStream(), socket.getInputStream(), socket);
+        // peer credentials are only available on unix sockets
+        authenticate(socket.getOutputStream(), socket.getInputStream(), null);
+    }
+
+    /**
+     * Connect to DBus using a {@link SocketChannel} which will be switched
+     * to non-blocking mode after authentication.
+     * @throws IOException on error
+     */
+    private void connectChannel() throws IOException {
+        SocketChannel channel;
+        if (getAddress().isListeningSocket()) {
+            try (ServerSocketChannel ss = ServerSocketChannel.open()) {
+                ss.bind(new InetSocketAddress(getAddress().getHost(), getAddress().getPort()));
+                channel = ss.accept();
+            }
+        } else {
+            channel = SocketChannel.open();
+            getLogger().trace("Setting timeout to {} on SocketChannel", timeout);
+            channel.socket().connect(new InetSocketAddress(getAddress().getHost(), getAddress().getPort()), timeout);
+        }
+        socket = channel.socket();
+
+        // peer credentials are only available on unix sockets
+        authenticate(socket.getOutputStream(), socket.getInputStream(), null);
+        setChannel(channel);
     }
 
     @Override
@@ -29,6 +29,23 @@ public final class TransportFactory {
      * @throws IOException when transport could not be created
      */
     public static AbstractTransport createTransport(BusAddress _address, int _timeout) throws IOException {
+        return createTransport(_address, _timeout, false);
+    }
+
+    /**
+     * Creates a new transport encapsulating connection to a unix socket or TCP socket.
+     * <p>
+     * When non-blocking is used, the transport will not use blocking streams but a channel
+     * which is handled by the shared selector threads (see {@link SelectorThreadPool}).
+     * </p>
+     *
+     * @param _address Address parameter
+     * @param _timeout timeout in milliseconds
+     * @param _nonBlocking true to use non-blocking mode
+     * @return {@link AbstractTransport}
+     * @throws IOException when transport could not be created
+     */
+    public static AbstractTransport createTransport(BusAddress _address, int _timeout, boolean _nonBlocking) throws IOException {
         LoggerFactory.getLogger(TransportFactory.class).debug("Connecting to {}", _address);
 
         AbstractTransport transport;
@@ -41,6 +58,7 @@ public final class TransportFactory {
             throw new IOException("Unknown address type " + _address.getType());
         }
         
+        transport.setNonBlocking(_nonBlocking);
         transport.connect();
         return transport;
     }
@@ -58,12 +58,35 @@ public class UnixSocketTransport extends AbstractTransport {
             us.setOption(UnixSocketOptions.SO_PASSCRED, true);
         }
 
-        setOutputWriter(us.socket().getOutputStream());
-        setInputReader(us.socket().getInputStream());
-        
         authenticate(us.socket().getOutputStream(), us.socket().getInputStream(), us.socket());
+
+        FileDescriptorSocket fdSocket = null;
+        if (isFileDescriptorSupported()) {
+            fdSocket = new FileDescriptorSocket(us);
+            setFileDescriptorSocket(fdSocket);
+        }
+
+        if (isNonBlocking()) {
+            setChannel(us);
+            return;
+        }
+
+        setOutputWriter(us.socket().getOutputStream());
+        if (null == fdSocket) {
+            setInputReader(us.socket().getInputStream());
+        } else {
+            // ancillary data is discarded when reading from the socket stream, so all reads have to use recvmsg
+            setInputReader(fdSocket.getInputStream());
+        }
     }
 
+    /**
+     * Unix sockets are able to pass file descriptors using SCM_RIGHTS.
+     */
+    @Override
+    protected boolean hasFileDescriptorSupport() {
+        return true;
+    }
 
     @Override
     public void close() throws IOException {
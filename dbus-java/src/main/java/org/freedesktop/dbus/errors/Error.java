@@ -12,7 +12,9 @@
 
 package org.freedesktop.dbus.errors;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +24,7 @@ import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.DBusExecutionException;
 import org.freedesktop.dbus.exceptions.MessageFormatException;
 import org.freedesktop.dbus.exceptions.NotConnected;
+import org.freedesktop.dbus.messages.ClassResolver;
 import org.freedesktop.dbus.messages.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +33,27 @@ import org.slf4j.LoggerFactory;
  * Error messages which can be sent over the bus.
  */
 public class Error extends Message {
+    /** Exception classes by error name, names of errors defined by D-Bus are mapped to the errors package. */
+    private static final ClassResolver<DBusExecutionException> EXCEPTION_CLASSES      =
+            new ClassResolver<>(DBusExecutionException.class,
+                    n -> n.startsWith("org.freedesktop.DBus.Error.")
+                            ? "org.freedesktop.dbus.errors." + n.substring("org.freedesktop.DBus.Error.".length()) : n);
+
+    /** Constructors taking the error message, null if the exception class has no public one. */
+    private static final ClassValue<MethodHandle>              EXCEPTION_CONSTRUCTORS =
+            new ClassValue<MethodHandle>() {
+                @Override
+                protected MethodHandle computeValue(Class<?> _type) {
+                    try {
+                        return MethodHandles.publicLookup()
+                                .findConstructor(_type, MethodType.methodType(void.class, String.class))
+                                .asType(MethodType.methodType(DBusExecutionException.class, String.class));
+                    } catch (NoSuchMethodException | IllegalAccessException _ex) {
+                        return null;
+                    }
+                }
+            };
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public Error() {
@@ -88,17 +112,10 @@ public class Error extends Message {
             getHeaders().put(Message.HeaderField.SIGNATURE, sig);
             setArgs(args);
         }
+        addUnixFdHeader(hargs, sig, args);
 
-        byte[] blen = new byte[4];
-        appendBytes(blen);
-        append("ua(yv)", getSerial(), hargs.toArray());
-        pad((byte) 8);
-
-        long c = getByteCounter();
-        if (null != sig) {
-            append(sig, args);
-        }
-        marshallint(getByteCounter() - c, blen, 0, 4);
+        appendHeader(getSerial(), hargs);
+        appendBody(sig, args);
     }
 
     public Error(String source, Message m, Throwable e) throws DBusException {
@@ -111,26 +128,11 @@ public class Error extends Message {
                 m.getSerial(), "s", e.getMessage());
     }
 
-    @SuppressWarnings("unchecked")
     private static Class<? extends DBusExecutionException> createExceptionClass(String name) {
         if (name == "org.freedesktop.DBus.Local.Disconnected") {
             return NotConnected.class;
         }
-        Class<? extends DBusExecutionException> c = null;
-
-        // Fix package name for DBus own error messages
-        if (name.startsWith("org.freedesktop.DBus.Error.")) {
-            name = name.replace("org.freedesktop.DBus.Error.", "org.freedesktop.dbus.errors.");
-        }
-
-        do {
-            try {
-                c = (Class<? extends org.freedesktop.dbus.exceptions.DBusExecutionException>) Class.forName(name);
-            } catch (ClassNotFoundException exCnf) {
-            }
-            name = name.replaceAll("\\.([^\\.]*)$", "\\$$1");
-        } while (null == c && name.matches(".*\\..*"));
-        return c;
+        return EXCEPTION_CLASSES.resolve(name);
     }
 
     /**
@@ -139,45 +141,35 @@ public class Error extends Message {
      * @return exception
      */
     public DBusExecutionException getException() {
+        String message = "";
         try {
-            Class<? extends DBusExecutionException> c = createExceptionClass(getName());
-            if (null == c || !DBusExecutionException.class.isAssignableFrom(c)) {
-                c = DBusExecutionException.class;
-            }
-            Constructor<? extends DBusExecutionException> con = c.getConstructor(String.class);
-            DBusExecutionException ex;
             Object[] args = getParameters();
-            if (null == args || 0 == args.length) {
-                ex = con.newInstance("");
-            } else {
-                String s = "";
+            if (null != args && 0 < args.length) {
+                StringBuilder sb = new StringBuilder();
                 for (Object o : args) {
-                    s += o + " ";
+                    sb.append(o).append(' ');
                 }
-                ex = con.newInstance(s.trim());
+                message = sb.toString().trim();
             }
-            ex.setType(getName());
-            return ex;
         } catch (Exception ex1) {
             logger.debug("", ex1);
-            DBusExecutionException ex;
-            Object[] args = null;
+        }
+
+        DBusExecutionException ex = null;
+        Class<? extends DBusExecutionException> c = createExceptionClass(getName());
+        MethodHandle con = null == c ? null : EXCEPTION_CONSTRUCTORS.get(c);
+        if (null != con) {
             try {
-                args = getParameters();
-            } catch (Exception ex2) {
+                ex = (DBusExecutionException) con.invokeExact(message);
+            } catch (Throwable ex1) {
+                logger.debug("", ex1);
             }
-            if (null == args || 0 == args.length) {
-                ex = new DBusExecutionException("");
-            } else {
-                String s = "";
-                for (Object o : args) {
-                    s += o + " ";
-                }
-                ex = new DBusExecutionException(s.trim());
-            }
-            ex.setType(getName());
-            return ex;
         }
+        if (null == ex) {
+            ex = new DBusExecutionException(message);
+        }
+        ex.setType(getName());
+        return ex;
     }
 
     /**
@@ -0,0 +1,13 @@
+package org.freedesktop.dbus.errors;
+
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+
+/**
+ * Thrown if a match rule which should be removed was never added
+ */
+@SuppressWarnings("serial")
+public class MatchRuleNotFound extends DBusExecutionException {
+    public MatchRuleNotFound(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package org.freedesktop.dbus.errors;
+
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+
+/**
+ * Thrown if a property which cannot be written should be set
+ */
+@SuppressWarnings("serial")
+public class PropertyReadOnly extends DBusExecutionException {
+    public PropertyReadOnly(String message) {
+        super(message);
+    }
+}
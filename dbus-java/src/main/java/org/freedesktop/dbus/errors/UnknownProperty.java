@@ -0,0 +1,13 @@
+package org.freedesktop.dbus.errors;
+
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+
+/**
+ * Thrown if the requested property does not exist on the object
+ */
+@SuppressWarnings("serial")
+public class UnknownProperty extends DBusExecutionException {
+    public UnknownProperty(String message) {
+        super(message);
+    }
+}
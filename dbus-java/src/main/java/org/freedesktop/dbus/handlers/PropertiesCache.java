@@ -0,0 +1,271 @@
+package org.freedesktop.dbus.handlers;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.annotations.DBusMemberName;
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal;
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal.EmitChangeSignal;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.Properties;
+import org.freedesktop.dbus.interfaces.Properties.PropertiesChanged;
+import org.freedesktop.dbus.types.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client side cache of the properties of a remote object.
+ * <p>
+ * The properties of an interface are fetched with a single GetAll call when one of them is read for the first time.
+ * Afterwards reads are served from the cache, which is kept up to date by the PropertiesChanged signals of the object.
+ * The cache subscribes to these signals when it is created and unsubscribes when it is closed.
+ * Properties invalidated by a signal or written using {@link #Set(String, String, Object)} cause the interface
+ * to be fetched again on the next read.
+ * </p>
+ * <p>
+ * How a property is cached depends on its {@link EmitChangeSignal} mode (default is {@link EmitChangeSignal#TRUE}):
+ * <ul>
+ * <li>TRUE, INVALIDATES: cached until changed or invalidated by a signal</li>
+ * <li>CONST: cached as long as this cache exists</li>
+ * <li>FALSE: never cached, every read is sent to the remote object</li>
+ * </ul>
+ * Use the setEmitsChangedSignal methods to configure the modes before reading properties.
+ * </p>
+ */
+public class PropertiesCache extends AbstractPropertiesChangedHandler implements Properties, Closeable {
+    private final Logger                             logger       = LoggerFactory.getLogger(getClass());
+
+    private final Properties                         remote;
+    private final Map<String, InterfaceCache>        caches       = new ConcurrentHashMap<>();
+    /** Mode per interface name (default of interface) or interface and property name. */
+    private final Map<String, EmitChangeSignal>      emitModes    = new ConcurrentHashMap<>();
+
+    private volatile AbstractConnection              connection;
+
+    /**
+     * Create a new cache for the given remote object and subscribe to its PropertiesChanged signals.
+     * Call {@link #close()} when the cache is no longer used to remove the signal handler.
+     *
+     * @param _connection connection the remote object was created with
+     * @param _remote properties of the remote object, e.g. obtained by getRemoteObject(..., Properties.class)
+     * @throws DBusException if signal handler could not be added
+     */
+    public PropertiesCache(AbstractConnection _connection, Properties _remote) throws DBusException {
+        this(_remote);
+        Objects.requireNonNull(_connection, "Connection required");
+        _connection.addSigHandler(PropertiesChanged.class, _remote, this);
+        connection = _connection;
+    }
+
+    /**
+     * Create a new cache which does not subscribe to any signals.
+     * Sub classes have to pass the PropertiesChanged signals of the remote object to {@link #handle(PropertiesChanged)},
+     * otherwise cached properties are never updated.
+     *
+     * @param _remote properties of the remote object
+     */
+    protected PropertiesCache(Properties _remote) {
+        remote = Objects.requireNonNull(_remote, "Remote object required");
+    }
+
+    /**
+     * Set the default mode of all properties of the given interface.
+     *
+     * @param _interface D-Bus interface name
+     * @param _mode mode
+     */
+    public void setEmitsChangedSignal(String _interface, EmitChangeSignal _mode) {
+        emitModes.put(_interface, _mode);
+    }
+
+    /**
+     * Set the mode of a single property.
+     *
+     * @param _interface D-Bus interface name
+     * @param _property property name
+     * @param _mode mode
+     */
+    public void setEmitsChangedSignal(String _interface, String _property, EmitChangeSignal _mode) {
+        emitModes.put(_interface + '\0' + _property, _mode);
+    }
+
+    /**
+     * Set the modes of all properties of the given interface class which are annotated with
+     * {@link PropertiesEmitsChangedSignal}. The property name is the method name or the value of
+     * {@link DBusMemberName} if present.
+     *
+     * @param _interface interface class
+     */
+    public void setEmitsChangedSignal(Class<? extends DBusInterface> _interface) {
+        DBusInterfaceName interfaceName = _interface.getAnnotation(DBusInterfaceName.class);
+        String iface = null == interfaceName ? AbstractConnection.DOLLAR_PATTERN.matcher(_interface.getName()).replaceAll(".")
+                : interfaceName.value();
+        for (Method m : _interface.getMethods()) {
+            PropertiesEmitsChangedSignal emits = m.getAnnotation(PropertiesEmitsChangedSignal.class);
+            if (null != emits) {
+                DBusMemberName memberName = m.getAnnotation(DBusMemberName.class);
+                setEmitsChangedSignal(iface, null == memberName ? m.getName() : memberName.value(), emits.value());
+            }
+        }
+    }
+
+    private EmitChangeSignal getEmitsChangedSignal(String _interface, String _property) {
+        EmitChangeSignal mode = emitModes.get(_interface + '\0' + _property);
+        if (null == mode) {
+            mode = emitModes.getOrDefault(_interface, EmitChangeSignal.TRUE);
+        }
+        return mode;
+    }
+
+    private InterfaceCache getCache(String _interface) {
+        return caches.computeIfAbsent(_interface, i -> new InterfaceCache());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A> A Get(String _interfaceName, String _propertyName) {
+        if (EmitChangeSignal.FALSE == getEmitsChangedSignal(_interfaceName, _propertyName)) {
+            return remote.Get(_interfaceName, _propertyName);
+        }
+        InterfaceCache cache = getCache(_interfaceName);
+        Variant<?> value = cache.values.get(_propertyName);
+        if (null == value && !cache.complete) {
+            value = fetch(_interfaceName, cache).get(_propertyName);
+        }
+        if (null != value) {
+            return (A) value.getValue();
+        }
+        // not returned by GetAll, let the remote object decide
+        return remote.Get(_interfaceName, _propertyName);
+    }
+
+    @Override
+    public <A> void Set(String _interfaceName, String _propertyName, A _value) {
+        remote.Set(_interfaceName, _propertyName, _value);
+        InterfaceCache cache = caches.get(_interfaceName);
+        if (null != cache) {
+            cache.invalidate(_propertyName);
+        }
+    }
+
+    @Override
+    public Map<String, Variant<?>> GetAll(String _interfaceName) {
+        InterfaceCache cache = getCache(_interfaceName);
+        // properties which are not cached can only be retrieved by the remote object
+        if (cache.complete && !cache.hasUncached) {
+            return new HashMap<>(cache.values);
+        }
+        return new HashMap<>(fetch(_interfaceName, cache));
+    }
+
+    /**
+     * Fetch all properties of the interface and store them in the cache,
+     * unless the cache was changed by a signal in the meantime.
+     */
+    private Map<String, Variant<?>> fetch(String _interface, InterfaceCache _cache) {
+        long changes = _cache.changes;
+        Map<String, Variant<?>> all = remote.GetAll(_interface);
+        synchronized (_cache) {
+            if (changes != _cache.changes) {
+                logger.trace("Properties of {} changed while fetching, not caching them", _interface);
+                return all;
+            }
+            boolean uncached = false;
+            for (Entry<String, Variant<?>> e : all.entrySet()) {
+                if (EmitChangeSignal.FALSE == getEmitsChangedSignal(_interface, e.getKey())) {
+                    uncached = true;
+                } else {
+                    _cache.values.put(e.getKey(), e.getValue());
+                }
+            }
+            _cache.hasUncached = uncached;
+            _cache.complete = true;
+        }
+        return all;
+    }
+
+    @Override
+    public void handle(PropertiesChanged _signal) {
+        InterfaceCache cache = caches.get(_signal.getInterfaceName());
+        if (null == cache) {
+            return;
+        }
+        synchronized (cache) {
+            cache.changes++;
+            if (null != _signal.getPropertiesChanged()) {
+                for (Entry<String, Variant<?>> e : _signal.getPropertiesChanged().entrySet()) {
+                    if (EmitChangeSignal.FALSE != getEmitsChangedSignal(_signal.getInterfaceName(), e.getKey())) {
+                        cache.values.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            if (null != _signal.getPropertiesRemoved()) {
+                for (String property : _signal.getPropertiesRemoved()) {
+                    cache.invalidate(property);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all cached properties.
+     */
+    public void clear() {
+        caches.clear();
+    }
+
+    /**
+     * Stop receiving signals and remove all cached properties.
+     */
+    @Override
+    public void close() {
+        AbstractConnection conn = connection;
+        connection = null;
+        if (null != conn) {
+            try {
+                conn.removeSigHandler(PropertiesChanged.class, remote, this);
+            } catch (DBusException _ex) {
+                logger.debug("Could not remove properties changed handler", _ex);
+            }
+        }
+        clear();
+    }
+
+    @Override
+    public boolean isRemote() {
+        return remote.isRemote();
+    }
+
+    @Override
+    public String getObjectPath() {
+        return remote.getObjectPath();
+    }
+
+    /**
+     * Cached properties of one interface.
+     * Values are read without locking, all changes are done while holding the monitor of this object.
+     */
+    private static final class InterfaceCache {
+        private final Map<String, Variant<?>> values = new ConcurrentHashMap<>();
+        /** Number of signals received, used to detect signals received while fetching. */
+        private volatile long                 changes;
+        /** True if all properties were fetched and none was invalidated since. */
+        private volatile boolean              complete;
+        /** True if the interface has properties which are not cached (mode FALSE). */
+        private volatile boolean              hasUncached;
+
+        private synchronized void invalidate(String _property) {
+            changes++;
+            values.remove(_property);
+            complete = false;
+        }
+    }
+}
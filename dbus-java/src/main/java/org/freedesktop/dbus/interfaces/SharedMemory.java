@@ -0,0 +1,21 @@
+package org.freedesktop.dbus.interfaces;
+
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+
+/**
+ * Used by dbus-java peers to find out if large byte arrays can be passed as shared memory
+ * (see {@link org.freedesktop.dbus.types.SharedByteArray}).
+ * Every connection implements this interface.
+ */
+@DBusInterfaceName(SharedMemory.INTERFACE_NAME)
+public interface SharedMemory extends DBusInterface {
+    String INTERFACE_NAME = "com.github.hypfvieh.dbus.SharedMemory";
+
+    /**
+     * Returns true if this peer is able to receive shared memory regions,
+     * which requires a transport supporting file descriptor passing.
+     *
+     * @return boolean
+     */
+    boolean SupportsSharedMemory();
+}
@@ -0,0 +1,90 @@
+package org.freedesktop.dbus.messages;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of heap {@link ByteBuffer}s used as scratch buffers when marshalling messages.
+ * <p>
+ * Buffers are pooled in power of two size classes from {@link #MIN_SIZE} to {@link #MAX_SIZE} bytes.
+ * Larger buffers are allocated on demand and never pooled.
+ * The number of buffers kept per size class is limited, surplus buffers are left to the garbage collector.
+ * </p>
+ */
+public final class ByteBufferPool {
+    /** Size of the smallest pooled buffer. */
+    public static final int               MIN_SIZE        = 512;
+    /** Size of the largest pooled buffer. */
+    public static final int               MAX_SIZE        = 64 * 1024;
+
+    private static final int              MIN_SHIFT       = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int              MAX_PER_CLASS   = 64;
+
+    private static final ByteBufferPool   INSTANCE        = new ByteBufferPool();
+
+    private final Queue<ByteBuffer>[]     pools;
+    private final AtomicInteger[]         counts;
+
+    @SuppressWarnings("unchecked")
+    private ByteBufferPool() {
+        int classes = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+        pools = new Queue[classes];
+        counts = new AtomicInteger[classes];
+        for (int i = 0; i < classes; i++) {
+            pools[i] = new ConcurrentLinkedQueue<>();
+            counts[i] = new AtomicInteger();
+        }
+    }
+
+    public static ByteBufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a cleared buffer with at least the given capacity.
+     *
+     * @param _minCapacity minimum capacity
+     * @return buffer
+     */
+    public ByteBuffer acquire(int _minCapacity) {
+        if (_minCapacity > MAX_SIZE) {
+            return ByteBuffer.allocate(_minCapacity);
+        }
+        int sizeClass = sizeClass(_minCapacity);
+        ByteBuffer buffer = pools[sizeClass].poll();
+        if (null == buffer) {
+            return ByteBuffer.allocate(MIN_SIZE << sizeClass);
+        }
+        counts[sizeClass].decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     * The buffer must not be used by the caller afterwards.
+     *
+     * @param _buffer buffer, may be null
+     */
+    public void release(ByteBuffer _buffer) {
+        if (null == _buffer || _buffer.isDirect() || _buffer.capacity() > MAX_SIZE || _buffer.capacity() < MIN_SIZE
+                || Integer.bitCount(_buffer.capacity()) != 1) {
+            return;
+        }
+        int sizeClass = sizeClass(_buffer.capacity());
+        if (counts[sizeClass].incrementAndGet() > MAX_PER_CLASS) {
+            counts[sizeClass].decrementAndGet();
+            return;
+        }
+        _buffer.clear();
+        pools[sizeClass].offer(_buffer);
+    }
+
+    private static int sizeClass(int _capacity) {
+        if (_capacity <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(_capacity - 1) - MIN_SHIFT;
+    }
+}
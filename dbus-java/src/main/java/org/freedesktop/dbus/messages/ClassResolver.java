@@ -0,0 +1,133 @@
+package org.freedesktop.dbus.messages;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Resolves D-Bus names (e.g. of signals or errors) to Java classes and caches the result.
+ * <p>
+ * A name is resolved by loading the class with that name. If there is no such class, the last
+ * '.' is replaced by '$' (nested classes) until a class is found or no '.' is left.
+ * Classes are loaded using the class loader of dbus-java and, if different, the context class loader
+ * of the current thread.
+ * </p>
+ * <p>
+ * Results are cached per context class loader, so classes of different applications sharing dbus-java
+ * do not get mixed up and can still be unloaded. Names without class are cached as well (up to a limit),
+ * so resolving an unknown name a second time only costs a map lookup.
+ * </p>
+ *
+ * @param <T> base type of the resolved classes
+ */
+public final class ClassResolver<T> {
+    /** Maximum number of names without class cached per class loader. */
+    private static final int                    MAX_UNKNOWN_NAMES = 1024;
+    private static final Reference<Class<?>>    UNKNOWN           = new WeakReference<>(null);
+
+    private final Class<T>                      baseType;
+    private final UnaryOperator<String>         nameMapper;
+    private final ClassLoader                   defaultLoader     = ClassResolver.class.getClassLoader();
+    private final Map<ClassLoader, LoaderCache> caches            = new WeakHashMap<>();
+    private volatile LoaderCache                lastCache;
+
+    /**
+     * @param _baseType only classes assignable to this type are resolved
+     * @param _nameMapper converts the D-Bus name to the Java class name before resolving it (only called on cache misses)
+     */
+    public ClassResolver(Class<T> _baseType, UnaryOperator<String> _nameMapper) {
+        baseType = _baseType;
+        nameMapper = _nameMapper;
+    }
+
+    /**
+     * Returns the class for the given name.
+     *
+     * @param _name name
+     * @return class or null if there is no class of the base type for this name
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends T> resolve(String _name) {
+        LoaderCache cache = getCache();
+        Reference<Class<?>> ref = cache.classes.get(_name);
+        if (UNKNOWN == ref) {
+            return null;
+        }
+        Class<?> c = null == ref ? null : ref.get();
+        if (null == c) {
+            ClassLoader contextLoader = cache.loader.get();
+            c = find(nameMapper.apply(_name), contextLoader == defaultLoader ? null : contextLoader);
+            if (null != c) {
+                cache.classes.put(_name, new WeakReference<>(c));
+            } else if (cache.unknownNames.get() < MAX_UNKNOWN_NAMES) {
+                cache.unknownNames.incrementAndGet();
+                cache.classes.put(_name, UNKNOWN);
+            }
+        }
+        return (Class<? extends T>) c;
+    }
+
+    private LoaderCache getCache() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (null == loader) {
+            loader = defaultLoader;
+        }
+        LoaderCache last = lastCache;
+        if (null != last && last.loader.get() == loader) {
+            return last;
+        }
+        synchronized (caches) {
+            LoaderCache cache = caches.computeIfAbsent(loader, LoaderCache::new);
+            lastCache = cache;
+            return cache;
+        }
+    }
+
+    private Class<?> find(String _className, ClassLoader _additionalLoader) {
+        String name = _className;
+        while (true) {
+            Class<?> c = load(name, defaultLoader);
+            if (null == c && null != _additionalLoader) {
+                c = load(name, _additionalLoader);
+            }
+            if (null != c) {
+                return c;
+            }
+            int idx = name.lastIndexOf('.');
+            if (idx < 0) {
+                return null;
+            }
+            name = name.substring(0, idx) + '$' + name.substring(idx + 1);
+            if (name.indexOf('.') < 0) {
+                return null;
+            }
+        }
+    }
+
+    private Class<?> load(String _className, ClassLoader _loader) {
+        try {
+            Class<?> c = Class.forName(_className, true, _loader);
+            return baseType.isAssignableFrom(c) ? c : null;
+        } catch (ClassNotFoundException | LinkageError _ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolved names of one context class loader.
+     * Classes are only referenced weakly, they keep their class loader alive.
+     */
+    private static final class LoaderCache {
+        private final Reference<ClassLoader>           loader;
+        private final Map<String, Reference<Class<?>>> classes      = new ConcurrentHashMap<>();
+        private final AtomicInteger                    unknownNames = new AtomicInteger();
+
+        private LoaderCache(ClassLoader _loader) {
+            loader = new WeakReference<>(_loader);
+        }
+    }
+}
@@ -12,8 +12,11 @@
 
 package org.freedesktop.dbus.messages;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
@@ -21,6 +24,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
 import org.freedesktop.dbus.DBusMatchRule;
 import org.freedesktop.dbus.InternalSignal;
@@ -36,14 +40,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class DBusSignal extends Message {
-    private static final Map<String, Class<? extends DBusSignal>>                            CLASS_CACHE       =
-            new ConcurrentHashMap<>();
-
-    private static final Map<Class<? extends DBusSignal>, Type[]>                            TYPE_CACHE        =
-            new ConcurrentHashMap<>();
-
-    private static final Map<Class<? extends DBusSignal>, Constructor<? extends DBusSignal>> CONSTRUCTOR_CACHE =
-            new ConcurrentHashMap<>();
+    private static final ClassResolver<DBusSignal>                                           SIGNAL_CLASSES    =
+            new ClassResolver<>(DBusSignal.class, UnaryOperator.identity());
+
+    private static final ClassValue<SignalConstructor>                                       CONSTRUCTORS      =
+            new ClassValue<SignalConstructor>() {
+                @Override
+                protected SignalConstructor computeValue(Class<?> _type) {
+                    return new SignalConstructor(_type);
+                }
+            };
 
     private static final Map<String, String>                                                 SIGNAL_NAMES      =
             new ConcurrentHashMap<>();
@@ -55,7 +61,6 @@ public class DBusSignal extends Message {
 
     private Class<? extends DBusSignal>                                                      clazz;
     private boolean                                                                          bodydone          = false;
-    private byte[]                                                                           blen;
 
     DBusSignal() {
     }
@@ -106,19 +111,12 @@ public class DBusSignal extends Message {
             getHeaders().put(Message.HeaderField.SIGNATURE, sig);
             setArgs(args);
         }
+        addUnixFdHeader(hargs, sig, args);
 
-        blen = new byte[4];
-        appendBytes(blen);
         long newSerial = getSerial() + 1;
         setSerial(newSerial);
-        append("ua(yv)", newSerial, hargs.toArray());
-        pad((byte) 8);
-
-        long counter = getByteCounter();
-        if (null != sig) {
-            append(sig, args);
-        }
-        marshallint(getByteCounter() - counter, blen, 0, 4);
+        appendHeader(newSerial, hargs);
+        appendBody(sig, args);
         bodydone = true;
     }
 
@@ -149,31 +147,18 @@ public class DBusSignal extends Message {
         return s;
     }
 
-    @SuppressWarnings("unchecked")
     private static Class<? extends DBusSignal> createSignalClass(String intname, String signame) throws DBusException {
         String name = intname + '$' + signame;
-        Class<? extends DBusSignal> c = CLASS_CACHE.get(name);
+        Class<? extends DBusSignal> c = DBusMatchRule.getCachedSignalType(name);
         if (null == c) {
-            c = DBusMatchRule.getCachedSignalType(name);
-        }
-        if (null != c) {
-            return c;
+            c = SIGNAL_CLASSES.resolve(name);
         }
-        do {
-            try {
-                c = (Class<? extends DBusSignal>) Class.forName(name);
-            } catch (ClassNotFoundException exCnf) {
-            }
-            name = name.replaceAll("\\.([^\\.]*)$", "\\$$1");
-        } while (null == c && name.matches(".*\\..*"));
         if (null == c) {
             throw new DBusException("Could not create class from signal " + intname + '.' + signame);
         }
-        CLASS_CACHE.put(name, c);
         return c;
     }
 
-    @SuppressWarnings("unchecked")
     public DBusSignal createReal(AbstractConnection conn) throws DBusException {
         String intname = INT_NAMES.get(getInterface());
         String signame = SIGNAL_NAMES.get(getName());
@@ -188,30 +173,13 @@ public class DBusSignal extends Message {
         }
 
         logger.debug("Converting signal to type: {}", clazz);
-        Type[] types = TYPE_CACHE.get(clazz);
-        Constructor<? extends DBusSignal> con = CONSTRUCTOR_CACHE.get(clazz);
-        if (null == types) {
-            con = (Constructor<? extends DBusSignal>) clazz.getDeclaredConstructors()[0];
-            CONSTRUCTOR_CACHE.put(clazz, con);
-            Type[] ts = con.getGenericParameterTypes();
-            types = new Type[ts.length - 1];
-            for (int i = 1; i < ts.length; i++) {
-                if (ts[i] instanceof TypeVariable) {
-                    for (Type b : ((TypeVariable<GenericDeclaration>) ts[i]).getBounds()) {
-                        types[i - 1] = b;
-                    }
-                } else {
-                    types[i - 1] = ts[i];
-                }
-            }
-            TYPE_CACHE.put(clazz, types);
-        }
+        SignalConstructor con = CONSTRUCTORS.get(clazz);
 
         try {
             DBusSignal s;
-            Object[] args = Marshalling.deSerializeParameters(getParameters(), types, conn);
+            Object[] args = con.getParameters(this, conn);
             if (null == args) {
-                s = con.newInstance(getPath());
+                s = con.newInstance(new Object[] {getPath()});
             } else {
                 Object[] params = new Object[args.length + 1];
                 params[0] = getPath();
@@ -222,9 +190,14 @@ public class DBusSignal extends Message {
             }
             s.getHeaders().putAll(getHeaders());
             s.setWiredata(getWireData());
+            if (!getFileDescriptors().isEmpty()) {
+                s.setFileDescriptors(getFileDescriptors());
+            }
             s.setByteCounter(getWireData().length);
             return s;
-        } catch (Exception _ex) {
+        } catch (Error _ex) {
+            throw _ex;
+        } catch (Throwable _ex) {
             throw new DBusException(_ex);
         }
     }
@@ -286,22 +259,7 @@ public class DBusSignal extends Message {
         String sig = null;
         if (0 < args.length) {
             try {
-                Type[] types = TYPE_CACHE.get(tc);
-                if (null == types) {
-                    Constructor<? extends DBusSignal> con =
-                            (Constructor<? extends DBusSignal>) tc.getDeclaredConstructors()[0];
-                    CONSTRUCTOR_CACHE.put(tc, con);
-                    Type[] ts = con.getGenericParameterTypes();
-                    types = new Type[ts.length - 1];
-                    for (int i = 1; i <= types.length; i++) {
-                        if (ts[i] instanceof TypeVariable) {
-                            types[i - 1] = ((TypeVariable<GenericDeclaration>) ts[i]).getBounds()[0];
-                        } else {
-                            types[i - 1] = ts[i];
-                        }
-                    }
-                    TYPE_CACHE.put(tc, types);
-                }
+                Type[] types = CONSTRUCTORS.get(tc).parameterTypes;
                 sig = Marshalling.getDBusType(types);
                 hargs.add(new Object[] {
                         Message.HeaderField.SIGNATURE, new Object[] {
@@ -315,13 +273,11 @@ public class DBusSignal extends Message {
                 throw new DBusException("Failed to add signal parameters: " + e.getMessage());
             }
         }
+        addUnixFdHeader(hargs, sig, args);
 
-        blen = new byte[4];
-        appendBytes(blen);
         long newSerial = getSerial() + 1;
         setSerial(newSerial);
-        append("ua(yv)", newSerial, hargs.toArray());
-        pad((byte) 8);
+        appendHeader(newSerial, hargs);
     }
 
     public void appendbody(AbstractConnection conn) throws DBusException {
@@ -329,16 +285,11 @@ public class DBusSignal extends Message {
             return;
         }
 
-        Type[] types = TYPE_CACHE.get(getClass());
-        Object[] args = Marshalling.convertParameters(getParameters(), types, conn);
+        Object[] args = Marshalling.convertParameters(getParameters(), CONSTRUCTORS.get(getClass()).parameterTypes, conn);
         setArgs(args);
         String sig = getSig();
 
-        long counter = getByteCounter();
-        if (null != args && 0 < args.length) {
-            append(sig, args);
-        }
-        marshallint(getByteCounter() - counter, blen, 0, 4);
+        appendBody(null != args && 0 < args.length ? sig : null, args);
         bodydone = true;
     }
 
@@ -347,4 +298,71 @@ public class DBusSignal extends Message {
         return "DBusSignal [clazz=" + clazz + "]";
     }
 
+    /**
+     * Constructor of a signal class, used to create typed signals from received signals.
+     */
+    private static final class SignalConstructor {
+        private final Constructor<?>  constructor;
+        private final MethodHandle    handle;
+        /** Types of the signal parameters (without the object path). */
+        private final Type[]          parameterTypes;
+        /** Decoder for the signature of the last received signal, compiled on first use. */
+        private volatile TypedDecoder decoder;
+
+        private SignalConstructor(Class<?> _signalClass) {
+            constructor = _signalClass.getDeclaredConstructors()[0];
+            handle = createHandle(constructor);
+            Type[] ts = constructor.getGenericParameterTypes();
+            parameterTypes = new Type[Math.max(ts.length - 1, 0)];
+            for (int i = 1; i <= parameterTypes.length; i++) {
+                if (ts[i] instanceof TypeVariable) {
+                    parameterTypes[i - 1] = ((TypeVariable<?>) ts[i]).getBounds()[0];
+                } else {
+                    parameterTypes[i - 1] = ts[i];
+                }
+            }
+        }
+
+        private static MethodHandle createHandle(Constructor<?> _constructor) {
+            try {
+                return MethodHandles.publicLookup().unreflectConstructor(_constructor)
+                        .asSpreader(Object[].class, _constructor.getParameterCount())
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (IllegalAccessException _ex) {
+                // e.g. signal of a non-public interface, leave access checks to reflection
+                return null;
+            }
+        }
+
+        /**
+         * Decodes the parameters of the received signal to the types expected by the constructor.
+         */
+        private Object[] getParameters(DBusSignal _signal, AbstractConnection _conn) throws Exception {
+            String sig = _signal.getSig();
+            if (null != sig) {
+                TypedDecoder d = decoder;
+                if (null == d || !d.getSignature().equals(sig)) {
+                    d = TypedDecoder.compile(sig, parameterTypes);
+                    decoder = d;
+                }
+                Object[] result = _signal.getParameters(d, _conn);
+                if (null != result) {
+                    return result;
+                }
+            }
+            return Marshalling.deSerializeParameters(_signal.getParameters(), parameterTypes, _conn);
+        }
+
+        private DBusSignal newInstance(Object[] _parameters) throws Throwable {
+            if (null == handle) {
+                try {
+                    return (DBusSignal) constructor.newInstance(_parameters);
+                } catch (InvocationTargetException _ex) {
+                    throw _ex.getCause();
+                }
+            }
+            return (DBusSignal) (Object) handle.invokeExact(_parameters);
+        }
+    }
+
 }
@@ -0,0 +1,161 @@
+package org.freedesktop.dbus.messages;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+
+/**
+ * Invocation plan of an exported method.
+ * <p>
+ * Everything which only depends on the method (parameter types, return signature,
+ * which conversions are required) is computed once when the object is exported.
+ * The method itself is called using a {@link MethodHandle}.
+ * </p>
+ */
+public final class ExportedMethod {
+    private final Method          method;
+    private final MethodHandle    handle;
+    private final Type[]          parameterTypes;
+    private final boolean         deserializeParameters;
+    private final boolean         voidReturn;
+    private final Type[]          returnTypes;
+    private final String          returnSignature;
+    private final boolean         convertReturn;
+    /** Decoder for the signature of the last call, compiled on first use. */
+    private volatile TypedDecoder decoder;
+
+    ExportedMethod(Method _method) throws DBusException {
+        method = _method;
+        handle = createHandle(_method);
+        parameterTypes = _method.getGenericParameterTypes();
+
+        boolean plain = true;
+        for (Type t : parameterTypes) {
+            plain &= Marshalling.isPlainType(t);
+        }
+        deserializeParameters = !plain;
+
+        voidReturn = Void.TYPE.equals(_method.getReturnType());
+        Type returnType = _method.getGenericReturnType();
+        returnTypes = new Type[] {returnType};
+        if (voidReturn) {
+            returnSignature = null;
+            convertReturn = false;
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (String s : Marshalling.getDBusType(returnType)) {
+                sb.append(s);
+            }
+            returnSignature = sb.toString();
+            convertReturn = !Marshalling.isPlainType(returnType);
+        }
+    }
+
+    private static MethodHandle createHandle(Method _method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(_method)
+                    .asSpreader(Object[].class, _method.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+        } catch (IllegalAccessException _ex) {
+            // e.g. method of a non-public interface, leave access checks to reflection
+            return null;
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Converts the parameters received on the bus to the types expected by the method.
+     *
+     * @param _parameters parameters as extracted from the message
+     * @param _conn connection
+     * @return parameters to invoke the method with
+     * @throws Exception if parameters could not be converted
+     */
+    public Object[] deSerializeParameters(Object[] _parameters, AbstractConnection _conn) throws Exception {
+        if (!deserializeParameters && null != _parameters && _parameters.length == parameterTypes.length) {
+            return _parameters;
+        }
+        return Marshalling.deSerializeParameters(_parameters, parameterTypes, _conn);
+    }
+
+    /**
+     * Decodes the parameters of a method call to the types expected by the method.
+     * <p>
+     * If required, the parameters are created directly from the received data (see {@link TypedDecoder}),
+     * without decoding them to generic values first.
+     * </p>
+     *
+     * @param _call method call
+     * @param _conn connection
+     * @return parameters to invoke the method with
+     * @throws Exception if parameters could not be converted
+     */
+    public Object[] deSerializeParameters(Message _call, AbstractConnection _conn) throws Exception {
+        Object[] result = null;
+        String sig = _call.getSig();
+        if (deserializeParameters && null != sig) {
+            TypedDecoder d = decoder;
+            if (null == d || !d.getSignature().equals(sig)) {
+                d = TypedDecoder.compile(sig, parameterTypes);
+                decoder = d;
+            }
+            result = _call.getParameters(d, _conn);
+        }
+        return null == result ? deSerializeParameters(_call.getParameters(), _conn) : result;
+    }
+
+    /**
+     * Invokes the method.
+     *
+     * @param _target object to invoke the method on
+     * @param _parameters parameters
+     * @return result of the method, null for void methods
+     * @throws Throwable any exception thrown by the method
+     */
+    public Object invoke(Object _target, Object[] _parameters) throws Throwable {
+        if (null == handle) {
+            try {
+                return method.invoke(_target, _parameters);
+            } catch (InvocationTargetException _ex) {
+                throw _ex.getCause();
+            }
+        }
+        Object[] parameters = null == _parameters ? new Object[0] : _parameters;
+        return (Object) handle.invokeExact(_target, parameters);
+    }
+
+    /**
+     * Creates the reply for a method call.
+     *
+     * @param _call method call
+     * @param _result result of the invocation
+     * @param _conn connection
+     * @return reply
+     * @throws DBusException if reply could not be created
+     */
+    public MethodReturn createReply(MethodCall _call, Object _result, AbstractConnection _conn) throws DBusException {
+        if (voidReturn) {
+            return new MethodReturn(_call, null);
+        }
+        Object[] values = new Object[] {_result};
+        if (convertReturn) {
+            values = Marshalling.convertParameters(values, returnTypes, _conn);
+        }
+        return new MethodReturn(_call, returnSignature, values);
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
@@ -22,7 +22,11 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.freedesktop.dbus.Marshalling;
@@ -31,15 +35,26 @@ import org.freedesktop.dbus.StrongReference;
 import org.freedesktop.dbus.Tuple;
 import org.freedesktop.dbus.annotations.DBusInterfaceName;
 import org.freedesktop.dbus.annotations.DBusMemberName;
+import org.freedesktop.dbus.annotations.DBusProperty;
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal.EmitChangeSignal;
 import org.freedesktop.dbus.connections.AbstractConnection;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.DBusExecutionException;
 import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.Properties;
 
 public class ExportedObject {
+    private static final String      PROPERTIES_INTERFACE = "org.freedesktop.DBus.Properties";
+
     private Map<MethodTuple, Method> methods;
+    private Map<MethodTuple, ExportedMethod> exportedMethods;
     private Reference<DBusInterface> object;
     private String                   introspectiondata;
+    /** Properties of the object by interface and property name. */
+    private final Map<String, Map<String, ExportedProperty>> properties = new LinkedHashMap<>();
+    /** Methods of the Properties interface if it is implemented for the object, empty otherwise. */
+    private final Map<MethodTuple, ExportedMethod> propertiesMethods = new HashMap<>();
+    private final List<String>       interfaceNames = new ArrayList<>();
 
     public ExportedObject(DBusInterface _object, boolean _weakreferences) throws DBusException {
         if (_weakreferences) {
@@ -49,6 +64,16 @@ public class ExportedObject {
         }
         introspectiondata = "";
         methods = getExportedMethods(_object.getClass());
+        exportedMethods = new HashMap<>();
+        for (Map.Entry<MethodTuple, Method> e : methods.entrySet()) {
+            exportedMethods.put(e.getKey(), new ExportedMethod(e.getValue()));
+        }
+        if (!properties.isEmpty() && !(_object instanceof Properties)) {
+            // properties are accessed using the built-in implementation of the Properties interface
+            addBuiltInProperties();
+        }
+        interfaceNames.add("org.freedesktop.DBus.Introspectable");
+        interfaceNames.add("org.freedesktop.DBus.Peer");
         introspectiondata +=
                 " <interface name=\"org.freedesktop.DBus.Introspectable\">\n" + "  <method name=\"Introspect\">\n"
                         + "   <arg type=\"s\" direction=\"out\"/>\n" + "  </method>\n" + " </interface>\n";
@@ -56,6 +81,20 @@ public class ExportedObject {
                 + "  </method>\n" + " </interface>\n";
     }
 
+    /**
+     * Exports the built-in Properties interface: its methods are handled by the connection,
+     * its introspection data and interface name are announced like those of the object's own interfaces.
+     */
+    private void addBuiltInProperties() throws DBusException {
+        // appends the introspection data of the interface
+        for (Map.Entry<MethodTuple, Method> e : getExportedMethods(Properties.class).entrySet()) {
+            propertiesMethods.put(e.getKey(), new ExportedMethod(e.getValue()));
+        }
+        if (!interfaceNames.contains(PROPERTIES_INTERFACE)) {
+            interfaceNames.add(PROPERTIES_INTERFACE);
+        }
+    }
+
     private String getAnnotations(AnnotatedElement c) {
         String ans = "";
         for (Annotation a : c.getDeclaredAnnotations()) {
@@ -82,6 +121,47 @@ public class ExportedObject {
         return ans;
     }
 
+    private void addPropertyAccessor(String _interfaceName, Map<String, ExportedProperty> _properties, Method _method)
+            throws DBusException {
+        boolean getter = 0 == _method.getParameterCount() && !Void.TYPE.equals(_method.getReturnType());
+        boolean setter = 1 == _method.getParameterCount() && Void.TYPE.equals(_method.getReturnType());
+        if (!getter && !setter) {
+            throw new DBusException("Property accessor " + _method.getName()
+                    + " is neither a getter (no parameters) nor a setter (one parameter, returns void)");
+        }
+        String name = _method.getAnnotation(DBusProperty.class).value();
+        if (name.isEmpty()) {
+            name = getPropertyName(_method.getName());
+        }
+        if (name.length() > AbstractConnection.MAX_NAME_LENGTH) {
+            throw new DBusException(
+                    "Introspected property name exceeds 255 characters. Cannot export objects with property " + name);
+        }
+        Type type = getter ? _method.getGenericReturnType() : _method.getGenericParameterTypes()[0];
+        ExportedProperty property = _properties.get(name);
+        if (null == property) {
+            property = new ExportedProperty(_interfaceName, name, type);
+            _properties.put(name, property);
+        } else if (!property.getType().equals(type)) {
+            throw new DBusException("Getter and setter of property " + name + " have different types");
+        }
+        if (getter) {
+            property.setGetter(_method);
+        } else {
+            property.setSetter(_method);
+        }
+    }
+
+    private static String getPropertyName(String _methodName) {
+        for (String prefix : new String[] {"get", "set", "is"}) {
+            if (_methodName.length() > prefix.length() && _methodName.startsWith(prefix)
+                    && Character.isUpperCase(_methodName.charAt(prefix.length()))) {
+                return _methodName.substring(prefix.length());
+            }
+        }
+        return _methodName;
+    }
+
     private Map<MethodTuple, Method> getExportedMethods(Class<?> c) throws DBusException {
         if (DBusInterface.class.equals(c)) {
             return new HashMap<MethodTuple, Method>();
@@ -90,10 +170,10 @@ public class ExportedObject {
         for (Class<?> i : c.getInterfaces()) {
             if (DBusInterface.class.equals(i)) {
                 // add this class's public methods
+                String interfaceName;
                 if (null != c.getAnnotation(DBusInterfaceName.class)) {
-                    String name = c.getAnnotation(DBusInterfaceName.class).value();
-                    introspectiondata += " <interface name=\"" + name + "\">\n";
-                    DBusSignal.addInterfaceMap(c.getName(), name);
+                    interfaceName = c.getAnnotation(DBusInterfaceName.class).value();
+                    DBusSignal.addInterfaceMap(c.getName(), interfaceName);
                 } else {
                     // don't let people export things which don't have a
                     // valid D-Bus interface name
@@ -104,14 +184,19 @@ public class ExportedObject {
                         throw new DBusException(
                                 "Introspected interface name exceeds 255 characters. Cannot export objects of type "
                                         + c.getName());
-                    } else {
-                        introspectiondata += " <interface name=\""
-                                + AbstractConnection.DOLLAR_PATTERN.matcher(c.getName()).replaceAll(".") + "\">\n";
                     }
+                    interfaceName = AbstractConnection.DOLLAR_PATTERN.matcher(c.getName()).replaceAll(".");
+                }
+                introspectiondata += " <interface name=\"" + interfaceName + "\">\n";
+                if (!interfaceNames.contains(interfaceName)) {
+                    interfaceNames.add(interfaceName);
                 }
                 introspectiondata += getAnnotations(c);
+                Map<String, ExportedProperty> interfaceProperties = new LinkedHashMap<>();
                 for (Method meth : c.getDeclaredMethods()) {
-                    if (Modifier.isPublic(meth.getModifiers())) {
+                    if (Modifier.isPublic(meth.getModifiers()) && meth.isAnnotationPresent(DBusProperty.class)) {
+                        addPropertyAccessor(interfaceName, interfaceProperties, meth);
+                    } else if (Modifier.isPublic(meth.getModifiers())) {
                         String ms = "";
                         String name;
                         if (meth.isAnnotationPresent(DBusMemberName.class)) {
@@ -192,6 +277,19 @@ public class ExportedObject {
 
                     }
                 }
+                for (ExportedProperty p : interfaceProperties.values()) {
+                    introspectiondata += "  <property name=\"" + p.getName() + "\" type=\"" + p.getSignature()
+                            + "\" access=\"" + p.getAccess() + "\"";
+                    if (EmitChangeSignal.TRUE == p.getEmitsChangedSignal()) {
+                        introspectiondata += "/>\n";
+                    } else {
+                        introspectiondata += ">\n   <annotation name=\"org.freedesktop.DBus.Property.EmitsChangedSignal\" value=\""
+                                + p.getEmitsChangedSignal() + "\"/>\n  </property>\n";
+                    }
+                }
+                if (!interfaceProperties.isEmpty()) {
+                    properties.put(interfaceName, Collections.unmodifiableMap(interfaceProperties));
+                }
                 introspectiondata += " </interface>\n";
             } else {
                 // recurse
@@ -205,6 +303,54 @@ public class ExportedObject {
         return methods;
     }
 
+    /**
+     * Returns the invocation plan of the method with the given name and signature.
+     *
+     * @param _tuple name and signature
+     * @return plan or null if there is no such method
+     */
+    public ExportedMethod getExportedMethod(MethodTuple _tuple) {
+        return exportedMethods.get(_tuple);
+    }
+
+    /**
+     * Returns the method of the built-in Properties implementation with the given name and signature.
+     *
+     * @param _tuple name and signature
+     * @return plan or null if there is no such method or the object implements Properties itself
+     */
+    public ExportedMethod getPropertiesMethod(MethodTuple _tuple) {
+        return propertiesMethods.get(_tuple);
+    }
+
+    /**
+     * Returns the properties of the given interface.
+     *
+     * @param _interfaceName D-Bus interface name
+     * @return properties by name, empty if interface has no properties
+     */
+    public Map<String, ExportedProperty> getProperties(String _interfaceName) {
+        return properties.getOrDefault(_interfaceName, Collections.emptyMap());
+    }
+
+    /**
+     * Returns the properties of all interfaces.
+     *
+     * @return map of interface name to properties by name
+     */
+    public Map<String, Map<String, ExportedProperty>> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Returns the names of all D-Bus interfaces implemented by the object, including the standard interfaces.
+     *
+     * @return list of interface names
+     */
+    public List<String> getInterfaceNames() {
+        return Collections.unmodifiableList(interfaceNames);
+    }
+
     public Reference<DBusInterface> getObject() {
         return object;
     }
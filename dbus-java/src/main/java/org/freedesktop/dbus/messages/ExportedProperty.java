@@ -0,0 +1,130 @@
+package org.freedesktop.dbus.messages;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal;
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal.EmitChangeSignal;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.types.Variant;
+
+/**
+ * Property of an exported object, accessed using the methods annotated with
+ * {@link org.freedesktop.dbus.annotations.DBusProperty}.
+ * <p>
+ * Type and signature of the property are computed once when the object is exported,
+ * so reading a property only invokes the getter and wraps the result.
+ * </p>
+ */
+public final class ExportedProperty {
+    private final String           interfaceName;
+    private final String           name;
+    private final Type             type;
+    private final String           signature;
+    private final boolean          convertValue;
+    private ExportedMethod         getter;
+    private ExportedMethod         setter;
+    private EmitChangeSignal       emitsChangedSignal = EmitChangeSignal.TRUE;
+
+    ExportedProperty(String _interfaceName, String _name, Type _type) throws DBusException {
+        interfaceName = _interfaceName;
+        name = _name;
+        type = _type;
+        String[] sig = Marshalling.getDBusType(_type);
+        if (sig.length != 1) {
+            throw new DBusException("Property " + _name + " must have a single complete type");
+        }
+        signature = sig[0];
+        convertValue = !Marshalling.isPlainType(_type);
+    }
+
+    void setGetter(Method _getter) throws DBusException {
+        getter = new ExportedMethod(_getter);
+        PropertiesEmitsChangedSignal emits = _getter.getAnnotation(PropertiesEmitsChangedSignal.class);
+        if (null != emits) {
+            emitsChangedSignal = emits.value();
+        }
+    }
+
+    void setSetter(Method _setter) throws DBusException {
+        setter = new ExportedMethod(_setter);
+    }
+
+    public String getInterfaceName() {
+        return interfaceName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public EmitChangeSignal getEmitsChangedSignal() {
+        return emitsChangedSignal;
+    }
+
+    public boolean isReadable() {
+        return null != getter;
+    }
+
+    public boolean isWritable() {
+        return null != setter;
+    }
+
+    /**
+     * Returns the access of the property as used in introspection data.
+     *
+     * @return read, write or readwrite
+     */
+    public String getAccess() {
+        if (isReadable()) {
+            return isWritable() ? "readwrite" : "read";
+        }
+        return "write";
+    }
+
+    /**
+     * Reads the property using the getter.
+     *
+     * @param _target exported object
+     * @param _conn connection
+     * @return value wrapped in a variant
+     * @throws Throwable any exception thrown by the getter or if value cannot be sent over D-Bus
+     */
+    public Variant<?> getValue(Object _target, AbstractConnection _conn) throws Throwable {
+        Object value = getter.invoke(_target, null);
+        if (null == value) {
+            throw new DBusException("Property " + interfaceName + "." + name + " has no value");
+        }
+        if (convertValue) {
+            value = Marshalling.convertParameters(new Object[] {value}, new Type[] {type}, _conn)[0];
+        }
+        return new Variant<>(value, type, signature);
+    }
+
+    /**
+     * Writes the property using the setter.
+     *
+     * @param _target exported object
+     * @param _value value as received on the bus
+     * @param _conn connection
+     * @throws Throwable any exception thrown by the setter or if value could not be converted
+     */
+    public void setValue(Object _target, Object _value, AbstractConnection _conn) throws Throwable {
+        setter.invoke(_target, setter.deSerializeParameters(new Object[] {_value}, _conn));
+    }
+
+    @Override
+    public String toString() {
+        return interfaceName + "." + name + " (" + signature + ", " + getAccess() + ")";
+    }
+}
@@ -0,0 +1,79 @@
+package org.freedesktop.dbus.messages;
+
+import java.io.FileDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+
+import org.freedesktop.dbus.exceptions.MarshallingException;
+
+/**
+ * Converts between {@link FileDescriptor} objects and native file descriptor numbers.
+ * <p>
+ * {@link FileDescriptor} does not offer public access to the descriptor number,
+ * so the private field and constructor are used. Both are looked up only once.
+ * </p>
+ */
+public final class FileDescriptorHelper {
+    private static final Field                       FD_FIELD;
+    private static final Constructor<FileDescriptor> FD_CONSTRUCTOR;
+    private static final Exception                   LOOKUP_ERROR;
+
+    static {
+        Field field = null;
+        Constructor<FileDescriptor> constructor = null;
+        Exception error = null;
+        try {
+            field = FileDescriptor.class.getDeclaredField("fd");
+            field.setAccessible(true);
+            constructor = FileDescriptor.class.getDeclaredConstructor(int.class);
+            constructor.setAccessible(true);
+        } catch (NoSuchFieldException | NoSuchMethodException | RuntimeException _ex) {
+            error = _ex;
+        }
+        FD_FIELD = field;
+        FD_CONSTRUCTOR = constructor;
+        LOOKUP_ERROR = error;
+    }
+
+    private FileDescriptorHelper() {
+
+    }
+
+    /**
+     * Returns the native descriptor number of the given file descriptor.
+     *
+     * @param _fd file descriptor
+     * @return descriptor number
+     * @throws MarshallingException if the number could not be read
+     */
+    public static int getFileDescriptorNumber(FileDescriptor _fd) throws MarshallingException {
+        if (null != LOOKUP_ERROR) {
+            throw new MarshallingException("Could not get member 'fd' of FileDescriptor by reflection!", LOOKUP_ERROR);
+        }
+        try {
+            return FD_FIELD.getInt(_fd);
+        } catch (IllegalArgumentException | IllegalAccessException _ex) {
+            throw new MarshallingException("Could not get member 'fd' of FileDescriptor by reflection!", _ex);
+        }
+    }
+
+    /**
+     * Creates a file descriptor object for the given native descriptor number.
+     *
+     * @param _fd descriptor number
+     * @return file descriptor
+     * @throws MarshallingException if the object could not be created
+     */
+    public static FileDescriptor createFileDescriptor(int _fd) throws MarshallingException {
+        if (null != LOOKUP_ERROR) {
+            throw new MarshallingException("Could not create new FileDescriptor instance by reflection", LOOKUP_ERROR);
+        }
+        try {
+            return FD_CONSTRUCTOR.newInstance(_fd);
+        } catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+                | InvocationTargetException _ex) {
+            throw new MarshallingException("Could not create new FileDescriptor instance by reflection", _ex);
+        }
+    }
+}
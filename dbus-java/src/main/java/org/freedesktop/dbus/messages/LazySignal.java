@@ -0,0 +1,82 @@
+package org.freedesktop.dbus.messages;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.freedesktop.dbus.InternalSignal;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+
+/**
+ * Converts a received {@link DBusSignal} to its typed representation at most once.
+ * <p>
+ * One instance is created per incoming signal and shared by all signal handlers
+ * receiving this signal. The first handler calling {@link #get()} will deserialize the signal,
+ * all other handlers will get the same (safely published) result.
+ * If the conversion fails, the exception is also remembered and thrown to every caller.
+ * </p>
+ */
+public final class LazySignal {
+    private final DBusSignal         signal;
+    private final AbstractConnection connection;
+    private final Lock               lock = new ReentrantLock();
+
+    private volatile DBusSignal      realSignal;
+    private volatile DBusException   failure;
+
+    public LazySignal(DBusSignal _signal, AbstractConnection _connection) {
+        signal = _signal;
+        connection = _connection;
+        if (!needsConversion(_signal)) {
+            realSignal = _signal;
+        }
+    }
+
+    /**
+     * Returns the typed signal, converting the received signal on first call.
+     *
+     * @return typed signal
+     * @throws DBusException if conversion failed
+     */
+    public DBusSignal get() throws DBusException {
+        DBusSignal result = realSignal;
+        if (result != null) {
+            return result;
+        }
+
+        lock.lock();
+        try {
+            if (realSignal == null && failure == null) {
+                try {
+                    realSignal = signal.createReal(connection);
+                } catch (DBusException _ex) {
+                    failure = _ex;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return realSignal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the signal as received from the bus (without conversion).
+     * @return signal
+     */
+    public DBusSignal getSignal() {
+        return signal;
+    }
+
+    /**
+     * Checks if the given signal has to be converted to a typed signal before passing it to a signal handler.
+     *
+     * @param _signal signal
+     * @return true if conversion is required
+     */
+    public static boolean needsConversion(DBusSignal _signal) {
+        return _signal instanceof InternalSignal || _signal.getClass().equals(DBusSignal.class);
+    }
+}
@@ -13,30 +13,26 @@
 package org.freedesktop.dbus.messages;
 
 import java.io.FileDescriptor;
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.freedesktop.Hexdump;
-import org.freedesktop.dbus.ArrayFrob;
 import org.freedesktop.dbus.Container;
-import org.freedesktop.dbus.DBusMap;
 import org.freedesktop.dbus.Marshalling;
 import org.freedesktop.dbus.ObjectPath;
 import org.freedesktop.dbus.connections.AbstractConnection;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.MarshallingException;
-import org.freedesktop.dbus.exceptions.UnknownTypeCodeException;
-import org.freedesktop.dbus.types.UInt16;
+import org.freedesktop.dbus.interfaces.DBusSerializable;
 import org.freedesktop.dbus.types.UInt32;
 import org.freedesktop.dbus.types.UInt64;
 import org.freedesktop.dbus.types.Variant;
@@ -56,23 +52,20 @@ public class Message {
     /** Position of signature offset in int array. */
     private static final int OFFSET_SIG  = 0;
 
-    /** Keep a static reference to each size of padding array to prevent allocation. */
-    private static byte[][]  padding;
-    static {
-        padding = new byte[][] {
-                null, new byte[1], new byte[2], new byte[3], new byte[4], new byte[5], new byte[6], new byte[7]
-        };
-    }
-    /** Steps to increment the buffer array. */
-    private static final int  BUFFERINCREMENT = 20;
+    /** Offset of the first header field in a message. */
+    private static final int  HEADER_FIELDS_OFFSET = 16;
 
     private final Logger      logger          = LoggerFactory.getLogger(getClass());
 
     protected static long     globalserial    = 0;
 
     private byte[][]          wiredata;
+    /** Encoder of a message created locally, null for received messages. */
+    private MessageEncoder    encoder;
     private long              bytecounter;
     private Map<Byte, Object> headers;
+    /** File descriptors passed along with the message, null if the message does not contain any. */
+    private List<FileDescriptor> fileDescriptors;
 
     private long              serial;
     private byte              type;
@@ -83,10 +76,11 @@ public class Message {
     private Object[]          args;
     private byte[]            body;
     private long              bodylen         = 0;
-    private int               preallocated    = 0;
-    private int               paofs           = 0;
-    private byte[]            pabuf;
-    private int               bufferuse       = 0;
+    /**
+     * Difference between the message offset and the index in the header buffer (wiredata[1])
+     * or 0 if the header was not received from the bus and is not stored in a single buffer.
+     */
+    private int               headerShift     = 0;
 
     /**
      * Returns the name of the given header field.
@@ -112,6 +106,8 @@ public class Message {
             return "Sender";
         case HeaderField.SIGNATURE:
             return "Signature";
+        case HeaderField.UNIX_FDS:
+            return "Unix FDs";
         default:
             return "Invalid";
         }
@@ -126,10 +122,9 @@ public class Message {
      * @throws DBusException on error
      */
     protected Message(byte endian, byte _type, byte _flags) throws DBusException {
-        wiredata = new byte[BUFFERINCREMENT][];
         headers = new HashMap<>();
         big = (Endian.BIG == endian);
-        bytecounter = 0;
+        encoder = new MessageEncoder(big);
         synchronized (Message.class) {
             serial = ++globalserial;
         }
@@ -138,7 +133,6 @@ public class Message {
 
         this.type = _type;
         this.flags = _flags;
-        preallocate(4);
         append("yyyy", endian, _type, _flags, Message.PROTOCOL);
     }
 
@@ -146,7 +140,6 @@ public class Message {
      * Create a blank message. Only to be used when calling populate.
      */
     protected Message() {
-        wiredata = new byte[BUFFERINCREMENT][];
         headers = new HashMap<>();
         bytecounter = 0;
     }
@@ -164,31 +157,156 @@ public class Message {
         type = _msg[1];
         flags = _msg[2];
         protover = _msg[3];
-        wiredata[0] = _msg;
-        wiredata[1] = _headers;
-        wiredata[2] = _body;
+        wiredata = new byte[][] {_msg, _headers, _body};
         this.body = _body;
-        bufferuse = 3;
         bodylen = ((Number) extract(Message.ArgumentType.UINT32_STRING, _msg, 4)[0]).longValue();
         serial = ((Number) extract(Message.ArgumentType.UINT32_STRING, _msg, 8)[0]).longValue();
         bytecounter = _msg.length + _headers.length + _body.length;
 
+        // the header buffer starts with the array length at offset 12 followed by 4 bytes of padding,
+        // so the first header field at offset 16 is at index 8
+        headerShift = 8;
+
         logger.trace("Message header: {}", Hexdump.toAscii(_headers));
-        Object[] hs = extract("a(yv)", _headers, 0);
+        int end = HEADER_FIELDS_OFFSET - headerShift + (int) demarshallint(_headers, 0, 4);
+        int ofs = HEADER_FIELDS_OFFSET - headerShift;
+        while (ofs < end) {
+            byte code = _headers[ofs];
+            Object value = extractHeaderValue(_headers, ofs);
+            if (null == value) {
+                int[] offsets = new int[] {0, ofs + 1};
+                value = ((Variant<Object>) extract(ArgumentType.VARIANT_STRING, _headers, offsets)[0]).getValue();
+                ofs = offsets[OFFSET_DATA];
+            } else {
+                ofs = skipHeaderField(_headers, ofs, headerShift, _msg[0]);
+            }
+            this.headers.put(code, value);
+            ofs = alignHeader(ofs, headerShift, 8);
+        }
         if (logger.isTraceEnabled()) {
-            logger.trace(Arrays.deepToString(hs));
+            logger.trace("{}", headers);
         }
-        for (Object o : (List<Object>) hs[0]) {
-            this.headers.put((Byte) ((Object[]) o)[0], ((Variant<Object>) ((Object[]) o)[1]).getValue());
+    }
+
+    /**
+     * Reads the value of a header field using one of the basic types usually found in message headers.
+     * The header buffer has to use the layout of a received message.
+     *
+     * @param _headers header buffer
+     * @param _ofs offset of the header field
+     * @return value or null if the value does not use a string, object path, signature or uint32 type
+     * @throws DBusException if string could not be decoded
+     */
+    private Object extractHeaderValue(byte[] _headers, int _ofs) throws DBusException {
+        if (1 != _headers[_ofs + 1]) {
+            return null;
+        }
+        byte valueType = _headers[_ofs + 2];
+        int valueOfs = alignHeader(_ofs + 4, headerShift, getAlignment(valueType));
+        int length;
+        switch (valueType) {
+            case ArgumentType.STRING:
+                length = (int) demarshallint(_headers, valueOfs, 4);
+                return new String(_headers, valueOfs + 4, length, StandardCharsets.UTF_8);
+            case ArgumentType.OBJECT_PATH:
+                length = (int) demarshallint(_headers, valueOfs, 4);
+                return new ObjectPath(getSource(), new String(_headers, valueOfs + 4, length, StandardCharsets.UTF_8));
+            case ArgumentType.SIGNATURE:
+                length = _headers[valueOfs] & 0xFF;
+                return new String(_headers, valueOfs + 1, length, StandardCharsets.UTF_8);
+            case ArgumentType.UINT32:
+                return new UInt32(demarshallint(_headers, valueOfs, 4));
+            default:
+                return null;
         }
     }
 
+    /**
+     * Calculates the end of the header field starting at the given offset.
+     *
+     * @param _headers header buffer
+     * @param _ofs offset of the header field
+     * @param _shift difference between message offset and buffer index
+     * @param _endian byte order of the message
+     * @return offset of the first byte after the field or -1 if the field does not use a basic type
+     */
+    private static int skipHeaderField(byte[] _headers, int _ofs, int _shift, byte _endian) {
+        if (1 != _headers[_ofs + 1]) {
+            return -1;
+        }
+        byte valueType = _headers[_ofs + 2];
+        int valueOfs = alignHeader(_ofs + 4, _shift, getAlignment(valueType));
+        switch (valueType) {
+            case ArgumentType.BYTE:
+                return valueOfs + 1;
+            case ArgumentType.INT16:
+            case ArgumentType.UINT16:
+                return valueOfs + 2;
+            case ArgumentType.BOOLEAN:
+            case ArgumentType.INT32:
+            case ArgumentType.UINT32:
+                return valueOfs + 4;
+            case ArgumentType.INT64:
+            case ArgumentType.UINT64:
+            case ArgumentType.DOUBLE:
+                return valueOfs + 8;
+            case ArgumentType.STRING:
+            case ArgumentType.OBJECT_PATH:
+                return valueOfs + 4 + (int) demarshallint(_headers, valueOfs, _endian, 4) + 1;
+            case ArgumentType.SIGNATURE:
+                return valueOfs + 1 + (_headers[valueOfs] & 0xFF) + 1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Reads the number of file descriptors announced in the header fields of a received message
+     * without creating the message.
+     * Used to find the file descriptors belonging to a message which could not be created.
+     *
+     * @param _msg fixed part of the header (12 bytes)
+     * @param _headers header fields as received
+     * @return number of file descriptors, 0 if none were announced or the header fields could not be read
+     */
+    public static int readUnixFdCount(byte[] _msg, byte[] _headers) {
+        byte endian = _msg[0];
+        int shift = 8;
+        int ofs = HEADER_FIELDS_OFFSET - shift;
+        try {
+            int end = Math.min(_headers.length, ofs + (int) demarshallint(_headers, 0, endian, 4));
+            while (ofs >= 0 && ofs + 4 <= end) {
+                if (HeaderField.UNIX_FDS == _headers[ofs] && 1 == _headers[ofs + 1] && ArgumentType.UINT32 == _headers[ofs + 2]) {
+                    return (int) demarshallint(_headers, alignHeader(ofs + 4, shift, 4), endian, 4);
+                }
+                ofs = skipHeaderField(_headers, ofs, shift, endian);
+                if (ofs < 0) {
+                    // value of a type never used by header fields, the rest of the header can not be read
+                    return 0;
+                }
+                ofs = alignHeader(ofs, shift, 8);
+            }
+        } catch (IndexOutOfBoundsException _ex) {
+            // malformed header
+        }
+        return 0;
+    }
+
+    /**
+     * Align an index of the header buffer to the given width,
+     * alignment is calculated using the position of the index in the message.
+     */
+    private static int alignHeader(int _index, int _shift, int _width) {
+        int rest = (_index + _shift) % _width;
+        return 0 == rest ? _index : _index + _width - rest;
+    }
+
     protected Map<Byte, Object> getHeaders() {
         return headers;
     }
 
     protected long getByteCounter() {
-        return bytecounter;
+        return null == encoder ? bytecounter : encoder.position();
     }
 
     protected void setByteCounter(long _bytecounter) {
@@ -200,46 +318,41 @@ public class Message {
     }
 
     protected byte[][] getWiredata() {
-        return wiredata;
+        return getWireData();
     }
 
     protected void setWiredata(byte[][] _wiredata) {
+        if (null != encoder) {
+            encoder.release();
+            encoder = null;
+        }
         wiredata = _wiredata;
     }
 
     /**
-     * Create a buffer of num bytes. Data is copied to this rather than added to the buffer list.
+     * Returns the encoder used to append data to this message.
+     * Messages received from the bus (or with wire data set explicitly) will continue
+     * with a new encoder starting behind the existing wire data.
      */
-    private void preallocate(int num) {
-        preallocated = 0;
-        pabuf = new byte[num];
-        appendBytes(pabuf);
-        preallocated = num;
-        paofs = 0;
-    }
-
-    /**
-     * Ensures there are enough free buffers.
-     *
-     * @param num number of free buffers to create.
-     */
-    private void ensureBuffers(int num) {
-        int increase = num - wiredata.length + bufferuse;
-        if (increase > 0) {
-            if (increase < BUFFERINCREMENT) {
-                increase = BUFFERINCREMENT;
+    private MessageEncoder getEncoder() {
+        if (null == encoder) {
+            encoder = new MessageEncoder(big);
+            if (null != wiredata) {
+                for (byte[] buf : wiredata) {
+                    if (null == buf) {
+                        break;
+                    }
+                    encoder.putBytes(buf);
+                }
             }
-
-            logger.trace("Resizing {}", bufferuse);
-
-            byte[][] temp = new byte[wiredata.length + increase][];
-            System.arraycopy(wiredata, 0, temp, 0, wiredata.length);
-            wiredata = temp;
+            wiredata = null;
         }
+        return encoder;
     }
 
     /**
-     * Appends a buffer to the buffer list.
+     * Appends a buffer to the message.
+     * Large buffers are not copied, so they must not be changed afterwards.
      *
      * @param buf buffer byte array
      */
@@ -247,49 +360,47 @@ public class Message {
         if (null == buf) {
             return;
         }
-        if (preallocated > 0) {
-            if (paofs + buf.length > pabuf.length) {
-                throw new ArrayIndexOutOfBoundsException(
-                        MessageFormat.format("Array index out of bounds, paofs={0}, pabuf.length={1}, buf.length={2}.",
-                                paofs, pabuf.length, buf.length));
-            }
-            System.arraycopy(buf, 0, pabuf, paofs, buf.length);
-            paofs += buf.length;
-            preallocated -= buf.length;
-        } else {
-            if (bufferuse == wiredata.length) {
-                logger.trace("Resizing {}", bufferuse);
-                byte[][] temp = new byte[wiredata.length + BUFFERINCREMENT][];
-                System.arraycopy(wiredata, 0, temp, 0, wiredata.length);
-                wiredata = temp;
-            }
-            wiredata[bufferuse++] = buf;
-            bytecounter += buf.length;
-        }
+        getEncoder().putBytes(buf);
     }
 
     /**
-     * Appends a byte to the buffer list.
+     * Appends a byte to the message.
      *
      * @param b byte
      */
     protected void appendByte(byte b) {
-        if (preallocated > 0) {
-            pabuf[paofs++] = b;
-            preallocated--;
-        } else {
-            if (bufferuse == wiredata.length) {
+        getEncoder().putByte(b);
+    }
 
-                logger.trace("Resizing {}", bufferuse);
-                byte[][] temp = new byte[wiredata.length + BUFFERINCREMENT][];
-                System.arraycopy(wiredata, 0, temp, 0, wiredata.length);
-                wiredata = temp;
-            }
-            wiredata[bufferuse++] = new byte[] {
-                    b
-            };
-            bytecounter++;
+    /**
+     * Appends the rest of the fixed header and the header fields, padded to the start of the body.
+     * The body length is not known yet, so 4 bytes are reserved for it which are
+     * set by {@link #appendBody(String, Object...)}.
+     *
+     * @param _serial serial of this message
+     * @param _headerFields header fields, each one an array of field code and variant
+     * @throws DBusException if a header field could not be marshalled
+     */
+    protected void appendHeader(long _serial, List<Object> _headerFields) throws DBusException {
+        appendint(0, 4);
+        append("ua(yv)", _serial, _headerFields.toArray());
+        pad((byte) 8);
+    }
+
+    /**
+     * Appends the body and sets the body length reserved by {@link #appendHeader(long, List)}.
+     *
+     * @param _sig signature of the body, null if the message has no body
+     * @param _args body values
+     * @throws DBusException if the body could not be marshalled
+     */
+    protected void appendBody(String _sig, Object... _args) throws DBusException {
+        long start = getByteCounter();
+        if (null != _sig) {
+            append(_sig, _args);
         }
+        logger.trace("Appended body, type: {} start: {} end: {} size: {}", _sig, start, getByteCounter(), getByteCounter() - start);
+        getEncoder().putInt(4, getByteCounter() - start, 4);
     }
 
     /**
@@ -361,9 +472,7 @@ public class Message {
      * @param width The byte-width of the int.
      */
     public void appendint(long l, int width) {
-        byte[] buf = new byte[width];
-        marshallint(l, buf, 0, width);
-        appendBytes(buf);
+        getEncoder().putInt(l, width);
     }
 
     /**
@@ -381,7 +490,9 @@ public class Message {
             marshallintLittle(l, buf, ofs, width);
         }
 
-        logger.trace("Marshalled int {} to {}", l, Hexdump.toHex(buf, ofs, width));
+        if (logger.isTraceEnabled()) {
+            logger.trace("Marshalled int {} to {}", l, Hexdump.toHex(buf, ofs, width));
+        }
     }
 
     /**
@@ -414,7 +525,16 @@ public class Message {
         }
     }
 
+    /**
+     * Returns the wire representation of this message.
+     * Arrays of the returned wire data must not be modified.
+     *
+     * @return array of byte arrays, may contain trailing null elements
+     */
     public byte[][] getWireData() {
+        if (null != encoder) {
+            return encoder.toWireData();
+        }
         return wiredata;
     }
 
@@ -513,8 +633,10 @@ public class Message {
     private int appendone(byte[] sigb, int sigofs, Object data) throws DBusException {
         try {
             int i = sigofs;
-            logger.trace("{}", bytecounter);
-            logger.trace("Appending type: {} value: {}", ((char) sigb[i]), data);
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", getByteCounter());
+                logger.trace("Appending type: {} value: {}", ((char) sigb[i]), data);
+            }
 
             // pad to the alignment of this type.
             pad(sigb[i]);
@@ -558,42 +680,25 @@ public class Message {
                 appendint(((Number) data).shortValue(), 2);
                 break;
             case ArgumentType.FILEDESCRIPTOR:
-                int x = getFileDescriptor((FileDescriptor) data);
-                appendint(((Number) x).longValue(), 4);
+                appendint(addFileDescriptor((FileDescriptor) data), 4);
                 break;
             case ArgumentType.STRING:
             case ArgumentType.OBJECT_PATH:
                 // Strings are marshalled as a UInt32 with the length,
                 // followed by the String, followed by a null byte.
                 String payload = data.toString();
-                byte[] payloadbytes = null;
-                try {
-                    payloadbytes = payload.getBytes("UTF-8");
-                } catch (UnsupportedEncodingException uee) {
-                    logger.debug("System does not support UTF-8 encoding", uee);
-                    throw new DBusException("System does not support UTF-8 encoding");
-                }
-                logger.trace("Appending String of length {}", payloadbytes.length);
-                appendint(payloadbytes.length, 4);
-                appendBytes(payloadbytes);
-                appendBytes(padding[1]);
-                // pad(ArgumentType.STRING);? do we need this?
+                logger.trace("Appending String of length {}", payload.length());
+                getEncoder().putString(payload);
                 break;
             case ArgumentType.SIGNATURE:
                 // Signatures are marshalled as a byte with the length,
                 // followed by the String, followed by a null byte.
-                // Signatures are generally short, so preallocate the array
-                // for the string, length and null byte.
                 if (data instanceof Type[]) {
                     payload = Marshalling.getDBusType((Type[]) data);
                 } else {
                     payload = (String) data;
                 }
-                byte[] pbytes = payload.getBytes();
-                preallocate(2 + pbytes.length);
-                appendByte((byte) pbytes.length);
-                appendBytes(pbytes);
-                appendByte((byte) 0);
+                getEncoder().putSignature(payload);
                 break;
             case ArgumentType.ARRAY:
                 // Arrays are given as a UInt32 for the length in bytes,
@@ -606,60 +711,55 @@ public class Message {
                     }
                 }
 
-                byte[] alen = new byte[4];
-                appendBytes(alen);
+                // the length is written after all elements were appended
+                long lengthOffset = getByteCounter();
+                appendint(0, 4);
                 pad(sigb[++i]);
-                long c = bytecounter;
+                long c = getByteCounter();
 
                 // optimise primitives
                 if (data.getClass().isArray() && data.getClass().getComponentType().isPrimitive()) {
-                    byte[] primbuf;
+                    MessageEncoder enc = getEncoder();
                     int algn = getAlignment(sigb[i]);
                     int len = Array.getLength(data);
                     switch (sigb[i]) {
                     case ArgumentType.BYTE:
-                        primbuf = (byte[]) data;
+                        enc.putBytes((byte[]) data);
                         break;
                     case ArgumentType.INT16:
                     case ArgumentType.INT32:
                     case ArgumentType.INT64:
-                        primbuf = new byte[len * algn];
-                        for (int j = 0, k = 0; j < len; j++, k += algn) {
-                            marshallint(Array.getLong(data, j), primbuf, k, algn);
+                        if (data instanceof short[] && ArgumentType.INT16 == sigb[i]) {
+                            enc.putShorts((short[]) data);
+                        } else if (data instanceof int[] && ArgumentType.INT32 == sigb[i]) {
+                            enc.putInts((int[]) data);
+                        } else if (data instanceof long[] && ArgumentType.INT64 == sigb[i]) {
+                            enc.putLongs((long[]) data);
+                        } else {
+                            for (int j = 0; j < len; j++) {
+                                enc.putInt(Array.getLong(data, j), algn);
+                            }
                         }
                         break;
                     case ArgumentType.BOOLEAN:
-                        primbuf = new byte[len * algn];
-                        for (int j = 0, k = 0; j < len; j++, k += algn) {
-                            marshallint(Array.getBoolean(data, j) ? 1 : 0, primbuf, k, algn);
-                        }
+                        enc.putBooleans((boolean[]) data);
                         break;
                     case ArgumentType.DOUBLE:
-                        primbuf = new byte[len * algn];
                         if (data instanceof float[]) {
-                            for (int j = 0, k = 0; j < len; j++, k += algn) {
-                                marshallint(Double.doubleToRawLongBits(((float[]) data)[j]), primbuf, k, algn);
-                            }
+                            enc.putFloatsAsDoubles((float[]) data);
                         } else {
-                            for (int j = 0, k = 0; j < len; j++, k += algn) {
-                                marshallint(Double.doubleToRawLongBits(((double[]) data)[j]), primbuf, k, algn);
-                            }
+                            enc.putDoubles((double[]) data);
                         }
                         break;
                     case ArgumentType.FLOAT:
-                        primbuf = new byte[len * algn];
-                        for (int j = 0, k = 0; j < len; j++, k += algn) {
-                            marshallint(Float.floatToRawIntBits(((float[]) data)[j]), primbuf, k, algn);
-                        }
+                        enc.putFloats((float[]) data);
                         break;
                     default:
                         throw new MarshallingException("Primitive array being sent as non-primitive array.");
                     }
-                    appendBytes(primbuf);
                 } else if (data instanceof List) {
                     Object[] contents = ((List<?>) data).toArray();
                     int diff = i;
-                    ensureBuffers(contents.length * 4);
                     for (Object o : contents) {
                         diff = appendone(sigb, i, o);
                     }
@@ -670,7 +770,6 @@ public class Message {
                 } else if (data instanceof Map) {
                     int diff = i;
                     Map<Object, Object> map = (Map<Object, Object>) data;
-                    ensureBuffers(map.size() * 6);
                     for (Map.Entry<Object, Object> o : map.entrySet()) {
                         diff = appendone(sigb, i, o);
                     }
@@ -680,7 +779,6 @@ public class Message {
                     i = diff;
                 } else {
                     Object[] contents = (Object[]) data;
-                    ensureBuffers(contents.length * 4);
                     int diff = i;
                     for (Object o : contents) {
                         diff = appendone(sigb, i, o);
@@ -690,8 +788,9 @@ public class Message {
                     }
                     i = diff;
                 }
-                logger.trace("start: {} end: {} length: {}", c, bytecounter, (bytecounter - c));
-                marshallint(bytecounter - c, alen, 0, 4);
+                long end = getByteCounter();
+                logger.trace("start: {} end: {} length: {}", c, end, (end - c));
+                getEncoder().putInt(lengthOffset, end - c, 4);
                 break;
             case ArgumentType.STRUCT1:
                 // Structs are aligned to 8 bytes
@@ -702,7 +801,6 @@ public class Message {
                 } else {
                     contents = (Object[]) data;
                 }
-                ensureBuffers(contents.length * 4);
                 int j = 0;
                 for (i++; sigb[i] != ArgumentType.STRUCT2; i++) {
                     i = appendone(sigb, i, contents[j++]);
@@ -763,22 +861,7 @@ public class Message {
      * @param _type type
      */
     public void pad(byte _type) {
-        logger.trace("padding for {}", (char) _type);
-        int a = getAlignment(_type);
-        logger.trace("{} {} {} {}", preallocated, paofs, bytecounter, a);
-        int b = (int) ((bytecounter - preallocated) % a);
-        if (0 == b) {
-            return;
-        }
-        a = (a - b);
-        if (preallocated > 0) {
-            paofs += a;
-            preallocated -= a;
-        } else {
-            appendBytes(padding[a]);
-        }
-        logger.trace("{} {} {} {}", preallocated, paofs, bytecounter, a);
-
+        getEncoder().pad(getAlignment(_type));
     }
 
     /**
@@ -832,11 +915,15 @@ public class Message {
      * @throws DBusException on error
      */
     public void append(String sig, Object... data) throws DBusException {
-        logger.debug("Appending sig: {} data: {}", sig, Arrays.deepToString(data));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Appending sig: {} data: {}", sig, Arrays.deepToString(data));
+        }
         byte[] sigb = sig.getBytes();
         int j = 0;
         for (int i = 0; i < sigb.length; i++) {
-            logger.trace("Appending item: {} {} {}", i, ((char) sigb[i]), j);
+            if (logger.isTraceEnabled()) {
+                logger.trace("Appending item: {} {} {}", i, ((char) sigb[i]), j);
+            }
             i = appendone(sigb, i, data[j++]);
         }
     }
@@ -858,277 +945,124 @@ public class Message {
     }
 
     /**
-     * Demarshall one value from a buffer.
+     * Returns the file descriptor with the given index in the descriptor list of this message.
      *
-     * @param _signatureBuf A buffer of the D-Bus signature.
-     * @param _dataBuf The buffer to demarshall from.
-     * @param _offsets An array of two ints, which holds the position of the current signature offset and the current
-     *            offset of the data buffer.
-     * @param _contained converts nested arrays to Lists
-     * @return The demarshalled value.
+     * @param _index value of the unix fd argument
+     * @return file descriptor
+     * @throws MarshallingException if the index is invalid or no file descriptors were received along with this message
      */
-    private Object extractOne(byte[] _signatureBuf, byte[] _dataBuf, int[] _offsets, boolean _contained)
-            throws DBusException {
-
-        logger.trace("Extracting type: {} from offset {}", ((char) _signatureBuf[_offsets[OFFSET_SIG]]),
-                _offsets[OFFSET_DATA]);
-
-        Object rv = null;
-        _offsets[OFFSET_DATA] = align(_offsets[OFFSET_DATA], _signatureBuf[_offsets[OFFSET_SIG]]);
-        switch (_signatureBuf[_offsets[OFFSET_SIG]]) {
-        case ArgumentType.BYTE:
-            rv = _dataBuf[_offsets[OFFSET_DATA]++];
-            break;
-        case ArgumentType.UINT32:
-            rv = new UInt32(demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4));
-            _offsets[OFFSET_DATA] += 4;
-            break;
-        case ArgumentType.INT32:
-            rv = (int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-            _offsets[OFFSET_DATA] += 4;
-            break;
-        case ArgumentType.INT16:
-            rv = (short) demarshallint(_dataBuf, _offsets[OFFSET_DATA], 2);
-            _offsets[OFFSET_DATA] += 2;
-            break;
-        case ArgumentType.UINT16:
-            rv = new UInt16((int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], 2));
-            _offsets[OFFSET_DATA] += 2;
-            break;
-        case ArgumentType.INT64:
-            rv = demarshallint(_dataBuf, _offsets[OFFSET_DATA], 8);
-            _offsets[OFFSET_DATA] += 8;
-            break;
-        case ArgumentType.UINT64:
-            long top;
-            long bottom;
-            if (big) {
-                top = demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-                _offsets[OFFSET_DATA] += 4;
-                bottom = demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-            } else {
-                bottom = demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-                _offsets[OFFSET_DATA] += 4;
-                top = demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-            }
-            rv = new UInt64(top, bottom);
-            _offsets[OFFSET_DATA] += 4;
-            break;
-        case ArgumentType.DOUBLE:
-            long l = demarshallint(_dataBuf, _offsets[OFFSET_DATA], 8);
-            _offsets[OFFSET_DATA] += 8;
-            rv = Double.longBitsToDouble(l);
-            break;
-        case ArgumentType.FLOAT:
-            int rf = (int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-            _offsets[OFFSET_DATA] += 4;
-            rv = Float.intBitsToFloat(rf);
-            break;
-        case ArgumentType.BOOLEAN:
-            rf = (int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-            _offsets[OFFSET_DATA] += 4;
-            rv = (1 == rf) ? Boolean.TRUE : Boolean.FALSE;
-            break;
-        case ArgumentType.ARRAY:
-            long size = demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-
-            logger.trace("Reading array of size: {}", size);
-            _offsets[OFFSET_DATA] += 4;
-            byte algn = (byte) getAlignment(_signatureBuf[++_offsets[OFFSET_SIG]]);
-            _offsets[OFFSET_DATA] = align(_offsets[OFFSET_DATA], _signatureBuf[_offsets[OFFSET_SIG]]);
-            int length = (int) (size / algn);
-            if (length > AbstractConnection.MAX_ARRAY_LENGTH) {
-                throw new MarshallingException("Arrays must not exceed " + AbstractConnection.MAX_ARRAY_LENGTH);
-            }
-
-            rv = optimizePrimitives(_signatureBuf, _dataBuf, _offsets, size, algn, length);
-
-            if (_contained && !(rv instanceof List) && !(rv instanceof Map)) {
-                rv = ArrayFrob.listify(rv);
-            }
-            break;
-        case ArgumentType.STRUCT1:
-            List<Object> contents = new ArrayList<>();
-            while (_signatureBuf[++_offsets[OFFSET_SIG]] != ArgumentType.STRUCT2) {
-                contents.add(extractOne(_signatureBuf, _dataBuf, _offsets, true));
-            }
-            rv = contents.toArray();
-            break;
-        case ArgumentType.DICT_ENTRY1:
-            Object[] decontents = new Object[2];
-            if(logger.isTraceEnabled()) { // avoid allocating these large heapdumps when trace logging is disabled
-                logger.trace("Extracting Dict Entry ({}) from: {}",
-                        Hexdump.toAscii(_signatureBuf, _offsets[OFFSET_SIG], _signatureBuf.length - _offsets[OFFSET_SIG]),
-                        Hexdump.toHex(_dataBuf, _offsets[OFFSET_DATA], _dataBuf.length - _offsets[OFFSET_DATA]));
-            }
-            _offsets[OFFSET_SIG]++;
-            decontents[0] = extractOne(_signatureBuf, _dataBuf, _offsets, true);
-            _offsets[OFFSET_SIG]++;
-            decontents[1] = extractOne(_signatureBuf, _dataBuf, _offsets, true);
-            _offsets[OFFSET_SIG]++;
-            rv = decontents;
-            break;
-        case ArgumentType.VARIANT:
-            int[] newofs = new int[] {
-                    0, _offsets[OFFSET_DATA]
-            };
-            String sig = (String) extract(ArgumentType.SIGNATURE_STRING, _dataBuf, newofs)[0];
-            newofs[OFFSET_SIG] = 0;
-            rv = new Variant<>(extract(sig, _dataBuf, newofs)[0], sig);
-            _offsets[OFFSET_DATA] = newofs[OFFSET_DATA];
-            break;
-        case ArgumentType.FILEDESCRIPTOR:
-            rv = createFileDescriptorByReflection(demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4));
-            _offsets[OFFSET_DATA] += 4;
-            break;
-        case ArgumentType.STRING:
-            length = (int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-            _offsets[OFFSET_DATA] += 4;
-            try {
-                rv = new String(_dataBuf, _offsets[OFFSET_DATA], length, "UTF-8");
-            } catch (UnsupportedEncodingException uee) {
-                logger.debug("System does not support UTF-8 encoding", uee);
-                throw new DBusException("System does not support UTF-8 encoding");
-            }
-            _offsets[OFFSET_DATA] += length + 1;
-            break;
-        case ArgumentType.OBJECT_PATH:
-            length = (int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], 4);
-            _offsets[OFFSET_DATA] += 4;
-            rv = new ObjectPath(getSource(), new String(_dataBuf, _offsets[OFFSET_DATA], length));
-            _offsets[OFFSET_DATA] += length + 1;
-            break;
-        case ArgumentType.SIGNATURE:
-            length = (_dataBuf[_offsets[OFFSET_DATA]++] & 0xFF);
-            rv = new String(_dataBuf, _offsets[OFFSET_DATA], length);
-            _offsets[OFFSET_DATA] += length + 1;
-            break;
-        default:
-            throw new UnknownTypeCodeException(_signatureBuf[_offsets[OFFSET_SIG]]);
+    FileDescriptor getFileDescriptor(long _index) throws MarshallingException {
+        if (null == fileDescriptors) {
+            // the value is only an index, never use it as number of a local descriptor
+            throw new MarshallingException("Message contains file descriptor index " + _index
+                    + ", but no file descriptors were received");
         }
-        if (logger.isTraceEnabled()) {
-            if (rv instanceof Object[]) {
-                logger.trace("Extracted: {} (now at {})", Arrays.deepToString((Object[]) rv), _offsets[OFFSET_DATA]);
-            } else {
-                logger.trace("Extracted: {} (now at {})", rv, _offsets[OFFSET_DATA]);
-            }
+        if (_index < 0 || _index >= fileDescriptors.size()) {
+            throw new MarshallingException("Invalid file descriptor index " + _index + ", message contains "
+                    + fileDescriptors.size() + " file descriptors");
         }
-        return rv;
+        return fileDescriptors.get((int) _index);
     }
 
-    private int getFileDescriptor(FileDescriptor _data) throws MarshallingException {
-        Field declaredField;
-        try {
-            declaredField = _data.getClass().getDeclaredField("fd");
-            declaredField.setAccessible(true);
-            return declaredField.getInt(_data);
-        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException _ex) {
-            logger.error("Could not get filedescriptor by reflection.", _ex);
-            throw new MarshallingException("Could not get member 'fd' of FileDescriptor by reflection!", _ex);
+    /**
+     * Adds the given file descriptor to the descriptor list of this message.
+     *
+     * @param _fd file descriptor
+     * @return index of the descriptor
+     * @throws MarshallingException if the message contains more descriptors than announced in the header
+     */
+    private int addFileDescriptor(FileDescriptor _fd) throws MarshallingException {
+        if (null == fileDescriptors) {
+            fileDescriptors = new ArrayList<>();
+        }
+        if (fileDescriptors.size() >= getUnixFdCount()) {
+            throw new MarshallingException("Message contains more file descriptors than announced in header");
         }
+        fileDescriptors.add(_fd);
+        return fileDescriptors.size() - 1;
     }
 
-    private FileDescriptor createFileDescriptorByReflection(long _demarshallint) throws MarshallingException {
-        try {
-            Constructor<FileDescriptor> constructor = FileDescriptor.class.getDeclaredConstructor(int.class);
-            constructor.setAccessible(true);
-            return constructor.newInstance((int) _demarshallint);
-        } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException
-                | IllegalArgumentException | InvocationTargetException _ex) {
-            logger.error("Could not create new FileDescriptor instance by reflection.", _ex);
-            throw new MarshallingException("Could not create new FileDescriptor instance by reflection", _ex);
+    /**
+     * Adds the unix fds header field to the given header fields
+     * if the arguments contain any file descriptors.
+     * Has to be called by sub-classes before the header is appended.
+     *
+     * @param _hargs header fields
+     * @param _sig signature of the body
+     * @param _args arguments
+     * @throws DBusException if a serializable argument could not be serialized
+     */
+    protected void addUnixFdHeader(List<Object> _hargs, String _sig, Object... _args) throws DBusException {
+        // file descriptors may also be hidden in variants (e.g. created by serializable types)
+        if (null == _sig || _sig.indexOf(ArgumentType.FILEDESCRIPTOR) < 0 && _sig.indexOf(ArgumentType.VARIANT) < 0) {
+            return;
+        }
+        long count = countFileDescriptors(_args);
+        if (0 == count) {
+            return;
         }
+        getHeaders().put(HeaderField.UNIX_FDS, count);
+        _hargs.add(new Object[] {
+                HeaderField.UNIX_FDS, new Object[] {
+                        ArgumentType.UINT32_STRING, count
+                }
+        });
     }
 
-    private Object optimizePrimitives(byte[] _signatureBuf, byte[] _dataBuf, int[] _offsets, long size, byte algn,
-            int length)
-            throws DBusException {
-        Object rv;
-        switch (_signatureBuf[_offsets[OFFSET_SIG]]) {
-        case ArgumentType.BYTE:
-            rv = new byte[length];
-            System.arraycopy(_dataBuf, _offsets[OFFSET_DATA], rv, 0, length);
-            _offsets[OFFSET_DATA] += size;
-            break;
-        case ArgumentType.INT16:
-            rv = new short[length];
-            for (int j = 0; j < length; j++, _offsets[OFFSET_DATA] += algn) {
-                ((short[]) rv)[j] = (short) demarshallint(_dataBuf, _offsets[OFFSET_DATA], algn);
-            }
-            break;
-        case ArgumentType.INT32:
-            rv = new int[length];
-            for (int j = 0; j < length; j++, _offsets[OFFSET_DATA] += algn) {
-                ((int[]) rv)[j] = (int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], algn);
-            }
-            break;
-        case ArgumentType.INT64:
-            rv = new long[length];
-            for (int j = 0; j < length; j++, _offsets[OFFSET_DATA] += algn) {
-                ((long[]) rv)[j] = demarshallint(_dataBuf, _offsets[OFFSET_DATA], algn);
-            }
-            break;
-        case ArgumentType.BOOLEAN:
-            rv = new boolean[length];
-            for (int j = 0; j < length; j++, _offsets[OFFSET_DATA] += algn) {
-                ((boolean[]) rv)[j] = (1 == demarshallint(_dataBuf, _offsets[OFFSET_DATA], algn));
-            }
-            break;
-        case ArgumentType.FLOAT:
-            rv = new float[length];
-            for (int j = 0; j < length; j++, _offsets[OFFSET_DATA] += algn) {
-                ((float[]) rv)[j] = Float.intBitsToFloat((int) demarshallint(_dataBuf, _offsets[OFFSET_DATA], algn));
-            }
-            break;
-        case ArgumentType.DOUBLE:
-            rv = new double[length];
-            for (int j = 0; j < length; j++, _offsets[OFFSET_DATA] += algn) {
-                ((double[]) rv)[j] = Double.longBitsToDouble(demarshallint(_dataBuf, _offsets[OFFSET_DATA], algn));
-            }
-            break;
-        case ArgumentType.DICT_ENTRY1:
-            if (0 == size) {
-                // advance the type parser even on 0-size arrays.
-                List<Type> temp = new ArrayList<>();
-                byte[] temp2 = new byte[_signatureBuf.length - _offsets[OFFSET_SIG]];
-                System.arraycopy(_signatureBuf, _offsets[OFFSET_SIG], temp2, 0, temp2.length);
-                String temp3 = new String(temp2);
-                // ofs[OFFSET_SIG] gets incremented anyway. Leave one character on the stack
-                int temp4 = Marshalling.getJavaType(temp3, temp, 1) - 1;
-                _offsets[OFFSET_SIG] += temp4;
-                logger.trace("Aligned type: {} {} {}", temp3, temp4, _offsets[OFFSET_SIG]);
-            }
-            int ofssave = _offsets[OFFSET_SIG];
-            long end = _offsets[OFFSET_DATA] + size;
-            List<Object[]> entries = new ArrayList<>();
-            while (_offsets[OFFSET_DATA] < end) {
-                _offsets[OFFSET_SIG] = ofssave;
-                entries.add((Object[]) extractOne(_signatureBuf, _dataBuf, _offsets, true));
+    private static long countFileDescriptors(Object _value) throws DBusException {
+        if (_value instanceof FileDescriptor) {
+            return 1;
+        }
+        long count = 0;
+        if (_value instanceof Object[]) {
+            for (Object o : (Object[]) _value) {
+                count += countFileDescriptors(o);
             }
-            rv = new DBusMap<>(entries.toArray(new Object[0][]));
-            break;
-        default:
-            if (0 == size) {
-                // advance the type parser even on 0-size arrays.
-                List<Type> temp = new ArrayList<>();
-                byte[] temp2 = new byte[_signatureBuf.length - _offsets[OFFSET_SIG]];
-                System.arraycopy(_signatureBuf, _offsets[OFFSET_SIG], temp2, 0, temp2.length);
-                String temp3 = new String(temp2);
-                // ofs[OFFSET_SIG] gets incremented anyway. Leave one character on the stack
-                int temp4 = Marshalling.getJavaType(temp3, temp, 1) - 1;
-                _offsets[OFFSET_SIG] += temp4;
-                logger.trace("Aligned type: {} {} {}", temp3, temp4, _offsets[OFFSET_SIG]);
+        } else if (_value instanceof Collection) {
+            for (Object o : (Collection<?>) _value) {
+                count += countFileDescriptors(o);
             }
-            ofssave = _offsets[OFFSET_SIG];
-            end = _offsets[OFFSET_DATA] + size;
-            List<Object> contents = new ArrayList<>();
-            while (_offsets[OFFSET_DATA] < end) {
-                _offsets[OFFSET_SIG] = ofssave;
-                contents.add(extractOne(_signatureBuf, _dataBuf, _offsets, true));
+        } else if (_value instanceof Map) {
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) _value).entrySet()) {
+                count += countFileDescriptors(e.getKey()) + countFileDescriptors(e.getValue());
             }
-            rv = contents;
+        } else if (_value instanceof Variant) {
+            count += countFileDescriptors(((Variant<?>) _value).getValue());
+        } else if (_value instanceof Container) {
+            count += countFileDescriptors(((Container) _value).getParameters());
+        } else if (_value instanceof DBusSerializable) {
+            count += countFileDescriptors(((DBusSerializable) _value).serialize());
         }
-        return rv;
+        return count;
+    }
+
+    /**
+     * Returns the number of file descriptors announced in the header of this message.
+     *
+     * @return number of file descriptors, 0 if the header field is not present
+     */
+    public int getUnixFdCount() {
+        Number count = (Number) headers.get(HeaderField.UNIX_FDS);
+        return null == count ? 0 : count.intValue();
+    }
+
+    /**
+     * Returns the file descriptors which have to be passed along with this message.
+     *
+     * @return list of file descriptors, maybe empty
+     */
+    public List<FileDescriptor> getFileDescriptors() {
+        return null == fileDescriptors ? Collections.emptyList() : fileDescriptors;
+    }
+
+    /**
+     * Sets the file descriptors received along with this message.
+     * Called by the transport before the body of the message is decoded.
+     *
+     * @param _fileDescriptors file descriptors
+     */
+    public void setFileDescriptors(List<FileDescriptor> _fileDescriptors) {
+        fileDescriptors = _fileDescriptors;
     }
 
     /**
@@ -1142,9 +1076,7 @@ public class Message {
      * @throws DBusException on error
      */
     public Object[] extract(String _signature, byte[] _dataBuf, int _offsets) throws DBusException {
-        return extract(_signature, _dataBuf, new int[] {
-                0, _offsets
-        });
+        return SignatureDecoder.forSignature(_signature).decode(this, big, _dataBuf, _offsets, null);
     }
 
     /**
@@ -1162,12 +1094,15 @@ public class Message {
     public Object[] extract(String _signature, byte[] _dataBuf, int[] _offsets) throws DBusException {
         logger.trace("extract({},#{}, {{},{}}", _signature, _dataBuf.length, _offsets[OFFSET_SIG],
                 _offsets[OFFSET_DATA]);
-        List<Object> rv = new ArrayList<>();
-        byte[] sigb = _signature.getBytes();
-        for (int[] i = _offsets; i[0] < sigb.length; i[0]++) {
-            rv.add(extractOne(sigb, _dataBuf, i, false));
+        String signature = 0 == _offsets[OFFSET_SIG] ? _signature : _signature.substring(_offsets[OFFSET_SIG]);
+        int[] end = new int[1];
+        Object[] rv = SignatureDecoder.forSignature(signature).decode(this, big, _dataBuf, _offsets[OFFSET_DATA], end);
+        _offsets[OFFSET_SIG] = _signature.length();
+        _offsets[OFFSET_DATA] = end[0];
+        if (logger.isTraceEnabled()) {
+            logger.trace("Extracted: {} (now at {})", Arrays.deepToString(rv), end[0]);
         }
-        return rv.toArray();
+        return rv;
     }
 
     /**
@@ -1281,24 +1216,52 @@ public class Message {
         return args;
     }
 
+    /**
+     * Decodes the parameters directly to the types expected by the receiver.
+     *
+     * @param _decoder decoder compiled for the expected types
+     * @param _conn connection
+     * @return parameters or null if the parameters have to be decoded generically
+     *          (decoder does not support the types or does not match the signature, or the body was already decoded)
+     * @throws Exception if parameters could not be decoded
+     */
+    Object[] getParameters(TypedDecoder _decoder, AbstractConnection _conn) throws Exception {
+        if (null != args || null == body || 0 == body.length || !_decoder.isSupported()
+                || !_decoder.getSignature().equals(getSig())) {
+            return null;
+        }
+        return _decoder.decode(this, big, body, _conn);
+    }
+
     public void setArgs(Object[] _args) {
         this.args = _args;
     }
 
     /**
      * Warning, do not use this method unless you really know what you are doing.
+     * <p>
+     * If this message was received from the bus, the sender header field is spliced into
+     * the received header, the body is not copied or re-marshalled.
+     * </p>
      *
      * @param source string
      * @throws DBusException on error
      */
     public void setSource(String source) throws DBusException {
         if (null != body) {
-            wiredata = new byte[BUFFERINCREMENT][];
-            bufferuse = 0;
-            bytecounter = 0;
-            preallocate(12);
-            append("yyyyuu", big ? Endian.BIG : Endian.LITTLE, type, flags, protover, bodylen, serial);
             headers.put(HeaderField.SENDER, source);
+            byte[] header = spliceSender(source);
+            if (null != header) {
+                wiredata[1] = header;
+                headerShift = HEADER_FIELDS_OFFSET - 4;
+                bytecounter = wiredata[0].length + header.length + body.length;
+                return;
+            }
+
+            wiredata = null;
+            encoder = new MessageEncoder(big);
+            headerShift = 0;
+            append("yyyyuu", big ? Endian.BIG : Endian.LITTLE, type, flags, protover, bodylen, serial);
             Object[][] newhead = new Object[headers.size()][];
             int i = 0;
             for (Byte b : headers.keySet()) {
@@ -1313,6 +1276,54 @@ public class Message {
         }
     }
 
+    /**
+     * Creates a new header buffer containing all header fields of the received header (except the sender)
+     * followed by the given sender.
+     *
+     * @param _source sender
+     * @return header buffer to send or null if the header could not be spliced
+     */
+    private byte[] spliceSender(String _source) {
+        if (0 == headerShift) {
+            return null;
+        }
+        byte[] oldHeader = wiredata[1];
+        int ofs = HEADER_FIELDS_OFFSET - headerShift;
+        int end = ofs + (int) demarshallint(oldHeader, 0, 4);
+        byte[] source = _source.getBytes(StandardCharsets.UTF_8);
+
+        // new buffer starts at offset 12 (array length), fields start at index 4
+        int shift = HEADER_FIELDS_OFFSET - 4;
+        byte[] header = new byte[4 + end - ofs + 8 + 8 + source.length + 1 + 8];
+        int pos = 4;
+        while (ofs < end) {
+            int fieldEnd = skipHeaderField(oldHeader, ofs, headerShift, big ? Endian.BIG : Endian.LITTLE);
+            if (fieldEnd < 0 || fieldEnd > end) {
+                return null;
+            }
+            if (HeaderField.SENDER != oldHeader[ofs]) {
+                pos = alignHeader(pos, shift, 8);
+                System.arraycopy(oldHeader, ofs, header, pos, fieldEnd - ofs);
+                pos += fieldEnd - ofs;
+            }
+            ofs = alignHeader(fieldEnd, headerShift, 8);
+        }
+
+        pos = alignHeader(pos, shift, 8);
+        header[pos++] = HeaderField.SENDER;
+        header[pos++] = 1;
+        header[pos++] = ArgumentType.STRING;
+        header[pos++] = 0;
+        marshallint(source.length, header, pos, 4);
+        pos += 4;
+        System.arraycopy(source, 0, header, pos, source.length);
+        pos += source.length;
+        header[pos++] = 0;
+
+        marshallint(pos - 4, header, 0, 4);
+        return Arrays.copyOf(header, alignHeader(pos, shift, 8));
+    }
+
     /** Defines constants representing the flags which can be set on a message. */
     public interface Flags {
         byte NO_REPLY_EXPECTED = 0x01;
@@ -1338,6 +1349,7 @@ public class Message {
         byte DESTINATION  = 6;
         byte SENDER       = 7;
         byte SIGNATURE    = 8;
+        byte UNIX_FDS     = 9;
     }
 
     /**
@@ -0,0 +1,351 @@
+package org.freedesktop.dbus.messages;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the wire representation of a message.
+ * <p>
+ * Values are written to a growable scratch buffer taken from the {@link ByteBufferPool}.
+ * Large byte arrays are not copied to the scratch buffer but referenced directly.
+ * When the wire data is requested using {@link #toWireData()}, the scratch buffer is copied to an array
+ * of the exact size and returned to the pool, so each message only keeps a few arrays
+ * (one per large byte array plus one for all other data).
+ * </p>
+ * <p>
+ * Offsets passed to and returned by this class are offsets in the message.
+ * Instances are not thread safe.
+ * </p>
+ */
+public final class MessageEncoder {
+    /** Byte arrays of at least this size are referenced by the wire data instead of being copied. */
+    public static final int      LARGE_ARRAY_SIZE = 8192;
+
+    private final ByteBufferPool pool;
+    private final ByteOrder      order;
+    private final List<byte[]>   segments         = new ArrayList<>();
+
+    /** Scratch buffer, null if nothing was written since the last call of {@link #toWireData()}. */
+    private ByteBuffer           buffer;
+    /** Number of bytes in segments. */
+    private long                 segmentBytes;
+    private byte[][]             wireData;
+
+    public MessageEncoder(boolean _bigEndian) {
+        this(_bigEndian, ByteBufferPool.getInstance());
+    }
+
+    MessageEncoder(boolean _bigEndian, ByteBufferPool _pool) {
+        order = _bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        pool = _pool;
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     * @return long
+     */
+    public long position() {
+        return segmentBytes + (null == buffer ? 0 : buffer.position());
+    }
+
+    /**
+     * Write a single byte.
+     * @param _b byte
+     */
+    public void putByte(byte _b) {
+        ensureCapacity(1).put(_b);
+    }
+
+    /**
+     * Write an integer of the given width using the byte order of this encoder.
+     *
+     * @param _value value
+     * @param _width width in bytes (1, 2, 4 or 8)
+     */
+    public void putInt(long _value, int _width) {
+        ByteBuffer buf = ensureCapacity(_width);
+        switch (_width) {
+            case 1:
+                buf.put((byte) _value);
+                break;
+            case 2:
+                buf.putShort((short) _value);
+                break;
+            case 4:
+                buf.putInt((int) _value);
+                break;
+            case 8:
+                buf.putLong(_value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported width: " + _width);
+        }
+    }
+
+    /**
+     * Overwrite an integer previously written at the given offset,
+     * e.g. to fill in the length of an array after all elements were written.
+     *
+     * @param _offset offset in message
+     * @param _value value
+     * @param _width width in bytes
+     */
+    public void putInt(long _offset, long _value, int _width) {
+        byte[] target;
+        int index;
+        if (null != buffer && _offset >= segmentBytes) {
+            target = buffer.array();
+            index = buffer.arrayOffset() + (int) (_offset - segmentBytes);
+        } else {
+            long start = 0;
+            int i = 0;
+            while (start + segments.get(i).length <= _offset) {
+                start += segments.get(i).length;
+                i++;
+            }
+            target = segments.get(i);
+            index = (int) (_offset - start);
+        }
+        if (ByteOrder.BIG_ENDIAN == order) {
+            Message.marshallintBig(_value, target, index, _width);
+        } else {
+            Message.marshallintLittle(_value, target, index, _width);
+        }
+    }
+
+    /**
+     * Write the given bytes. Large arrays are referenced, so they must not be modified afterwards.
+     *
+     * @param _bytes bytes to write
+     */
+    public void putBytes(byte[] _bytes) {
+        if (_bytes.length >= LARGE_ARRAY_SIZE) {
+            flushBuffer();
+            segments.add(_bytes);
+            segmentBytes += _bytes.length;
+            wireData = null;
+        } else {
+            ensureCapacity(_bytes.length).put(_bytes);
+        }
+    }
+
+    /**
+     * Write 16 bit integers. The position has to be aligned to 2 bytes already.
+     *
+     * @param _values values
+     */
+    public void putShorts(short[] _values) {
+        ByteBuffer buf = bulkBuffer(_values.length * 2L);
+        buf.asShortBuffer().put(_values);
+        bulkWritten(buf, _values.length * 2);
+    }
+
+    /**
+     * Write 32 bit integers. The position has to be aligned to 4 bytes already.
+     *
+     * @param _values values
+     */
+    public void putInts(int[] _values) {
+        ByteBuffer buf = bulkBuffer(_values.length * 4L);
+        buf.asIntBuffer().put(_values);
+        bulkWritten(buf, _values.length * 4);
+    }
+
+    /**
+     * Write 64 bit integers. The position has to be aligned to 8 bytes already.
+     *
+     * @param _values values
+     */
+    public void putLongs(long[] _values) {
+        ByteBuffer buf = bulkBuffer(_values.length * 8L);
+        buf.asLongBuffer().put(_values);
+        bulkWritten(buf, _values.length * 8);
+    }
+
+    /**
+     * Write doubles. The position has to be aligned to 8 bytes already.
+     *
+     * @param _values values
+     */
+    public void putDoubles(double[] _values) {
+        ByteBuffer buf = bulkBuffer(_values.length * 8L);
+        buf.asDoubleBuffer().put(_values);
+        bulkWritten(buf, _values.length * 8);
+    }
+
+    /**
+     * Write floats as doubles. The position has to be aligned to 8 bytes already.
+     *
+     * @param _values values
+     */
+    public void putFloatsAsDoubles(float[] _values) {
+        ByteBuffer buf = bulkBuffer(_values.length * 8L);
+        DoubleBuffer view = buf.asDoubleBuffer();
+        for (float f : _values) {
+            view.put(f);
+        }
+        bulkWritten(buf, _values.length * 8);
+    }
+
+    /**
+     * Write floats. The position has to be aligned to 4 bytes already.
+     *
+     * @param _values values
+     */
+    public void putFloats(float[] _values) {
+        ByteBuffer buf = bulkBuffer(_values.length * 4L);
+        buf.asFloatBuffer().put(_values);
+        bulkWritten(buf, _values.length * 4);
+    }
+
+    /**
+     * Write booleans (as 32 bit integers). The position has to be aligned to 4 bytes already.
+     *
+     * @param _values values
+     */
+    public void putBooleans(boolean[] _values) {
+        ByteBuffer buf = bulkBuffer(_values.length * 4L);
+        IntBuffer view = buf.asIntBuffer();
+        for (boolean b : _values) {
+            view.put(b ? 1 : 0);
+        }
+        bulkWritten(buf, _values.length * 4);
+    }
+
+    /**
+     * Returns the buffer to write an array of primitives to, starting at its position.
+     * Large arrays are written to a new buffer which becomes a segment of its own, like large byte arrays.
+     */
+    private ByteBuffer bulkBuffer(long _bytes) {
+        if (_bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Array too large: " + _bytes + " bytes");
+        }
+        if (_bytes >= LARGE_ARRAY_SIZE) {
+            return ByteBuffer.wrap(new byte[(int) _bytes]).order(order);
+        }
+        return ensureCapacity((int) _bytes);
+    }
+
+    private void bulkWritten(ByteBuffer _buf, int _bytes) {
+        if (_buf == buffer) {
+            _buf.position(_buf.position() + _bytes);
+        } else {
+            putBytes(_buf.array());
+        }
+    }
+
+    /**
+     * Write a string using the D-Bus string format (length, UTF-8 bytes and terminating null byte).
+     * The position has to be aligned to 4 bytes already.
+     *
+     * @param _string string
+     */
+    public void putString(String _string) {
+        int length = _string.length();
+        ByteBuffer buf = ensureCapacity(4 + length + 1);
+        int start = buf.position();
+        buf.position(start + 4);
+        for (int i = 0; i < length; i++) {
+            char c = _string.charAt(i);
+            if (c >= 0x80) {
+                // not plain ASCII, let the charset do the work
+                buf.position(start);
+                byte[] bytes = _string.getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length, 4);
+                putBytes(bytes);
+                putByte((byte) 0);
+                return;
+            }
+            buf.put((byte) c);
+        }
+        buf.putInt(start, length);
+        buf.put((byte) 0);
+    }
+
+    /**
+     * Write a signature (length byte, ASCII characters and terminating null byte).
+     *
+     * @param _signature signature
+     */
+    public void putSignature(String _signature) {
+        int length = _signature.length();
+        ByteBuffer buf = ensureCapacity(length + 2);
+        buf.put((byte) length);
+        for (int i = 0; i < length; i++) {
+            buf.put((byte) _signature.charAt(i));
+        }
+        buf.put((byte) 0);
+    }
+
+    /**
+     * Write null bytes until the position is a multiple of the given alignment.
+     *
+     * @param _alignment alignment in bytes
+     */
+    public void pad(int _alignment) {
+        int rest = (int) (position() % _alignment);
+        if (0 == rest) {
+            return;
+        }
+        ByteBuffer buf = ensureCapacity(_alignment - rest);
+        for (int i = rest; i < _alignment; i++) {
+            buf.put((byte) 0);
+        }
+    }
+
+    /**
+     * Returns everything written so far as list of byte arrays.
+     * The scratch buffer is returned to the pool, writing can continue afterwards.
+     *
+     * @return wire data
+     */
+    public byte[][] toWireData() {
+        if (null != buffer) {
+            flushBuffer();
+            release();
+        }
+        if (null == wireData) {
+            wireData = segments.toArray(new byte[segments.size()][]);
+        }
+        return wireData;
+    }
+
+    /**
+     * Return the scratch buffer to the pool without copying its contents.
+     * Data written since the last call of {@link #toWireData()} is discarded.
+     */
+    public void release() {
+        if (null != buffer) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void flushBuffer() {
+        if (null != buffer && buffer.position() > 0) {
+            segments.add(Arrays.copyOfRange(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + buffer.position()));
+            segmentBytes += buffer.position();
+            buffer.clear();
+        }
+    }
+
+    private ByteBuffer ensureCapacity(int _bytes) {
+        wireData = null;
+        if (null == buffer) {
+            buffer = pool.acquire(_bytes).order(order);
+        } else if (buffer.remaining() < _bytes) {
+            ByteBuffer larger = pool.acquire(Math.max(buffer.capacity() * 2, buffer.position() + _bytes)).order(order);
+            buffer.flip();
+            larger.put(buffer);
+            pool.release(buffer);
+            buffer = larger;
+        }
+        return buffer;
+    }
+}
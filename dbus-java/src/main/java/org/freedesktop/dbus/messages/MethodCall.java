@@ -14,8 +14,11 @@ package org.freedesktop.dbus.messages;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-import org.freedesktop.Hexdump;
 import org.freedesktop.dbus.connections.impl.DBusConnection;
 import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.exceptions.MessageFormatException;
@@ -93,19 +96,10 @@ public class MethodCall extends Message {
             getHeaders().put(Message.HeaderField.SIGNATURE, sig);
             setArgs(args);
         }
+        addUnixFdHeader(hargs, sig, args);
 
-        byte[] blen = new byte[4];
-        appendBytes(blen);
-        append("ua(yv)", getSerial(), hargs.toArray());
-        pad((byte) 8);
-
-        long c = getByteCounter();
-        if (null != sig) {
-            append(sig, args);
-        }
-        logger.debug("Appended body, type: {} start: {} end: {} size: {}",sig, c, getByteCounter(), (getByteCounter() - c));
-        marshallint(getByteCounter() - c, blen, 0, 4);
-        logger.debug("marshalled size ({}): {}",blen, Hexdump.format(blen));
+        appendHeader(getSerial(), hargs);
+        appendBody(sig, args);
     }
 
     private static long REPLY_WAIT_TIMEOUT = 20000;
@@ -119,30 +113,59 @@ public class MethodCall extends Message {
         REPLY_WAIT_TIMEOUT = timeout;
     }
 
+    /**
+    * Returns the default timeout for method calls in ms.
+    * @return timeout
+    */
+    public static long getDefaultTimeout() {
+        return REPLY_WAIT_TIMEOUT;
+    }
+
+    private static final AtomicReferenceFieldUpdater<MethodCall, CountDownLatch> REPLY_LATCH =
+            AtomicReferenceFieldUpdater.newUpdater(MethodCall.class, CountDownLatch.class, "replyLatch");
+
     // CHECKSTYLE:OFF
-    Message reply = null;
+    volatile Message reply = null;
     // CHECKSTYLE:ON
 
-    public synchronized boolean hasReply() {
+    /** Created by the first thread waiting for the reply, so calls nobody waits for do not need one. */
+    private volatile CountDownLatch replyLatch;
+
+    private CompletableFuture<Message> replyFuture;
+
+    public boolean hasReply() {
         return null != reply;
     }
 
     /**
     * Block (if neccessary) for a reply.
+    * <p>
+    * Waiting does not hold any monitor, so it is suitable for virtual threads.
+    * </p>
     * @return The reply to this MethodCall, or null if a timeout happens.
-    * @param timeout The length of time to block before timing out (ms).
+    * @param timeout The length of time to block before timing out (ms), 0 to wait forever.
     */
-    public synchronized Message getReply(long timeout) {
+    public Message getReply(long timeout) {
         logger.trace("Blocking on {}", this);
         if (null != reply) {
             return reply;
         }
-        try {
-            wait(timeout);
+        REPLY_LATCH.compareAndSet(this, null, new CountDownLatch(1));
+        CountDownLatch latch = replyLatch;
+        // setReply() may have missed the latch, so check again before waiting
+        if (null != reply) {
             return reply;
+        }
+        try {
+            if (timeout > 0) {
+                latch.await(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                latch.await();
+            }
         } catch (InterruptedException exI) {
-            return reply;
+            Thread.currentThread().interrupt();
         }
+        return reply;
     }
 
     /**
@@ -150,24 +173,41 @@ public class MethodCall extends Message {
     * Default timeout is 20s, or can be configured with setDefaultTimeout()
     * @return The reply to this MethodCall, or null if a timeout happens.
     */
-    public synchronized Message getReply() {
-        logger.trace("Blocking on {}", this);
+    public Message getReply() {
+        return getReply(REPLY_WAIT_TIMEOUT);
+    }
 
-        if (null != reply) {
-            return reply;
-        }
-        try {
-            wait(REPLY_WAIT_TIMEOUT);
-            return reply;
-        } catch (InterruptedException exI) {
-            return reply;
+    /**
+    * Returns a future which will be completed with the reply to this MethodCall.
+    * Calls sent by a connection are completed with a NoReply error if no reply was received
+    * within the default timeout (see {@link #setDefaultTimeout(long)}).
+    * @return future completed with the reply
+    */
+    public synchronized CompletableFuture<Message> getReplyFuture() {
+        if (null == replyFuture) {
+            replyFuture = new CompletableFuture<>();
+            if (null != reply) {
+                replyFuture.complete(reply);
+            }
         }
+        return replyFuture;
     }
 
-    public synchronized void setReply(Message _reply) {
-        logger.trace("Setting reply to {} to {}", this, _reply);
-        this.reply = _reply;
-        notifyAll();
+    public void setReply(Message _reply) {
+        CompletableFuture<Message> future;
+        synchronized (this) {
+            logger.trace("Setting reply to {} to {}", this, _reply);
+            this.reply = _reply;
+            future = replyFuture;
+        }
+        CountDownLatch latch = replyLatch;
+        if (null != latch) {
+            latch.countDown();
+        }
+        // complete outside of the lock, dependent actions will run in the calling thread
+        if (null != future) {
+            future.complete(_reply);
+        }
     }
 
 }
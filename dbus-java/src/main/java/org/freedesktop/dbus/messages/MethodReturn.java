@@ -68,17 +68,10 @@ public class MethodReturn extends Message {
             getHeaders().put(Message.HeaderField.SIGNATURE, sig);
             setArgs(args);
         }
+        addUnixFdHeader(hargs, sig, args);
 
-        byte[] blen = new byte[4];
-        appendBytes(blen);
-        append("ua(yv)", getSerial(), hargs.toArray());
-        pad((byte) 8);
-
-        long c = getByteCounter();
-        if (null != sig) {
-            append(sig, args);
-        }
-        marshallint(getByteCounter() - c, blen, 0, 4);
+        appendHeader(getSerial(), hargs);
+        appendBody(sig, args);
     }
 
     public MethodReturn(MethodCall mc, String sig, Object... args) throws DBusException {
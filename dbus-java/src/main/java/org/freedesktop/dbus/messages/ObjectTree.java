@@ -12,38 +12,155 @@
 
 package org.freedesktop.dbus.messages;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Keeps track of the exported objects for introspection data */
+ * Keeps track of the exported objects and fallbacks of a connection, and provides the introspection data.
+ * <p>
+ * Objects are stored in a trie with one node per path element. Looking up an object or the fallback
+ * for a path walks the path once, without splitting it and without locking. Modifications are synchronized
+ * on this object. Nodes without object, fallback and children are removed by replacing the child table of
+ * their parent with a copy, so readers never see a partially modified table.
+ * </p>
+ */
 public class ObjectTree {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
 
-    class TreeNode {
+    static final class TreeNode {
+        private static final int                  INITIAL_CAPACITY = 4;
+
         // CHECKSTYLE:OFF
-        String         name;
-        ExportedObject object;
-        String         data;
-        TreeNode       right;
-        TreeNode       down;
+        final String                              name;
+        final int                                 hash;
+        volatile ExportedObject                   object;
+        volatile String                           data;
+        volatile ExportedObject                   fallback;
+        /** Open addressing hash table of the child nodes, never more than half full. */
+        volatile AtomicReferenceArray<TreeNode>   children;
+        /** Number of children, only used while holding the lock of the tree. */
+        int                                       childCount;
         // CHECKSTYLE:ON
 
         TreeNode(String _name) {
             this.name = _name;
+            this.hash = hash(_name, 0, _name.length());
         }
 
-        TreeNode(String _name, ExportedObject _object, String _data) {
-            this.name = _name;
-            this.object = _object;
-            this.data = _data;
+        TreeNode getChild(String _path, int _start, int _end) {
+            AtomicReferenceArray<TreeNode> table = children;
+            if (null == table) {
+                return null;
+            }
+            int h = hash(_path, _start, _end);
+            int mask = table.length() - 1;
+            for (int i = h & mask;; i = (i + 1) & mask) {
+                TreeNode child = table.get(i);
+                if (null == child) {
+                    return null;
+                }
+                if (child.hash == h && child.name.length() == _end - _start
+                        && child.name.regionMatches(0, _path, _start, _end - _start)) {
+                    return child;
+                }
+            }
+        }
+
+        TreeNode addChild(String _name) {
+            AtomicReferenceArray<TreeNode> table = children;
+            if (null == table) {
+                table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+            } else if ((childCount + 1) * 2 > table.length()) {
+                AtomicReferenceArray<TreeNode> larger = new AtomicReferenceArray<>(table.length() * 2);
+                for (int i = 0; i < table.length(); i++) {
+                    TreeNode child = table.get(i);
+                    if (null != child) {
+                        insert(larger, child);
+                    }
+                }
+                table = larger;
+            }
+            TreeNode child = new TreeNode(_name);
+            insert(table, child);
+            childCount++;
+            // publish the (possibly new) table after it is complete
+            children = table;
+            return child;
+        }
+
+        /**
+         * Remove the given child by publishing a copy of the child table without it.
+         * Entries of the published table are never removed, as this would break the probe sequence of readers.
+         */
+        void removeChild(TreeNode _child) {
+            AtomicReferenceArray<TreeNode> table = children;
+            if (null == table) {
+                return;
+            }
+            AtomicReferenceArray<TreeNode> copy = new AtomicReferenceArray<>(table.length());
+            boolean found = false;
+            for (int i = 0; i < table.length(); i++) {
+                TreeNode child = table.get(i);
+                if (child == _child) {
+                    found = true;
+                } else if (null != child) {
+                    insert(copy, child);
+                }
+            }
+            if (found) {
+                childCount--;
+                children = 0 == childCount ? null : copy;
+            }
+        }
+
+        boolean isEmpty() {
+            return null == object && null == fallback && 0 == childCount;
+        }
+
+        private static void insert(AtomicReferenceArray<TreeNode> _table, TreeNode _node) {
+            int mask = _table.length() - 1;
+            int i = _node.hash & mask;
+            while (null != _table.get(i)) {
+                i = (i + 1) & mask;
+            }
+            _table.set(i, _node);
+        }
+
+        List<TreeNode> getChildren() {
+            AtomicReferenceArray<TreeNode> table = children;
+            if (null == table) {
+                return Collections.emptyList();
+            }
+            List<TreeNode> result = new ArrayList<>();
+            for (int i = 0; i < table.length(); i++) {
+                TreeNode child = table.get(i);
+                if (null != child) {
+                    result.add(child);
+                }
+            }
+            return result;
+        }
+
+        private static int hash(String _s, int _start, int _end) {
+            int h = 0;
+            for (int i = _start; i < _end; i++) {
+                h = 31 * h + _s.charAt(i);
+            }
+            return h ^ (h >>> 16);
         }
     }
 
-    private TreeNode root;
+    private final TreeNode root;
 
     public ObjectTree() {
         root = new TreeNode("");
@@ -51,89 +168,181 @@ public class ObjectTree {
 
     public static final Pattern SLASH_PATTERN = Pattern.compile("/");
 
-    private TreeNode recursiveFind(TreeNode _current, String _path) {
-        if ("/".equals(_path)) {
-            return _current;
+    /**
+     * Returns the node of the given path.
+     *
+     * @param _path object path
+     * @param _create create missing nodes (lock must be held)
+     * @return node or null if not found
+     */
+    private TreeNode find(String _path, boolean _create) {
+        if (null == _path || _path.isEmpty() || _path.charAt(0) != '/') {
+            return null;
         }
-        String[] elements = _path.split("/", 2);
-        // this is us or a parent node
-        if (_path.startsWith(_current.name)) {
-            // this is us
-            if (_path.equals(_current.name)) {
-                return _current;
+        TreeNode current = root;
+        int start = 1;
+        int length = _path.length();
+        while (start < length && null != current) {
+            int end = _path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
             }
-            // recurse down
-            else {
-                if (_current.down == null) {
-                    return null;
-                } else {
-                    return recursiveFind(_current.down, elements[1]);
-                }
+            TreeNode child = current.getChild(_path, start, end);
+            if (null == child && _create) {
+                child = current.addChild(_path.substring(start, end));
             }
-        } else if (_current.right == null) {
-            return null;
-        } else if (0 > _current.right.name.compareTo(elements[0])) {
-            return null;
-        }
-        // recurse right
-        else {
-            return recursiveFind(_current.right, _path);
+            current = child;
+            start = end + 1;
         }
+        return current;
     }
 
-    private TreeNode recursiveAdd(TreeNode _current, String _path, ExportedObject _object, String _data) {
-        String[] elements = SLASH_PATTERN.split(_path, 2);
-        // this is us or a parent node
-        if (_path.startsWith(_current.name)) {
-            // this is us
-            if (1 == elements.length || "".equals(elements[1])) {
-                _current.object = _object;
-                _current.data = _data;
-            }
-            // recurse down
-            else {
-                if (_current.down == null) {
-                    String[] el = elements[1].split("/", 2);
-                    _current.down = new TreeNode(el[0]);
-                }
-                _current.down = recursiveAdd(_current.down, elements[1], _object, _data);
+    public synchronized void add(String _path, ExportedObject _object, String _data) {
+        logger.debug("Adding {} to object tree", _path);
+        TreeNode t = find(_path, true);
+        t.data = _data;
+        t.object = _object;
+    }
+
+    /**
+     * Remove the node of the given path and all its parents which are no longer used (lock must be held).
+     *
+     * @param _path object path
+     */
+    private void prune(String _path) {
+        List<TreeNode> nodes = new ArrayList<>();
+        TreeNode current = root;
+        int start = 1;
+        int length = _path.length();
+        while (start < length && null != current) {
+            nodes.add(current);
+            int end = _path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
             }
+            current = current.getChild(_path, start, end);
+            start = end + 1;
         }
-        // need to create a new sub-tree on the end
-        else if (_current.right == null) {
-            _current.right = new TreeNode(elements[0]);
-            _current.right = recursiveAdd(_current.right, _path, _object, _data);
+        for (int i = nodes.size() - 1; i >= 0 && null != current && current.isEmpty(); i--) {
+            nodes.get(i).removeChild(current);
+            current = nodes.get(i);
         }
-        // need to insert here
-        else if (0 > _current.right.name.compareTo(elements[0])) {
-            TreeNode t = new TreeNode(elements[0]);
-            t.right = _current.right;
-            _current.right = t;
-            _current.right = recursiveAdd(_current.right, _path, _object, _data);
+    }
+
+    public synchronized void remove(String _path) {
+        logger.debug("Removing {} from object tree", _path);
+        TreeNode t = find(_path, false);
+        if (null != t) {
+            t.object = null;
+            t.data = null;
+            prune(_path);
         }
-        // recurse right
-        else {
-            _current.right = recursiveAdd(_current.right, _path, _object, _data);
+    }
+
+    /**
+     * Add a fallback which handles all paths starting with the given path.
+     *
+     * @param _path path of the fallback
+     * @param _object fallback object
+     */
+    public synchronized void addFallback(String _path, ExportedObject _object) {
+        logger.debug("Adding fallback on {} of {}", _path, _object);
+        find(_path, true).fallback = _object;
+    }
+
+    /**
+     * Remove the fallback of the given path.
+     *
+     * @param _path path of the fallback
+     */
+    public synchronized void removeFallback(String _path) {
+        logger.debug("Removing fallback on {}", _path);
+        TreeNode t = find(_path, false);
+        if (null != t) {
+            t.fallback = null;
+            prune(_path);
         }
-        return _current;
     }
 
-    public synchronized void add(String _path, ExportedObject _object, String _data) {
-        logger.debug("Adding {} to object tree", _path);
-        root = recursiveAdd(root, _path, _object, _data);
+    /**
+     * Returns the object exported on the given path.
+     *
+     * @param _path object path
+     * @return object or null
+     */
+    public ExportedObject getObject(String _path) {
+        TreeNode t = find(_path, false);
+        return null == t ? null : t.object;
     }
 
-    public synchronized void remove(String _path) {
-        logger.debug("Removing {} from object tree", _path);
-        TreeNode t = recursiveFind(root, _path);
-        t.object = null;
-        t.data = null;
+    /**
+     * Returns the fallback with the longest path which is the given path or a prefix of it.
+     *
+     * @param _path object path
+     * @return fallback or null
+     */
+    public ExportedObject getFallback(String _path) {
+        if (null == _path || _path.isEmpty() || _path.charAt(0) != '/') {
+            return null;
+        }
+        TreeNode current = root;
+        ExportedObject best = current.fallback;
+        int start = 1;
+        int length = _path.length();
+        while (start < length) {
+            int end = _path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            current = current.getChild(_path, start, end);
+            if (null == current) {
+                break;
+            }
+            ExportedObject fallback = current.fallback;
+            if (null != fallback) {
+                best = fallback;
+            }
+            start = end + 1;
+        }
+        logger.trace("Found fallback for {} of {}", _path, best);
+        return best;
+    }
+
+    /**
+     * Returns all objects in the sub-tree below the given path (not including the object at the path itself).
+     *
+     * @param _path root of the sub-tree
+     * @param _prune returns true for paths whose sub-tree should not be visited,
+     *               the object at such a path is still returned
+     * @return map of object path to object, in no particular order
+     */
+    public Map<String, ExportedObject> getObjectsBelow(String _path, Predicate<String> _prune) {
+        Map<String, ExportedObject> result = new LinkedHashMap<>();
+        TreeNode t = find(_path, false);
+        if (null != t) {
+            collectObjects(t, "/".equals(_path) ? "" : _path, _prune, result);
+        }
+        return result;
+    }
+
+    private void collectObjects(TreeNode _parent, String _parentPath, Predicate<String> _prune,
+            Map<String, ExportedObject> _result) {
+        for (TreeNode t : _parent.getChildren()) {
+            String path = _parentPath + "/" + t.name;
+            ExportedObject object = t.object;
+            if (null != object) {
+                _result.put(path, object);
+            }
+            if (null != t.children && !_prune.test(path)) {
+                collectObjects(t, path, _prune, _result);
+            }
+        }
     }
 
     // CHECKSTYLE:OFF
     public String Introspect(String _path) {
     // CHECKSTYLE:ON
-        TreeNode t = recursiveFind(root, _path);
+        TreeNode t = find(_path, false);
         if (null == t) {
             return null;
         }
@@ -143,42 +352,46 @@ public class ObjectTree {
         sb.append(_path);
         sb.append("\">\n");
 
-        if (null != t.data) {
-            sb.append(t.data);
+        String data = t.data;
+        if (null != data) {
+            sb.append(data);
         }
-        t = t.down;
-        while (null != t) {
+        List<String> names = new ArrayList<>();
+        for (TreeNode child : t.getChildren()) {
             // omit entries without a bound object
             // if there is no object, there is nothing to show in introspection
             // also unexported object will then be removed from introspection output
-            if (t.object == null) {
-                t = t.right;
-                continue;
+            if (null != child.object) {
+                names.add(child.name);
             }
+        }
+        Collections.sort(names);
+        for (String name : names) {
             sb.append("<node name=\"");
-            sb.append(t.name);
+            sb.append(name);
             sb.append("\"/>\n");
-            t = t.right;
         }
         sb.append("</node>");
         return sb.toString();
     }
 
     private String recursivePrint(TreeNode _current) {
-        String s = "";
-        if (null != _current) {
-            s += _current.name;
-            if (null != _current.object) {
-                s += "*";
-            }
-            if (null != _current.down) {
-                s += "/{" + recursivePrint(_current.down) + "}";
-            }
-            if (null != _current.right) {
-                s += ", " + recursivePrint(_current.right);
+        StringBuilder sb = new StringBuilder(_current.name);
+        if (null != _current.object) {
+            sb.append('*');
+        }
+        List<TreeNode> children = _current.getChildren();
+        if (!children.isEmpty()) {
+            sb.append("/{");
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(recursivePrint(children.get(i)));
             }
+            sb.append('}');
         }
-        return s;
+        return sb.toString();
     }
 
     @Override
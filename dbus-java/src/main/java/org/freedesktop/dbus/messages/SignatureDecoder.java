@@ -0,0 +1,476 @@
+package org.freedesktop.dbus.messages;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.freedesktop.dbus.DBusMap;
+import org.freedesktop.dbus.ObjectPath;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.MarshallingException;
+import org.freedesktop.dbus.exceptions.UnknownTypeCodeException;
+import org.freedesktop.dbus.messages.Message.ArgumentType;
+import org.freedesktop.dbus.types.UInt16;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.UInt64;
+import org.freedesktop.dbus.types.Variant;
+
+/**
+ * Decoder for a D-Bus signature.
+ * <p>
+ * The signature is compiled once into a tree of nodes, one node per (nested) type.
+ * Decoding walks this tree, so the signature is not parsed again for every value.
+ * Decoders are immutable and cached per signature, see {@link #forSignature(String)}.
+ * </p>
+ * <p>
+ * Values are returned in the same representation as previously returned by {@link Message#extract(String, byte[], int)}:
+ * arrays of primitive types are returned as primitive arrays on top level and inside variants, as lists otherwise.
+ * Arrays of dict entries are returned as {@link DBusMap},
+ * structs and dict entries as Object[].
+ * </p>
+ */
+final class SignatureDecoder {
+    /** Signatures received in variants are controlled by the remote side, so the cache is limited. */
+    private static final int                                      MAX_CACHED_SIGNATURES = 4096;
+
+    private static final ConcurrentMap<String, SignatureDecoder> CACHE                 = new ConcurrentHashMap<>();
+
+    private final String                                          signature;
+    private final Node[]                                          nodes;
+
+    /** Java type of a single complete type signature, used when wrapping values in a {@link Variant}. */
+    private volatile Type                                         variantType;
+
+    private SignatureDecoder(String _signature, Node[] _nodes) {
+        signature = _signature;
+        nodes = _nodes;
+    }
+
+    /**
+     * Returns the decoder for the given signature, compiling it if it was not used before.
+     *
+     * @param _signature signature
+     * @return decoder
+     * @throws DBusException if signature is invalid
+     */
+    static SignatureDecoder forSignature(String _signature) throws DBusException {
+        SignatureDecoder decoder = CACHE.get(_signature);
+        if (null == decoder) {
+            decoder = compile(_signature);
+            if (CACHE.size() < MAX_CACHED_SIGNATURES) {
+                SignatureDecoder existing = CACHE.putIfAbsent(_signature, decoder);
+                if (null != existing) {
+                    decoder = existing;
+                }
+            }
+        }
+        return decoder;
+    }
+
+    /**
+     * Decode all values of the signature.
+     *
+     * @param _message message the data belongs to
+     * @param _big true if data is big endian
+     * @param _dataBuf data
+     * @param _offset offset of the first value in data
+     * @param _end receives the offset after the last value, may be null
+     * @return decoded values
+     * @throws DBusException on error
+     */
+    Object[] decode(Message _message, boolean _big, byte[] _dataBuf, int _offset, int[] _end) throws DBusException {
+        Cursor cursor = new Cursor(_message, _big, _dataBuf, _offset);
+        Object[] result = new Object[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            result[i] = nodes[i].read(cursor, false);
+        }
+        if (null != _end) {
+            _end[0] = cursor.pos;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the decoder of a complete type of the signature.
+     *
+     * @param _idx index of the complete type
+     * @return node
+     */
+    Node getNode(int _idx) {
+        return nodes[_idx];
+    }
+
+    private Variant<Object> createVariant(Object _value) {
+        if (1 != nodes.length) {
+            throw new IllegalArgumentException("Can't wrap multiple or no types in a Variant: " + signature);
+        }
+        Type type = variantType;
+        if (null == type) {
+            // let Variant do the checks (and throw the appropriate exception) for the first value
+            Variant<Object> variant = new Variant<>(_value, signature);
+            variantType = variant.getType();
+            return variant;
+        }
+        return new Variant<>(_value, type, signature);
+    }
+
+    private static SignatureDecoder compile(String _signature) throws DBusException {
+        List<Node> nodes = new ArrayList<>();
+        int[] pos = new int[] {0};
+        while (pos[0] < _signature.length()) {
+            nodes.add(compileOne(_signature, pos));
+        }
+        return new SignatureDecoder(_signature, nodes.toArray(new Node[nodes.size()]));
+    }
+
+    /**
+     * Compiles the complete type starting at pos[0] and advances pos[0] after that type.
+     */
+    private static Node compileOne(String _signature, int[] _pos) throws DBusException {
+        if (_pos[0] >= _signature.length()) {
+            throw new MarshallingException("Incomplete signature: " + _signature);
+        }
+        byte code = (byte) _signature.charAt(_pos[0]++);
+        switch (code) {
+            case ArgumentType.BYTE:
+            case ArgumentType.BOOLEAN:
+            case ArgumentType.INT16:
+            case ArgumentType.UINT16:
+            case ArgumentType.INT32:
+            case ArgumentType.UINT32:
+            case ArgumentType.INT64:
+            case ArgumentType.UINT64:
+            case ArgumentType.DOUBLE:
+            case ArgumentType.FLOAT:
+            case ArgumentType.FILEDESCRIPTOR:
+            case ArgumentType.STRING:
+            case ArgumentType.OBJECT_PATH:
+            case ArgumentType.SIGNATURE:
+                return new BasicNode(code);
+            case ArgumentType.VARIANT:
+                return new VariantNode();
+            case ArgumentType.ARRAY:
+                return new ArrayNode(compileOne(_signature, _pos));
+            case ArgumentType.STRUCT1:
+                List<Node> members = new ArrayList<>();
+                while (_pos[0] < _signature.length() && ArgumentType.STRUCT2 != _signature.charAt(_pos[0])) {
+                    members.add(compileOne(_signature, _pos));
+                }
+                expect(_signature, _pos, ArgumentType.STRUCT2);
+                return new StructNode(members.toArray(new Node[members.size()]));
+            case ArgumentType.DICT_ENTRY1:
+                Node key = compileOne(_signature, _pos);
+                Node value = compileOne(_signature, _pos);
+                expect(_signature, _pos, ArgumentType.DICT_ENTRY2);
+                return new DictEntryNode(key, value);
+            default:
+                throw new UnknownTypeCodeException(code);
+        }
+    }
+
+    private static void expect(String _signature, int[] _pos, byte _code) throws MarshallingException {
+        if (_pos[0] >= _signature.length() || _signature.charAt(_pos[0]) != _code) {
+            throw new MarshallingException("Invalid signature, expected '" + (char) _code + "' at position " + _pos[0] + ": " + _signature);
+        }
+        _pos[0]++;
+    }
+
+    /**
+     * Read position in the data of a message.
+     */
+    static final class Cursor {
+        final Message message;
+        final boolean big;
+        final byte[]  buf;
+        int           pos;
+
+        Cursor(Message _message, boolean _big, byte[] _buf, int _pos) {
+            message = _message;
+            big = _big;
+            buf = _buf;
+            pos = _pos;
+        }
+
+        void align(int _alignment) {
+            pos = (pos + _alignment - 1) & -_alignment;
+        }
+
+        int readInt16() {
+            int value = big ? (buf[pos] & 0xFF) << 8 | (buf[pos + 1] & 0xFF)
+                    : (buf[pos + 1] & 0xFF) << 8 | (buf[pos] & 0xFF);
+            pos += 2;
+            return value;
+        }
+
+        int readInt32() {
+            int value;
+            if (big) {
+                value = (buf[pos] & 0xFF) << 24 | (buf[pos + 1] & 0xFF) << 16 | (buf[pos + 2] & 0xFF) << 8 | (buf[pos + 3] & 0xFF);
+            } else {
+                value = (buf[pos + 3] & 0xFF) << 24 | (buf[pos + 2] & 0xFF) << 16 | (buf[pos + 1] & 0xFF) << 8 | (buf[pos] & 0xFF);
+            }
+            pos += 4;
+            return value;
+        }
+
+        long readInt64() {
+            long first = readInt32() & 0xFFFFFFFFL;
+            long second = readInt32() & 0xFFFFFFFFL;
+            return big ? first << 32 | second : second << 32 | first;
+        }
+
+        /**
+         * Returns a buffer in message byte order covering the next bytes and skips them.
+         */
+        ByteBuffer view(int _length) {
+            ByteBuffer view = ByteBuffer.wrap(buf, pos, _length).order(big ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            pos += _length;
+            return view;
+        }
+
+        String readString(int _length) {
+            String value = new String(buf, pos, _length, StandardCharsets.UTF_8);
+            pos += _length + 1;
+            return value;
+        }
+    }
+
+    /**
+     * Decoder of a single complete type.
+     */
+    abstract static class Node {
+        private final int alignment;
+
+        Node(byte _code) {
+            alignment = Message.getAlignment(_code);
+        }
+
+        final int getAlignment() {
+            return alignment;
+        }
+
+        /**
+         * Read the value at the current position of the cursor.
+         *
+         * @param _cursor cursor
+         * @param _contained true if value is contained in an array, struct or dict entry
+         * @return value
+         */
+        final Object read(Cursor _cursor, boolean _contained) throws DBusException {
+            _cursor.align(alignment);
+            return readAligned(_cursor, _contained);
+        }
+
+        abstract Object readAligned(Cursor _cursor, boolean _contained) throws DBusException;
+    }
+
+    private static final class BasicNode extends Node {
+        private final byte code;
+
+        BasicNode(byte _code) {
+            super(_code);
+            code = _code;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, boolean _contained) throws DBusException {
+            switch (code) {
+                case ArgumentType.BYTE:
+                    return _cursor.buf[_cursor.pos++];
+                case ArgumentType.BOOLEAN:
+                    return 1 == _cursor.readInt32() ? Boolean.TRUE : Boolean.FALSE;
+                case ArgumentType.INT16:
+                    return (short) _cursor.readInt16();
+                case ArgumentType.UINT16:
+                    return new UInt16(_cursor.readInt16());
+                case ArgumentType.INT32:
+                    return _cursor.readInt32();
+                case ArgumentType.UINT32:
+                    return new UInt32(_cursor.readInt32() & 0xFFFFFFFFL);
+                case ArgumentType.INT64:
+                    return _cursor.readInt64();
+                case ArgumentType.UINT64:
+                    long first = _cursor.readInt32() & 0xFFFFFFFFL;
+                    long second = _cursor.readInt32() & 0xFFFFFFFFL;
+                    return _cursor.big ? new UInt64(first, second) : new UInt64(second, first);
+                case ArgumentType.DOUBLE:
+                    return Double.longBitsToDouble(_cursor.readInt64());
+                case ArgumentType.FLOAT:
+                    return Float.intBitsToFloat(_cursor.readInt32());
+                case ArgumentType.FILEDESCRIPTOR:
+                    return _cursor.message.getFileDescriptor(_cursor.readInt32() & 0xFFFFFFFFL);
+                case ArgumentType.STRING:
+                    return _cursor.readString(_cursor.readInt32());
+                case ArgumentType.OBJECT_PATH:
+                    int length = _cursor.readInt32();
+                    ObjectPath path = new ObjectPath(_cursor.message.getSource(), new String(_cursor.buf, _cursor.pos, length));
+                    _cursor.pos += length + 1;
+                    return path;
+                case ArgumentType.SIGNATURE:
+                    return readSignature(_cursor);
+                default:
+                    throw new UnknownTypeCodeException(code);
+            }
+        }
+    }
+
+    private static String readSignature(Cursor _cursor) {
+        int length = _cursor.buf[_cursor.pos++] & 0xFF;
+        String value = new String(_cursor.buf, _cursor.pos, length, StandardCharsets.US_ASCII);
+        _cursor.pos += length + 1;
+        return value;
+    }
+
+    private static final class VariantNode extends Node {
+        VariantNode() {
+            super(ArgumentType.VARIANT);
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, boolean _contained) throws DBusException {
+            SignatureDecoder decoder = forSignature(readSignature(_cursor));
+            if (0 == decoder.nodes.length) {
+                throw new MarshallingException("Variant with empty signature");
+            }
+            Object value = decoder.nodes[0].read(_cursor, false);
+            for (int i = 1; i < decoder.nodes.length; i++) {
+                decoder.nodes[i].read(_cursor, false);
+            }
+            return decoder.createVariant(value);
+        }
+    }
+
+    private static final class StructNode extends Node {
+        private final Node[] members;
+
+        StructNode(Node[] _members) {
+            super(ArgumentType.STRUCT1);
+            members = _members;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, boolean _contained) throws DBusException {
+            Object[] values = new Object[members.length];
+            for (int i = 0; i < members.length; i++) {
+                values[i] = members[i].read(_cursor, true);
+            }
+            return values;
+        }
+    }
+
+    private static final class DictEntryNode extends Node {
+        private final Node key;
+        private final Node value;
+
+        DictEntryNode(Node _key, Node _value) {
+            super(ArgumentType.DICT_ENTRY1);
+            key = _key;
+            value = _value;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, boolean _contained) throws DBusException {
+            return new Object[] {key.read(_cursor, true), value.read(_cursor, true)};
+        }
+    }
+
+    private static final class ArrayNode extends Node {
+        private final Node element;
+        /** Type code of the element if it is a basic type, 0 otherwise. */
+        private final byte    elementCode;
+        /** True if all elements have the same size, so the number of elements is known in advance. */
+        private final boolean fixedSize;
+
+        ArrayNode(Node _element) {
+            super(ArgumentType.ARRAY);
+            element = _element;
+            elementCode = _element instanceof BasicNode ? ((BasicNode) _element).code : 0;
+            fixedSize = 0 != elementCode && ArgumentType.STRING != elementCode && ArgumentType.OBJECT_PATH != elementCode
+                    && ArgumentType.SIGNATURE != elementCode;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, boolean _contained) throws DBusException {
+            long size = _cursor.readInt32() & 0xFFFFFFFFL;
+            int algn = element.getAlignment();
+            _cursor.align(algn);
+            int length = (int) (size / algn);
+            if (length > AbstractConnection.MAX_ARRAY_LENGTH) {
+                throw new MarshallingException("Arrays must not exceed " + AbstractConnection.MAX_ARRAY_LENGTH);
+            }
+
+            if (element instanceof DictEntryNode) {
+                long end = _cursor.pos + size;
+                List<Object[]> entries = new ArrayList<>();
+                while (_cursor.pos < end) {
+                    entries.add((Object[]) element.read(_cursor, true));
+                }
+                return new DBusMap<>(entries.toArray(new Object[entries.size()][]));
+            }
+
+            if (!_contained) {
+                Object primitives = readPrimitives(_cursor, size, length);
+                if (null != primitives) {
+                    return primitives;
+                }
+            }
+
+            long end = _cursor.pos + size;
+            List<Object> contents = fixedSize ? new ArrayList<>(length) : new ArrayList<>();
+            while (_cursor.pos < end) {
+                contents.add(element.read(_cursor, true));
+            }
+            return contents;
+        }
+
+        /**
+         * Reads arrays of types having a primitive java representation into a primitive array.
+         * @return array or null if element type has no primitive representation
+         */
+        private Object readPrimitives(Cursor _cursor, long _size, int _length) {
+            switch (elementCode) {
+                case ArgumentType.BYTE:
+                    byte[] bytes = new byte[_length];
+                    System.arraycopy(_cursor.buf, _cursor.pos, bytes, 0, _length);
+                    _cursor.pos += _size;
+                    return bytes;
+                case ArgumentType.INT16:
+                    short[] shorts = new short[_length];
+                    _cursor.view(_length * 2).asShortBuffer().get(shorts);
+                    return shorts;
+                case ArgumentType.INT32:
+                    int[] ints = new int[_length];
+                    _cursor.view(_length * 4).asIntBuffer().get(ints);
+                    return ints;
+                case ArgumentType.INT64:
+                    long[] longs = new long[_length];
+                    _cursor.view(_length * 8).asLongBuffer().get(longs);
+                    return longs;
+                case ArgumentType.BOOLEAN:
+                    boolean[] booleans = new boolean[_length];
+                    IntBuffer view = _cursor.view(_length * 4).asIntBuffer();
+                    for (int i = 0; i < _length; i++) {
+                        booleans[i] = 1 == view.get(i);
+                    }
+                    return booleans;
+                case ArgumentType.FLOAT:
+                    float[] floats = new float[_length];
+                    _cursor.view(_length * 4).asFloatBuffer().get(floats);
+                    return floats;
+                case ArgumentType.DOUBLE:
+                    double[] doubles = new double[_length];
+                    _cursor.view(_length * 8).asDoubleBuffer().get(doubles);
+                    return doubles;
+                default:
+                    return null;
+            }
+        }
+    }
+}
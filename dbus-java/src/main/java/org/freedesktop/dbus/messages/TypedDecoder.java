@@ -0,0 +1,533 @@
+package org.freedesktop.dbus.messages;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.freedesktop.dbus.ArrayFrob;
+import org.freedesktop.dbus.DBusMap;
+import org.freedesktop.dbus.DBusPath;
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.ObjectPath;
+import org.freedesktop.dbus.Struct;
+import org.freedesktop.dbus.Tuple;
+import org.freedesktop.dbus.annotations.Position;
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.MarshallingException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.DBusSerializable;
+import org.freedesktop.dbus.messages.Message.ArgumentType;
+import org.freedesktop.dbus.messages.SignatureDecoder.Cursor;
+import org.freedesktop.dbus.messages.SignatureDecoder.Node;
+import org.freedesktop.dbus.types.UInt16;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.UInt64;
+import org.freedesktop.dbus.types.Variant;
+
+/**
+ * Decoder creating the parameter types of an exported method or signal directly from the received data.
+ * <p>
+ * Without this decoder, the body of a message is decoded to generic values first (see {@link SignatureDecoder}),
+ * which are converted to the declared types by {@link Marshalling#deSerializeParameters(Object[], Type[], AbstractConnection)}
+ * afterwards. This decoder is compiled once for a signature and the declared types and creates lists, arrays,
+ * maps, structs and proxies of remote objects while reading the data.
+ * Parts of the signature not handled here are decoded generically and converted with
+ * {@link Marshalling#deSerializeParameter(Object, Type, AbstractConnection)}, so the result does not change.
+ * </p>
+ */
+final class TypedDecoder {
+    private final String   signature;
+    /** Readers of the parameters, null if the parameters have to be decoded generically. */
+    private final Reader[] readers;
+
+    private TypedDecoder(String _signature, Reader[] _readers) {
+        signature = _signature;
+        readers = _readers;
+    }
+
+    /**
+     * Compiles the decoder for the given signature and types.
+     * <p>
+     * The parameters can not be decoded directly if the number of types does not match the signature
+     * or a type consumes several values ({@link DBusSerializable}, {@link Tuple}). The returned decoder is
+     * not supported then, see {@link #isSupported()}.
+     * </p>
+     *
+     * @param _signature signature of the received values
+     * @param _types declared types of the parameters
+     * @return decoder, never null
+     */
+    static TypedDecoder compile(String _signature, Type[] _types) {
+        List<Reader> readers = new ArrayList<>();
+        try {
+            int[] pos = new int[] {0};
+            for (Type type : _types) {
+                Class<?> raw = getRawClass(type);
+                if (pos[0] >= _signature.length() || null != raw
+                        && (DBusSerializable.class.isAssignableFrom(raw) || Tuple.class.isAssignableFrom(raw))) {
+                    return new TypedDecoder(_signature, null);
+                }
+                readers.add(compileOne(_signature, pos, type, false));
+            }
+            if (pos[0] != _signature.length()) {
+                return new TypedDecoder(_signature, null);
+            }
+        } catch (DBusException _ex) {
+            // invalid signature, let the generic decoder report the error
+            return new TypedDecoder(_signature, null);
+        }
+        return new TypedDecoder(_signature, readers.toArray(new Reader[readers.size()]));
+    }
+
+    String getSignature() {
+        return signature;
+    }
+
+    boolean isSupported() {
+        return null != readers;
+    }
+
+    /**
+     * Decode all parameters.
+     *
+     * @param _message message the data belongs to
+     * @param _big true if data is big endian
+     * @param _dataBuf data
+     * @param _conn connection used to create proxies of remote objects
+     * @return parameters
+     * @throws Exception if data could not be decoded or converted
+     */
+    Object[] decode(Message _message, boolean _big, byte[] _dataBuf, AbstractConnection _conn) throws Exception {
+        Cursor cursor = new Cursor(_message, _big, _dataBuf, 0);
+        Object[] result = new Object[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            result[i] = readers[i].read(cursor, _conn);
+        }
+        return result;
+    }
+
+    private static Class<?> getRawClass(Type _type) {
+        if (_type instanceof Class) {
+            return (Class<?>) _type;
+        } else if (_type instanceof ParameterizedType && ((ParameterizedType) _type).getRawType() instanceof Class) {
+            return (Class<?>) ((ParameterizedType) _type).getRawType();
+        }
+        return null;
+    }
+
+    /**
+     * Compiles the reader for the complete type starting at pos[0] and advances pos[0] after that type.
+     */
+    private static Reader compileOne(String _signature, int[] _pos, Type _type, boolean _contained) throws DBusException {
+        int start = _pos[0];
+        Reader reader = compileTyped(_signature, _pos, _type);
+        if (null != reader) {
+            return reader;
+        }
+        // decode generically and convert the result
+        _pos[0] = start;
+        skip(_signature, _pos);
+        String sig = _signature.substring(start, _pos[0]);
+        Node node = SignatureDecoder.forSignature(sig).getNode(0);
+        return new GenericReader(node, (byte) sig.charAt(0), _contained, needsConversion(sig, _type, _contained) ? _type : null);
+    }
+
+    /**
+     * Compiles a reader creating the given type directly.
+     *
+     * @return reader or null if the type is not handled
+     */
+    private static Reader compileTyped(String _signature, int[] _pos, Type _type) throws DBusException {
+        Class<?> raw = getRawClass(_type);
+        byte code = (byte) _signature.charAt(_pos[0]);
+        if (ArgumentType.ARRAY == code) {
+            _pos[0]++;
+            if (_pos[0] >= _signature.length()) {
+                throw new MarshallingException("Incomplete signature: " + _signature);
+            }
+            if (ArgumentType.DICT_ENTRY1 == _signature.charAt(_pos[0])) {
+                // maps declared as HashMap or LinkedHashMap are filled directly instead of creating a DBusMap
+                boolean hashMap = null != raw && !Map.class.equals(raw) && raw.isAssignableFrom(LinkedHashMap.class);
+                if (!(_type instanceof ParameterizedType) || !Map.class.equals(raw) && !hashMap) {
+                    return null;
+                }
+                Type[] mapTypes = ((ParameterizedType) _type).getActualTypeArguments();
+                _pos[0]++;
+                Reader key = compileOne(_signature, _pos, mapTypes[0], true);
+                Reader value = compileOne(_signature, _pos, mapTypes[1], true);
+                if (_pos[0] >= _signature.length() || ArgumentType.DICT_ENTRY2 != _signature.charAt(_pos[0])) {
+                    throw new MarshallingException("Invalid signature, expected '}' at position " + _pos[0] + ": " + _signature);
+                }
+                _pos[0]++;
+                return new MapReader(key, value, hashMap);
+            }
+
+            if (List.class.equals(raw) && _type instanceof ParameterizedType) {
+                Type elementType = ((ParameterizedType) _type).getActualTypeArguments()[0];
+                return new ListReader(compileOne(_signature, _pos, elementType, true), null);
+            }
+            Type elementType;
+            if (_type instanceof GenericArrayType) {
+                elementType = ((GenericArrayType) _type).getGenericComponentType();
+            } else if (null != raw && raw.isArray() && !raw.getComponentType().isPrimitive()) {
+                elementType = raw.getComponentType();
+            } else {
+                // primitive arrays are created by the generic decoder
+                return null;
+            }
+            Class<?> component = getRawClass(elementType);
+            if (null == component) {
+                return null;
+            }
+            return new ListReader(compileOne(_signature, _pos, elementType, true), component);
+        } else if (ArgumentType.STRUCT1 == code) {
+            if (null == raw || !Struct.class.isAssignableFrom(raw) || !(_type instanceof Class)) {
+                return null;
+            }
+            Type[] memberTypes = getStructTypes(raw);
+            if (null == memberTypes) {
+                return null;
+            }
+            List<Constructor<?>> constructors = new ArrayList<>();
+            for (Constructor<?> con : raw.getDeclaredConstructors()) {
+                if (con.getParameterCount() == memberTypes.length) {
+                    constructors.add(con);
+                }
+            }
+            if (constructors.isEmpty()) {
+                return null;
+            }
+            _pos[0]++;
+            Reader[] members = new Reader[memberTypes.length];
+            for (int i = 0; i < members.length; i++) {
+                if (_pos[0] >= _signature.length() || ArgumentType.STRUCT2 == _signature.charAt(_pos[0])) {
+                    return null;
+                }
+                members[i] = compileOne(_signature, _pos, memberTypes[i], true);
+            }
+            if (_pos[0] >= _signature.length() || ArgumentType.STRUCT2 != _signature.charAt(_pos[0])) {
+                return null;
+            }
+            _pos[0]++;
+            return new StructReader(members, constructors.toArray(new Constructor<?>[constructors.size()]));
+        } else if (ArgumentType.OBJECT_PATH == code) {
+            if (null == raw || !DBusPath.class.equals(raw) && !DBusInterface.class.isAssignableFrom(raw)) {
+                return null;
+            }
+            _pos[0]++;
+            return new PathReader(SignatureDecoder.forSignature(ArgumentType.OBJECT_PATH_STRING).getNode(0),
+                    DBusInterface.class.isAssignableFrom(raw));
+        } else if (ArgumentType.DOUBLE == code && (Float.class.equals(raw) || Float.TYPE.equals(raw))) {
+            _pos[0]++;
+            return new FloatReader(SignatureDecoder.forSignature(ArgumentType.DOUBLE_STRING).getNode(0));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the types of the members of a struct, null if not all members are annotated.
+     */
+    private static Type[] getStructTypes(Class<?> _structClass) {
+        List<Type> types = new ArrayList<>();
+        for (Field f : _structClass.getDeclaredFields()) {
+            Position p = f.getAnnotation(Position.class);
+            if (null == p) {
+                continue;
+            }
+            while (types.size() <= p.value()) {
+                types.add(null);
+            }
+            types.set(p.value(), f.getGenericType());
+        }
+        return types.contains(null) ? null : types.toArray(new Type[types.size()]);
+    }
+
+    /**
+     * Returns false if the generic decoder already returns values of the given type for the signature,
+     * so they do not have to be converted.
+     */
+    private static boolean needsConversion(String _signature, Type _type, boolean _contained) {
+        Class<?> raw = getRawClass(_type);
+        if (null == raw) {
+            return true;
+        }
+        Class<?> decoded = getDecodedClass(_signature, _contained);
+        return null == decoded || !decoded.equals(raw) && !decoded.equals(ArrayFrob.getPrimitiveToWrapperTypes().get(raw));
+    }
+
+    /**
+     * Returns the class of the values returned by the generic decoder for basic types, variants and primitive arrays.
+     *
+     * @return class or null if values are containers which are converted by Marshalling
+     */
+    private static Class<?> getDecodedClass(String _signature, boolean _contained) {
+        if (1 == _signature.length()) {
+            switch (_signature.charAt(0)) {
+                case ArgumentType.BYTE:
+                    return Byte.class;
+                case ArgumentType.BOOLEAN:
+                    return Boolean.class;
+                case ArgumentType.INT16:
+                    return Short.class;
+                case ArgumentType.UINT16:
+                    return UInt16.class;
+                case ArgumentType.INT32:
+                    return Integer.class;
+                case ArgumentType.UINT32:
+                    return UInt32.class;
+                case ArgumentType.INT64:
+                    return Long.class;
+                case ArgumentType.UINT64:
+                    return UInt64.class;
+                case ArgumentType.DOUBLE:
+                    return Double.class;
+                case ArgumentType.FLOAT:
+                    return Float.class;
+                case ArgumentType.STRING:
+                    return String.class;
+                case ArgumentType.VARIANT:
+                    return Variant.class;
+                default:
+                    return null;
+            }
+        }
+        if (_contained || 2 != _signature.length() || ArgumentType.ARRAY != _signature.charAt(0)) {
+            return null;
+        }
+        // arrays of primitives are returned as primitive arrays if they are not contained in another type
+        switch (_signature.charAt(1)) {
+            case ArgumentType.BYTE:
+                return byte[].class;
+            case ArgumentType.BOOLEAN:
+                return boolean[].class;
+            case ArgumentType.INT16:
+                return short[].class;
+            case ArgumentType.INT32:
+                return int[].class;
+            case ArgumentType.INT64:
+                return long[].class;
+            case ArgumentType.DOUBLE:
+                return double[].class;
+            case ArgumentType.FLOAT:
+                return float[].class;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Advances pos[0] after the complete type starting at pos[0].
+     */
+    private static void skip(String _signature, int[] _pos) throws MarshallingException {
+        if (_pos[0] >= _signature.length()) {
+            throw new MarshallingException("Incomplete signature: " + _signature);
+        }
+        char code = _signature.charAt(_pos[0]++);
+        if (ArgumentType.ARRAY == code) {
+            skip(_signature, _pos);
+        } else if (ArgumentType.STRUCT1 == code || ArgumentType.DICT_ENTRY1 == code) {
+            char end = ArgumentType.STRUCT1 == code ? (char) ArgumentType.STRUCT2 : (char) ArgumentType.DICT_ENTRY2;
+            while (_pos[0] < _signature.length() && end != _signature.charAt(_pos[0])) {
+                skip(_signature, _pos);
+            }
+            if (_pos[0] >= _signature.length()) {
+                throw new MarshallingException("Incomplete signature: " + _signature);
+            }
+            _pos[0]++;
+        }
+    }
+
+    /**
+     * Reader of a single complete type.
+     */
+    private abstract static class Reader {
+        private final int alignment;
+
+        Reader(byte _code) {
+            alignment = Message.getAlignment(_code);
+        }
+
+        final int getAlignment() {
+            return alignment;
+        }
+
+        Object read(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            _cursor.align(alignment);
+            return readAligned(_cursor, _conn);
+        }
+
+        abstract Object readAligned(Cursor _cursor, AbstractConnection _conn) throws Exception;
+    }
+
+    /**
+     * Reads a value using the generic decoder, converting it to the declared type if required.
+     */
+    private static final class GenericReader extends Reader {
+        private final Node    node;
+        private final boolean contained;
+        /** Type to convert to, null if the decoded value already has the declared type. */
+        private final Type    type;
+
+        GenericReader(Node _node, byte _code, boolean _contained, Type _type) {
+            super(_code);
+            node = _node;
+            contained = _contained;
+            type = _type;
+        }
+
+        @Override
+        Object read(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            return readAligned(_cursor, _conn);
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            Object value = node.read(_cursor, contained);
+            return null == type ? value : Marshalling.deSerializeParameter(value, type, _conn);
+        }
+    }
+
+    private static final class FloatReader extends Reader {
+        private final Node node;
+
+        FloatReader(Node _node) {
+            super(ArgumentType.DOUBLE);
+            node = _node;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            return ((Double) node.read(_cursor, true)).floatValue();
+        }
+    }
+
+    private static final class PathReader extends Reader {
+        private final Node    node;
+        private final boolean proxy;
+
+        PathReader(Node _node, boolean _proxy) {
+            super(ArgumentType.OBJECT_PATH);
+            node = _node;
+            proxy = _proxy;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            ObjectPath path = (ObjectPath) node.read(_cursor, true);
+            if (proxy) {
+                return _conn.getExportedObject(path.getSource(), path.getPath());
+            }
+            return new DBusPath(path.getPath());
+        }
+    }
+
+    /**
+     * Reads an array into a list or an array of objects.
+     */
+    private static final class ListReader extends Reader {
+        private final Reader   element;
+        /** Component type of the array to create, null to return the list. */
+        private final Class<?> component;
+
+        ListReader(Reader _element, Class<?> _component) {
+            super(ArgumentType.ARRAY);
+            element = _element;
+            component = _component;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            long size = _cursor.readInt32() & 0xFFFFFFFFL;
+            _cursor.align(element.getAlignment());
+            checkLength(size, element.getAlignment());
+            long end = _cursor.pos + size;
+            List<Object> contents = new ArrayList<>();
+            while (_cursor.pos < end) {
+                contents.add(element.read(_cursor, _conn));
+            }
+            if (null == component) {
+                return contents;
+            }
+            return contents.toArray((Object[]) Array.newInstance(component, contents.size()));
+        }
+    }
+
+    private static final class MapReader extends Reader {
+        private final Reader  key;
+        private final Reader  value;
+        /** Create a {@link LinkedHashMap} instead of a {@link DBusMap}. */
+        private final boolean hashMap;
+
+        MapReader(Reader _key, Reader _value, boolean _hashMap) {
+            super(ArgumentType.ARRAY);
+            key = _key;
+            value = _value;
+            hashMap = _hashMap;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            long size = _cursor.readInt32() & 0xFFFFFFFFL;
+            _cursor.align(8);
+            checkLength(size, 8);
+            long end = _cursor.pos + size;
+            if (hashMap) {
+                // the first entry of a key wins, as in DBusMap
+                Map<Object, Object> map = new LinkedHashMap<>();
+                while (_cursor.pos < end) {
+                    _cursor.align(8);
+                    map.putIfAbsent(key.read(_cursor, _conn), value.read(_cursor, _conn));
+                }
+                return map;
+            }
+            List<Object[]> entries = new ArrayList<>();
+            while (_cursor.pos < end) {
+                _cursor.align(8);
+                entries.add(new Object[] {key.read(_cursor, _conn), value.read(_cursor, _conn)});
+            }
+            return new DBusMap<>(entries.toArray(new Object[entries.size()][]));
+        }
+    }
+
+    private static final class StructReader extends Reader {
+        private final Reader[]         members;
+        private final Constructor<?>[] constructors;
+
+        StructReader(Reader[] _members, Constructor<?>[] _constructors) {
+            super(ArgumentType.STRUCT1);
+            members = _members;
+            constructors = _constructors;
+        }
+
+        @Override
+        Object readAligned(Cursor _cursor, AbstractConnection _conn) throws Exception {
+            Object[] values = new Object[members.length];
+            for (int i = 0; i < members.length; i++) {
+                values[i] = members[i].read(_cursor, _conn);
+            }
+            IllegalArgumentException failure = null;
+            for (Constructor<?> con : constructors) {
+                try {
+                    return con.newInstance(values);
+                } catch (IllegalArgumentException _ex) {
+                    failure = _ex;
+                }
+            }
+            throw failure;
+        }
+    }
+
+    private static void checkLength(long _size, int _alignment) throws MarshallingException {
+        if (_size / _alignment > AbstractConnection.MAX_ARRAY_LENGTH) {
+            throw new MarshallingException("Arrays must not exceed " + AbstractConnection.MAX_ARRAY_LENGTH);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.freedesktop.dbus.types;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.MarshallingException;
+import org.freedesktop.dbus.interfaces.DBusSerializable;
+
+/**
+ * Byte array which is either sent inline or as region of a memory-mapped file shared with the peer.
+ * <p>
+ * On the wire this type is a variant, containing either the bytes ({@code ay})
+ * or the file descriptor, offset and length of the shared region ({@code (htt)}).
+ * Shared regions require a transport which supports file descriptor passing, use
+ * {@link org.freedesktop.dbus.connections.AbstractConnection#createSharedByteArray(String, byte[])}
+ * to choose the best option for a peer.
+ * </p>
+ * <p>
+ * The data of a shared region is written once into the mapped file by the sender and read directly from the
+ * mapping by the receiver (see {@link #getBuffer()}), so it is never copied to or from the socket.
+ * The sender has to {@link #close()} the object after the message containing it was sent.
+ * </p>
+ */
+public final class SharedByteArray implements DBusSerializable, Closeable {
+    /** Signature of a shared region: file descriptor, offset and length. */
+    private static final String SHARED_SIGNATURE = "(htt)";
+    /** Directory used for shared files if available (tmpfs on Linux). */
+    private static final File   SHM_DIRECTORY    = new File("/dev/shm");
+
+    private byte[]              bytes;
+    private ByteBuffer          buffer;
+    /** File of a shared region created by this process, null otherwise. */
+    private FileInputStream     file;
+
+    /**
+     * Only used when deserializing, use {@link #inline(byte[])} or {@link #share(byte[])}.
+     */
+    public SharedByteArray() {
+    }
+
+    /**
+     * Creates an object sending the given bytes inline.
+     *
+     * @param _bytes bytes
+     * @return new object
+     */
+    public static SharedByteArray inline(byte[] _bytes) {
+        SharedByteArray result = new SharedByteArray();
+        result.bytes = _bytes;
+        result.buffer = ByteBuffer.wrap(_bytes).asReadOnlyBuffer();
+        return result;
+    }
+
+    /**
+     * Creates an object sending the given bytes as shared memory region.
+     * The bytes are copied to an unlinked temporary file which is mapped into memory.
+     * <p>
+     * Only a read-only descriptor of the file is kept and sent to the peer, the file itself is made read-only
+     * before it is unlinked. So neither the peer nor this process can change or truncate the region after it was created.
+     * </p>
+     *
+     * @param _bytes bytes
+     * @return new object
+     * @throws IOException if the file could not be created
+     */
+    public static SharedByteArray share(byte[] _bytes) throws IOException {
+        File directory = SHM_DIRECTORY.isDirectory() && SHM_DIRECTORY.canWrite() ? SHM_DIRECTORY : null;
+        File tempFile = File.createTempFile("dbus-java-", ".shm", directory);
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer src = ByteBuffer.wrap(_bytes);
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            }
+            if (!tempFile.setWritable(false, false)) {
+                throw new IOException("Could not make shared memory file read-only: " + tempFile);
+            }
+
+            FileInputStream in = new FileInputStream(tempFile);
+            try {
+                SharedByteArray result = new SharedByteArray();
+                result.file = in;
+                result.buffer = in.getChannel().map(MapMode.READ_ONLY, 0, _bytes.length);
+                return result;
+            } catch (IOException | RuntimeException _ex) {
+                in.close();
+                throw _ex;
+            }
+        } finally {
+            // the open file descriptor keeps the file alive
+            if (!tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Called when this object was received.
+     * If a shared region was received, it is mapped into memory and the received descriptor is closed.
+     *
+     * @param _payload bytes or shared region
+     * @throws DBusException if payload is invalid or region could not be mapped
+     */
+    public void deserialize(Variant<?> _payload) throws DBusException {
+        Object value = _payload.getValue();
+        if (value instanceof byte[]) {
+            bytes = (byte[]) value;
+            buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        } else if (value instanceof Object[] && SHARED_SIGNATURE.equals(_payload.getSig())) {
+            Object[] region = (Object[]) value;
+            // values are sent by the peer, a region outside of the file would crash this process when read
+            long offset = ((UInt64) region[1]).longValue();
+            long length = ((UInt64) region[2]).longValue();
+            try (FileInputStream in = new FileInputStream((FileDescriptor) region[0])) {
+                long size = in.getChannel().size();
+                if (offset < 0 || length < 0 || length > Integer.MAX_VALUE || offset > size - length) {
+                    throw new MarshallingException("Invalid shared memory region: offset " + offset + ", length " + length
+                            + ", file size " + size);
+                }
+                buffer = in.getChannel().map(MapMode.READ_ONLY, offset, length);
+            } catch (IOException _ex) {
+                throw new MarshallingException("Could not map shared memory region", _ex);
+            }
+        } else {
+            throw new MarshallingException("Invalid shared byte array payload with signature " + _payload.getSig());
+        }
+    }
+
+    @Override
+    public Object[] serialize() throws DBusException {
+        if (null == file) {
+            return new Object[] {new Variant<>(bytes, "ay")};
+        }
+        try {
+            Object[] region = new Object[] {file.getFD(), new UInt64(0), new UInt64(buffer.capacity())};
+            return new Object[] {new Variant<>(region, SHARED_SIGNATURE)};
+        } catch (IOException _ex) {
+            throw new MarshallingException("Could not get file descriptor of shared memory region", _ex);
+        }
+    }
+
+    /**
+     * Returns true if the bytes are (or were received) in a shared memory region.
+     *
+     * @return boolean
+     */
+    public boolean isShared() {
+        return null == bytes;
+    }
+
+    /**
+     * Returns the number of bytes.
+     *
+     * @return length
+     */
+    public int getLength() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns a read-only buffer containing the bytes, backed by the shared memory region if shared.
+     * Reading from the buffer does not copy the data.
+     *
+     * @return new buffer
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Returns the bytes, copied from the shared memory region if shared.
+     *
+     * @return byte array
+     */
+    public byte[] getBytes() {
+        if (null != bytes) {
+            return bytes;
+        }
+        byte[] result = new byte[buffer.capacity()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * Closes the file of a shared region created by this process.
+     * The mapping itself is released when this object is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (null != file) {
+            file.close();
+        }
+    }
+}
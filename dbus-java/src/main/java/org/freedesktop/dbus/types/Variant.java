@@ -105,6 +105,23 @@ public class Variant<T> {
         this.value = _value;
     }
 
+    /**
+    * Create a Variant with a type and signature which are already known to match.
+    * Used when demarshalling, no checks are performed.
+    * @param _value The wrapped value.
+    * @param _type The type of the value.
+    * @param _sig The dbus type string of the value.
+    * @throws IllegalArgumentException If you try and wrap Null.
+    */
+    public Variant(T _value, Type _type, String _sig) throws IllegalArgumentException {
+        if (null == _value) {
+            throw new IllegalArgumentException("Can't wrap Null in a Variant");
+        }
+        this.type = _type;
+        this.sig = _sig;
+        this.value = _value;
+    }
+
     /** Return the wrapped value.
      * @return value
      */
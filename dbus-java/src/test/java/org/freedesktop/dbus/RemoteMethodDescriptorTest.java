@@ -0,0 +1,116 @@
+package org.freedesktop.dbus;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.freedesktop.dbus.RemoteMethodDescriptor.LocalMethod;
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.annotations.DBusMemberName;
+import org.freedesktop.dbus.annotations.MethodNoReply;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RemoteMethodDescriptorTest {
+
+    @DBusInterfaceName("org.foo.Remote")
+    public interface Remote extends DBusInterface {
+        int add(int _a, String _b);
+
+        @DBusMemberName("Notify")
+        @MethodNoReply
+        void notifyRemote();
+
+        <T> void put(T _value);
+
+        List<Integer> range();
+
+        CompletableFuture<List<Integer>> rangeAsync();
+
+        CompletableFuture<Void> resetAsync();
+
+        void unsupported(Set<String> _values);
+    }
+
+    public interface Unnamed extends DBusInterface {
+    }
+
+    private static RemoteMethodDescriptor describe(String _name, Class<?>... _types) throws Exception {
+        return RemoteMethodDescriptor.forMethod(Remote.class.getMethod(_name, _types));
+    }
+
+    @Test
+    public void testDescriptorIsCached() throws Exception {
+        Assertions.assertSame(describe("add", Integer.TYPE, String.class), describe("add", Integer.TYPE, String.class));
+        Assertions.assertNotSame(describe("add", Integer.TYPE, String.class), describe("range"));
+    }
+
+    @Test
+    public void testMethodProperties() throws Exception {
+        RemoteMethodDescriptor add = describe("add", Integer.TYPE, String.class);
+        Assertions.assertEquals("add", add.getMember());
+        Assertions.assertEquals("is", add.getSignature());
+        Assertions.assertEquals(LocalMethod.NONE, add.getLocalMethod());
+        Assertions.assertFalse(add.isNoReply());
+        Assertions.assertFalse(add.isFuture());
+        Assertions.assertEquals(Integer.TYPE, add.getReturnClass());
+
+        RemoteMethodDescriptor notify = describe("notifyRemote");
+        Assertions.assertEquals("Notify", notify.getMember());
+        Assertions.assertNull(notify.getSignature());
+        Assertions.assertTrue(notify.isNoReply());
+        Assertions.assertEquals(Void.TYPE, notify.getReturnClass());
+
+        Assertions.assertEquals(LocalMethod.IS_REMOTE, describe("isRemote").getLocalMethod());
+        Assertions.assertEquals(LocalMethod.GET_OBJECT_PATH, describe("getObjectPath").getLocalMethod());
+        Assertions.assertEquals(LocalMethod.HASH_CODE, RemoteMethodDescriptor.forMethod(Object.class.getMethod("hashCode")).getLocalMethod());
+    }
+
+    @Test
+    public void testUnsupportedSignature() throws Exception {
+        RemoteMethodDescriptor unsupported = describe("unsupported", Set.class);
+        // the error is reported when the method is called, not when the proxy is created
+        Assertions.assertThrows(DBusExecutionException.class, unsupported::getSignature);
+    }
+
+    @Test
+    public void testFutureReturnType() throws Exception {
+        RemoteMethodDescriptor rangeAsync = describe("rangeAsync");
+        Assertions.assertTrue(rangeAsync.isFuture());
+        Assertions.assertEquals(List.class, rangeAsync.getReturnClass());
+        Assertions.assertEquals(describe("range").getReturnType(), rangeAsync.getReturnType());
+        Assertions.assertTrue(rangeAsync.getReturnType() instanceof ParameterizedType);
+
+        RemoteMethodDescriptor resetAsync = describe("resetAsync");
+        Assertions.assertTrue(resetAsync.isFuture());
+        Assertions.assertEquals(Void.TYPE, resetAsync.getReturnClass());
+    }
+
+    @Test
+    public void testConversions() throws Exception {
+        Object[] plain = new Object[] {1, "two"};
+        RemoteMethodDescriptor add = describe("add", Integer.TYPE, String.class);
+        Assertions.assertSame(plain, add.convertParameters(plain, null));
+
+        Object[] converted = describe("put", Object.class).convertParameters(new Object[] {"value"}, null);
+        Assertions.assertEquals(new Variant<>("value"), converted[0]);
+
+        Object[] values = new Object[] {5};
+        Assertions.assertSame(values, add.deSerializeReturnValues(values, null));
+
+        Object[] range = describe("range").deSerializeReturnValues(new Object[] {new int[] {1, 2}}, null);
+        Assertions.assertEquals(Arrays.asList(1, 2), range[0]);
+    }
+
+    @Test
+    public void testInterfaceName() {
+        Assertions.assertEquals("org.foo.Remote", RemoteMethodDescriptor.getInterfaceName(Remote.class));
+        Assertions.assertEquals("org.freedesktop.dbus.RemoteMethodDescriptorTest.Unnamed", RemoteMethodDescriptor.getInterfaceName(Unnamed.class));
+        Assertions.assertNull(RemoteMethodDescriptor.getInterfaceName(null));
+    }
+}
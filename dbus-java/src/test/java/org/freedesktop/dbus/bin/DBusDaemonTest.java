@@ -0,0 +1,346 @@
+package org.freedesktop.dbus.bin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.bin.DBusDaemon.SlowConsumerPolicy;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.messages.MethodReturn;
+import org.freedesktop.dbus.test.helper.TestMessages;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the message routing of {@link DBusDaemon} using plain sockets as clients.
+ */
+public class DBusDaemonTest {
+
+    private static final String       BUS            = "org.freedesktop.DBus";
+    private static final String       BUS_PATH       = "/org/freedesktop/DBus";
+    private static final String       NAME_OWNER_CHANGED_RULE = "type='signal',interface='org.freedesktop.DBus',member='NameOwnerChanged'";
+    private static final int          MAX_QUEUED     = 64 * 1024;
+    private static final int          PAYLOAD_SIZE   = 16 * 1024;
+
+    private DBusDaemon                daemon;
+    private ServerSocketChannel       serverChannel;
+    private final List<RawClient>     clients        = new ArrayList<>();
+
+    @BeforeEach
+    public void before() throws IOException {
+        daemon = new DBusDaemon(4);
+        daemon.setMaxQueuedBytes(MAX_QUEUED);
+        daemon.start();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    public void after() throws IOException {
+        for (RawClient c : clients) {
+            c.close();
+        }
+        serverChannel.close();
+        daemon.close();
+    }
+
+    @Test
+    public void testHelloReplyIsSentBeforeSignals() throws Exception {
+        RawClient client = connect();
+        MethodCall hello = client.send(new MethodCall(BUS, BUS_PATH, BUS, "Hello", (byte) 0, null));
+
+        Message reply = client.read();
+        assertTrue(reply instanceof MethodReturn, "Expected reply but got " + reply);
+        assertEquals(hello.getSerial(), reply.getReplySerial());
+        String unique = (String) reply.getParameters()[0];
+
+        Message acquired = client.read();
+        assertEquals("NameAcquired", acquired.getName());
+        assertEquals(unique, acquired.getParameters()[0]);
+
+        client.call("AddMatch", "s", NAME_OWNER_CHANGED_RULE);
+        MethodCall request = client.send(new MethodCall(BUS, BUS_PATH, BUS, "RequestName", (byte) 0, "su", "org.foo.Test", new UInt32(0)));
+
+        reply = client.read();
+        assertTrue(reply instanceof MethodReturn, "Expected reply but got " + reply);
+        assertEquals(request.getSerial(), reply.getReplySerial());
+        acquired = client.read();
+        assertEquals("NameAcquired", acquired.getName());
+        assertEquals("org.foo.Test", acquired.getParameters()[0]);
+        Message changed = client.read();
+        assertEquals("NameOwnerChanged", changed.getName());
+        assertEquals("org.foo.Test", changed.getParameters()[0]);
+        assertEquals(unique, changed.getParameters()[2]);
+    }
+
+    @Test
+    public void testSlowConsumerIsDisconnected() throws Exception {
+        daemon.setSlowConsumerPolicy(SlowConsumerPolicy.DISCONNECT);
+        RawClient slow = connect();
+        String slowName = slow.hello();
+        RawClient sender = connect();
+        sender.hello();
+        sender.call("AddMatch", "s", NAME_OWNER_CHANGED_RULE);
+
+        int count = 4 * MAX_QUEUED / PAYLOAD_SIZE;
+        for (int i = 0; i < count; i++) {
+            sender.send(new MethodCall(slowName, "/", "org.foo", "Data", Message.Flags.NO_REPLY_EXPECTED, "ay", (Object) new byte[PAYLOAD_SIZE]));
+        }
+
+        // messages sent after the slow client was disconnected fail with ServiceUnknown
+        Message changed = sender.read();
+        while (changed instanceof org.freedesktop.dbus.errors.Error) {
+            assertEquals("org.freedesktop.DBus.Error.ServiceUnknown", changed.getName());
+            changed = sender.read();
+        }
+        assertEquals("NameOwnerChanged", changed.getName());
+        assertEquals(slowName, changed.getParameters()[0]);
+        assertEquals("", changed.getParameters()[2]);
+
+        assertTrue(slow.readAll() < count, "Slow client should not receive all messages");
+        assertTrue(slow.isClosed());
+    }
+
+    @Test
+    public void testSlowConsumerDropsWithLimitsExceeded() throws Exception {
+        daemon.setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+        RawClient slow = connect();
+        String slowName = slow.hello();
+        RawClient sender = connect();
+        sender.hello();
+
+        int count = 4 * MAX_QUEUED / PAYLOAD_SIZE;
+        List<Long> serials = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            serials.add(sender.send(new MethodCall(slowName, "/", "org.foo", "Data", (byte) 0, "ay", (Object) new byte[PAYLOAD_SIZE])).getSerial());
+        }
+
+        Message error = sender.read();
+        assertTrue(error instanceof org.freedesktop.dbus.errors.Error, "Expected error but got " + error);
+        assertEquals("org.freedesktop.DBus.Error.LimitsExceeded", error.getName());
+        assertTrue(serials.contains(error.getReplySerial()));
+
+        // slow client is still connected and owns its name
+        Message owner = sender.call("GetNameOwner", "s", slowName);
+        assertEquals(slowName, owner.getParameters()[0]);
+
+        int received = slow.readAvailable();
+        assertTrue(received > 0 && received < count, "Slow client received " + received + " of " + count + " messages");
+        assertFalse(slow.isClosed());
+    }
+
+    @Test
+    public void testInvalidMessageDisconnects() throws Exception {
+        RawClient client = connect();
+        client.hello();
+        // method call with a header field of unknown type 'Z'
+        client.write(new byte[] {'l', 1, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 4, 0, 0, 0, 8, 1, 'Z', 0, 0, 0, 0, 0});
+
+        assertEquals(0, client.readAll());
+        assertTrue(client.isClosed());
+    }
+
+    @Test
+    public void testNameOwnerChangesAreSerialized() throws Exception {
+        daemon.setMaxQueuedBytes(DBusDaemon.DEFAULT_MAX_QUEUED_BYTES);
+        RawClient observer = connect();
+        observer.hello();
+        observer.call("AddMatch", "s", NAME_OWNER_CHANGED_RULE + ",arg0='org.foo.Contended'");
+
+        int clientCount = 8;
+        int rounds = 50;
+        List<RawClient> owners = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            RawClient c = connect();
+            c.hello();
+            owners.add(c);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(clientCount);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> acquired = new ArrayList<>();
+            for (RawClient c : owners) {
+                acquired.add(executor.submit(() -> {
+                    start.await();
+                    int n = 0;
+                    for (int i = 0; i < rounds; i++) {
+                        Message reply = c.call("RequestName", "su", "org.foo.Contended", new UInt32(0));
+                        if (((UInt32) reply.getParameters()[0]).intValue() == 1) {
+                            n++;
+                            c.call("ReleaseName", "s", "org.foo.Contended");
+                        }
+                    }
+                    return n;
+                }));
+            }
+            start.countDown();
+            int changes = 0;
+            for (Future<Integer> f : acquired) {
+                changes += 2 * f.get(30, TimeUnit.SECONDS);
+            }
+            assertTrue(changes > 0);
+
+            // every change has to start from the owner set by the previous change
+            String owner = "";
+            for (int i = 0; i < changes; i++) {
+                Message changed = observer.read();
+                assertEquals("NameOwnerChanged", changed.getName());
+                assertEquals(owner, changed.getParameters()[1], "Signal " + i + " out of order");
+                owner = (String) changed.getParameters()[2];
+            }
+            assertEquals("", owner);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RawClient connect() throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(serverChannel.getLocalAddress());
+        socket.setSoTimeout(10000);
+        SocketChannel channel = serverChannel.accept();
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, 4096);
+        daemon.addSock(channel);
+        RawClient client = new RawClient(socket);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * Client writing and reading messages on a blocking socket.
+     */
+    private static class RawClient {
+        private final Socket         socket;
+        private final InputStream    in;
+        private final MessageDecoder decoder = new MessageDecoder();
+        private final ByteBuffer     buffer  = ByteBuffer.allocate(8192);
+        private boolean              closed;
+
+        RawClient(Socket _socket) throws IOException {
+            socket = _socket;
+            in = socket.getInputStream();
+            buffer.flip();
+        }
+
+        <T extends Message> T send(T _msg) throws IOException {
+            write(TestMessages.toBytes(_msg));
+            return _msg;
+        }
+
+        void write(byte[] _data) throws IOException {
+            socket.getOutputStream().write(_data);
+        }
+
+        String hello() throws IOException, DBusException {
+            Message reply = call("Hello", null);
+            Message acquired = read();
+            assertEquals("NameAcquired", acquired.getName());
+            return (String) reply.getParameters()[0];
+        }
+
+        /**
+         * Call a method of the bus and return the reply, other messages received before the reply are skipped.
+         */
+        Message call(String _method, String _sig, Object... _args) throws IOException, DBusException {
+            MethodCall call = send(new MethodCall(BUS, BUS_PATH, BUS, _method, (byte) 0, _sig, _args));
+            while (true) {
+                Message m = read();
+                if (m.getReplySerial() == call.getSerial()) {
+                    return m;
+                }
+            }
+        }
+
+        Message read() throws IOException, DBusException {
+            Message m = tryRead();
+            assertNotNull(m, "Connection closed");
+            return m;
+        }
+
+        /**
+         * Read all messages until the daemon closes the connection.
+         */
+        int readAll() throws IOException, DBusException {
+            int count = 0;
+            while (null != tryRead()) {
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Read messages until no message arrives for a short time.
+         */
+        int readAvailable() throws IOException, DBusException {
+            socket.setSoTimeout(500);
+            int count = 0;
+            try {
+                while (null != tryRead()) {
+                    count++;
+                }
+            } catch (SocketTimeoutException _ex) {
+                // no more messages
+            }
+            return count;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        private Message tryRead() throws IOException, DBusException {
+            while (true) {
+                Message m = decoder.decode(buffer);
+                if (null != m) {
+                    return m;
+                }
+                buffer.clear();
+                int read;
+                try {
+                    read = in.read(buffer.array());
+                } catch (SocketTimeoutException _ex) {
+                    buffer.limit(0);
+                    throw _ex;
+                } catch (IOException _ex) {
+                    read = -1;
+                }
+                if (read < 0) {
+                    closed = true;
+                    buffer.limit(0);
+                    return null;
+                }
+                buffer.limit(read);
+            }
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}
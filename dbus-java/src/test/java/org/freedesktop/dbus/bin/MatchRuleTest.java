@@ -0,0 +1,91 @@
+package org.freedesktop.dbus.bin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.function.Function;
+
+import org.freedesktop.dbus.DBusPath;
+import org.freedesktop.dbus.errors.MatchRuleInvalid;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MatchRuleTest {
+
+    private static final Function<String, String> NO_OWNER = n -> null;
+
+    private static DBusSignal signal(String _path, String _iface, String _member, String _sig, Object... _args) throws Exception {
+        return new DBusSignal(":1.1", _path, _iface, _member, _sig, _args);
+    }
+
+    @Test
+    public void testParseInvalid() {
+        Assertions.assertThrows(MatchRuleInvalid.class, () -> MatchRule.parse("type='signal"));
+        Assertions.assertThrows(MatchRuleInvalid.class, () -> MatchRule.parse("type='foo'"));
+        Assertions.assertThrows(MatchRuleInvalid.class, () -> MatchRule.parse("foo='bar'"));
+        Assertions.assertThrows(MatchRuleInvalid.class, () -> MatchRule.parse("arg64='bar'"));
+        Assertions.assertThrows(MatchRuleInvalid.class, () -> MatchRule.parse("path='/a',path_namespace='/a'"));
+        Assertions.assertThrows(MatchRuleInvalid.class, () -> MatchRule.parse("member='a',member='b'"));
+    }
+
+    @Test
+    public void testMatchHeaders() throws Exception {
+        DBusSignal sig = signal("/org/foo/bar", "org.foo.Iface", "Changed", "s", "value");
+
+        Assertions.assertTrue(MatchRule.parse("").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("type='signal',interface='org.foo.Iface',member='Changed'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("type='method_call'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("member='Other'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("path='/org/foo/bar'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("path='/org/foo'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("path_namespace='/org/foo'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("path_namespace='/'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("path_namespace='/org/fo'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("sender=':1.1'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("sender='org.foo'").matches(sig, n -> ":1.1"));
+        Assertions.assertFalse(MatchRule.parse("sender='org.foo'").matches(sig, NO_OWNER));
+    }
+
+    @Test
+    public void testMatchArgs() throws Exception {
+        DBusSignal sig = signal("/org/foo", "org.foo.Iface", "Changed", "sso", "org.foo.Name", "it's", new DBusPath("/org/foo/bar"));
+
+        Assertions.assertTrue(MatchRule.parse("arg0='org.foo.Name'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("arg0='org.foo'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("arg1='it'\\''s'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("arg5='x'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("arg0namespace='org.foo'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("arg0namespace='org.fo'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("arg2path='/org/foo/'").matches(sig, NO_OWNER));
+        Assertions.assertTrue(MatchRule.parse("arg2path='/org/foo/bar'").matches(sig, NO_OWNER));
+        Assertions.assertFalse(MatchRule.parse("arg2path='/org/foo'").matches(sig, NO_OWNER));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        MatchRuleIndex<String> index = new MatchRuleIndex<>();
+        index.add("a", MatchRule.parse("type='signal',interface='org.foo.Iface',member='Changed'"));
+        index.add("b", MatchRule.parse("type='signal',interface='org.foo.Iface'"));
+        index.add("c", MatchRule.parse("member='Changed'"));
+        index.add("d", MatchRule.parse("interface='org.other.Iface'"));
+        index.add("e", MatchRule.parse("type='signal'"));
+        index.add("e", MatchRule.parse("type='signal'"));
+
+        DBusSignal sig = signal("/org/foo", "org.foo.Iface", "Changed", "s", "x");
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "e")), index.findMatches(sig, NO_OWNER));
+
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Iface", "Changed", (byte) 0, null);
+        Assertions.assertEquals(Collections.singleton("c"), index.findMatches(call, NO_OWNER));
+
+        Assertions.assertTrue(index.remove("a", MatchRule.parse("interface='org.foo.Iface',type='signal',member='Changed'")));
+        Assertions.assertFalse(index.remove("a", MatchRule.parse("type='signal'")));
+        index.removeAll("b");
+        index.removeAll("c");
+        Assertions.assertTrue(index.remove("e", MatchRule.parse("type='signal'")));
+        Assertions.assertEquals(Collections.singleton("e"), index.findMatches(sig, NO_OWNER));
+        Assertions.assertTrue(index.remove("e", MatchRule.parse("type='signal'")));
+        Assertions.assertTrue(index.findMatches(sig, NO_OWNER).isEmpty());
+    }
+}
@@ -0,0 +1,133 @@
+package org.freedesktop.dbus.connections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.errors.NoReply;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.test.helper.DirectConnectionPair;
+import org.freedesktop.dbus.test.helper.P2pTestServer;
+import org.freedesktop.dbus.test.helper.SampleException;
+import org.freedesktop.dbus.test.helper.interfaces.SampleAsyncRemoteInterface;
+import org.freedesktop.dbus.test.helper.interfaces.SampleRemoteInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests method calls returning a {@link CompletableFuture}.
+ */
+public class FutureMethodCallTest {
+    private static final String OBJECT_PATH = "/Test";
+    private static final String SLOW_PATH   = "/org/foo/Slow";
+
+    @DBusInterfaceName("org.foo.Slow")
+    public interface Slow extends DBusInterface {
+        String sleep(Integer _millis);
+    }
+
+    @DBusInterfaceName("org.foo.Slow")
+    public interface AsyncSlow extends DBusInterface {
+        CompletableFuture<String> sleep(Integer _millis);
+    }
+
+    public static class SlowImpl implements Slow {
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String sleep(Integer _millis) {
+            try {
+                release.await(_millis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException _ex) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return SLOW_PATH;
+        }
+    }
+
+    private SlowImpl             slow;
+    private DirectConnectionPair connections;
+    private DirectConnection     client;
+
+    @BeforeEach
+    public void before() throws Exception {
+        connections = DirectConnectionPair.open(OBJECT_PATH, new P2pTestServer());
+        slow = new SlowImpl();
+        connections.getServer().exportObject(SLOW_PATH, slow);
+        client = connections.getClient();
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        slow.release.countDown();
+        connections.close();
+    }
+
+    @Test
+    public void testFutureReturnTypes() throws Exception {
+        SampleRemoteInterface tri = client.getRemoteObject(OBJECT_PATH, SampleRemoteInterface.class);
+        SampleAsyncRemoteInterface async = client.getRemoteObject(OBJECT_PATH, SampleAsyncRemoteInterface.class);
+
+        assertEquals(tri.getName(), async.getName().get(10, TimeUnit.SECONDS));
+        assertEquals(17.093f, async.testfloat(new float[] {17.093f}).get(10, TimeUnit.SECONDS), 0.0001f);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> async.throwme().get(10, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof SampleException);
+    }
+
+    @Test
+    public void testCallMethodFuture() throws Exception {
+        SampleRemoteInterface tri = client.getRemoteObject(OBJECT_PATH, SampleRemoteInterface.class);
+
+        CompletableFuture<String> future = client.callMethodFuture(tri, "getName");
+        assertEquals(tri.getName(), future.get(10, TimeUnit.SECONDS));
+        assertTrue(client.getPendingCalls().isEmpty());
+    }
+
+    @Test
+    public void testCancelledFutureIsRemoved() throws Exception {
+        AsyncSlow remote = client.getRemoteObject(SLOW_PATH, AsyncSlow.class);
+
+        CompletableFuture<String> future = remote.sleep(60000);
+        assertTrue(future.cancel(false));
+        assertTrue(client.getPendingCalls().isEmpty());
+
+        // the late reply is dropped, the cancelled future is not completed again
+        slow.release.countDown();
+        assertEquals("done", remote.sleep(0).get(10, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertThrows(CancellationException.class, future::join);
+        assertTrue(client.getPendingCalls().isEmpty());
+    }
+
+    @Test
+    public void testPerCallTimeoutCompletesWithNoReply() throws Exception {
+        Slow remote = client.getRemoteObject(SLOW_PATH, Slow.class);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> future = client.callMethodFuture(200, TimeUnit.MILLISECONDS, remote, "sleep", 60000);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+
+        assertTrue(ex.getCause() instanceof NoReply, "Expected NoReply but got " + ex.getCause());
+        assertTrue(System.currentTimeMillis() - start < 10000, "Default timeout was used");
+        assertTrue(client.getPendingCalls().isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package org.freedesktop.dbus.connections;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.errors.NoReply;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.CallbackHandler;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.test.helper.DirectConnectionPair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PendingCallTimeoutTest {
+    private static final String OBJECT_PATH = "/org/foo/Slow";
+    private static final long   TIMEOUT     = 200;
+
+    public interface Slow extends DBusInterface {
+        String sleep(Integer _millis);
+    }
+
+    public static class SlowImpl implements Slow {
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String sleep(Integer _millis) {
+            try {
+                release.await(_millis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException _ex) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return OBJECT_PATH;
+        }
+    }
+
+    private long                 defaultTimeout;
+    private SlowImpl             exported;
+    private DirectConnectionPair connections;
+
+    @BeforeEach
+    public void before() throws Exception {
+        defaultTimeout = MethodCall.getDefaultTimeout();
+        MethodCall.setDefaultTimeout(TIMEOUT);
+        exported = new SlowImpl();
+        connections = DirectConnectionPair.open(OBJECT_PATH, exported);
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        exported.release.countDown();
+        connections.close();
+        MethodCall.setDefaultTimeout(defaultTimeout);
+    }
+
+    @Test
+    public void testTimedOutSyncCallIsRemoved() throws Exception {
+        DirectConnection client = connections.getClient();
+        Slow remote = client.getRemoteObject(OBJECT_PATH, Slow.class);
+
+        Assertions.assertEquals("done", remote.sleep(0));
+        Assertions.assertTrue(client.getPendingCalls().isEmpty());
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThrows(NoReply.class, () -> remote.sleep(60000));
+        }
+        waitForEmptyRegistry(client);
+    }
+
+    @Test
+    public void testTimedOutCallbackReceivesNoReply() throws Exception {
+        DirectConnection client = connections.getClient();
+        Slow remote = client.getRemoteObject(OBJECT_PATH, Slow.class);
+        CountDownLatch failed = new CountDownLatch(1);
+        DBusExecutionException[] error = new DBusExecutionException[1];
+
+        client.callWithCallback(remote, "sleep", new CallbackHandler<String>() {
+            @Override
+            public void handle(String _r) {
+                Assertions.fail("Unexpected reply");
+            }
+
+            @Override
+            public void handleError(DBusExecutionException _e) {
+                error[0] = _e;
+                failed.countDown();
+            }
+        }, 60000);
+
+        Assertions.assertTrue(failed.await(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(error[0] instanceof NoReply);
+        waitForEmptyRegistry(client);
+    }
+
+    private static void waitForEmptyRegistry(AbstractConnection _conn) throws InterruptedException {
+        // the reaper removes expired calls shortly after their timeout, the server does not reply before the test ends
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!_conn.getPendingCalls().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, _conn.getPendingCalls().size());
+    }
+}
@@ -0,0 +1,203 @@
+package org.freedesktop.dbus.connections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.DBusMatchRule;
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.DBusSigHandler;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the batching of queued messages by {@link SenderThread}.
+ */
+public class SenderThreadTest {
+    private static final String OBJECT_PATH = "/org/foo/Receiver";
+    private static final int    COUNT       = 1000;
+
+    @DBusInterfaceName("org.foo.Receiver")
+    public interface Receiver extends DBusInterface {
+        void receive(Integer _value);
+    }
+
+    public static class ReceiverImpl implements Receiver {
+        private final List<Integer>  received = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch done     = new CountDownLatch(COUNT);
+
+        @Override
+        public void receive(Integer _value) {
+            received.add(_value);
+            done.countDown();
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return OBJECT_PATH;
+        }
+    }
+
+    /**
+     * Client connection recording the batches written by its sender thread, the first batch is held back until released.
+     */
+    static class RecordingConnection extends AbstractConnection {
+        private final List<List<Long>> batches       = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch   firstBatch    = new CountDownLatch(1);
+        private final CountDownLatch   release       = new CountDownLatch(1);
+
+        RecordingConnection(String _address) throws DBusException {
+            super(_address, TCP_CONNECT_TIMEOUT);
+        }
+
+        @Override
+        void writeMessages(List<Message> _messages) {
+            List<Long> serials = new ArrayList<>();
+            for (Message m : _messages) {
+                serials.add(m.getSerial());
+            }
+            batches.add(serials);
+            if (1 == batches.size()) {
+                firstBatch.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException _ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.writeMessages(_messages);
+        }
+
+        @Override
+        public DBusInterface getExportedObject(String _source, String _path) throws DBusException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected <T extends DBusSignal> void removeSigHandler(DBusMatchRule _rule, DBusSigHandler<T> _handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected <T extends DBusSignal> void addSigHandler(DBusMatchRule _rule, DBusSigHandler<T> _handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void removeGenericSigHandler(DBusMatchRule _rule, DBusSigHandler<DBusSignal> _handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void addGenericSigHandler(DBusMatchRule _rule, DBusSigHandler<DBusSignal> _handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getMachineId() {
+            return "";
+        }
+    }
+
+    private ReceiverImpl        receiver;
+    private DirectConnection    server;
+    private RecordingConnection client;
+
+    @BeforeEach
+    public void before() throws Exception {
+        String address = DirectConnection.createDynamicTCPSession();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<DirectConnection> serverFuture = executor.submit(() -> new DirectConnection(address + ",listen=true"));
+            client = connect(address);
+            server = serverFuture.get();
+        } finally {
+            executor.shutdown();
+        }
+        receiver = new ReceiverImpl();
+        server.exportObject(OBJECT_PATH, receiver);
+        // handle the calls in the order they were received
+        server.setDispatchPolicy(DispatchPolicy.callerRuns());
+        server.listen();
+    }
+
+    @AfterEach
+    public void after() throws Exception {
+        client.release.countDown();
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testQueuedMessagesAreCoalescedInOrder() throws Exception {
+        List<Long> sent = new ArrayList<>();
+        sent.add(send(0));
+        assertTrue(client.firstBatch.await(10, TimeUnit.SECONDS));
+
+        // queue messages while the sender thread is writing
+        for (int i = 1; i < COUNT; i++) {
+            sent.add(send(i));
+        }
+        client.release.countDown();
+
+        assertTrue(receiver.done.await(10, TimeUnit.SECONDS), "Received " + receiver.received.size() + " of " + COUNT);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, receiver.received);
+
+        List<Long> written = new ArrayList<>();
+        int maxBatchSize = 0;
+        synchronized (client.batches) {
+            for (List<Long> batch : client.batches) {
+                assertTrue(batch.size() <= SenderThread.MAX_BATCH_MESSAGES, "Batch of " + batch.size() + " messages");
+                maxBatchSize = Math.max(maxBatchSize, batch.size());
+                written.addAll(batch);
+            }
+        }
+        written.retainAll(sent);
+        assertEquals(sent, written);
+        assertTrue(maxBatchSize > 1, "Queued messages were not written together");
+    }
+
+    private long send(int _value) throws DBusException {
+        MethodCall call = new MethodCall(null, OBJECT_PATH, "org.foo.Receiver", "receive", Message.Flags.NO_REPLY_EXPECTED, "i", _value);
+        client.sendMessage(call);
+        return call.getSerial();
+    }
+
+    private static RecordingConnection connect(String _address) throws DBusException, InterruptedException {
+        for (int i = 1;; i++) {
+            try {
+                return new RecordingConnection(_address);
+            } catch (DBusException _ex) {
+                // server socket not bound yet
+                if (100 == i) {
+                    throw _ex;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.freedesktop.dbus.connections.transports;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.test.helper.TestMessages;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs a connected socket pair through {@link SelectorChannelHandler}, using small socket buffers
+ * so messages are read and written in several parts.
+ */
+public class SelectorChannelHandlerTest {
+    private static final int        BUFFER_SIZE = 4096;
+    private static final long       TIMEOUT     = TimeUnit.SECONDS.toMillis(10);
+
+    private ServerSocketChannel     serverChannel;
+    private SocketChannel           peer;
+    private SelectorChannelHandler  handler;
+    private final Listener          listener    = new Listener();
+    private final ExecutorService   executor    = Executors.newSingleThreadExecutor();
+
+    @BeforeEach
+    public void before() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        peer = SocketChannel.open();
+        peer.setOption(StandardSocketOptions.SO_RCVBUF, BUFFER_SIZE);
+        peer.setOption(StandardSocketOptions.SO_SNDBUF, BUFFER_SIZE);
+        peer.connect(serverChannel.getLocalAddress());
+        // peer is polled, so the tests can give up after a timeout
+        peer.configureBlocking(false);
+        SocketChannel channel = serverChannel.accept();
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, BUFFER_SIZE);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, BUFFER_SIZE);
+        handler = new SelectorChannelHandler(channel, null);
+    }
+
+    @AfterEach
+    public void after() throws IOException {
+        executor.shutdownNow();
+        handler.close();
+        peer.close();
+        serverChannel.close();
+    }
+
+    @Test
+    public void testPartialReads() throws Exception {
+        handler.startReading(listener);
+        List<MethodCall> messages = createMessages(10, 10000);
+        byte[] data = toBytes(messages);
+
+        // send the header of the first message byte by byte, the remaining data in chunks of different size
+        int offset = 0;
+        for (; offset < 32; offset++) {
+            writeFully(ByteBuffer.wrap(data, offset, 1));
+            Thread.sleep(1);
+        }
+        for (int chunk = 1; offset < data.length; chunk = chunk * 3 % 1999 + 1) {
+            int length = Math.min(chunk, data.length - offset);
+            writeFully(ByteBuffer.wrap(data, offset, length));
+            offset += length;
+        }
+
+        for (MethodCall sent : messages) {
+            Message received = listener.messages.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotNull(received, "Message not received");
+            assertEquals(sent.getSerial(), received.getSerial());
+            assertArrayEquals((byte[]) sent.getParameters()[0], (byte[]) received.getParameters()[0]);
+        }
+    }
+
+    @Test
+    public void testPartialWrites() throws Exception {
+        List<Message> messages = new ArrayList<>(createMessages(20, 64 * 1024));
+        byte[] expected = toBytes(messages);
+
+        Future<?> written = executor.submit(() -> {
+            handler.write(messages);
+            return null;
+        });
+        Thread.sleep(200);
+        assertFalse(written.isDone(), "Writer should wait until the peer has read the data");
+
+        assertArrayEquals(expected, readFully(expected.length, 1000));
+        written.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testWriteWithEmptyTrailingBuffer() throws Exception {
+        MethodCall msg = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "s", "foo") {
+            @Override
+            public byte[][] getWireData() {
+                byte[][] data = super.getWireData();
+                int count = 0;
+                while (count < data.length && null != data[count]) {
+                    count++;
+                }
+                byte[][] result = Arrays.copyOf(data, count + 1);
+                result[count] = new byte[0];
+                return result;
+            }
+        };
+        byte[] expected = TestMessages.toBytes(msg);
+
+        handler.write(Arrays.asList(msg));
+
+        assertArrayEquals(expected, readFully(expected.length, BUFFER_SIZE));
+    }
+
+    @Test
+    public void testEofReportsReadFailed() throws Exception {
+        handler.startReading(listener);
+        peer.close();
+
+        IOException failure = listener.failures.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertTrue(failure instanceof EOFException, "Expected EOF but got " + failure);
+    }
+
+    private static List<MethodCall> createMessages(int _count, int _payloadSize) throws DBusException {
+        List<MethodCall> messages = new ArrayList<>();
+        for (int i = 0; i < _count; i++) {
+            byte[] payload = new byte[_payloadSize];
+            Arrays.fill(payload, (byte) i);
+            messages.add(new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "ay", (Object) payload));
+        }
+        return messages;
+    }
+
+    private static byte[] toBytes(List<? extends Message> _messages) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (Message m : _messages) {
+            byte[] data = TestMessages.toBytes(m);
+            bos.write(data, 0, data.length);
+        }
+        return bos.toByteArray();
+    }
+
+    private void writeFully(ByteBuffer _buffer) throws IOException {
+        while (_buffer.hasRemaining()) {
+            peer.write(_buffer);
+        }
+    }
+
+    /**
+     * Read the given number of bytes from the peer using reads of at most the given size.
+     */
+    private byte[] readFully(int _length, int _readSize) throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(_length);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (result.hasRemaining()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Received only " + result.position() + " of " + _length + " bytes");
+            ByteBuffer chunk = result.slice();
+            chunk.limit(Math.min(_readSize, chunk.remaining()));
+            int read = peer.read(chunk);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            if (read == 0) {
+                Thread.yield();
+            }
+            result.position(result.position() + read);
+        }
+        return result.array();
+    }
+
+    private static class Listener implements IMessageListener {
+        private final BlockingQueue<Message>     messages = new LinkedBlockingQueue<>();
+        private final BlockingQueue<IOException> failures = new LinkedBlockingQueue<>();
+
+        @Override
+        public void messageReceived(Message _msg) {
+            messages.add(_msg);
+        }
+
+        @Override
+        public void readFailed(IOException _ex) {
+            failures.add(_ex);
+        }
+    }
+}
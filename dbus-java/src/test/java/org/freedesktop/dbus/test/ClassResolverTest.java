@@ -0,0 +1,63 @@
+package org.freedesktop.dbus.test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import org.freedesktop.dbus.errors.Error;
+import org.freedesktop.dbus.errors.UnknownMethod;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.messages.ClassResolver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ClassResolverTest {
+
+    @Test
+    public void testNestedClasses() {
+        ClassResolver<Object> resolver = new ClassResolver<>(Object.class, UnaryOperator.identity());
+        Assertions.assertSame(Map.class, resolver.resolve("java.util.Map"));
+        Assertions.assertSame(Map.Entry.class, resolver.resolve("java.util.Map.Entry"));
+        Assertions.assertNull(resolver.resolve("java.util.Map.Unknown"));
+
+        ClassResolver<Number> numbers = new ClassResolver<>(Number.class, UnaryOperator.identity());
+        Assertions.assertSame(Integer.class, numbers.resolve("java.lang.Integer"));
+        Assertions.assertNull(numbers.resolve("java.lang.String"));
+    }
+
+    @Test
+    public void testUnknownNamesAreCached() {
+        AtomicInteger lookups = new AtomicInteger();
+        ClassLoader counting = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String _name, boolean _resolve) throws ClassNotFoundException {
+                lookups.incrementAndGet();
+                return super.loadClass(_name, _resolve);
+            }
+        };
+        ClassResolver<Object> resolver = new ClassResolver<>(Object.class, UnaryOperator.identity());
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(counting);
+        try {
+            Assertions.assertNull(resolver.resolve("org.example.Unknown.Signal"));
+            int firstLookups = lookups.get();
+            Assertions.assertTrue(firstLookups > 0);
+            Assertions.assertNull(resolver.resolve("org.example.Unknown.Signal"));
+            Assertions.assertEquals(firstLookups, lookups.get());
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    @Test
+    public void testErrorClasses() throws Exception {
+        DBusExecutionException known = new Error(":1.1", "org.freedesktop.DBus.Error.UnknownMethod", 1, "s", "no such method").getException();
+        Assertions.assertTrue(known instanceof UnknownMethod);
+        Assertions.assertEquals("no such method", known.getMessage());
+        Assertions.assertEquals("org.freedesktop.DBus.Error.UnknownMethod", known.getType());
+
+        DBusExecutionException unknown = new Error(":1.1", "org.example.Error.Failed", 2, "s", "failed").getException();
+        Assertions.assertEquals(DBusExecutionException.class, unknown.getClass());
+        Assertions.assertEquals("org.example.Error.Failed", unknown.getType());
+    }
+}
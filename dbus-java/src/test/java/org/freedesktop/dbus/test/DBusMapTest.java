@@ -0,0 +1,159 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.receive;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.freedesktop.dbus.DBusMap;
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.MethodTuple;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.ExportedMethod;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DBusMapTest {
+
+    private static Object[][] createEntries(int _count) {
+        Object[][] entries = new Object[_count][];
+        for (int i = 0; i < _count; i++) {
+            entries[i] = new Object[] {"key" + i, i};
+        }
+        return entries;
+    }
+
+    @Test
+    public void testLookup() {
+        for (int count : new int[] {3, 300}) {
+            Object[][] entries = createEntries(count);
+            // first entry of a key wins
+            entries[count - 1] = new Object[] {"key0", -1};
+            DBusMap<String, Integer> map = new DBusMap<>(entries);
+
+            Assertions.assertEquals(Integer.valueOf(0), map.get("key0"));
+            Assertions.assertEquals(Integer.valueOf(1), map.get("key1"));
+            Assertions.assertTrue(map.containsKey("key1"));
+            Assertions.assertFalse(map.containsKey("unknown"));
+            Assertions.assertNull(map.get("unknown"));
+            Assertions.assertNull(map.get(null));
+            Assertions.assertFalse(map.containsValue(-1));
+            Assertions.assertEquals(count - 1, map.size());
+        }
+    }
+
+    @Test
+    public void testEntrySet() {
+        DBusMap<String, Integer> map = new DBusMap<>(createEntries(20));
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            expected.put("key" + i, i);
+        }
+
+        Assertions.assertEquals(expected.entrySet(), map.entrySet());
+        Assertions.assertEquals(expected, map);
+        Assertions.assertEquals(map, expected);
+        Assertions.assertEquals(expected.hashCode(), map.hashCode());
+        Assertions.assertEquals(expected.keySet(), map.keySet());
+        Assertions.assertEquals(Arrays.asList(expected.entrySet().toArray()), Arrays.asList(map.entrySet().toArray()));
+        Assertions.assertFalse(map.entrySet().contains(new HashMap.SimpleEntry<>("key1", 2)));
+    }
+
+    @Test
+    public void testDuplicateKeys() throws Exception {
+        Object[][] entries = createEntries(20);
+        entries[5] = new Object[] {"key1", -1};
+        DBusMap<String, Integer> map = new DBusMap<>(entries);
+
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        for (Object[] entry : entries) {
+            expected.putIfAbsent((String) entry[0], (Integer) entry[1]);
+        }
+
+        Assertions.assertEquals(19, map.size());
+        Assertions.assertEquals(19, map.entrySet().size());
+        Assertions.assertEquals(19, map.keySet().size());
+        Assertions.assertEquals(19, map.values().size());
+        Assertions.assertEquals(expected, map);
+        Assertions.assertEquals(expected.hashCode(), map.hashCode());
+        Assertions.assertEquals(Arrays.asList(expected.keySet().toArray()), Arrays.asList(map.keySet().toArray()));
+        Assertions.assertEquals(Arrays.asList(expected.values().toArray()), Arrays.asList(map.values().toArray()));
+        Assertions.assertFalse(map.entrySet().contains(new HashMap.SimpleEntry<>("key1", -1)));
+        Assertions.assertFalse(map.containsValue(-1));
+
+        Type type = Receiver.class.getMethod("receive", LinkedHashMap.class, HashMap.class, Map.class).getGenericParameterTypes()[0];
+        Object converted = Marshalling.deSerializeParameter(map, type, null);
+        Assertions.assertTrue(converted instanceof LinkedHashMap);
+        Assertions.assertEquals(expected, converted);
+    }
+
+    @Test
+    public void testNonComparableKeys() {
+        Object[] keys = new Object[] {new Object(), new Object(), new Object()};
+        Object[][] entries = new Object[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            entries[i] = new Object[] {keys[i], i};
+        }
+        DBusMap<Object, Integer> map = new DBusMap<>(entries);
+
+        Assertions.assertEquals(Arrays.asList(keys), Arrays.asList(map.keySet().toArray()));
+        Assertions.assertTrue(map.keySet().contains(keys[1]));
+        Assertions.assertFalse(map.keySet().contains(new Object()));
+    }
+
+    @Test
+    public void testDecodeToDeclaredHashMap() throws Exception {
+        Type[] types = Receiver.class.getMethod("receive", LinkedHashMap.class, HashMap.class, Map.class).getGenericParameterTypes();
+        String sig = Marshalling.getDBusType(types);
+        Assertions.assertEquals("a{sv}a{si}a{si}", sig);
+
+        Map<String, Variant<?>> props = new LinkedHashMap<>();
+        Map<String, Integer> ints = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            props.put("prop" + i, new Variant<>(i));
+            ints.put("int" + i, i);
+        }
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Receiver", "receive", (byte) 0, sig,
+                Marshalling.convertParameters(new Object[] {props, ints, ints}, types, null));
+
+        ExportedMethod method = new ExportedObject(new ReceiverImpl(), false).getExportedMethod(new MethodTuple("receive", sig));
+        Object[] typed = method.deSerializeParameters(receive(call), null);
+        Object[] generic = method.deSerializeParameters(receive(call).getParameters(), null);
+
+        for (Object[] params : new Object[][] {typed, generic}) {
+            Assertions.assertTrue(params[0] instanceof LinkedHashMap);
+            Assertions.assertTrue(params[1] instanceof LinkedHashMap);
+            Assertions.assertTrue(params[2] instanceof DBusMap);
+            Assertions.assertEquals(props, params[0]);
+            Assertions.assertEquals(ints, params[1]);
+            Assertions.assertEquals(ints, params[2]);
+            Assertions.assertEquals(Arrays.asList(props.keySet().toArray()), Arrays.asList(((Map<?, ?>) params[0]).keySet().toArray()));
+        }
+    }
+
+    public interface Receiver extends DBusInterface {
+        void receive(LinkedHashMap<String, Variant<?>> _props, HashMap<String, Integer> _ints, Map<String, Integer> _plain);
+    }
+
+    public static class ReceiverImpl implements Receiver {
+        @Override
+        public void receive(LinkedHashMap<String, Variant<?>> _props, HashMap<String, Integer> _ints, Map<String, Integer> _plain) {
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return null;
+        }
+    }
+}
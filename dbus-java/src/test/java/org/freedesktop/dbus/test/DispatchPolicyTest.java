@@ -0,0 +1,201 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.createCall;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.connections.DispatchPolicy;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.test.helper.DirectConnectionPair;
+import org.freedesktop.dbus.test.helper.P2pTestServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DispatchPolicyTest {
+    private static final String OBJECT_PATH = "/org/foo/PolicySwitch";
+
+    public interface PolicySwitch extends DBusInterface {
+        String switchToSharedPool();
+
+        String getThreadName();
+    }
+
+    public static class PolicySwitchImpl implements PolicySwitch {
+        private volatile AbstractConnection connection;
+
+        @Override
+        public String switchToSharedPool() {
+            connection.setDispatchPolicy(DispatchPolicy.sharedPool(2));
+            return getThreadName();
+        }
+
+        @Override
+        public String getThreadName() {
+            return Thread.currentThread().getName();
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return OBJECT_PATH;
+        }
+    }
+
+    @Test
+    public void testSerialKeepsOrderPerObject() throws Exception {
+        DispatchPolicy policy = DispatchPolicy.serial(4);
+        try {
+            ExportedObject object = new ExportedObject(new P2pTestServer(), false);
+            List<Integer> executed = new ArrayList<>();
+            CountDownLatch done = new CountDownLatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                final int index = i;
+                policy.getMethodCallExecutor(object, createCall()).execute(() -> {
+                    // not synchronized: tasks of one object never run concurrently
+                    executed.add(index);
+                    done.countDown();
+                });
+            }
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 1000; i++) {
+                Assertions.assertEquals(i, executed.get(i).intValue());
+            }
+        } finally {
+            policy.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSerialDoesNotBlockOtherObjects() throws Exception {
+        DispatchPolicy policy = DispatchPolicy.serial(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            ExportedObject slowObject = new ExportedObject(new P2pTestServer(), false);
+            ExportedObject otherObject = new ExportedObject(new P2pTestServer(), false);
+            for (int i = 0; i < 10; i++) {
+                policy.getMethodCallExecutor(slowObject, createCall()).execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException _ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            CountDownLatch otherDone = new CountDownLatch(1);
+            policy.getMethodCallExecutor(otherObject, createCall()).execute(otherDone::countDown);
+            Assertions.assertTrue(otherDone.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            policy.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSerialContinuesAfterError() throws Exception {
+        DispatchPolicy policy = DispatchPolicy.serial(2);
+        try {
+            ExportedObject object = new ExportedObject(new P2pTestServer(), false);
+            CountDownLatch done = new CountDownLatch(1);
+            policy.getMethodCallExecutor(object, createCall()).execute(() -> {
+                throw new AssertionError("failing task");
+            });
+            policy.getMethodCallExecutor(object, createCall()).execute(done::countDown);
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            // lane is still usable
+            CountDownLatch next = new CountDownLatch(1);
+            policy.getMethodCallExecutor(object, createCall()).execute(next::countDown);
+            Assertions.assertTrue(next.await(10, TimeUnit.SECONDS));
+        } finally {
+            policy.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        DispatchPolicy policy = DispatchPolicy.callerRuns();
+        Thread[] executedBy = new Thread[1];
+        policy.getMethodCallExecutor(null, createCall()).execute(() -> executedBy[0] = Thread.currentThread());
+        Assertions.assertSame(Thread.currentThread(), executedBy[0]);
+        Assertions.assertFalse(policy.setThreadCount(2));
+    }
+
+    @Test
+    public void testThreadPerTask() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        DispatchPolicy policy = DispatchPolicy.threadPerTask(r -> {
+            created.incrementAndGet();
+            return new Thread(r);
+        });
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            // all tasks run at the same time, each on its own thread
+            policy.getSignalExecutor(null).execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException _ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(10, created.get());
+
+        policy.shutdown();
+        Assertions.assertFalse(policy.awaitTermination(10, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(RejectedExecutionException.class, () -> policy.getCallbackExecutor(null).execute(() -> { }));
+        release.countDown();
+        Assertions.assertTrue(policy.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUserSuppliedExecutorNotShutdown() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DispatchPolicy policy = DispatchPolicy.executor(executor);
+            CountDownLatch done = new CountDownLatch(1);
+            policy.getCallbackExecutor(null).execute(done::countDown);
+            Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            policy.shutdown();
+            Assertions.assertTrue(policy.awaitTermination(1, TimeUnit.SECONDS));
+            Assertions.assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testChangePolicyFromCallerRunsHandler() throws Exception {
+        PolicySwitchImpl exported = new PolicySwitchImpl();
+        try (DirectConnectionPair connections = DirectConnectionPair.open(OBJECT_PATH, exported)) {
+            exported.connection = connections.getServer();
+            connections.getServer().setDispatchPolicy(DispatchPolicy.callerRuns());
+            DirectConnection client = connections.getClient();
+            PolicySwitch remote = client.getRemoteObject(OBJECT_PATH, PolicySwitch.class);
+
+            // the handler runs in the thread dispatching the call, changing the policy must not deadlock
+            CompletableFuture<String> switched = client.callMethodFuture(10, TimeUnit.SECONDS, remote, "switchToSharedPool");
+            Assertions.assertFalse(switched.get(10, TimeUnit.SECONDS).startsWith("DBus Worker Thread-"));
+
+            Assertions.assertTrue(remote.getThreadName().startsWith("DBus Worker Thread-"));
+        }
+    }
+}
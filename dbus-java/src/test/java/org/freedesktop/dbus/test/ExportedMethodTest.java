@@ -0,0 +1,171 @@
+package org.freedesktop.dbus.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.freedesktop.dbus.MethodTuple;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.ExportedMethod;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.messages.MethodReturn;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ExportedMethodTest {
+
+    public interface Calculator extends DBusInterface {
+        int add(int _a, int _b);
+
+        int sum(List<Integer> _values);
+
+        List<Integer> range(int _count);
+
+        void reset();
+
+        void fail(String _message);
+    }
+
+    /** Methods of a non-public interface can not be called with a public method handle. */
+    interface HiddenCalculator extends DBusInterface {
+        int add(int _a, int _b);
+    }
+
+    public static class CalculatorImpl implements Calculator {
+        private int resets;
+
+        @Override
+        public int add(int _a, int _b) {
+            return _a + _b;
+        }
+
+        @Override
+        public int sum(List<Integer> _values) {
+            int sum = 0;
+            for (int value : _values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        @Override
+        public List<Integer> range(int _count) {
+            List<Integer> result = new ArrayList<>();
+            for (int i = 0; i < _count; i++) {
+                result.add(i);
+            }
+            return result;
+        }
+
+        @Override
+        public void reset() {
+            resets++;
+        }
+
+        @Override
+        public void fail(String _message) {
+            throw new IllegalStateException(_message);
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return null;
+        }
+    }
+
+    public static class HiddenCalculatorImpl implements HiddenCalculator {
+        @Override
+        public int add(int _a, int _b) {
+            return _a + _b;
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return null;
+        }
+    }
+
+    private static MethodCall createCall(String _name, String _sig, Object... _args) throws Exception {
+        return new MethodCall("org.foo", "/org/foo", "org.foo.Calculator", _name, (byte) 0, _sig, _args);
+    }
+
+    @Test
+    public void testInvokeAndReply() throws Throwable {
+        CalculatorImpl target = new CalculatorImpl();
+        ExportedMethod method = new ExportedObject(target, false).getExportedMethod(new MethodTuple("add", "ii"));
+        Assertions.assertNotNull(method);
+        Assertions.assertEquals("add", method.getMethod().getName());
+
+        MethodCall call = createCall("add", "ii", 2, 3);
+        Object[] params = call.getParameters();
+        // parameters of plain types are passed without copying
+        Assertions.assertSame(params, method.deSerializeParameters(params, null));
+
+        Object result = method.invoke(target, params);
+        Assertions.assertEquals(Integer.valueOf(5), result);
+
+        MethodReturn reply = method.createReply(call, result, null);
+        Assertions.assertEquals("i", reply.getSig());
+        Assertions.assertArrayEquals(new Object[] {5}, reply.getParameters());
+    }
+
+    @Test
+    public void testConvertedParametersAndReturn() throws Throwable {
+        CalculatorImpl target = new CalculatorImpl();
+        ExportedObject exported = new ExportedObject(target, false);
+
+        ExportedMethod sum = exported.getExportedMethod(new MethodTuple("sum", "ai"));
+        MethodCall call = createCall("sum", "ai", new int[] {1, 2, 3});
+        Object[] params = sum.deSerializeParameters(call.getParameters(), null);
+        Assertions.assertEquals(Arrays.asList(1, 2, 3), params[0]);
+        Assertions.assertEquals(Integer.valueOf(6), sum.invoke(target, params));
+
+        ExportedMethod range = exported.getExportedMethod(new MethodTuple("range", "i"));
+        call = createCall("range", "i", 3);
+        MethodReturn reply = range.createReply(call, range.invoke(target, range.deSerializeParameters(call.getParameters(), null)), null);
+        Assertions.assertEquals("ai", reply.getSig());
+        Assertions.assertEquals(Arrays.asList(0, 1, 2), reply.getParameters()[0]);
+    }
+
+    @Test
+    public void testVoidMethod() throws Throwable {
+        CalculatorImpl target = new CalculatorImpl();
+        ExportedMethod reset = new ExportedObject(target, false).getExportedMethod(new MethodTuple("reset", ""));
+        MethodCall call = createCall("reset", "");
+
+        Object result = reset.invoke(target, reset.deSerializeParameters(call.getParameters(), null));
+        Assertions.assertNull(result);
+        Assertions.assertEquals(1, target.resets);
+
+        MethodReturn reply = reset.createReply(call, result, null);
+        Assertions.assertNull(reply.getSig());
+    }
+
+    @Test
+    public void testExceptionIsNotWrapped() throws Exception {
+        CalculatorImpl target = new CalculatorImpl();
+        ExportedMethod fail = new ExportedObject(target, false).getExportedMethod(new MethodTuple("fail", "s"));
+        IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class,
+                () -> fail.invoke(target, new Object[] {"broken"}));
+        Assertions.assertEquals("broken", ex.getMessage());
+    }
+
+    @Test
+    public void testNonPublicInterfaceUsesReflection() throws Exception {
+        HiddenCalculatorImpl target = new HiddenCalculatorImpl();
+        ExportedMethod add = new ExportedObject(target, false).getExportedMethod(new MethodTuple("add", "ii"));
+        // same access check as invoking the method using reflection from outside of its package
+        Assertions.assertThrows(IllegalAccessException.class, () -> add.invoke(target, new Object[] {2, 3}));
+    }
+}
@@ -0,0 +1,184 @@
+package org.freedesktop.dbus.test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.freedesktop.dbus.MethodTuple;
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.annotations.DBusProperty;
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal;
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal.EmitChangeSignal;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.interfaces.Properties;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.ExportedProperty;
+import org.freedesktop.dbus.messages.ObjectTree;
+import org.freedesktop.dbus.test.helper.DirectConnectionPair;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ExportedPropertiesTest {
+
+    @DBusInterfaceName("org.freedesktop.dbus.test.Device")
+    public interface Device extends DBusInterface {
+        @DBusProperty
+        UInt32 getVolume();
+
+        @DBusProperty
+        void setVolume(UInt32 _volume);
+
+        @DBusProperty("Label")
+        @PropertiesEmitsChangedSignal(EmitChangeSignal.CONST)
+        String name();
+
+        void reset();
+    }
+
+    public interface BrokenDevice extends DBusInterface {
+        @DBusProperty
+        String getName(String _arg);
+    }
+
+    public static class DeviceImpl implements Device {
+        private UInt32 volume = new UInt32(7);
+
+        @Override
+        public UInt32 getVolume() {
+            return volume;
+        }
+
+        @Override
+        public void setVolume(UInt32 _volume) {
+            volume = _volume;
+        }
+
+        @Override
+        public String name() {
+            return "dev";
+        }
+
+        @Override
+        public void reset() {
+            volume = new UInt32(0);
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return null;
+        }
+    }
+
+    public static class BrokenDeviceImpl implements BrokenDevice {
+        @Override
+        public String getName(String _arg) {
+            return _arg;
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testPropertiesDiscovered() throws Exception {
+        ExportedObject eo = new ExportedObject(new DeviceImpl(), false);
+
+        Map<String, ExportedProperty> properties = eo.getProperties("org.freedesktop.dbus.test.Device");
+        Assertions.assertEquals(2, properties.size());
+        ExportedProperty volume = properties.get("Volume");
+        Assertions.assertEquals("u", volume.getSignature());
+        Assertions.assertEquals("readwrite", volume.getAccess());
+        Assertions.assertEquals(EmitChangeSignal.TRUE, volume.getEmitsChangedSignal());
+        ExportedProperty label = properties.get("Label");
+        Assertions.assertEquals("read", label.getAccess());
+        Assertions.assertEquals(EmitChangeSignal.CONST, label.getEmitsChangedSignal());
+
+        // accessors are no methods, but the built-in Properties interface is available
+        Assertions.assertNull(eo.getExportedMethod(new MethodTuple("getVolume", "")));
+        Assertions.assertNotNull(eo.getExportedMethod(new MethodTuple("reset", "")));
+        Assertions.assertNotNull(eo.getPropertiesMethod(new MethodTuple("GetAll", "s")));
+        Assertions.assertTrue(eo.getInterfaceNames().contains("org.freedesktop.DBus.Properties"));
+        Assertions.assertEquals(1, Collections.frequency(eo.getInterfaceNames(), "org.freedesktop.DBus.Properties"));
+
+        String introspection = eo.getIntrospectiondata();
+        Assertions.assertTrue(introspection.contains("<property name=\"Volume\" type=\"u\" access=\"readwrite\"/>"));
+        int propertiesInterface = introspection.indexOf("<interface name=\"org.freedesktop.DBus.Properties\">");
+        Assertions.assertTrue(propertiesInterface >= 0);
+        Assertions.assertEquals(propertiesInterface, introspection.lastIndexOf("<interface name=\"org.freedesktop.DBus.Properties\">"));
+        Assertions.assertTrue(introspection.indexOf("<method name=\"GetAll\" >", propertiesInterface) > propertiesInterface);
+    }
+
+    @Test
+    public void testEmptyInterfaceName() throws Exception {
+        DeviceImpl device = new DeviceImpl();
+        try (DirectConnectionPair connections = DirectConnectionPair.open("/org/foo/Device", device)) {
+            Properties remote = connections.getClient().getRemoteObject("/org/foo/Device", Properties.class);
+
+            Assertions.assertEquals(new UInt32(7), remote.Get("", "Volume"));
+            Assertions.assertEquals("dev", remote.Get("", "Label"));
+
+            remote.Set("", "Volume", new UInt32(9));
+            Assertions.assertEquals(new UInt32(9), device.getVolume());
+            Assertions.assertEquals(new UInt32(9), remote.Get("org.freedesktop.dbus.test.Device", "Volume"));
+
+            Assertions.assertThrows(DBusExecutionException.class, () -> remote.Get("", "Missing"));
+            Assertions.assertThrows(DBusExecutionException.class, () -> remote.Set("", "Label", "other"));
+        }
+    }
+
+    @Test
+    public void testGetAndSetValue() throws Throwable {
+        DeviceImpl device = new DeviceImpl();
+        ExportedObject eo = new ExportedObject(device, false);
+        ExportedProperty volume = eo.getProperties("org.freedesktop.dbus.test.Device").get("Volume");
+
+        Variant<?> value = volume.getValue(device, null);
+        Assertions.assertEquals("u", value.getSig());
+        Assertions.assertEquals(new UInt32(7), value.getValue());
+
+        volume.setValue(device, new UInt32(9), null);
+        Assertions.assertEquals(new UInt32(9), device.getVolume());
+    }
+
+    @Test
+    public void testInvalidAccessor() {
+        Assertions.assertThrows(DBusException.class, () -> new ExportedObject(new BrokenDeviceImpl(), false));
+    }
+
+    @Test
+    public void testObjectsBelow() throws Exception {
+        ExportedObject eo = new ExportedObject(new DeviceImpl(), false);
+        ObjectTree tree = new ObjectTree();
+        tree.add("/org/foo", eo, "");
+        tree.add("/org/foo/a", eo, "");
+        tree.add("/org/foo/a/b", eo, "");
+        tree.add("/org/foo/c", eo, "");
+        tree.add("/org/foo/c/d", eo, "");
+        tree.add("/org/bar", eo, "");
+
+        Assertions.assertEquals(4, tree.getObjectsBelow("/org/foo", p -> false).size());
+        Map<String, ExportedObject> pruned = tree.getObjectsBelow("/org/foo", "/org/foo/c"::equals);
+        Assertions.assertEquals(3, pruned.size());
+        Assertions.assertTrue(pruned.containsKey("/org/foo/c"));
+        Assertions.assertFalse(pruned.containsKey("/org/foo/c/d"));
+        Assertions.assertEquals(6, tree.getObjectsBelow("/", p -> false).size());
+
+        tree.remove("/org/foo/a");
+        Assertions.assertFalse(tree.getObjectsBelow("/org/foo", p -> false).containsKey("/org/foo/a"));
+    }
+}
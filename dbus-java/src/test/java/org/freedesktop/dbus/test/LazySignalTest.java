@@ -0,0 +1,123 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.receive;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.DBusSignal;
+import org.freedesktop.dbus.messages.LazySignal;
+import org.freedesktop.dbus.types.UInt32;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LazySignalTest {
+    private static final String PATH = "/org/foo/Lazy";
+
+    public interface LazySignals extends DBusInterface {
+        class Changed extends DBusSignal {
+            /** Number of signals created, received signals are created when they are converted. */
+            static final AtomicInteger CREATED = new AtomicInteger();
+
+            private final String       name;
+            private final UInt32       number;
+            private final List<String> values;
+
+            public Changed(String _path, String _name, UInt32 _number, List<String> _values) throws DBusException {
+                super(_path, _name, _number, _values);
+                name = _name;
+                number = _number;
+                values = _values;
+                CREATED.incrementAndGet();
+            }
+        }
+    }
+
+    private DBusSignal sent;
+    private DBusSignal received;
+
+    @BeforeEach
+    public void before() throws Exception {
+        sent = new LazySignals.Changed(PATH, "foo", new UInt32(42), Arrays.asList("a", "b", "c"));
+        // the body is added by the connection when sending the signal
+        sent.appendbody(null);
+        received = (DBusSignal) receive(sent);
+        LazySignals.Changed.CREATED.set(0);
+    }
+
+    @Test
+    public void testDecodedOnFirstAccess() throws Exception {
+        assertTrue(LazySignal.needsConversion(received));
+        LazySignal lazy = new LazySignal(received, null);
+        assertSame(received, lazy.getSignal());
+        assertEquals(0, LazySignals.Changed.CREATED.get());
+
+        DBusSignal first = lazy.get();
+        assertTrue(first instanceof LazySignals.Changed);
+        assertEquals(1, LazySignals.Changed.CREATED.get());
+
+        assertSame(first, lazy.get());
+        assertEquals(1, LazySignals.Changed.CREATED.get());
+    }
+
+    @Test
+    public void testDecodedOnceForConcurrentHandlers() throws Exception {
+        LazySignal lazy = new LazySignal(received, null);
+        int handlers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(handlers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<DBusSignal>> results = new ArrayList<>();
+            for (int i = 0; i < handlers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return lazy.get();
+                }));
+            }
+            start.countDown();
+
+            DBusSignal first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<DBusSignal> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, LazySignals.Changed.CREATED.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMatchesEagerDecoding() throws Exception {
+        LazySignals.Changed eager = (LazySignals.Changed) ((DBusSignal) receive(sent)).createReal(null);
+        LazySignals.Changed lazy = (LazySignals.Changed) new LazySignal(received, null).get();
+
+        assertEquals(eager.name, lazy.name);
+        assertEquals(eager.number, lazy.number);
+        assertEquals(eager.values, lazy.values);
+        assertEquals(eager.getPath(), lazy.getPath());
+        assertEquals(eager.getInterface(), lazy.getInterface());
+        assertEquals(eager.getName(), lazy.getName());
+        assertEquals(Arrays.deepToString(eager.getParameters()), Arrays.deepToString(lazy.getParameters()));
+    }
+
+    @Test
+    public void testTypedSignalIsNotConverted() throws Exception {
+        LazySignals.Changed typed = new LazySignals.Changed(PATH, "foo", new UInt32(1), Arrays.asList("x"));
+        assertEquals(1, LazySignals.Changed.CREATED.get());
+
+        assertSame(typed, new LazySignal(typed, null).get());
+        assertEquals(1, LazySignals.Changed.CREATED.get());
+    }
+}
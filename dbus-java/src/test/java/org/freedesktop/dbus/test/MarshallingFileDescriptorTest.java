@@ -1,5 +1,6 @@
 package org.freedesktop.dbus.test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -8,6 +9,7 @@ import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 
@@ -25,6 +27,7 @@ public class MarshallingFileDescriptorTest {
 
     private static final String TEST_OBJECT_PATH = "/TestFileDescriptor";
     private static final String TEST_BUSNAME = "foo.bar.TestFileDescriptor";
+    private static final byte[] SAMPLE_CONTENT = new byte[] {'d', 'b', 'u', 's'};
     
     private DBusConnection serverConn;
     private DBusConnection clientConn;
@@ -39,7 +42,12 @@ public class MarshallingFileDescriptorTest {
         clientConn.setWeakReferences(true);
         serverConn.requestBusName(TEST_BUSNAME);
 
-        sampleFileStream = new FileInputStream(File.createTempFile("dbustest", "testFd"));
+        File sampleFile = File.createTempFile("dbustest", "testFd");
+        sampleFile.deleteOnExit();
+        try (FileOutputStream fos = new FileOutputStream(sampleFile)) {
+            fos.write(SAMPLE_CONTENT);
+        }
+        sampleFileStream = new FileInputStream(sampleFile);
         
         GetFileDescriptor fd = new GetFileDescriptor(sampleFileStream.getFD());
          
@@ -76,7 +84,13 @@ public class MarshallingFileDescriptorTest {
         assertTrue(fileDescriptor.valid(), "Descriptor has to be valid");
         int receivedFdId = getFileDescriptorIntId(fileDescriptor);
         System.out.println("Received file descriptor with ID: " + receivedFdId);
-        assertEquals(getFileDescriptorIntId(sampleFileStream.getFD()), receivedFdId);
+
+        // the descriptor was passed using SCM_RIGHTS, so it is a duplicate referring to the same file
+        try (FileInputStream received = new FileInputStream(fileDescriptor)) {
+            byte[] content = new byte[SAMPLE_CONTENT.length];
+            assertEquals(content.length, received.read(content));
+            assertArrayEquals(SAMPLE_CONTENT, content);
+        }
     }
     
     static int getFileDescriptorIntId(FileDescriptor _fd) {
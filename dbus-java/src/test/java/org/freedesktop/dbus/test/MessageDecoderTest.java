@@ -0,0 +1,120 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.receive;
+import static org.freedesktop.dbus.test.helper.TestMessages.toBytes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.exceptions.MessageTypeException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MessageDecoderTest {
+
+    @Test
+    public void testDecodeFragmented() throws Exception {
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "sai", "hello", new int[] {1, 2, 3});
+        byte[] wire = toBytes(call);
+
+        MessageDecoder decoder = new MessageDecoder();
+        Message decoded = null;
+        ByteBuffer buf = ByteBuffer.allocate(1);
+        for (int i = 0; i < wire.length; i++) {
+            Assertions.assertNull(decoded, "Message decoded before all bytes were received");
+            buf.clear();
+            buf.put(wire[i]);
+            buf.flip();
+            decoded = decoder.decode(buf);
+        }
+
+        Assertions.assertNotNull(decoded);
+        Assertions.assertTrue(decoded instanceof MethodCall);
+        Assertions.assertFalse(decoder.isPartial());
+        Assertions.assertEquals("baz", decoded.getName());
+        Assertions.assertEquals("hello", decoded.getParameters()[0]);
+    }
+
+    @Test
+    public void testDecodeMultipleMessagesInOneBuffer() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            byte[] wire = toBytes(new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "call" + i, (byte) 0, "u", i));
+            bos.write(wire, 0, wire.length);
+        }
+
+        MessageDecoder decoder = new MessageDecoder();
+        ByteBuffer buf = ByteBuffer.wrap(bos.toByteArray());
+        List<Message> messages = new ArrayList<>();
+        Message msg;
+        while ((msg = decoder.decode(buf)) != null) {
+            messages.add(msg);
+        }
+
+        Assertions.assertEquals(3, messages.size());
+        Assertions.assertEquals("call2", messages.get(2).getName());
+        Assertions.assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void testSetSourceKeepsBody() throws Exception {
+        byte[] payload = new byte[100000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "say", "hello", payload);
+        Message received = receive(call);
+        byte[] body = received.getWireData()[2];
+
+        received.setSource(":1.42");
+        Assertions.assertSame(body, received.getWireData()[2]);
+        Assertions.assertEquals(":1.42", received.getSource());
+
+        Message forwarded = receive(received);
+        Assertions.assertEquals(":1.42", forwarded.getSource());
+        Assertions.assertEquals("org.foo", forwarded.getDestination());
+        Assertions.assertEquals("/org/foo", forwarded.getPath());
+        Assertions.assertEquals("org.foo.Bar", forwarded.getInterface());
+        Assertions.assertEquals("baz", forwarded.getName());
+        Assertions.assertEquals("say", forwarded.getSig());
+        Assertions.assertEquals(call.getSerial(), forwarded.getSerial());
+        Assertions.assertEquals("hello", forwarded.getParameters()[0]);
+        Assertions.assertArrayEquals(payload, (byte[]) forwarded.getParameters()[1]);
+    }
+
+    @Test
+    public void testSetSourceReplacesSender() throws Exception {
+        MethodCall call = new MethodCall(":1.1", "org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "u", 7);
+        Message received = receive(call);
+        Assertions.assertEquals(":1.1", received.getSource());
+
+        received.setSource(":1.1234567");
+        received.setSource(":1.2");
+
+        Message forwarded = receive(received);
+        Assertions.assertEquals(":1.2", forwarded.getSource());
+        Assertions.assertEquals("org.foo", forwarded.getDestination());
+        Assertions.assertEquals("baz", forwarded.getName());
+        Assertions.assertEquals(7, ((Number) forwarded.getParameters()[0]).intValue());
+    }
+
+    @Test
+    public void testFailedMessageReportsFileDescriptors() throws Exception {
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "hah",
+                FileDescriptor.in, new FileDescriptor[] {FileDescriptor.out}, FileDescriptor.err);
+        byte[] wire = toBytes(call);
+        // unknown message type
+        wire[1] = 42;
+
+        MessageDecoder decoder = new MessageDecoder();
+        Assertions.assertThrows(MessageTypeException.class, () -> decoder.decode(ByteBuffer.wrap(wire)));
+        Assertions.assertEquals(3, decoder.getFailedUnixFdCount());
+        Assertions.assertFalse(decoder.isPartial());
+    }
+}
@@ -0,0 +1,252 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.receive;
+
+import java.io.FileDescriptor;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.ByteBufferPool;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MessageEncoder;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.UInt32;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MessageEncoderTest {
+
+    @Test
+    public void testRoundTripBigEndian() throws Exception {
+        testRoundTrip(Message.Endian.BIG);
+    }
+
+    @Test
+    public void testRoundTripLittleEndian() throws Exception {
+        testRoundTrip(Message.Endian.LITTLE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void testRoundTrip(byte _endian) throws Exception {
+        byte oldEndian = AbstractConnection.getEndianness();
+        AbstractConnection.setEndianness(_endian);
+        try {
+            Map<String, Variant<?>> dict = new HashMap<>();
+            dict.put("Name", new Variant<>("Grüße"));
+            dict.put("Count", new Variant<>(new UInt32(7)));
+            byte[] large = new byte[MessageEncoder.LARGE_ARRAY_SIZE * 2 + 3];
+            for (int i = 0; i < large.length; i++) {
+                large[i] = (byte) (i * 31);
+            }
+            int[] ints = new int[] {1, -2, Integer.MAX_VALUE};
+
+            MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "a{sv}ayaixs",
+                    dict, large, ints, Long.MIN_VALUE, "€");
+            byte[][] wireData = call.getWireData();
+            Assertions.assertSame(large, wireData[1]);
+
+            Message decoded = receive(call);
+            Assertions.assertNotNull(decoded);
+            Assertions.assertEquals(call.getSerial(), decoded.getSerial());
+            Assertions.assertEquals("a{sv}ayaixs", decoded.getSig());
+
+            Object[] params = decoded.getParameters();
+            Map<String, Variant<?>> decodedDict = (Map<String, Variant<?>>) params[0];
+            Assertions.assertEquals("Grüße", decodedDict.get("Name").getValue());
+            Assertions.assertEquals(new UInt32(7), decodedDict.get("Count").getValue());
+            Assertions.assertArrayEquals(large, (byte[]) params[1]);
+            Assertions.assertArrayEquals(ints, toIntArray(params[2]));
+            Assertions.assertEquals(Long.MIN_VALUE, params[3]);
+            Assertions.assertEquals("€", params[4]);
+        } finally {
+            AbstractConnection.setEndianness(oldEndian);
+        }
+    }
+
+    @Test
+    public void testPrimitiveArrays() throws Exception {
+        byte oldEndian = AbstractConnection.getEndianness();
+        try {
+            for (byte endian : new byte[] {Message.Endian.BIG, Message.Endian.LITTLE}) {
+                AbstractConnection.setEndianness(endian);
+                for (int length : new int[] {3, MessageEncoder.LARGE_ARRAY_SIZE + 1}) {
+                    short[] shorts = new short[length];
+                    int[] ints = new int[length];
+                    long[] longs = new long[length];
+                    double[] doubles = new double[length];
+                    float[] floats = new float[length];
+                    boolean[] booleans = new boolean[length];
+                    for (int i = 0; i < length; i++) {
+                        shorts[i] = (short) (i * 7919);
+                        ints[i] = i * 0x01020304;
+                        longs[i] = i * 0x0102030405060708L;
+                        doubles[i] = i / 3d;
+                        floats[i] = i / 7f;
+                        booleans[i] = i % 3 == 0;
+                    }
+
+                    MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "yanaiyaxadafabad",
+                            (byte) 1, shorts, ints, (byte) 2, longs, doubles, floats, booleans, floats);
+                    Object[] params = receive(call).getParameters();
+
+                    Assertions.assertArrayEquals(shorts, (short[]) params[1]);
+                    Assertions.assertArrayEquals(ints, (int[]) params[2]);
+                    Assertions.assertArrayEquals(longs, (long[]) params[4]);
+                    Assertions.assertArrayEquals(doubles, (double[]) params[5]);
+                    Assertions.assertArrayEquals(floats, (float[]) params[6]);
+                    Assertions.assertArrayEquals(booleans, (boolean[]) params[7]);
+                    double[] widened = (double[]) params[8];
+                    for (int i = 0; i < length; i++) {
+                        Assertions.assertEquals(floats[i], widened[i]);
+                    }
+                }
+            }
+        } finally {
+            AbstractConnection.setEndianness(oldEndian);
+        }
+    }
+
+    @Test
+    public void testBulkWritesMatchSingleWrites() {
+        for (boolean big : new boolean[] {true, false}) {
+            int[] ints = new int[] {1, -2, 0x01020304};
+            long[] longs = new long[] {1, -2, 0x0102030405060708L};
+
+            MessageEncoder bulk = new MessageEncoder(big);
+            bulk.putInts(ints);
+            bulk.putLongs(longs);
+
+            MessageEncoder single = new MessageEncoder(big);
+            for (int i : ints) {
+                single.putInt(i, 4);
+            }
+            for (long l : longs) {
+                single.putInt(l, 8);
+            }
+
+            Assertions.assertArrayEquals(single.toWireData()[0], bulk.toWireData()[0]);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRoundTripNestedContainers() throws Exception {
+        Map<String, List<Object[]>> dict = new HashMap<>();
+        dict.put("pairs", Arrays.asList(new Object[] {1, 2}, new Object[] {3, 4}));
+        List<int[]> nested = Arrays.asList(new int[] {5, 6}, new int[] {});
+
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "a{sa(ii)}aaiv",
+                dict, nested, new Variant<>(new int[] {7, 8}, "ai"));
+        Message decoded = receive(call);
+        Object[] params = decoded.getParameters();
+
+        List<Object[]> pairs = ((Map<String, List<Object[]>>) params[0]).get("pairs");
+        Assertions.assertEquals(2, pairs.size());
+        Assertions.assertArrayEquals(new Object[] {3, 4}, pairs.get(1));
+        // nested arrays are returned as lists, top level arrays and arrays in variants as primitive arrays
+        Assertions.assertEquals(Arrays.asList(Arrays.asList(5, 6), Arrays.asList()), params[1]);
+        Variant<?> variant = (Variant<?>) params[2];
+        Assertions.assertEquals("ai", variant.getSig());
+        Assertions.assertArrayEquals(new int[] {7, 8}, (int[]) variant.getValue());
+
+        byte[] body = decoded.getWireData()[2];
+        Assertions.assertThrows(DBusException.class, () -> decoded.extract("a{sa(ii)", body, 0));
+        Assertions.assertThrows(DBusException.class, () -> decoded.extract("a{sa(ii)}z", body, 0));
+    }
+
+    @Test
+    public void testFileDescriptorIndices() throws Exception {
+        FileDescriptor first = FileDescriptor.in;
+        FileDescriptor second = FileDescriptor.out;
+
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "hahv",
+                first, new FileDescriptor[] {second, first}, new Variant<>(second));
+        Assertions.assertEquals(4, call.getUnixFdCount());
+        Assertions.assertEquals(Arrays.asList(first, second, first, second), call.getFileDescriptors());
+
+        // indices must never be used as local descriptor numbers
+        Message withoutFds = receive(call);
+        Assertions.assertThrows(DBusException.class, withoutFds::getParameters);
+
+        Message decoded = receive(call);
+        Assertions.assertEquals(4, decoded.getUnixFdCount());
+
+        // descriptors received by the transport are attached before the body is decoded
+        FileDescriptor[] received = new FileDescriptor[] {
+                new FileDescriptor(), new FileDescriptor(), new FileDescriptor(), new FileDescriptor()};
+        decoded.setFileDescriptors(Arrays.asList(received));
+        Object[] params = decoded.getParameters();
+        Assertions.assertSame(received[0], params[0]);
+        Assertions.assertSame(received[2], ((List<?>) params[1]).get(1));
+        Assertions.assertSame(received[3], ((Variant<?>) params[2]).getValue());
+
+        MethodCall noFds = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, "s", "foo");
+        Assertions.assertEquals(0, noFds.getUnixFdCount());
+        Assertions.assertTrue(noFds.getFileDescriptors().isEmpty());
+    }
+
+    @Test
+    public void testPatchAfterLargeArray() {
+        MessageEncoder encoder = new MessageEncoder(true);
+        encoder.putInt(0, 4);
+        byte[] large = new byte[MessageEncoder.LARGE_ARRAY_SIZE];
+        encoder.putBytes(large);
+        encoder.putInt(0, 4);
+        encoder.putInt(0, 0x01020304, 4);
+        encoder.putInt(4 + large.length, 0x05060708, 4);
+
+        byte[][] wireData = encoder.toWireData();
+        Assertions.assertEquals(3, wireData.length);
+        Assertions.assertArrayEquals(new byte[] {1, 2, 3, 4}, wireData[0]);
+        Assertions.assertSame(large, wireData[1]);
+        Assertions.assertArrayEquals(new byte[] {5, 6, 7, 8}, wireData[2]);
+        Assertions.assertEquals(8 + large.length, encoder.position());
+    }
+
+    @Test
+    public void testPadding() {
+        MessageEncoder encoder = new MessageEncoder(false);
+        encoder.putByte((byte) 1);
+        encoder.pad(8);
+        encoder.putInt(0x0102, 2);
+        encoder.pad(4);
+        encoder.putSignature("as");
+
+        byte[][] wireData = encoder.toWireData();
+        Assertions.assertEquals(1, wireData.length);
+        Assertions.assertArrayEquals(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 2, 1, 0, 0, 2, 'a', 's', 0}, wireData[0]);
+    }
+
+    @Test
+    public void testPoolReusesBuffers() {
+        ByteBufferPool pool = ByteBufferPool.getInstance();
+        ByteBuffer buffer = pool.acquire(1000);
+        Assertions.assertEquals(1024, buffer.capacity());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(600);
+        Assertions.assertEquals(1024, reused.capacity());
+        Assertions.assertEquals(0, reused.position());
+
+        Assertions.assertEquals(ByteBufferPool.MAX_SIZE + 1, pool.acquire(ByteBufferPool.MAX_SIZE + 1).capacity());
+    }
+
+    private static int[] toIntArray(Object _obj) {
+        if (_obj instanceof int[]) {
+            return (int[]) _obj;
+        }
+        List<?> list = (List<?>) _obj;
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((Number) list.get(i)).intValue();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.createCall;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.messages.MethodReturn;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MethodCallTest {
+
+    @Test
+    public void testGetReplyTimeout() throws Exception {
+        MethodCall call = createCall();
+        Assertions.assertNull(call.getReply(10));
+        Assertions.assertFalse(call.hasReply());
+    }
+
+    @Test
+    public void testGetReplyWaitsForReply() throws Exception {
+        MethodCall call = createCall();
+        MethodReturn reply = new MethodReturn(call, null);
+
+        Message[] received = new Message[1];
+        CountDownLatch waiting = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            waiting.countDown();
+            received[0] = call.getReply(TimeUnit.SECONDS.toMillis(10));
+        });
+        waiter.start();
+        Assertions.assertTrue(waiting.await(10, TimeUnit.SECONDS));
+
+        call.setReply(reply);
+        waiter.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertFalse(waiter.isAlive());
+        Assertions.assertSame(reply, received[0]);
+        Assertions.assertTrue(call.hasReply());
+        Assertions.assertSame(reply, call.getReply(10));
+    }
+}
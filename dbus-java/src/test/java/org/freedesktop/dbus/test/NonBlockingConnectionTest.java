@@ -0,0 +1,83 @@
+package org.freedesktop.dbus.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.freedesktop.dbus.connections.DispatchPolicy;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.test.helper.DirectConnectionPair;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests peer to peer connections using non-blocking transports.
+ */
+public class NonBlockingConnectionTest {
+    private static final String OBJECT_PATH = "/org/foo/Threads";
+
+    public interface ThreadInfo extends DBusInterface {
+        String getThreadName();
+
+        Integer increment(Integer _value);
+    }
+
+    public static class ThreadInfoImpl implements ThreadInfo {
+
+        @Override
+        public String getThreadName() {
+            return Thread.currentThread().getName();
+        }
+
+        @Override
+        public Integer increment(Integer _value) {
+            return _value + 1;
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return OBJECT_PATH;
+        }
+    }
+
+    @Test
+    public void testMethodCalls() throws Exception {
+        try (DirectConnectionPair connections = DirectConnectionPair.open(OBJECT_PATH, new ThreadInfoImpl(), true)) {
+            ThreadInfo remote = connections.getClient().getRemoteObject(OBJECT_PATH, ThreadInfo.class);
+            for (int i = 0; i < 200; i++) {
+                assertEquals(Integer.valueOf(i + 1), remote.increment(i));
+            }
+        }
+    }
+
+    @Test
+    public void testMessagesAreNotHandledOnSelectorThread() throws Exception {
+        try (DirectConnectionPair connections = DirectConnectionPair.open(OBJECT_PATH, new ThreadInfoImpl(), true)) {
+            // run the method in the thread handling the incoming message
+            connections.getServer().setDispatchPolicy(DispatchPolicy.callerRuns());
+            ThreadInfo remote = connections.getClient().getRemoteObject(OBJECT_PATH, ThreadInfo.class);
+
+            String threadName = remote.getThreadName();
+            assertFalse(threadName.startsWith("DBus Selector Thread-"), "Method was called on " + threadName);
+        }
+    }
+
+    @Test
+    public void testNonBlockingModeIsPerConnection() throws Exception {
+        try (DirectConnectionPair nonBlocking = DirectConnectionPair.open(OBJECT_PATH, new ThreadInfoImpl(), true);
+                DirectConnectionPair blocking = DirectConnectionPair.open(OBJECT_PATH, new ThreadInfoImpl(), false)) {
+            nonBlocking.getServer().setDispatchPolicy(DispatchPolicy.callerRuns());
+            blocking.getServer().setDispatchPolicy(DispatchPolicy.callerRuns());
+
+            String nonBlockingThread = nonBlocking.getClient().getRemoteObject(OBJECT_PATH, ThreadInfo.class).getThreadName();
+            String blockingThread = blocking.getClient().getRemoteObject(OBJECT_PATH, ThreadInfo.class).getThreadName();
+
+            assertTrue(nonBlockingThread.startsWith("DBus Incoming Message Thread-"), "Method was called on " + nonBlockingThread);
+            assertEquals("DBusConnection", blockingThread);
+        }
+    }
+}
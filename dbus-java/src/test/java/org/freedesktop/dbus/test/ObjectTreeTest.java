@@ -0,0 +1,134 @@
+package org.freedesktop.dbus.test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.ObjectTree;
+import org.freedesktop.dbus.test.helper.P2pTestServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ObjectTreeTest {
+
+    private static ExportedObject createObject() throws Exception {
+        return new ExportedObject(new P2pTestServer(), false);
+    }
+
+    @Test
+    public void testGetObject() throws Exception {
+        ObjectTree tree = new ObjectTree();
+        ExportedObject foo = createObject();
+        ExportedObject bar = createObject();
+        tree.add("/org/foo", foo, "");
+        tree.add("/org/foo/bar", bar, "");
+
+        Assertions.assertSame(foo, tree.getObject("/org/foo"));
+        Assertions.assertSame(bar, tree.getObject("/org/foo/bar"));
+        Assertions.assertNull(tree.getObject("/org"));
+        Assertions.assertNull(tree.getObject("/org/fo"));
+        Assertions.assertNull(tree.getObject("/org/foo/bar/baz"));
+
+        tree.remove("/org/foo");
+        Assertions.assertNull(tree.getObject("/org/foo"));
+        Assertions.assertSame(bar, tree.getObject("/org/foo/bar"));
+        // removing unknown paths is ignored
+        tree.remove("/unknown/path");
+    }
+
+    @Test
+    public void testLongestFallbackWins() throws Exception {
+        ObjectTree tree = new ObjectTree();
+        ExportedObject outer = createObject();
+        ExportedObject inner = createObject();
+        tree.addFallback("/org/foo", outer);
+        tree.addFallback("/org/foo/bar", inner);
+
+        Assertions.assertSame(outer, tree.getFallback("/org/foo"));
+        Assertions.assertSame(outer, tree.getFallback("/org/foo/baz/1"));
+        Assertions.assertSame(inner, tree.getFallback("/org/foo/bar"));
+        Assertions.assertSame(inner, tree.getFallback("/org/foo/bar/1/2"));
+        Assertions.assertNull(tree.getFallback("/org/foobar"));
+        Assertions.assertNull(tree.getFallback("/org"));
+
+        tree.removeFallback("/org/foo/bar");
+        Assertions.assertSame(outer, tree.getFallback("/org/foo/bar/1/2"));
+        tree.removeFallback("/org/foo");
+        Assertions.assertNull(tree.getFallback("/org/foo/bar/1/2"));
+    }
+
+    @Test
+    public void testFallbacksDoNotAffectObjects() throws Exception {
+        ObjectTree tree = new ObjectTree();
+        ExportedObject object = createObject();
+        tree.addFallback("/org/foo", createObject());
+        tree.add("/org/foo/bar", object, "<data/>");
+
+        Assertions.assertNull(tree.getObject("/org/foo"));
+        Assertions.assertSame(object, tree.getObject("/org/foo/bar"));
+        Assertions.assertEquals("<node name=\"/org/foo\">\n<node name=\"bar\"/>\n</node>", tree.Introspect("/org/foo"));
+    }
+
+    @Test
+    public void testRemovePrunesUnusedNodes() throws Exception {
+        ObjectTree tree = new ObjectTree();
+        ExportedObject object = createObject();
+        tree.add("/org/foo", object, "");
+        tree.add("/org/foo/bar/baz", object, "");
+
+        tree.remove("/org/foo/bar/baz");
+        Assertions.assertEquals("/{org/{foo*}}", tree.toString());
+        Assertions.assertSame(object, tree.getObject("/org/foo"));
+
+        tree.addFallback("/org/foo/fallback", object);
+        tree.remove("/org/foo");
+        Assertions.assertEquals("/{org/{foo/{fallback}}}", tree.toString());
+        tree.removeFallback("/org/foo/fallback");
+        Assertions.assertEquals("", tree.toString());
+        Assertions.assertNull(tree.getObject("/org/foo"));
+
+        tree.add("/org/foo", object, "");
+        Assertions.assertSame(object, tree.getObject("/org/foo"));
+    }
+
+    @Test
+    public void testManyChildren() throws Exception {
+        ObjectTree tree = new ObjectTree();
+        ExportedObject object = createObject();
+        for (int i = 0; i < 10000; i++) {
+            tree.add("/org/foo/item" + i, object, "");
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assertions.assertSame(object, tree.getObject("/org/foo/item" + i));
+        }
+        Assertions.assertNull(tree.getObject("/org/foo/item10000"));
+        Assertions.assertEquals(10000, tree.getObjectsBelow("/org/foo", p -> false).size());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        ObjectTree tree = new ObjectTree();
+        ExportedObject object = createObject();
+        tree.add("/org/foo/fixed", object, "");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100000; i++) {
+                    if (object != tree.getObject("/org/foo/fixed")) {
+                        throw new IllegalStateException("Existing object not found");
+                    }
+                }
+            } catch (Throwable _ex) {
+                failure.set(_ex);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 5000; i++) {
+            tree.add("/org/foo/item" + i, object, "");
+        }
+        for (int i = 0; i < 5000; i++) {
+            tree.remove("/org/foo/item" + i);
+        }
+        reader.join();
+        Assertions.assertNull(failure.get());
+    }
+}
@@ -0,0 +1,68 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.createCall;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.connections.PendingCall;
+import org.freedesktop.dbus.connections.PendingCallRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PendingCallRegistryTest {
+
+    @Test
+    public void testAddRemove() throws Exception {
+        PendingCallRegistry registry = new PendingCallRegistry(pc -> Assertions.fail("Unexpected timeout"));
+        PendingCall pc = new PendingCall(createCall(), null, null, 0);
+        registry.add(pc);
+
+        Assertions.assertEquals(1, registry.size());
+        Assertions.assertSame(pc, registry.get(pc.getSerial()));
+        Assertions.assertNull(registry.get(pc.getSerial() + 1));
+        Assertions.assertSame(pc, registry.remove(pc.getSerial()));
+        Assertions.assertNull(registry.remove(pc.getSerial()));
+        Assertions.assertFalse(registry.remove(pc));
+        Assertions.assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void testSlotCollision() throws Exception {
+        PendingCallRegistry registry = new PendingCallRegistry(pc -> Assertions.fail("Unexpected timeout"));
+        List<PendingCall> calls = new ArrayList<>();
+        // more calls than slots, so some calls have to share the same slot
+        for (int i = 0; i < PendingCallRegistry.SLOTS + 10; i++) {
+            PendingCall pc = new PendingCall(createCall(), null, null, 0);
+            calls.add(pc);
+            registry.add(pc);
+        }
+        Assertions.assertEquals(calls.size(), registry.size());
+
+        for (int i = calls.size() - 1; i >= 0; i--) {
+            PendingCall pc = calls.get(i);
+            Assertions.assertSame(pc, registry.get(pc.getSerial()));
+            Assertions.assertSame(pc, registry.remove(pc.getSerial()));
+        }
+        Assertions.assertTrue(registry.isEmpty());
+        Assertions.assertTrue(registry.removeAll().isEmpty());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        PendingCallRegistry registry = new PendingCallRegistry(pc -> latch.countDown());
+
+        PendingCall answered = new PendingCall(createCall(), null, null, 50);
+        PendingCall expiring = new PendingCall(createCall(), null, null, 50);
+        registry.add(answered);
+        registry.add(expiring);
+        registry.remove(answered.getSerial());
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS), "Call did not expire");
+        Assertions.assertNull(registry.get(expiring.getSerial()));
+        Assertions.assertTrue(registry.isEmpty());
+    }
+}
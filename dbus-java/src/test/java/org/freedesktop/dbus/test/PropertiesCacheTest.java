@@ -0,0 +1,172 @@
+package org.freedesktop.dbus.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.annotations.PropertiesEmitsChangedSignal.EmitChangeSignal;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.handlers.PropertiesCache;
+import org.freedesktop.dbus.interfaces.Properties;
+import org.freedesktop.dbus.interfaces.Properties.PropertiesChanged;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PropertiesCacheTest {
+    private static final String IFACE = "org.foo.Bar";
+
+    /** Local properties object counting remote calls. */
+    private static class CountingProperties implements Properties {
+        private final Map<String, Variant<?>> values = new HashMap<>();
+        private int                           getCalls;
+        private int                           getAllCalls;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <A> A Get(String _interfaceName, String _propertyName) {
+            getCalls++;
+            return (A) values.get(_propertyName).getValue();
+        }
+
+        @Override
+        public <A> void Set(String _interfaceName, String _propertyName, A _value) {
+            values.put(_propertyName, new Variant<>(_value));
+        }
+
+        @Override
+        public Map<String, Variant<?>> GetAll(String _interfaceName) {
+            getAllCalls++;
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public boolean isRemote() {
+            return true;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return "/org/foo";
+        }
+    }
+
+    /** Cache receiving the signals passed to handle() only. */
+    private static class UnsubscribedCache extends PropertiesCache {
+        UnsubscribedCache(Properties _remote) {
+            super(_remote);
+        }
+    }
+
+    @Test
+    public void testGetServedFromCache() throws Exception {
+        CountingProperties remote = new CountingProperties();
+        remote.values.put("Name", new Variant<>("foo"));
+        remote.values.put("Count", new Variant<>(1));
+        PropertiesCache cache = new UnsubscribedCache(remote);
+
+        Assertions.assertEquals("foo", cache.Get(IFACE, "Name"));
+        Assertions.assertEquals(1, (int) cache.Get(IFACE, "Count"));
+        Assertions.assertEquals(2, cache.GetAll(IFACE).size());
+        Assertions.assertEquals(1, remote.getAllCalls);
+        Assertions.assertEquals(0, remote.getCalls);
+    }
+
+    @Test
+    public void testSignalUpdatesAndInvalidates() throws Exception {
+        CountingProperties remote = new CountingProperties();
+        remote.values.put("Name", new Variant<>("foo"));
+        remote.values.put("Count", new Variant<>(1));
+        PropertiesCache cache = new UnsubscribedCache(remote);
+        cache.Get(IFACE, "Name");
+
+        // changed value is taken from the signal
+        cache.handle(new PropertiesChanged("/org/foo", IFACE, Collections.singletonMap("Name", new Variant<>("bar")),
+                Collections.emptyList()));
+        Assertions.assertEquals("bar", cache.Get(IFACE, "Name"));
+        Assertions.assertEquals(1, remote.getAllCalls);
+
+        // invalidated value is fetched again
+        remote.values.put("Count", new Variant<>(2));
+        cache.handle(new PropertiesChanged("/org/foo", IFACE, Collections.emptyMap(), Arrays.asList("Count")));
+        Assertions.assertEquals(2, (int) cache.Get(IFACE, "Count"));
+        Assertions.assertEquals(2, remote.getAllCalls);
+    }
+
+    @Test
+    public void testEmitsChangedSignalFalse() throws Exception {
+        CountingProperties remote = new CountingProperties();
+        remote.values.put("Name", new Variant<>("foo"));
+        remote.values.put("Volatile", new Variant<>(1));
+        PropertiesCache cache = new UnsubscribedCache(remote);
+        cache.setEmitsChangedSignal(IFACE, "Volatile", EmitChangeSignal.FALSE);
+
+        Assertions.assertEquals(1, (int) cache.Get(IFACE, "Volatile"));
+        remote.values.put("Volatile", new Variant<>(2));
+        Assertions.assertEquals(2, (int) cache.Get(IFACE, "Volatile"));
+        Assertions.assertEquals(2, remote.getCalls);
+
+        Assertions.assertEquals("foo", cache.Get(IFACE, "Name"));
+        // GetAll has to ask the remote object for the uncached property
+        Assertions.assertEquals(2, cache.GetAll(IFACE).get("Volatile").getValue());
+        Assertions.assertEquals(2, remote.getAllCalls);
+    }
+
+    @Test
+    public void testSetInvalidates() throws Exception {
+        CountingProperties remote = new CountingProperties();
+        remote.values.put("Name", new Variant<>("foo"));
+        PropertiesCache cache = new UnsubscribedCache(remote);
+        Assertions.assertEquals("foo", cache.Get(IFACE, "Name"));
+
+        cache.Set(IFACE, "Name", "bar");
+        Assertions.assertEquals("bar", cache.Get(IFACE, "Name"));
+        Assertions.assertEquals(2, remote.getAllCalls);
+    }
+
+    @Test
+    public void testSubscribesToSignals() throws Exception {
+        String address = DirectConnection.createDynamicTCPSession();
+        CountingProperties exported = new CountingProperties();
+        exported.values.put("Name", new Variant<>("foo"));
+        CountDownLatch listening = new CountDownLatch(1);
+        DirectConnection[] server = new DirectConnection[1];
+        Thread serverThread = new Thread(() -> {
+            try {
+                server[0] = new DirectConnection(address + ",listen=true");
+                server[0].exportObject("/org/foo", exported);
+                listening.countDown();
+                server[0].listen();
+            } catch (DBusException _ex) {
+                _ex.printStackTrace();
+            }
+        });
+        serverThread.start();
+        Thread.sleep(500L);
+
+        try (DirectConnection client = new DirectConnection(address)) {
+            // server connection is created when the client connected
+            Assertions.assertTrue(listening.await(10, TimeUnit.SECONDS));
+            PropertiesCache cache = new PropertiesCache(client, client.getRemoteObject("/org/foo", Properties.class));
+            Assertions.assertEquals("foo", cache.Get(IFACE, "Name"));
+
+            server[0].sendMessage(new PropertiesChanged("/org/foo", IFACE, Collections.singletonMap("Name", new Variant<>("bar")),
+                    Collections.emptyList()));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!"bar".equals(cache.Get(IFACE, "Name")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals("bar", cache.Get(IFACE, "Name"));
+            Assertions.assertEquals(1, exported.getAllCalls);
+
+            cache.close();
+        } finally {
+            serverThread.join(10000);
+            server[0].disconnect();
+        }
+    }
+}
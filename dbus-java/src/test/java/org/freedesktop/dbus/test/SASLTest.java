@@ -0,0 +1,62 @@
+package org.freedesktop.dbus.test;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.freedesktop.dbus.connections.SASL;
+import org.freedesktop.dbus.connections.transports.TransportFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SASLTest {
+
+    @Test
+    public void testNegotiateUnixFd() throws Exception {
+        SASL[] result = authenticate(true, true);
+        Assertions.assertTrue(result[0].isFileDescriptorSupported());
+        Assertions.assertTrue(result[1].isFileDescriptorSupported());
+    }
+
+    @Test
+    public void testUnixFdRejectedByServer() throws Exception {
+        SASL[] result = authenticate(true, false);
+        Assertions.assertFalse(result[0].isFileDescriptorSupported());
+        Assertions.assertFalse(result[1].isFileDescriptorSupported());
+    }
+
+    @Test
+    public void testUnixFdNotRequestedByClient() throws Exception {
+        SASL[] result = authenticate(false, true);
+        Assertions.assertFalse(result[0].isFileDescriptorSupported());
+        Assertions.assertFalse(result[1].isFileDescriptorSupported());
+    }
+
+    /**
+     * Authenticates a client against a server using EXTERNAL auth over pipes.
+     * @return client and server SASL objects after successful authentication
+     */
+    private static SASL[] authenticate(boolean _clientFd, boolean _serverFd) throws Exception {
+        PipedOutputStream clientOut = new PipedOutputStream();
+        PipedInputStream serverIn = new PipedInputStream(clientOut);
+        PipedOutputStream serverOut = new PipedOutputStream();
+        PipedInputStream clientIn = new PipedInputStream(serverOut);
+
+        SASL client = new SASL();
+        SASL server = new SASL();
+        String guid = TransportFactory.genGUID();
+
+        CompletableFuture<Boolean> serverResult = CompletableFuture.supplyAsync(() -> {
+            try {
+                return server.auth(SASL.SaslMode.SERVER, SASL.AUTH_EXTERNAL, guid, serverOut, serverIn, null, _serverFd);
+            } catch (IOException _ex) {
+                throw new RuntimeException(_ex);
+            }
+        });
+        Assertions.assertTrue(client.auth(SASL.SaslMode.CLIENT, SASL.AUTH_EXTERNAL, guid, clientOut, clientIn, null, _clientFd));
+        Assertions.assertTrue(serverResult.get(10, TimeUnit.SECONDS));
+        return new SASL[] {client, server};
+    }
+}
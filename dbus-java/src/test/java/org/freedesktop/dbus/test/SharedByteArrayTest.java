@@ -0,0 +1,115 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.receive;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.exceptions.MarshallingException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.types.SharedByteArray;
+import org.freedesktop.dbus.types.UInt64;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SharedByteArrayTest {
+    private static final Type[] TYPES = new Type[] {SharedByteArray.class};
+
+    private static byte[] createData(int _length) {
+        byte[] data = new byte[_length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 13);
+        }
+        return data;
+    }
+
+    private static Message sendAndReceive(SharedByteArray _value) throws Exception {
+        String sig = Marshalling.getDBusType(TYPES);
+        Object[] args = Marshalling.convertParameters(new Object[] {_value}, TYPES, null);
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, sig, args);
+
+        Message decoded = receive(call);
+        Assertions.assertEquals(call.getUnixFdCount(), decoded.getUnixFdCount());
+        Assertions.assertEquals(call.getFileDescriptors().size(), decoded.getUnixFdCount());
+        return decoded;
+    }
+
+    @Test
+    public void testInline() throws Exception {
+        byte[] data = createData(1000);
+        Message decoded = sendAndReceive(SharedByteArray.inline(data));
+        Assertions.assertEquals(0, decoded.getUnixFdCount());
+
+        Object[] params = Marshalling.deSerializeParameters(decoded.getParameters(), TYPES, null);
+        SharedByteArray received = (SharedByteArray) params[0];
+        Assertions.assertFalse(received.isShared());
+        Assertions.assertEquals(data.length, received.getLength());
+        Assertions.assertArrayEquals(data, received.getBytes());
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        byte[] data = createData(100000);
+        try (SharedByteArray shared = SharedByteArray.share(data)) {
+            Assertions.assertTrue(shared.isShared());
+            Assertions.assertArrayEquals(data, shared.getBytes());
+
+            Message decoded = sendAndReceive(shared);
+            Assertions.assertEquals(1, decoded.getUnixFdCount());
+
+            // the transport would pass a duplicate of the descriptor, simulate it by a file with the same content
+            File file = File.createTempFile("dbus-java-test", ".shm");
+            file.deleteOnExit();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(data);
+            }
+            try (FileInputStream in = new FileInputStream(file)) {
+                decoded.setFileDescriptors(Collections.singletonList(in.getFD()));
+
+                Object[] params = Marshalling.deSerializeParameters(decoded.getParameters(), TYPES, null);
+                SharedByteArray received = (SharedByteArray) params[0];
+                Assertions.assertTrue(received.isShared());
+                Assertions.assertEquals(data.length, received.getLength());
+                Assertions.assertEquals(data.length, received.getBuffer().remaining());
+                Assertions.assertArrayEquals(data, received.getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testSharedRegionIsReadOnly() throws Exception {
+        try (SharedByteArray shared = SharedByteArray.share(createData(100))) {
+            Object[] region = (Object[]) ((Variant<?>) shared.serialize()[0]).getValue();
+            FileOutputStream out = new FileOutputStream((FileDescriptor) region[0]);
+            Assertions.assertThrows(IOException.class, () -> out.write(1));
+            Assertions.assertArrayEquals(createData(100), shared.getBytes());
+        }
+    }
+
+    @Test
+    public void testInvalidRegion() throws Exception {
+        File file = File.createTempFile("dbus-java-test", ".shm");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(createData(100));
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            UInt64 max = new UInt64(UInt64.MAX_BIG_VALUE);
+            UInt64[][] invalid = new UInt64[][] {
+                {new UInt64(0), new UInt64(101)}, {new UInt64(50), new UInt64(51)}, {new UInt64(101), new UInt64(0)},
+                {new UInt64(0), new UInt64(Integer.MAX_VALUE + 1L)}, {max, new UInt64(10)}, {new UInt64(10), max}};
+            for (UInt64[] range : invalid) {
+                Variant<?> payload = new Variant<>(new Object[] {in.getFD(), range[0], range[1]}, "(htt)");
+                Assertions.assertThrows(MarshallingException.class, () -> new SharedByteArray().deserialize(payload));
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.freedesktop.dbus.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.freedesktop.dbus.DBusMatchRule;
+import org.freedesktop.dbus.connections.SignalHandlerIndex;
+import org.freedesktop.dbus.interfaces.Properties.PropertiesChanged;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SignalHandlerIndexTest {
+    private static final String IFACE  = "org.freedesktop.DBus.Properties";
+    private static final String MEMBER = "PropertiesChanged";
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        SignalHandlerIndex<String> index = new SignalHandlerIndex<>(false);
+        DBusMatchRule rule = new DBusMatchRule(PropertiesChanged.class);
+
+        Assertions.assertTrue(index.add(rule, "a"));
+        Assertions.assertFalse(index.add(new DBusMatchRule(PropertiesChanged.class), "b"));
+        Assertions.assertEquals(Arrays.asList("a", "b"), index.getHandlers(IFACE, MEMBER, "/foo", ":1.1"));
+
+        Assertions.assertFalse(index.remove(rule, "unknown"));
+        Assertions.assertFalse(index.remove(rule, "a"));
+        Assertions.assertTrue(index.remove(rule, "b"));
+        Assertions.assertTrue(index.isEmpty());
+        Assertions.assertSame(Collections.emptyList(), index.getHandlers(IFACE, MEMBER, "/foo", ":1.1"));
+    }
+
+    @Test
+    public void testPathAndSource() throws Exception {
+        SignalHandlerIndex<String> index = new SignalHandlerIndex<>(false);
+        index.add(new DBusMatchRule(PropertiesChanged.class), "any");
+        index.add(new DBusMatchRule(PropertiesChanged.class, null, "/foo"), "path");
+        index.add(new DBusMatchRule(PropertiesChanged.class, ":1.1", null), "source");
+        index.add(new DBusMatchRule(PropertiesChanged.class, ":1.1", "/foo"), "both");
+
+        Assertions.assertEquals(Arrays.asList("both", "path", "source", "any"),
+                index.getHandlers(IFACE, MEMBER, "/foo", ":1.1"));
+        Assertions.assertEquals(Arrays.asList("source", "any"), index.getHandlers(IFACE, MEMBER, "/bar", ":1.1"));
+        Assertions.assertEquals(Arrays.asList("path", "any"), index.getHandlers(IFACE, MEMBER, "/foo", ":1.2"));
+        // peer-to-peer signals have no source, every handler is returned once
+        Assertions.assertEquals(Arrays.asList("path", "any"), index.getHandlers(IFACE, MEMBER, "/foo", null));
+        Assertions.assertTrue(index.getHandlers(IFACE, "Other", "/foo", ":1.1").isEmpty());
+    }
+
+    @Test
+    public void testWildcardTypes() throws Exception {
+        SignalHandlerIndex<String> typed = new SignalHandlerIndex<>(false);
+        SignalHandlerIndex<String> generic = new SignalHandlerIndex<>(true);
+        DBusMatchRule interfaceOnly = new DBusMatchRule("signal", IFACE, null);
+        DBusMatchRule pathOnly = new DBusMatchRule("signal", null, null, "/foo");
+        typed.add(interfaceOnly, "iface");
+        generic.add(interfaceOnly, "iface");
+        generic.add(pathOnly, "path");
+
+        Assertions.assertTrue(typed.getHandlers(IFACE, MEMBER, "/foo", null).isEmpty());
+        Assertions.assertEquals(Arrays.asList("iface", "path"), generic.getHandlers(IFACE, MEMBER, "/foo", null));
+        Assertions.assertEquals(Arrays.asList("path"), generic.getHandlers("org.foo", "Bar", "/foo", ":1.5"));
+        Assertions.assertTrue(generic.getHandlers("org.foo", "Bar", "/bar", ":1.5").isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package org.freedesktop.dbus.test;
+
+import static org.freedesktop.dbus.test.helper.TestMessages.receive;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.freedesktop.dbus.DBusMap;
+import org.freedesktop.dbus.DBusPath;
+import org.freedesktop.dbus.Marshalling;
+import org.freedesktop.dbus.MethodTuple;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+import org.freedesktop.dbus.messages.ExportedMethod;
+import org.freedesktop.dbus.messages.ExportedObject;
+import org.freedesktop.dbus.messages.MethodCall;
+import org.freedesktop.dbus.test.helper.structs.IntStruct;
+import org.freedesktop.dbus.test.helper.structs.SampleStruct2;
+import org.freedesktop.dbus.test.helper.structs.SampleStruct3;
+import org.freedesktop.dbus.types.Variant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TypedDecodingTest {
+
+    public interface Receiver extends DBusInterface {
+        void receive(List<IntStruct> _structs, Map<String, List<Integer>> _map, int[] _ints, String[] _strings,
+                float _float, Variant<?> _variant, SampleStruct3 _nested, DBusPath _path, List<Double> _doubles);
+    }
+
+    public static class ReceiverImpl implements Receiver {
+        @Override
+        public void receive(List<IntStruct> _structs, Map<String, List<Integer>> _map, int[] _ints, String[] _strings,
+                float _float, Variant<?> _variant, SampleStruct3 _nested, DBusPath _path, List<Double> _doubles) {
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public String getObjectPath() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testTypedDecodingMatchesGenericDecoding() throws Exception {
+        Type[] types = Receiver.class.getMethod("receive", List.class, Map.class, int[].class, String[].class, Float.TYPE,
+                Variant.class, SampleStruct3.class, DBusPath.class, List.class).getGenericParameterTypes();
+        String sig = Marshalling.getDBusType(types);
+        Map<String, List<Integer>> map = new LinkedHashMap<>();
+        map.put("a", Arrays.asList(1, 2));
+        map.put("b", Arrays.asList(3));
+        SampleStruct3 nested = new SampleStruct3(new SampleStruct2(Arrays.asList("x", "y"), new Variant<>(5)),
+                Arrays.asList(Arrays.asList(6, 7), Arrays.asList(8)));
+        Object[] values = new Object[] {Arrays.asList(new IntStruct(1, 2), new IntStruct(3, 4)), map, new int[] {9, 10},
+                new String[] {"s1", "s2"}, 1.5d, new Variant<>("v"), nested, new DBusPath("/org/foo"), Arrays.asList(0.5d, 0.25d)};
+        MethodCall call = new MethodCall("org.foo", "/org/foo", "org.foo.Receiver", "receive", (byte) 0, sig,
+                Marshalling.convertParameters(values, types, null));
+
+        ExportedMethod method = new ExportedObject(new ReceiverImpl(), false)
+                .getExportedMethod(new MethodTuple("receive", sig));
+        Object[] typed = method.deSerializeParameters(receive(call), null);
+        Object[] generic = method.deSerializeParameters(receive(call).getParameters(), null);
+
+        Assertions.assertEquals(values.length, typed.length);
+        Assertions.assertEquals(Arrays.asList(new IntStruct(1, 2), new IntStruct(3, 4)), typed[0]);
+        Assertions.assertTrue(typed[1] instanceof DBusMap);
+        Assertions.assertEquals(map, typed[1]);
+        Assertions.assertArrayEquals(new int[] {9, 10}, (int[]) typed[2]);
+        Assertions.assertArrayEquals(new String[] {"s1", "s2"}, (String[]) typed[3]);
+        Assertions.assertEquals(Float.valueOf(1.5f), typed[4]);
+        Assertions.assertEquals(new Variant<>("v"), typed[5]);
+        Assertions.assertEquals(nested, typed[6]);
+        Assertions.assertEquals(new DBusPath("/org/foo"), typed[7]);
+        Assertions.assertEquals(Arrays.asList(0.5d, 0.25d), typed[8]);
+
+        for (int i = 0; i < typed.length; i++) {
+            Assertions.assertEquals(generic[i].getClass(), typed[i].getClass());
+        }
+        Assertions.assertTrue(Arrays.deepEquals(generic, typed));
+    }
+}
@@ -0,0 +1,97 @@
+package org.freedesktop.dbus.test.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.freedesktop.dbus.connections.AbstractConnection;
+import org.freedesktop.dbus.connections.impl.DirectConnection;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+
+/**
+ * Two {@link DirectConnection}s connected to each other over TCP, the listening side exports one object.
+ */
+public final class DirectConnectionPair implements Closeable {
+    private static final int       CONNECT_ATTEMPTS = 100;
+
+    private final DirectConnection server;
+    private final DirectConnection client;
+
+    private DirectConnectionPair(DirectConnection _server, DirectConnection _client) {
+        server = _server;
+        client = _client;
+    }
+
+    /**
+     * Connects two connections and exports the given object on the listening side.
+     *
+     * @param _objectPath path to export the object on
+     * @param _object object to export
+     * @return connected pair
+     * @throws Exception if connecting failed
+     */
+    public static DirectConnectionPair open(String _objectPath, DBusInterface _object) throws Exception {
+        return open(_objectPath, _object, false);
+    }
+
+    /**
+     * Connects two connections and exports the given object on the listening side.
+     *
+     * @param _objectPath path to export the object on
+     * @param _object object to export
+     * @param _nonBlocking true to use non-blocking transports on both sides
+     * @return connected pair
+     * @throws Exception if connecting failed
+     */
+    public static DirectConnectionPair open(String _objectPath, DBusInterface _object, boolean _nonBlocking) throws Exception {
+        String address = DirectConnection.createDynamicTCPSession();
+
+        // the listening side blocks until the client has connected
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<DirectConnection> serverFuture = executor.submit(() -> createConnection(address + ",listen=true", _nonBlocking));
+            DirectConnection client = connect(address, _nonBlocking);
+            DirectConnection server = serverFuture.get();
+            server.exportObject(_objectPath, _object);
+            server.listen();
+            return new DirectConnectionPair(server, client);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static DirectConnection connect(String _address, boolean _nonBlocking) throws DBusException, InterruptedException {
+        for (int i = 1;; i++) {
+            try {
+                return createConnection(_address, _nonBlocking);
+            } catch (DBusException _ex) {
+                // server socket not bound yet
+                if (i == CONNECT_ATTEMPTS) {
+                    throw _ex;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static DirectConnection createConnection(String _address, boolean _nonBlocking) throws DBusException {
+        return new DirectConnection(_address, AbstractConnection.TCP_CONNECT_TIMEOUT, null, _nonBlocking);
+    }
+
+    public DirectConnection getServer() {
+        return server;
+    }
+
+    public DirectConnection getClient() {
+        return client;
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+        server.close();
+    }
+}
@@ -0,0 +1,59 @@
+package org.freedesktop.dbus.test.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.freedesktop.dbus.MessageDecoder;
+import org.freedesktop.dbus.exceptions.DBusException;
+import org.freedesktop.dbus.messages.Message;
+import org.freedesktop.dbus.messages.MethodCall;
+
+/**
+ * Messages and wire data used by tests which do not need a bus.
+ */
+public final class TestMessages {
+
+    private TestMessages() {
+
+    }
+
+    /**
+     * Creates a method call without parameters.
+     *
+     * @return method call
+     * @throws DBusException on error
+     */
+    public static MethodCall createCall() throws DBusException {
+        return new MethodCall("org.foo", "/org/foo", "org.foo.Bar", "baz", (byte) 0, null);
+    }
+
+    /**
+     * Returns the bytes sent over the bus for the given message.
+     *
+     * @param _msg message
+     * @return wire data
+     */
+    public static byte[] toBytes(Message _msg) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] buf : _msg.getWireData()) {
+            if (buf == null) {
+                break;
+            }
+            bos.write(buf, 0, buf.length);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Decodes the wire data of the given message, as if it had been received from the bus.
+     *
+     * @param _msg message
+     * @return received message
+     * @throws IOException if message could not be decoded
+     * @throws DBusException on error
+     */
+    public static Message receive(Message _msg) throws IOException, DBusException {
+        return new MessageDecoder().decode(ByteBuffer.wrap(toBytes(_msg)));
+    }
+}
@@ -0,0 +1,19 @@
+package org.freedesktop.dbus.test.helper.interfaces;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.freedesktop.dbus.annotations.DBusInterfaceName;
+import org.freedesktop.dbus.interfaces.DBusInterface;
+
+/**
+ * Client side view of {@link SampleRemoteInterface} using {@link CompletableFuture} return types.
+ */
+@DBusInterfaceName("org.freedesktop.dbus.test.helper.interfaces.SampleRemoteInterface")
+public interface SampleAsyncRemoteInterface extends DBusInterface {
+
+    CompletableFuture<String> getName();
+
+    CompletableFuture<Void> throwme();
+
+    CompletableFuture<Float> testfloat(float[] f);
+}